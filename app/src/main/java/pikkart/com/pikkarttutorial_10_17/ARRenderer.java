@@ -2,9 +2,17 @@ package pikkart.com.pikkarttutorial_10_17;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import com.pikkart.ar.recognition.RecognitionFragment;
 import com.pikkart.ar.recognition.items.Marker;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -19,23 +27,122 @@ public class ARRenderer implements GLTextureView.Renderer {
     private Context context;
     //the 3d object we will render on the marker
     private Mesh monkeyMesh = null;
-    private VideoMesh videoMesh = null;
+    private Mesh loadingMesh = null; //the monkey since its loader job was queued, deleted with the context
+    private VideoMesh videoMesh = null; //the video on the marker, a FlipbookMesh when FLIPBOOK_FILE is shipped
+    private static final String FLIPBOOK_FILE = "media/pikkart_video.flpb";
+    private final RenderList renderList = new RenderList(); //the mesh draws of a frame, sorted to minimize state changes
+    //per-stage frame timers (disabled by default)
+    private FrameProfiler frameProfiler = new FrameProfiler();
+    //GPU timings of the mesh draws (no-op if the driver lacks EXT_disjoint_timer_query)
+    private GpuTimer gpuTimer = new GpuTimer(frameProfiler);
+    //creates GL resources off the render thread (may be null)
+    private GLResourceLoader resourceLoader = null;
+    //when the view was resumed (0 once the first frame after resume has been drawn)
+    private volatile long resumeTimestamp = 0;
+    //lowers the frame rate when there is nothing to track or play
+    private IdleModeController idleController = new IdleModeController();
+    //the view we render into, used to throttle the frame rate (may be null)
+    private GLTextureView renderView = null;
+    //battery current sampling for the power report (Android 5+)
+    private BatteryManager batteryManager = null;
+    private long lastPowerSampleMs = 0;
+    private long lastPowerReportMs = 0;
+    private static final long POWER_SAMPLE_INTERVAL_MS = 1000;
+    private static final long POWER_REPORT_INTERVAL_MS = 30000;
+    //streamed mesh levels uploaded per frame
+    private static final int MESH_UPLOAD_BUDGET_BYTES = 256 * 1024;
+    //converted meshes and textures kept across launches
+    private static final long DISK_CACHE_BYTES = 64 * 1024 * 1024;
+    //time-to-first-pixel: when the marker was found, 0 if the mesh has been drawn since
+    private boolean wasTracking = false;
+    private long markerFoundTimestamp = 0;
 
     /* Constructor. */
     public ARRenderer(Context con) {
         context = con;
+        DiskCache.setDirectory(new File(con.getCacheDir(), "assets"), DISK_CACHE_BYTES);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+            batteryManager = (BatteryManager) con.getSystemService(Context.BATTERY_SERVICE);
+    }
+
+    /* set the view we render into, so that the renderer can lower its frame rate when idle */
+    public void setRenderView(GLTextureView view) {
+        renderView = view;
+    }
+
+    /* set the background loader used to create meshes without stalling the camera view */
+    public void setResourceLoader(GLResourceLoader loader) {
+        resourceLoader = loader;
+    }
+
+    /* the frame timers fed by this renderer */
+    public FrameProfiler getFrameProfiler() {
+        return frameProfiler;
     }
 
     /** Called when the surface is created or recreated.
-     * Reinitialize OpenGL related stuff here*/
+     * Reinitialize OpenGL related stuff here.
+     * Since the view preserves its EGL context on pause, this only happens on first start
+     * and after a real context loss: GL objects are recreated, parsed meshes and decoded
+     * images come from the AssetCache*/
     public void onSurfaceCreated(GL10 gl, EGLConfig config)  {
         gl.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);
+        //GL objects of the previous context that were never deleted died with it
+        for (GLResourceTracker.Resource leak : GLResourceTracker.onContextCreated())
+            Log.w("ARRenderer", "leaked with the previous context: " + leak);
+        GLState.onContextCreated();
+        gpuTimer.init();
         //Here we create the 3D object and initialize textures, shaders, etc.
-        monkeyMesh=new Mesh();
-        monkeyMesh.InitMesh(context.getAssets(),"media/monkey.json", "media/texture.png");
+        //on the loader thread: the camera keeps rendering while the monkey is uploaded
+        monkeyMesh = null;
+        final Mesh mesh = new Mesh();
+        loadingMesh = mesh;
+        GLResourceLoader.Job monkeyJob = new GLResourceLoader.Job() {
+            public void load() {
+                //the model never covers more than the screen: no need for more texels than pixels
+                DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+                int screenSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+                mesh.InitMesh(context.getAssets(), "media/monkey.json", "media/texture.png", screenSize);
+            }
+            public void onLoaded() {
+                monkeyMesh = mesh;
+                //nothing else to load for a while: give back the staging memory of this load
+                trimDirectBuffers();
+            }
+        };
+        if (resourceLoader != null) {
+            resourceLoader.queue(monkeyJob);
+        } else {
+            monkeyJob.load();
+            monkeyJob.onLoaded();
+        }
 
-        videoMesh = new VideoMesh((Activity)context);
-        videoMesh.InitMesh(context.getAssets(), "media/pikkart_video.mp4", "media/pikkart_keyframe.png", 0, false, null);
+        //the video texture is tied to the SurfaceTexture and MediaPlayer, it stays on the render thread
+        if (videoMesh == null) {
+            //a short silent loop shipped as a flipbook needs no MediaPlayer and starts at once
+            boolean flipbook = hasAsset(FLIPBOOK_FILE);
+            videoMesh = flipbook ? new FlipbookMesh((Activity)context) : new VideoMesh((Activity)context);
+            videoMesh.setFrameProfiler(frameProfiler);
+            videoMesh.setGpuTimer(gpuTimer);
+            if (flipbook)
+                videoMesh.InitMesh(context.getAssets(), FLIPBOOK_FILE, null, 0, true, null);
+            else
+                videoMesh.InitMesh(context.getAssets(), "media/pikkart_video.mp4", "media/pikkart_keyframe.png", 0, false, null);
+        }
+        else {
+            //context lost: reuse the video player, recreate only the GL side
+            videoMesh.RecreateGLResources(context.getAssets());
+        }
+    }
+
+    /* is a file shipped in the app assets */
+    private boolean hasAsset(String file) {
+        try {
+            context.getAssets().open(file).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     /** Called when the surface changed size. */
@@ -44,6 +151,35 @@ public class ARRenderer implements GLTextureView.Renderer {
 
     /** Called when the surface is destroyed. */
     public void onSurfaceDestroyed() {
+        //no GL object to delete: the context may be kept for the next surface, see onContextDestroying()
+        trimDirectBuffers();
+    }
+
+    /** Called on the render thread, with the context current, right before the context is destroyed.
+     * Deletes the GL objects; whatever is still tracked afterwards is a leak.*/
+    public void onContextDestroying() {
+        //the monkey may still be on its way from the loader thread, whose context is gone already
+        if (loadingMesh != null)
+            loadingMesh.DestroyGLResources();
+        loadingMesh = null;
+        monkeyMesh = null;
+        if (videoMesh != null)
+            videoMesh.DestroyGLResources();
+        for (GLResourceTracker.Resource leak : GLResourceTracker.onContextDestroyed())
+            Log.w("ARRenderer", "leaked with the context: " + leak);
+        trimDirectBuffers();
+    }
+
+    /* drop the staging memory no buffer uses anymore, so the next content does not load on top of the peak of the last */
+    private void trimDirectBuffers() {
+        long dropped = DirectBufferArena.trim();
+        if (dropped > 0)
+            Log.i("ARRenderer", "direct buffers - trimmed " + (dropped / 1024) + " KB, " + DirectBufferArena.getReport());
+    }
+
+    /* debug API: the estimated GPU memory of the live GL objects, one line per owner, then the totals */
+    public String getGLResourceReport() {
+        return GLResourceTracker.getOwnerReport() + GLResourceTracker.getReport();
     }
 
     /** Here we compute the model-view-projection matrix for OpenGL rendering
@@ -103,11 +239,36 @@ public class ARRenderer implements GLTextureView.Renderer {
     /** Called to draw the current frame. */
     public void onDrawFrame(GL10 gl) {
         if (!IsActive) return;
-
-        gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+        long frameStart = frameProfiler.begin();
+        gpuTimer.collect();
+        if (resourceLoader != null) resourceLoader.deliverCompleted();
+
+        if (monkeyMesh != null) monkeyMesh.StreamBatches(MESH_UPLOAD_BUDGET_BYTES);
+
+        boolean tracking = RecognitionFragment.isTracking();
+        if (tracking != wasTracking) markerFoundTimestamp = tracking ? System.nanoTime() : 0;
+        wasTracking = tracking;
+        boolean meshDrawn = false;
+
+        //nothing tracked and no video on screen: only the camera is drawn, at a lower frame rate
+        long now = SystemClock.uptimeMillis();
+        //a paused video shows a still frame: it needs no high frame rate
+        boolean videoActive = videoMesh != null && videoMesh.isVideoPlaying();
+        boolean idle = idleController.update(tracking, videoActive, now) == IdleModeController.MODE_IDLE;
+        if (renderView != null) renderView.setMinFrameInterval(idleController.getFrameIntervalMs());
+        samplePower(now);
+
+        if (idle)
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+        else
+            gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
         // Call our native function to render camera content
+        long stageStart = frameProfiler.begin();
         RecognitionFragment.renderCamera(ViewportWidth, ViewportHeight, Angle);
+        frameProfiler.end(FrameProfiler.STAGE_CAMERA, stageStart);
+        //the native renderer sets GL state behind GLState
+        GLState.invalidate();
 
         if(RecognitionFragment.isTracking()) {
             Marker currentMarker = RecognitionFragment.getCurrentMarker();
@@ -115,15 +276,32 @@ public class ARRenderer implements GLTextureView.Renderer {
             if(currentMarker.getId().compareTo("3_522")==0){
                 float[] mvMatrix = new float[16];
                 float[] pMatrix = new float[16];
-                if (computeModelViewProjectionMatrix(mvMatrix, pMatrix)) {
+                stageStart = frameProfiler.begin();
+                boolean tracked = computeModelViewProjectionMatrix(mvMatrix, pMatrix);
+                frameProfiler.end(FrameProfiler.STAGE_MATRICES, stageStart);
+                if (tracked) {
+                    stageStart = frameProfiler.begin();
                     videoMesh.DrawMesh(mvMatrix, pMatrix);
+                    frameProfiler.end(FrameProfiler.STAGE_DRAW_VIDEO_MESH, stageStart);
                     RenderUtils.checkGLError("completed video mesh Render");
                 }
             }
-            else {
+            else if (monkeyMesh != null && monkeyMesh.IsDrawable()) {
                 float[] mvpMatrix = new float[16];
-                if (computeModelViewProjectionMatrix(mvpMatrix)) {
-                    monkeyMesh.DrawMesh(mvpMatrix);
+                stageStart = frameProfiler.begin();
+                boolean tracked = computeModelViewProjectionMatrix(mvpMatrix);
+                frameProfiler.end(FrameProfiler.STAGE_MATRICES, stageStart);
+                if (tracked) {
+                    stageStart = frameProfiler.begin();
+                    //morph weights follow the frame clock; while the marker is lost the clip waits
+                    monkeyMesh.UpdateAnimation(System.nanoTime());
+                    gpuTimer.begin(FrameProfiler.STAGE_GPU_DRAW_MESH);
+                    renderList.clear();
+                    meshDrawn = monkeyMesh.Submit(renderList, mvpMatrix);
+                    renderList.sort();
+                    renderList.execute();
+                    gpuTimer.end();
+                    frameProfiler.end(FrameProfiler.STAGE_DRAW_MESH, stageStart);
                     RenderUtils.checkGLError("completed Monkey head Render");
                 }
             }
@@ -133,6 +311,7 @@ public class ARRenderer implements GLTextureView.Renderer {
         if(!RecognitionFragment.isTracking() && videoMesh.isPlaying()) {
             float[] mvMatrix = new float[16];
             float[] pMatrix = new float[16];
+            stageStart = frameProfiler.begin();
             computeProjectionMatrix(pMatrix);
 
             if(Angle==0) {
@@ -159,12 +338,63 @@ public class ARRenderer implements GLTextureView.Renderer {
                 mvMatrix[8] = 0.0f; mvMatrix[9] = 0.0f; mvMatrix[10] = -1.0f; mvMatrix[11] = -1.3f;
                 mvMatrix[12] = 0.0f; mvMatrix[13] = 0.0f; mvMatrix[14] = 0.0f; mvMatrix[15] = 1.0f;
             }
+            frameProfiler.end(FrameProfiler.STAGE_MATRICES, stageStart);
 
+            stageStart = frameProfiler.begin();
             videoMesh.DrawMesh(mvMatrix, pMatrix);
+            frameProfiler.end(FrameProfiler.STAGE_DRAW_VIDEO_MESH, stageStart);
             RenderUtils.checkGLError("completed video mesh Render");
         }
 
-        gl.glFinish();
+        //once per frame instead of after every draw
+        GLState.restoreDefaults();
+
+        if (!idle) gl.glFinish();
+        frameProfiler.end(FrameProfiler.STAGE_FRAME, frameStart);
+
+        if (resumeTimestamp != 0) {
+            long micros = (System.nanoTime() - resumeTimestamp) / 1000;
+            resumeTimestamp = 0;
+            frameProfiler.record(FrameProfiler.STAGE_RESUME, micros);
+            Log.i("ARRenderer", "resume to first frame: " + (micros / 1000) + " ms");
+        }
+        if (meshDrawn && markerFoundTimestamp != 0) {
+            long micros = (System.nanoTime() - markerFoundTimestamp) / 1000;
+            markerFoundTimestamp = 0;
+            frameProfiler.record(FrameProfiler.STAGE_FIRST_PIXEL, micros);
+            Log.i("ARRenderer", "marker found to first mesh pixel: " + (micros / 1000) + " ms");
+        }
+    }
+
+    /* sample the battery current for the current render mode, and log the power report from time to time */
+    private void samplePower(long now) {
+        if (now - lastPowerSampleMs >= POWER_SAMPLE_INTERVAL_MS) {
+            lastPowerSampleMs = now;
+            if (batteryManager != null) {
+                int current = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+                if (current != Integer.MIN_VALUE && current != 0) idleController.addCurrentSample(current);
+            }
+        }
+        if (lastPowerReportMs == 0) lastPowerReportMs = now;
+        if (now - lastPowerReportMs >= POWER_REPORT_INTERVAL_MS) {
+            lastPowerReportMs = now;
+            Log.i("ARRenderer", "render modes - " + idleController.getReport());
+            String lodReport = monkeyMesh != null ? monkeyMesh.getLodReport() : null;
+            if (lodReport != null) Log.i("ARRenderer", "mesh LOD - " + lodReport);
+            Log.i("ARRenderer", "render list - " + renderList.getReport());
+            Log.i("ARRenderer", "disk cache - " + DiskCache.getReport());
+            Log.i("ARRenderer", "textures - " + RenderUtils.getTextureReport());
+            Log.i("ARRenderer", "bitmap pool - " + BitmapPool.getReport());
+            Log.i("ARRenderer", "direct buffers - " + DirectBufferArena.getReport());
+            Log.i("ARRenderer", "GL resources - " + GLResourceTracker.getReport());
+            Log.i("ARRenderer", "programs - " + ProgramCache.getReport());
+            Log.i("ARRenderer", "GL state - " + GLState.getReport());
+        }
+    }
+
+    /* called by the view when it is resumed, to measure the time to the first frame */
+    public void onResume() {
+        resumeTimestamp = System.nanoTime();
     }
 
     /* this will be called by our GLTextureView-derived class to update screen sizes and orientation */
@@ -18,12 +18,17 @@ import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.egl.EGLContext;
 import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
 
 public class ARView extends GLTextureView
 {
     private Context _context;
     //our renderer implementation
     private ARRenderer _renderer;
+    //background thread creating GL resources in a context shared with the renderer
+    private GLResourceLoader _resourceLoader = new GLResourceLoader();
+    //creates the contexts, and lets the renderer delete its GL objects before one is destroyed
+    private ContextFactory _contextFactory;
 
     /* Called when device configuration has changed */
     @Override
@@ -119,15 +124,27 @@ public class ARView extends GLTextureView
         _context = context;
         init();
         _renderer = new ARRenderer(this._context);
+        _renderer.setResourceLoader(_resourceLoader);
+        _renderer.setRenderView(this);
+        _contextFactory.setRenderer(_renderer);
         setRenderer(_renderer);
+        setFrameProfiler(_renderer.getFrameProfiler());
         ((ARRenderer)_renderer).IsActive = true;
         setOpaque(true);
     }
 
+    /* The per-stage frame timers of our renderer (disabled until setEnabled(true) is called). */
+    public FrameProfiler getFrameProfiler() {
+        return _renderer.getFrameProfiler();
+    }
+
     /* Initialization. */
     public void init() {
-        setEGLContextFactory(new ContextFactory());
+        _contextFactory = new ContextFactory(_resourceLoader);
+        setEGLContextFactory(_contextFactory);
         setEGLConfigChooser(new ConfigChooser(8, 8, 8, 0, 16, 0));
+        //keep the context (and all the GL resources) while paused, when the device allows it
+        setPreserveEGLContextOnPause(true);
     }
 
     /* Checks the OpenGL error.*/
@@ -138,27 +155,77 @@ public class ARView extends GLTextureView
         }
     }
 
-    /* A private class that manages the creation of OpenGL contexts. Pretty standard stuff*/
+    /* A private class that manages the creation of OpenGL contexts. Pretty standard stuff,
+     * except that each render context gets a shared loader context on a background thread
+     * and that the renderer deletes its GL objects before the context is destroyed */
     private static class ContextFactory implements EGLContextFactory {
         private static int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+        private GLResourceLoader mLoader;
+        private ARRenderer mRenderer;
+        private EGLConfig mConfig;
+
+        public ContextFactory(GLResourceLoader loader) {
+            mLoader = loader;
+        }
+
+        public void setRenderer(ARRenderer renderer) {
+            mRenderer = renderer;
+        }
 
         public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig) {
             EGLContext context;
-            //Log.i("PikkartCore3","Creating OpenGL ES 2.0 context");
+            mConfig = eglConfig;
             checkEglError("Before eglCreateContext", egl);
-            int[] attrib_list_gl20 = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
-            context = egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list_gl20);
+            //OpenGL ES 3.0 when the chosen config is ES 3 renderable (vertex array objects, fences),
+            //2.0 otherwise: strict drivers refuse an ES 3 context on an ES 2 only config
+            int[] renderableType = new int[1];
+            egl.eglGetConfigAttrib(display, eglConfig, EGL10.EGL_RENDERABLE_TYPE, renderableType);
+            int clientVersion = (renderableType[0] & ConfigChooser.EGL_OPENGL_ES3_BIT_KHR) != 0 ? 3 : 2;
+            int[] attrib_list = {EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL10.EGL_NONE};
+            context = egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list);
+            if ((context == null || context == EGL10.EGL_NO_CONTEXT) && clientVersion == 3) {
+                checkEglError("eglCreateContext for OpenGL ES 3.0 on an ES 3 config", egl);
+                clientVersion = 2;
+                attrib_list[1] = clientVersion;
+                context = egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attrib_list);
+            }
             checkEglError("After eglCreateContext", egl);
+            if (context != null && context != EGL10.EGL_NO_CONTEXT) {
+                Log.i("PikkartCore3", "Created an OpenGL ES " + clientVersion + ".0 context");
+                if (mLoader != null)
+                    mLoader.start(egl, display, eglConfig, context, clientVersion);
+            }
             return context;
         }
 
         public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+            if (mLoader != null) mLoader.stop();
+            //the window surface is gone already: make the context current on a 1x1 pbuffer
+            //(or no surface at all) so the renderer can delete its objects
+            if (mRenderer != null && mConfig != null) {
+                int[] pbufferAttribs = {EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE};
+                EGLSurface pbuffer = egl.eglCreatePbufferSurface(display, mConfig, pbufferAttribs);
+                if (pbuffer == null)
+                    pbuffer = EGL10.EGL_NO_SURFACE;
+                if (egl.eglMakeCurrent(display, pbuffer, pbuffer, context)) {
+                    mRenderer.onContextDestroying();
+                    egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+                }
+                else {
+                    checkEglError("eglMakeCurrent before the context is destroyed", egl);
+                }
+                if (pbuffer != EGL10.EGL_NO_SURFACE)
+                    egl.eglDestroySurface(display, pbuffer);
+            }
             egl.eglDestroyContext(display, context);
         }
     }
 
     /* A private class that manages the the config chooser. Pretty standard stuff */
     private static class ConfigChooser implements EGLConfigChooser {
+        static final int EGL_OPENGL_ES2_BIT = 0x0004;
+        static final int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+
         public ConfigChooser(int r, int g, int b, int a, int depth, int stencil) {
             mRedSize = r;
             mGreenSize = g;
@@ -174,7 +241,7 @@ public class ARView extends GLTextureView
             egl.eglChooseConfig(display, configAttribs, null, 0, num_config);
             int numConfigs = num_config[0];
             if (numConfigs <= 0)
-                throw new IllegalArgumentException("No matching EGL configs");
+                return null;
             // Allocate then read the array of minimally matching EGL configs
             EGLConfig[] configs = new EGLConfig[numConfigs];
             egl.eglChooseConfig(display, configAttribs, configs, numConfigs, num_config);
@@ -183,12 +250,20 @@ public class ARView extends GLTextureView
         }
 
         public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
-            // This EGL config specification is used to specify 2.0 com.pikkart.ar.rendering. We use a minimum size of 4 bits for
-            // red/green/blue, but will perform actual matching in chooseConfig() below.
-            final int EGL_OPENGL_ES2_BIT = 0x0004;
+            // This EGL config specification is used to specify 3.0 com.pikkart.ar.rendering, 2.0 when no config matches.
+            // We use a minimum size of 4 bits for red/green/blue, but will perform actual matching in chooseConfig() below.
+            final int[] s_configAttribs_gl30 = {EGL10.EGL_RED_SIZE, 4, EGL10.EGL_GREEN_SIZE, 4, EGL10.EGL_BLUE_SIZE, 4,
+                    EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES3_BIT_KHR, EGL10.EGL_NONE};
+            EGLConfig config = getMatchingConfig(egl, display, s_configAttribs_gl30);
+            if (config != null)
+                return config;
+            egl.eglGetError(); //an EGL 1.4 driver without EGL_KHR_create_context rejects the ES 3 bit
             final int[] s_configAttribs_gl20 = {EGL10.EGL_RED_SIZE, 4, EGL10.EGL_GREEN_SIZE, 4, EGL10.EGL_BLUE_SIZE, 4,
                     EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT, EGL10.EGL_NONE};
-            return getMatchingConfig(egl, display, s_configAttribs_gl20);
+            config = getMatchingConfig(egl, display, s_configAttribs_gl20);
+            if (config == null)
+                throw new IllegalArgumentException("No matching EGL configs");
+            return config;
         }
 
         public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, EGLConfig[] configs) {
@@ -245,4 +320,10 @@ public class ARView extends GLTextureView
         super.onPause();
         _renderer.pauseVideo();
     }
+
+    @Override
+    public void onResume() {
+        _renderer.onResume();
+        super.onResume();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class AnimationClip
+ * \brief Keyframed morph target weights, sampled at any time.
+ *
+ * The keyframes follow the glTF animation samplers: LINEAR and STEP clips hold one weight per
+ * target and keyframe, CUBICSPLINE clips hold an in tangent, a value and an out tangent per
+ * target and keyframe (Hermite interpolation). Before the first and after the last keyframe
+ * the weights are held. Plain Java, no Android dependencies.
+ */
+public class AnimationClip
+{
+    public static final int INTERPOLATION_LINEAR = 0;
+    public static final int INTERPOLATION_STEP = 1;
+    public static final int INTERPOLATION_CUBICSPLINE = 2;
+
+    private final String mName; /**< clip name */
+    private final float[] mTimes; /**< keyframe times in seconds, increasing */
+    private final float[] mValues; /**< keyframe weights (and tangents), keyframe major */
+    private final int mTargets; /**< number of morph targets */
+    private final int mInterpolation; /**< one of the INTERPOLATION_ constants */
+
+    /**
+     * \brief Create a clip.
+     * @param name the clip name.
+     * @param times keyframe times in seconds, increasing.
+     * @param values keyframe weights: targets values per keyframe, 3 times as many for CUBICSPLINE.
+     * @param targets the number of morph targets.
+     * @param interpolation one of the INTERPOLATION_ constants.
+     */
+    public AnimationClip(String name, float[] times, float[] values, int targets, int interpolation)
+    {
+        int perKey = interpolation == INTERPOLATION_CUBICSPLINE ? 3 * targets : targets;
+        if (times.length == 0 || targets <= 0 || values.length != times.length * perKey) {
+            throw new IllegalArgumentException("clip " + name + ": " + values.length + " values for "
+                    + times.length + " keyframes of " + targets + " targets");
+        }
+        for (int i = 1; i < times.length; i++) {
+            if (times[i] < times[i - 1]) throw new IllegalArgumentException("clip " + name + ": keyframe times decrease");
+        }
+        mName = name;
+        mTimes = times;
+        mValues = values;
+        mTargets = targets;
+        mInterpolation = interpolation;
+    }
+
+    /**
+     * \brief Get the interpolation of a glTF sampler.
+     * @param name the glTF interpolation name.
+     * @return one of the INTERPOLATION_ constants, LINEAR if unknown.
+     */
+    public static int getInterpolation(String name)
+    {
+        if ("STEP".equals(name)) return INTERPOLATION_STEP;
+        if ("CUBICSPLINE".equals(name)) return INTERPOLATION_CUBICSPLINE;
+        return INTERPOLATION_LINEAR;
+    }
+
+    public String getName()
+    {
+        return mName;
+    }
+
+    public int getTargetCount()
+    {
+        return mTargets;
+    }
+
+    /**
+     * \brief Get the clip duration.
+     * @return the time of the last keyframe, in seconds.
+     */
+    public float getDuration()
+    {
+        return mTimes[mTimes.length - 1];
+    }
+
+    /**
+     * \brief Sample the weights.
+     * @param time the time in seconds.
+     * @param weights receives one weight per target.
+     */
+    public void sample(float time, float[] weights)
+    {
+        int last = mTimes.length - 1;
+        if (time <= mTimes[0] || last == 0) {
+            getValue(0, weights);
+            return;
+        }
+        if (time >= mTimes[last]) {
+            getValue(last, weights);
+            return;
+        }
+        // the keyframe k with times[k] <= time < times[k + 1]
+        int lo = 0, hi = last;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (mTimes[mid] <= time) lo = mid;
+            else hi = mid;
+        }
+        int k = lo;
+        float dt = mTimes[k + 1] - mTimes[k];
+        float t = dt > 0 ? (time - mTimes[k]) / dt : 0;
+
+        switch (mInterpolation) {
+            case INTERPOLATION_STEP:
+                getValue(k, weights);
+                break;
+            case INTERPOLATION_CUBICSPLINE: {
+                float t2 = t * t, t3 = t2 * t;
+                float h00 = 2 * t3 - 3 * t2 + 1;
+                float h10 = (t3 - 2 * t2 + t) * dt;
+                float h01 = -2 * t3 + 3 * t2;
+                float h11 = (t3 - t2) * dt;
+                int a = k * 3 * mTargets, b = (k + 1) * 3 * mTargets;
+                for (int i = 0; i < mTargets; i++) {
+                    float v0 = mValues[a + mTargets + i];
+                    float out0 = mValues[a + 2 * mTargets + i];
+                    float in1 = mValues[b + i];
+                    float v1 = mValues[b + mTargets + i];
+                    weights[i] = h00 * v0 + h10 * out0 + h01 * v1 + h11 * in1;
+                }
+                break;
+            }
+            default:
+                for (int i = 0; i < mTargets; i++) {
+                    float v0 = mValues[k * mTargets + i];
+                    float v1 = mValues[(k + 1) * mTargets + i];
+                    weights[i] = v0 + (v1 - v0) * t;
+                }
+                break;
+        }
+    }
+
+    private void getValue(int key, float[] weights)
+    {
+        int offset = mInterpolation == INTERPOLATION_CUBICSPLINE ? key * 3 * mTargets + mTargets : key * mTargets;
+        System.arraycopy(mValues, offset, weights, 0, mTargets);
+    }
+}
@@ -0,0 +1,148 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class AnimationPlayer
+ * \brief Plays an AnimationClip from the render frame clock.
+ *
+ * The clip time advances by the time between two update() calls, so the animation runs at
+ * the same speed whatever the frame rate (idle mode included). A long gap between two frames
+ * (app paused, marker lost) only advances it by MAX_FRAME_STEP_S, so the animation resumes
+ * where it was instead of jumping. Plain Java, no Android dependencies.
+ */
+public class AnimationPlayer
+{
+    public static final float MAX_FRAME_STEP_S = 0.1f; /**< largest time step of one frame */
+
+    private final AnimationClip mClip; /**< the clip played */
+    private final float[] mWeights; /**< weights at the current time */
+    private double mTime = 0; /**< clip time in seconds */
+    private long mLastFrameNanos = 0; /**< time of the previous update, 0 if none */
+    private float mSpeed = 1.0f; /**< playback speed */
+    private boolean mLooping = true; /**< does the clip restart when it ends */
+    private boolean mPlaying = true; /**< is the clip time advancing */
+
+    /**
+     * \brief Create a player, playing the clip in a loop from its start.
+     * @param clip the clip.
+     */
+    public AnimationPlayer(AnimationClip clip)
+    {
+        mClip = clip;
+        mWeights = new float[clip.getTargetCount()];
+        clip.sample(0, mWeights);
+    }
+
+    public AnimationClip getClip()
+    {
+        return mClip;
+    }
+
+    public void setSpeed(float speed)
+    {
+        mSpeed = speed;
+    }
+
+    public void setLooping(boolean looping)
+    {
+        mLooping = looping;
+    }
+
+    public boolean isPlaying()
+    {
+        return mPlaying;
+    }
+
+    /**
+     * \brief Start or resume playing.
+     */
+    public void play()
+    {
+        mPlaying = true;
+        mLastFrameNanos = 0;
+    }
+
+    /**
+     * \brief Stop at the current time.
+     */
+    public void pause()
+    {
+        mPlaying = false;
+    }
+
+    /**
+     * \brief Move to a time of the clip.
+     * @param time the time in seconds.
+     */
+    public void seek(float time)
+    {
+        mTime = time;
+        mClip.sample(time, mWeights);
+    }
+
+    /**
+     * \brief Get the clip time.
+     * @return the time in seconds.
+     */
+    public float getTime()
+    {
+        return (float) mTime;
+    }
+
+    /**
+     * \brief Advance the clip to the time of a new frame.
+     * @param frameTimeNanos the frame time (System.nanoTime() clock).
+     * @return the weights of the frame, one per morph target (the array is reused).
+     */
+    public float[] update(long frameTimeNanos)
+    {
+        if (!mPlaying) return mWeights;
+        if (mLastFrameNanos != 0) {
+            double step = Math.min((frameTimeNanos - mLastFrameNanos) / 1e9, MAX_FRAME_STEP_S);
+            mTime += Math.max(step, 0) * mSpeed;
+        }
+        mLastFrameNanos = frameTimeNanos;
+
+        double duration = mClip.getDuration();
+        if (mTime > duration || mTime < 0) {
+            if (mLooping && duration > 0) {
+                mTime %= duration;
+                if (mTime < 0) mTime += duration;
+            }
+            else {
+                mTime = Math.max(0, Math.min(mTime, duration));
+                mPlaying = false;
+            }
+        }
+        mClip.sample((float) mTime, mWeights);
+        return mWeights;
+    }
+
+    /**
+     * \brief Get the weights of the last update.
+     * @return one weight per morph target (the array is reused).
+     */
+    public float[] getWeights()
+    {
+        return mWeights;
+    }
+}
@@ -0,0 +1,184 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * \class AssetCache
+ * \brief In-memory LRU cache of decoded meshes and textures.
+ *
+ * When the GL context is lost every GL object has to be recreated, but the parsed mesh
+ * and decoded pixels are still valid: they are kept here so that re-initialization only
+ * costs the upload. Evicted textures release their pixels to the DirectBufferArena; a texture
+ * got or put is pinned until unpinTexture(), so its pixels outlive an eviction by another
+ * thread until its upload is done. Thread safe (used by both the render and the loader thread).
+ */
+public class AssetCache
+{
+    private static final int MAX_BYTES = 24 * 1024 * 1024; /**< cache size bound */
+
+    /**
+     * \brief A cached item and its size.
+     */
+    private static class Entry
+    {
+        Object value; /**< MeshData or TextureData */
+        int bytes; /**< memory used by the item */
+        int pins; /**< users of a texture not done with its pixels */
+        boolean evicted; /**< removed while pinned, released by the last unpin */
+    }
+
+    private static final LinkedHashMap<String, Entry> sEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true); /**< access ordered entries */
+    private static final IdentityHashMap<Object, Entry> sPinned = new IdentityHashMap<Object, Entry>(); /**< pinned entries by value, evicted or not */
+    private static int sBytes = 0; /**< memory used by all the entries */
+
+    /**
+     * \brief Get a cached mesh.
+     * @param file the mesh asset path.
+     * @return the mesh data, or null if not cached.
+     */
+    public static MeshData getMesh(String file)
+    {
+        return (MeshData) get("mesh:" + file);
+    }
+
+    /**
+     * \brief Cache a mesh.
+     * @param file the mesh asset path.
+     * @param data the mesh data.
+     */
+    public static void putMesh(String file, MeshData data)
+    {
+        put("mesh:" + file, data, data.getSizeInBytes());
+    }
+
+    /**
+     * \brief Get a cached texture, pinned: call unpinTexture() once its pixels are uploaded.
+     * @param file the texture asset path.
+     * @return the texture data, or null if not cached.
+     */
+    public static synchronized TextureData getTexture(String file)
+    {
+        Entry e = sEntries.get("tex:" + file);
+        if (e == null) return null;
+        pin(e);
+        return (TextureData) e.value;
+    }
+
+    /**
+     * \brief Cache a texture, pinned: call unpinTexture() once its pixels are uploaded.
+     *
+     * A texture too large for the cache is not cached, its pixels are released by the unpin.
+     * @param file the texture asset path.
+     * @param data the texture data.
+     */
+    public static synchronized void putTexture(String file, TextureData data)
+    {
+        Entry e = put("tex:" + file, data, data.getSizeInBytes());
+        if (e == null) {
+            e = new Entry();
+            e.value = data;
+            e.evicted = true;
+        }
+        pin(e);
+    }
+
+    /**
+     * \brief Unpin a texture got or put; the last unpin of an evicted texture releases its pixels.
+     * @param data the texture data.
+     */
+    public static synchronized void unpinTexture(TextureData data)
+    {
+        Entry e = sPinned.get(data);
+        if (e == null || --e.pins > 0) return;
+        sPinned.remove(data);
+        if (e.evicted) data.release();
+    }
+
+    /**
+     * \brief Empty the cache.
+     */
+    public static synchronized void clear()
+    {
+        for (Entry e : sEntries.values()) release(e);
+        sEntries.clear();
+        sBytes = 0;
+    }
+
+    private static synchronized Object get(String key)
+    {
+        Entry e = sEntries.get(key);
+        return e == null ? null : e.value;
+    }
+
+    /**
+     * \brief Cache an item, evicting the least recently used ones.
+     * @return the entry, null if the item is too large to be cached.
+     */
+    private static synchronized Entry put(String key, Object value, int bytes)
+    {
+        if (bytes > MAX_BYTES) return null;
+        Entry e = new Entry();
+        e.value = value;
+        e.bytes = bytes;
+        Entry old = sEntries.put(key, e);
+        if (old != null) {
+            sBytes -= old.bytes;
+            if (old.value != value) {
+                release(old);
+            }
+            else if (old.pins > 0) {
+                // same item again: the entry takes over its pins
+                e.pins = old.pins;
+                sPinned.put(value, e);
+            }
+        }
+        sBytes += bytes;
+        Iterator<Map.Entry<String, Entry>> it = sEntries.entrySet().iterator();
+        while (sBytes > MAX_BYTES && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getValue() == e) continue;
+            sBytes -= eldest.getValue().bytes;
+            release(eldest.getValue());
+            it.remove();
+        }
+        return e;
+    }
+
+    private static void pin(Entry e)
+    {
+        e.pins++;
+        sPinned.put(e.value, e);
+    }
+
+    /**
+     * \brief Release the pixels of a removed texture entry, or leave them to its last unpin.
+     */
+    private static void release(Entry e)
+    {
+        if (e.pins > 0) e.evicted = true;
+        else if (e.value instanceof TextureData) ((TextureData) e.value).release();
+    }
+}
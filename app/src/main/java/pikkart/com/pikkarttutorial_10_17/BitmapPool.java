@@ -0,0 +1,225 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * \class BitmapPool
+ * \brief Reusable Bitmaps and row arrays for the texture decoder.
+ *
+ * Decoded bitmaps are given back once converted, and later decodes reuse them through
+ * BitmapFactory.Options.inBitmap instead of allocating new ones: loading a series of same
+ * sized images (keyframes) then allocates no pixels at all. Bitmaps are pooled by config and
+ * power of two size class of their allocation; a bitmap is reused by requests at least half
+ * its size, so little memory is wasted. The pool is bounded by MAX_BYTES, the least recently
+ * pooled bitmaps being recycled first. The int, short and byte row arrays of the conversion
+ * are pooled too (DirectBufferArena pools the pixel buffers), within the same bound; arrays
+ * larger than MAX_ARRAY_BYTES (whole encoded images) are left to the garbage collector.
+ * Thread safe.
+ */
+public class BitmapPool
+{
+    private static final long MAX_BYTES = 16 * 1024 * 1024; /**< bound of the pooled bitmap memory */
+    private static final int MAX_ARRAYS = 4; /**< pooled row arrays of each type */
+    private static final int MAX_ARRAY_BYTES = 256 * 1024; /**< largest array pooled, a few rows of the largest textures */
+
+    private static final ArrayList<Bitmap> sBitmaps = new ArrayList<Bitmap>(); /**< pooled bitmaps, least recently pooled first */
+    private static long sBytes = 0; /**< memory of the pooled bitmaps and arrays */
+    private static final ArrayList<int[]> sInts = new ArrayList<int[]>(); /**< pooled int arrays */
+    private static final ArrayList<short[]> sShorts = new ArrayList<short[]>(); /**< pooled short arrays */
+    private static final ArrayList<byte[]> sBytesArrays = new ArrayList<byte[]>(); /**< pooled byte arrays */
+    private static int sHits = 0;
+    private static int sMisses = 0;
+    private static int sEvicted = 0;
+    private static int sArrayHits = 0;
+    private static int sArrayMisses = 0;
+
+    /**
+     * \brief Get the size class of an allocation.
+     * @param bytes the allocation size.
+     * @return the power of two at least bytes.
+     */
+    private static long getSizeClass(long bytes)
+    {
+        long size = 1;
+        while (size < bytes) size <<= 1;
+        return size;
+    }
+
+    /**
+     * \brief Take a bitmap a decode can reuse.
+     * @param bytes the size of the decoded image (width * height * bytes per pixel).
+     * @param config the config it is decoded with.
+     * @return a mutable bitmap to set as inBitmap, null if none fits.
+     */
+    public static synchronized Bitmap get(long bytes, Bitmap.Config config)
+    {
+        long sizeClass = getSizeClass(bytes);
+        Bitmap best = null;
+        for (Bitmap bitmap : sBitmaps) {
+            int allocated = bitmap.getAllocationByteCount();
+            if (bitmap.getConfig() != config || allocated < bytes || getSizeClass(allocated) > 2 * sizeClass) continue;
+            if (best == null || allocated < best.getAllocationByteCount()) best = bitmap;
+        }
+        if (best == null) {
+            sMisses++;
+            return null;
+        }
+        sHits++;
+        sBitmaps.remove(best);
+        sBytes -= best.getAllocationByteCount();
+        return best;
+    }
+
+    /**
+     * \brief Give back a bitmap that is not used anymore.
+     * @param bitmap the bitmap; recycled if it cannot be reused or the pool is full.
+     */
+    public static synchronized void put(Bitmap bitmap)
+    {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        long bytes = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bytes > MAX_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+        sBitmaps.add(bitmap);
+        sBytes += bytes;
+        while (sBytes > MAX_BYTES && !sBitmaps.isEmpty()) {
+            Bitmap eldest = sBitmaps.remove(0);
+            sBytes -= eldest.getAllocationByteCount();
+            eldest.recycle();
+            sEvicted++;
+        }
+    }
+
+    /**
+     * \brief Recycle all the pooled bitmaps and drop the arrays.
+     */
+    public static synchronized void clear()
+    {
+        for (Bitmap bitmap : sBitmaps) bitmap.recycle();
+        sBitmaps.clear();
+        sBytes = 0;
+        sInts.clear();
+        sShorts.clear();
+        sBytesArrays.clear();
+    }
+
+    /**
+     * \brief Take an int array.
+     * @param length the least length.
+     * @return an array of at least length values, to be given back with putInts().
+     */
+    public static synchronized int[] getInts(int length)
+    {
+        for (int i = 0; i < sInts.size(); i++) {
+            if (sInts.get(i).length >= length) {
+                sArrayHits++;
+                sBytes -= sInts.get(i).length * 4L;
+                return sInts.remove(i);
+            }
+        }
+        sArrayMisses++;
+        return new int[length];
+    }
+
+    public static synchronized void putInts(int[] array)
+    {
+        if (array == null || !canPoolArray(array.length * 4L)) return;
+        if (sInts.size() == MAX_ARRAYS) sBytes -= sInts.remove(0).length * 4L;
+        sInts.add(array);
+        sBytes += array.length * 4L;
+    }
+
+    /**
+     * \brief Take a short array.
+     * @param length the least length.
+     * @return an array of at least length values, to be given back with putShorts().
+     */
+    public static synchronized short[] getShorts(int length)
+    {
+        for (int i = 0; i < sShorts.size(); i++) {
+            if (sShorts.get(i).length >= length) {
+                sArrayHits++;
+                sBytes -= sShorts.get(i).length * 2L;
+                return sShorts.remove(i);
+            }
+        }
+        sArrayMisses++;
+        return new short[length];
+    }
+
+    public static synchronized void putShorts(short[] array)
+    {
+        if (array == null || !canPoolArray(array.length * 2L)) return;
+        if (sShorts.size() == MAX_ARRAYS) sBytes -= sShorts.remove(0).length * 2L;
+        sShorts.add(array);
+        sBytes += array.length * 2L;
+    }
+
+    /**
+     * \brief Take a byte array.
+     * @param length the least length.
+     * @return an array of at least length values, to be given back with putBytes().
+     */
+    public static synchronized byte[] getBytes(int length)
+    {
+        for (int i = 0; i < sBytesArrays.size(); i++) {
+            if (sBytesArrays.get(i).length >= length) {
+                sArrayHits++;
+                sBytes -= sBytesArrays.get(i).length;
+                return sBytesArrays.remove(i);
+            }
+        }
+        sArrayMisses++;
+        return new byte[length];
+    }
+
+    public static synchronized void putBytes(byte[] array)
+    {
+        if (array == null || !canPoolArray(array.length)) return;
+        if (sBytesArrays.size() == MAX_ARRAYS) sBytes -= sBytesArrays.remove(0).length;
+        sBytesArrays.add(array);
+        sBytes += array.length;
+    }
+
+    /**
+     * \brief Can an array be pooled: not too large, and room left in the pool (bitmaps are not evicted for arrays).
+     */
+    private static boolean canPoolArray(long bytes)
+    {
+        return bytes <= MAX_ARRAY_BYTES && sBytes + bytes <= MAX_BYTES;
+    }
+
+    /**
+     * \brief Get the pool statistics.
+     * @return a one line report.
+     */
+    public static synchronized String getReport()
+    {
+        return "bitmaps " + sHits + " hits, " + sMisses + " misses, " + sEvicted + " evicted, " + sBitmaps.size() + " pooled ("
+                + (sBytes / 1024) + "/" + (MAX_BYTES / 1024) + " KB); arrays " + sArrayHits + " hits, " + sArrayMisses + " misses";
+    }
+}
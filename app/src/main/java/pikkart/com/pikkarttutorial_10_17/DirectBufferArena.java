@@ -0,0 +1,280 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * \class DirectBufferArena
+ * \brief Direct memory for staging buffers (mesh and texture data waiting for upload), reused
+ * instead of reallocated.
+ *
+ * The native memory of ByteBuffer.allocateDirect() is only freed when the garbage collector
+ * finalizes the buffer, long after it was last used: loading new content then allocates while
+ * the previous content's memory is still held, which is what runs out of native memory. The
+ * arena allocates large blocks once and carves them into slices of power of two size classes,
+ * ALIGNMENT aligned within their block. A released slice goes on the free list of its class
+ * and is handed out again by the next allocation of that class, so steady state loading
+ * allocates no direct memory at all. Requests larger than a block get a buffer of their own,
+ * also reused once released; at most MAX_FREE_LARGE_BYTES of them are kept, the oldest are
+ * dropped first. trim() drops the unused memory when content has been unloaded or has
+ * finished loading.
+ *
+ * Slices are released explicitly with release(), the buffer returned by allocate() (or the same
+ * object after order()) being the handle; releasing any other buffer is a no-op, so owners can
+ * release buffers of unknown origin (glTF or DiskCache slices). A released buffer must not be
+ * used anymore. Thread safe, plain Java, no Android dependencies.
+ */
+public class DirectBufferArena
+{
+    public static final int BLOCK_SIZE = 1024 * 1024; /**< size of the blocks carved into slices */
+    public static final int ALIGNMENT = 64; /**< slice alignment within blocks, the smallest size class */
+    private static final int CLASSES = Integer.numberOfTrailingZeros(BLOCK_SIZE / ALIGNMENT) + 1; /**< ALIGNMENT .. BLOCK_SIZE */
+    private static final int LARGE = -1; /**< size class of the buffers larger than a block */
+    public static final int MAX_FREE_LARGE_BYTES = 16 * 1024 * 1024; /**< large buffers kept for reuse, at most */
+
+    /**
+     * \brief A block of direct memory and the number of its slices in use.
+     */
+    private static class Block
+    {
+        ByteBuffer memory; /**< the block memory */
+        int top; /**< carved bytes, the rest is still free */
+        int live; /**< slices in use */
+    }
+
+    /**
+     * \brief A slice of a block (or a large buffer) and its size class.
+     */
+    private static class Slot
+    {
+        Block block; /**< the block the slice is carved from, null for large buffers */
+        int sizeClass; /**< class index, LARGE for large buffers */
+        ByteBuffer buffer; /**< the slice, handed out as is */
+        int size; /**< requested size while in use */
+    }
+
+    private static final ArrayList<Block> sBlocks = new ArrayList<Block>(); /**< blocks, the last one being carved */
+    private static final ArrayList<ArrayList<Slot>> sFree = new ArrayList<ArrayList<Slot>>(); /**< free slices of each size class */
+    private static final ArrayList<Slot> sFreeLarge = new ArrayList<Slot>(); /**< free large buffers, oldest first */
+    private static long sFreeLargeBytes = 0; /**< capacity of the free large buffers */
+    private static final IdentityHashMap<ByteBuffer, Slot> sLive = new IdentityHashMap<ByteBuffer, Slot>(); /**< slices in use */
+    private static long sReservedBytes = 0; /**< direct memory held: blocks and large buffers */
+    private static long sUsedBytes = 0; /**< bytes requested by the slices in use */
+    private static long sSlotBytes = 0; /**< size of the slices in use, rounded to their class */
+    private static int sAllocations = 0;
+    private static int sReused = 0;
+
+    static {
+        for (int c = 0; c < CLASSES; c++) sFree.add(new ArrayList<Slot>());
+    }
+
+    /**
+     * \brief Allocate a buffer.
+     * @param size the size in bytes.
+     * @return a direct buffer, position 0, limit size, little endian; its content is not cleared.
+     */
+    public static synchronized ByteBuffer allocate(int size)
+    {
+        if (size < 0) throw new IllegalArgumentException("negative size " + size);
+        sAllocations++;
+        Slot slot = size > BLOCK_SIZE ? takeLarge(size) : takeSlice(getSizeClass(size));
+        slot.size = size;
+        if (slot.block != null) slot.block.live++;
+        sLive.put(slot.buffer, slot);
+        sUsedBytes += size;
+        sSlotBytes += slot.buffer.capacity();
+        slot.buffer.clear();
+        slot.buffer.limit(size);
+        slot.buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return slot.buffer;
+    }
+
+    /**
+     * \brief Release a buffer, to be reused by later allocations.
+     * @param buffer the buffer returned by allocate(), may be null.
+     * @return true if the buffer belonged to the arena.
+     */
+    public static synchronized boolean release(ByteBuffer buffer)
+    {
+        Slot slot = buffer == null ? null : sLive.remove(buffer);
+        if (slot == null) return false;
+        sUsedBytes -= slot.size;
+        sSlotBytes -= slot.buffer.capacity();
+        if (slot.block != null) {
+            slot.block.live--;
+            sFree.get(slot.sizeClass).add(slot);
+        }
+        else {
+            sFreeLarge.add(slot);
+            sFreeLargeBytes += slot.buffer.capacity();
+            while (sFreeLargeBytes > MAX_FREE_LARGE_BYTES) {
+                Slot oldest = sFreeLarge.remove(0);
+                sFreeLargeBytes -= oldest.buffer.capacity();
+                sReservedBytes -= oldest.buffer.capacity();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * \brief Drop the blocks and large buffers with no slice in use.
+     *
+     * Their memory goes back to the garbage collector, to be freed when it runs: call it when
+     * no more content is expected to load for a while, not between two loads.
+     * @return the bytes dropped.
+     */
+    public static synchronized long trim()
+    {
+        long dropped = 0;
+        for (ArrayList<Slot> free : sFree) {
+            Iterator<Slot> it = free.iterator();
+            while (it.hasNext()) {
+                if (it.next().block.live == 0) it.remove();
+            }
+        }
+        Iterator<Block> blocks = sBlocks.iterator();
+        while (blocks.hasNext()) {
+            Block block = blocks.next();
+            if (block.live != 0) continue;
+            dropped += block.memory.capacity();
+            blocks.remove();
+        }
+        dropped += sFreeLargeBytes;
+        sFreeLarge.clear();
+        sFreeLargeBytes = 0;
+        sReservedBytes -= dropped;
+        return dropped;
+    }
+
+    /**
+     * \brief Get the size class of a slice.
+     * @param size the requested size, at most BLOCK_SIZE.
+     * @return the class index, class c holding slices of ALIGNMENT << c bytes.
+     */
+    private static int getSizeClass(int size)
+    {
+        int c = 0;
+        while ((ALIGNMENT << c) < size) c++;
+        return c;
+    }
+
+    private static Slot takeSlice(int sizeClass)
+    {
+        ArrayList<Slot> free = sFree.get(sizeClass);
+        if (!free.isEmpty()) {
+            sReused++;
+            return free.remove(free.size() - 1);
+        }
+        int slotSize = ALIGNMENT << sizeClass;
+        Block block = sBlocks.isEmpty() ? null : sBlocks.get(sBlocks.size() - 1);
+        if (block == null || block.memory.capacity() - block.top < slotSize) {
+            if (block != null) carveTail(block);
+            block = new Block();
+            block.memory = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            sBlocks.add(block);
+            sReservedBytes += BLOCK_SIZE;
+        }
+        return carve(block, sizeClass);
+    }
+
+    /**
+     * \brief Carve the rest of a block into the largest slices that fit, on their free lists,
+     * so that moving to a new block wastes nothing.
+     */
+    private static void carveTail(Block block)
+    {
+        for (int c = CLASSES - 1; c >= 0; c--) {
+            while (block.memory.capacity() - block.top >= (ALIGNMENT << c)) {
+                sFree.get(c).add(carve(block, c));
+            }
+        }
+    }
+
+    private static Slot carve(Block block, int sizeClass)
+    {
+        int slotSize = ALIGNMENT << sizeClass;
+        ByteBuffer memory = block.memory.duplicate();
+        memory.limit(block.top + slotSize);
+        memory.position(block.top);
+        block.top += slotSize;
+        Slot slot = new Slot();
+        slot.block = block;
+        slot.sizeClass = sizeClass;
+        slot.buffer = memory.slice();
+        return slot;
+    }
+
+    private static Slot takeLarge(int size)
+    {
+        // the smallest free large buffer that fits, if it is not twice too large
+        Slot best = null;
+        for (Slot slot : sFreeLarge) {
+            int capacity = slot.buffer.capacity();
+            if (capacity >= size && capacity / 2 <= size && (best == null || capacity < best.buffer.capacity())) best = slot;
+        }
+        if (best != null) {
+            sFreeLarge.remove(best);
+            sFreeLargeBytes -= best.buffer.capacity();
+            sReused++;
+            return best;
+        }
+        // rounded up to a block, to be reusable by slightly larger requests
+        int capacity = (int) Math.min(Integer.MAX_VALUE, ((long) size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE);
+        Slot slot = new Slot();
+        slot.sizeClass = LARGE;
+        slot.buffer = ByteBuffer.allocateDirect(capacity);
+        sReservedBytes += capacity;
+        return slot;
+    }
+
+    /**
+     * \brief Get the direct memory held by the arena.
+     * @return the reserved bytes.
+     */
+    public static synchronized long getReservedBytes()
+    {
+        return sReservedBytes;
+    }
+
+    /**
+     * \brief Get the memory of the buffers in use.
+     * @return the requested bytes of the buffers not released.
+     */
+    public static synchronized long getUsedBytes()
+    {
+        return sUsedBytes;
+    }
+
+    /**
+     * \brief Get the arena statistics.
+     * @return a one line report.
+     */
+    public static synchronized String getReport()
+    {
+        return (sUsedBytes / 1024) + " KB used in " + sLive.size() + " buffers (" + (sSlotBytes / 1024) + " KB with rounding), "
+                + (sReservedBytes / 1024) + " KB reserved, " + sReused + "/" + sAllocations + " allocations reused";
+    }
+}
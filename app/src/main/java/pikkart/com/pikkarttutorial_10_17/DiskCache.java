@@ -0,0 +1,304 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * \class DiskCache
+ * \brief Persistent LRU cache of converted assets, as memory mapped blobs.
+ *
+ * Entries are keyed by the SHA-1 of the source asset and of the conversion parameters, so a
+ * changed asset or conversion never reads a stale entry and nothing needs versioning. Each
+ * entry is a file holding a small header (magic, payload size, CRC32) and the payload: it is
+ * written to a temporary file then renamed, so readers never see partial entries, and the CRC
+ * is checked when the entry is mapped, corrupted entries being deleted. The directory is kept
+ * under a size bound by deleting the least recently used entries (file modification times,
+ * refreshed on each hit). Thread safe, plain Java, no Android dependencies.
+ */
+public class DiskCache
+{
+    private static final int MAGIC = 0x44434845; /**< "DCHE" */
+    private static final int HEADER_SIZE = 16; /**< magic, payload size (long), CRC32 */
+    private static final String SUFFIX = ".blob";
+
+    private static File sDir = null; /**< cache directory, null if disabled */
+    private static long sMaxBytes = 0; /**< size bound of the directory */
+    private static int sHits = 0;
+    private static int sMisses = 0;
+    private static int sCorrupted = 0;
+    private static int sEvicted = 0;
+
+    /**
+     * \brief Set the cache directory.
+     * @param dir the directory, created if needed; null disables the cache.
+     * @param maxBytes the size bound of the directory.
+     */
+    public static synchronized void setDirectory(File dir, long maxBytes)
+    {
+        sDir = dir;
+        sMaxBytes = maxBytes;
+        if (dir != null) {
+            dir.mkdirs();
+            // temporary files of interrupted writes
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (f.getName().endsWith(".tmp")) f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * \brief Is the cache enabled.
+     * @return true if a directory is set.
+     */
+    public static synchronized boolean isEnabled()
+    {
+        return sDir != null;
+    }
+
+    /**
+     * \brief Compute the key of a converted asset.
+     * @param source the source asset content, read to the end but not closed.
+     * @param conversion the conversion and its parameters, e.g. "rgba8 flip-y".
+     * @return the key, 40 hexadecimal digits.
+     * @throws IOException on read errors.
+     */
+    public static String computeKey(InputStream source, String conversion) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("no SHA-1");
+        }
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = source.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+        }
+        digest.update((byte) 0);
+        digest.update(conversion.getBytes("UTF-8"));
+        byte[] hash = digest.digest();
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * \brief Get an entry.
+     * @param key the entry key.
+     * @return the payload, memory mapped read only and little endian, or null if missing or corrupted.
+     */
+    public static ByteBuffer get(String key)
+    {
+        File file;
+        synchronized (DiskCache.class) {
+            if (sDir == null) return null;
+            file = new File(sDir, key + SUFFIX);
+            if (!file.exists()) {
+                sMisses++;
+                return null;
+            }
+        }
+        ByteBuffer payload = null;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                payload = verify(mapped.order(ByteOrder.LITTLE_ENDIAN));
+            } finally {
+                // the mapping stays valid after the file is closed
+                raf.close();
+            }
+        } catch (IOException e) {
+            payload = null;
+        }
+        synchronized (DiskCache.class) {
+            if (payload == null) {
+                sCorrupted++;
+                sMisses++;
+                file.delete();
+                return null;
+            }
+            sHits++;
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return payload;
+    }
+
+    /**
+     * \brief Check the header and CRC of an entry.
+     * @return the payload slice, null if the entry is corrupted.
+     */
+    private static ByteBuffer verify(ByteBuffer entry)
+    {
+        if (entry.capacity() < HEADER_SIZE || entry.getInt(0) != MAGIC) return null;
+        long size = entry.getLong(4);
+        if (size != entry.capacity() - HEADER_SIZE) return null;
+        int crc = entry.getInt(12);
+        entry.position(HEADER_SIZE);
+        ByteBuffer payload = entry.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if ((int) computeCrc(payload.duplicate()) != crc) return null;
+        return payload;
+    }
+
+    private static long computeCrc(ByteBuffer bb)
+    {
+        // CRC32.update(ByteBuffer) needs API level 26
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[64 * 1024];
+        while (bb.hasRemaining()) {
+            int n = Math.min(chunk.length, bb.remaining());
+            bb.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * \brief Store an entry, replacing any previous one, and evict old entries if over the size bound.
+     * @param key the entry key.
+     * @param payload the data, from its position to its limit (the position is not changed).
+     * @return true if the entry was written.
+     */
+    public static boolean put(String key, ByteBuffer payload)
+    {
+        File dir;
+        synchronized (DiskCache.class) {
+            dir = sDir;
+        }
+        if (dir == null) return false;
+        File target = new File(dir, key + SUFFIX);
+        // unique per thread, two threads may convert the same asset
+        File temp = new File(dir, key + "." + Thread.currentThread().getId() + ".tmp");
+        ByteBuffer data = payload.duplicate();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putLong(data.remaining());
+        header.putInt((int) computeCrc(data.duplicate()));
+        header.flip();
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                FileChannel channel = out.getChannel();
+                while (header.hasRemaining()) channel.write(header);
+                while (data.hasRemaining()) channel.write(data);
+                // durable before the rename makes it visible
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                return false;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            return false;
+        }
+        trim(target);
+        return true;
+    }
+
+    /**
+     * \brief Delete an entry, e.g. one its reader found unusable.
+     * @param key the entry key.
+     */
+    public static synchronized void remove(String key)
+    {
+        if (sDir == null) return;
+        new File(sDir, key + SUFFIX).delete();
+    }
+
+    /**
+     * \brief Delete the least recently used entries until the directory fits its size bound.
+     * @param keep an entry never deleted (the one just written).
+     */
+    private static synchronized void trim(File keep)
+    {
+        if (sDir == null) return;
+        File[] files = sDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= sMaxBytes) return;
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : (modified[a] > modified[b] ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length && total > sMaxBytes; i++) {
+            File f = files[order[i]];
+            if (f.equals(keep) || !f.getName().endsWith(SUFFIX)) continue;
+            long length = f.length();
+            if (f.delete()) {
+                total -= length;
+                sEvicted++;
+            }
+        }
+    }
+
+    /**
+     * \brief Get the cache statistics.
+     * @return a one line report.
+     */
+    public static synchronized String getReport()
+    {
+        long bytes = 0;
+        int entries = 0;
+        File[] files = sDir == null ? null : sDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.getName().endsWith(SUFFIX)) continue;
+                bytes += f.length();
+                entries++;
+            }
+        }
+        return sHits + " hits, " + sMisses + " misses (" + sCorrupted + " corrupted), " + sEvicted + " evicted, "
+                + entries + " entries, " + (bytes / 1024) + "/" + (sMaxBytes / 1024) + " KB";
+    }
+}
@@ -0,0 +1,265 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * \class Flipbook
+ * \brief A short looping clip as a sheet of frames in one texture (.flpb files).
+ *
+ * Frame i is at column i % columns and row i / columns of the sheet, rows counted from the
+ * bottom (texture coordinate 0); every frame is stored bottom row first, like TextureData.
+ * The sheet is a power of two RGB565 (opaque clips) or RGBA8 texture, uploaded as is.
+ * In the file each frame is stored as its difference to the previous one, which the
+ * frames of a loop make mostly zero, and the result is compressed with Deflate.
+ * The encoder is used on the JVM by tools/flipbook-encoder, the decoder by FlipbookMesh.
+ * Plain Java, no Android dependencies.
+ */
+public class Flipbook
+{
+    private static final int MAGIC = 0x464c5042; /**< "FLPB" */
+    private static final int VERSION = 1;
+
+    public int frameWidth; /**< width of a frame in texels */
+    public int frameHeight; /**< height of a frame in texels */
+    public int columns; /**< frames per row of the sheet */
+    public int frameCount; /**< number of frames */
+    public float fps; /**< frames per second */
+    public TextureData sheet; /**< the frames, see the class description */
+
+    /**
+     * \brief Choose the sheet layout of a clip.
+     * @param frameCount number of frames.
+     * @param frameWidth width of a frame.
+     * @param frameHeight height of a frame.
+     * @param maxSize the largest texture size.
+     * @return columns, rows, sheet width and sheet height (powers of two) of the smallest sheet, null if none fits.
+     */
+    public static int[] layout(int frameCount, int frameWidth, int frameHeight, int maxSize)
+    {
+        int[] best = null;
+        for (int columns = 1; columns <= frameCount; columns++) {
+            int rows = (frameCount + columns - 1) / columns;
+            int width = powerOfTwo(columns * frameWidth);
+            int height = powerOfTwo(rows * frameHeight);
+            if (width > maxSize || height > maxSize) continue;
+            if (best == null || (long) width * height < (long) best[2] * best[3]
+                    || ((long) width * height == (long) best[2] * best[3] && Math.abs(width - height) < Math.abs(best[2] - best[3]))) {
+                best = new int[] { columns, rows, width, height };
+            }
+        }
+        return best;
+    }
+
+    private static int powerOfTwo(int size)
+    {
+        int p = 1;
+        while (p < size) p *= 2;
+        return p;
+    }
+
+    /**
+     * \brief Get the length of the loop.
+     * @return the duration in seconds.
+     */
+    public float getDuration()
+    {
+        return frameCount / fps;
+    }
+
+    /**
+     * \brief Get the number of sheet rows holding frames.
+     * @return the rows.
+     */
+    public int getRows()
+    {
+        return (frameCount + columns - 1) / columns;
+    }
+
+    /**
+     * \brief Get the position in the loop after some playing time.
+     *
+     * Computed in long precision, so the float given to the shader stays small and accurate however long the clip plays.
+     * @param elapsedNanos the playing time.
+     * @return the time in seconds since the start of the current loop, 0 to getDuration().
+     */
+    public float getLoopTime(long elapsedNanos)
+    {
+        long loopNanos = (long) (frameCount * 1000000000.0 / fps);
+        if (loopNanos <= 0) return 0.0f;
+        return (elapsedNanos % loopNanos) / 1e9f;
+    }
+
+    /**
+     * \brief Get the frame shown at a time of the loop, as the shader computes it.
+     * @param loopTime the time in seconds since the start of the loop.
+     * @return the frame index.
+     */
+    public int getFrame(float loopTime)
+    {
+        return Math.min(Math.max((int) (loopTime * fps), 0), frameCount - 1);
+    }
+
+    /**
+     * \brief Get the byte offset of a frame row in the sheet.
+     */
+    private int getRowOffset(int frame, int y)
+    {
+        int bpp = TextureData.getBytesPerPixel(sheet.type);
+        int x0 = (frame % columns) * frameWidth;
+        int y0 = (frame / columns) * frameHeight;
+        return ((y0 + y) * sheet.width + x0) * bpp;
+    }
+
+    /**
+     * \brief Replace each frame by its difference to the previous one, or undo it.
+     * @param pixels the sheet pixels.
+     * @param undo false to compute the differences (last frame first), true to add them back (first frame first).
+     */
+    private void applyFrameDeltas(byte[] pixels, boolean undo)
+    {
+        int rowBytes = frameWidth * TextureData.getBytesPerPixel(sheet.type);
+        for (int n = 1; n < frameCount; n++) {
+            int frame = undo ? n : frameCount - n;
+            for (int y = 0; y < frameHeight; y++) {
+                int current = getRowOffset(frame, y);
+                int previous = getRowOffset(frame - 1, y);
+                for (int b = 0; b < rowBytes; b++) {
+                    pixels[current + b] = (byte) (undo ? pixels[current + b] + pixels[previous + b]
+                            : pixels[current + b] - pixels[previous + b]);
+                }
+            }
+        }
+    }
+
+    /**
+     * \brief Encode a flipbook.
+     * @param flipbook the flipbook to encode.
+     * @return the encoded bytes.
+     * @throws IOException never in practice (in memory streams).
+     */
+    public static byte[] encode(Flipbook flipbook) throws IOException
+    {
+        TextureData sheet = flipbook.sheet;
+        ByteBuffer src = sheet.pixels.duplicate();
+        src.rewind();
+        byte[] pixels = new byte[src.remaining()];
+        src.get(pixels);
+        flipbook.applyFrameDeltas(pixels, false);
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(pixels);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(pixels.length / 4 + 64);
+        byte[] chunk = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+        deflater.end();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.size() + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(flipbook.frameWidth);
+        out.writeInt(flipbook.frameHeight);
+        out.writeInt(flipbook.columns);
+        out.writeInt(flipbook.frameCount);
+        out.writeFloat(flipbook.fps);
+        out.writeInt(sheet.width);
+        out.writeInt(sheet.height);
+        out.writeInt(sheet.format);
+        out.writeInt(sheet.type);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * \brief Decode a flipbook.
+     * @param is the encoded stream (not closed).
+     * @return the decoded flipbook, its sheet pixels from the DirectBufferArena.
+     * @throws IOException on read errors or if the data is not a valid flipbook.
+     */
+    public static Flipbook decode(InputStream is) throws IOException
+    {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("not a flipbook");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("unsupported flipbook version " + version);
+
+        Flipbook flipbook = new Flipbook();
+        flipbook.frameWidth = in.readInt();
+        flipbook.frameHeight = in.readInt();
+        flipbook.columns = in.readInt();
+        flipbook.frameCount = in.readInt();
+        flipbook.fps = in.readFloat();
+        TextureData sheet = new TextureData();
+        sheet.width = in.readInt();
+        sheet.height = in.readInt();
+        sheet.format = in.readInt();
+        sheet.type = in.readInt();
+        flipbook.sheet = sheet;
+        if (flipbook.frameWidth <= 0 || flipbook.frameHeight <= 0 || flipbook.columns <= 0 || flipbook.frameCount <= 0
+                || !(flipbook.fps > 0.0f) || flipbook.columns * flipbook.frameWidth > sheet.width
+                || flipbook.getRows() * flipbook.frameHeight > sheet.height) {
+            throw new IOException("bad flipbook layout");
+        }
+        int compressedSize = in.readInt();
+        if (compressedSize < 0) throw new IOException("bad flipbook size");
+        byte[] compressed = new byte[compressedSize];
+        in.readFully(compressed);
+
+        int size = sheet.width * sheet.height * TextureData.getBytesPerPixel(sheet.type);
+        byte[] pixels = new byte[size];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int done = 0;
+            while (done < size) {
+                int n = inflater.inflate(pixels, done, size - done);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) throw new IOException("truncated flipbook");
+                done += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted flipbook: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        flipbook.applyFrameDeltas(pixels, true);
+
+        sheet.pixels = DirectBufferArena.allocate(size);
+        sheet.pixels.put(pixels);
+        sheet.pixels.rewind();
+        return flipbook;
+    }
+}
@@ -0,0 +1,367 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.app.Activity;
+import android.content.res.AssetManager;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import com.pikkart.ar.recognition.RecognitionFragment;
+import com.pikkart.ar.recognition.items.Marker;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * \class FlipbookMesh
+ * \brief A short silent loop played from a Flipbook (.flpb) on the marker, in place of a VideoMesh.
+ *
+ * The whole clip is one texture uploaded at init: there is no MediaPlayer, no SurfaceTexture
+ * and no decoding while playing, so the loop starts on the first frame it is asked to. The
+ * vertex shader picks the frame from the time in the loop, only a float uniform changes per
+ * frame. It has the VideoMesh interface (play/pause, isPlaying, context loss) so ARRenderer
+ * uses either one through the same field.
+ */
+public class FlipbookMesh extends VideoMesh
+{
+    private String mFlipbookUrl = ""; /**< the flipbook file path */
+    private Flipbook mFlipbook = null; /**< the clip layout (its sheet is released once uploaded) */
+    private boolean mAutostart = false; /**< start playing when first drawn */
+
+    private ByteBuffer mVertices_Buffer; /**< vertices data */
+    private ByteBuffer mTexCoords_Buffer; /**< texture coordinates data */
+    private ByteBuffer mIndex_Buffer; /**< triangle indices data */
+    private float[] mBox = null; /**< bounding box of the quad (min xyz, max xyz) */
+    private final Frustum mFrustum = new Frustum(); /**< view frustum, for culling */
+
+    private int mSheetTexture_GL_ID = 0; /**< frame sheet texture opengl id */
+    private int mProgram_GL_ID = 0; /**< flipbook shader program opengl id */
+    private int mVertexArray = 0; /**< vertex array object of the quad, 0 if not supported (attributes set per draw) */
+    private int mVertices_VBO = 0; /**< vertices opengl buffer id, 0 without vertex array objects */
+    private int mTexCoords_VBO = 0; /**< texture coordinates opengl buffer id */
+    private int mIndex_VBO = 0; /**< triangle indices opengl buffer id */
+
+    private boolean mStarted = false; /**< played at least once (playing or paused) */
+    private boolean mPlaying = false; /**< playing */
+    private long mPlayStart = 0; /**< System.nanoTime() when play resumed */
+    private long mPlayedNanos = 0; /**< playing time before the last pause */
+
+    /**
+     * This mesh vertex shader code: the frame is chosen from the loop time and mapped into the sheet.
+     * sheetLayout is fps, frame count and columns; frameScale is the frame size in texture coordinates,
+     * then half a texel in frame coordinates, so linear filtering never reads the next frame.
+     */
+    public static final String FLIPBOOK_VERTEX_SHADER = " \n" + "\n"
+            + "attribute vec4 vertexPosition; \n"
+            + "attribute vec2 vertexTexCoord; \n" + "\n"
+            + "varying vec2 texCoord; \n" + "\n"
+            + "uniform mat4 modelViewProjectionMatrix; \n"
+            + "uniform float loopTime; \n"
+            + "uniform vec3 sheetLayout; \n"
+            + "uniform vec4 frameScale; \n" + "\n"
+            + "void main() { \n"
+            + "   gl_Position = modelViewProjectionMatrix * vertexPosition; \n"
+            + "   float frame = min(floor(loopTime * sheetLayout.x), sheetLayout.y - 1.0); \n"
+            + "   float row = floor((frame + 0.5) / sheetLayout.z); \n"
+            + "   float column = frame - row * sheetLayout.z; \n"
+            + "   vec2 inFrame = mix(frameScale.zw, 1.0 - frameScale.zw, vertexTexCoord); \n"
+            + "   texCoord = (vec2(column, row) + inFrame) * frameScale.xy; \n"
+            + "} \n";
+
+    /**
+     * \brief Constructor.
+     * @param parent the parent activity.
+     */
+    public FlipbookMesh(Activity parent)
+    {
+        super(parent);
+    }
+
+    /**
+     * \brief Initialize a FlipbookMesh object.
+     * @param am the app AssetManager.
+     * @param flipbookUrl the flipbook (.flpb) file path, inside the app assets dir.
+     * @param seekPosition the starting position (in milliseconds)
+     * @param autostart whatever the loop should start on detection
+     * @return true on success.
+     */
+    public boolean InitMesh(AssetManager am, String flipbookUrl, int seekPosition, boolean autostart)
+    {
+        float verticesArray[] = { 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+                1.0f, 0.0f, 0.0f, 1.0f, 0.0f };
+        mVertices_Buffer = fillBuffer(verticesArray);
+        mBox = new float[] { 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f };
+        float texCoordsArray[] = { 0.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f,
+                0.0f };
+        mTexCoords_Buffer = fillBuffer(texCoordsArray);
+        short indicesArray[] = { 0, 1, 2, 2, 3, 0 };
+        mIndex_Buffer = fillBuffer(indicesArray);
+
+        mFlipbookUrl = flipbookUrl;
+        mPlayedNanos = seekPosition * 1000000L;
+        mAutostart = autostart;
+        return InitGL(am);
+    }
+
+    /**
+     * \brief Initialize from the VideoMesh arguments: movieUrl is the flipbook, the keyframe and player are not used.
+     */
+    @Override
+    public boolean InitMesh(AssetManager am,
+                            String movieUrl,
+                            String keyframeUrl,
+                            int seekPosition,
+                            boolean autostart,
+                            PikkartVideoPlayer pikkartVideoPlayer)
+    {
+        return InitMesh(am, movieUrl, seekPosition, autostart);
+    }
+
+    /**
+     * \brief Load the flipbook into a texture and create the shader program.
+     * @param am the app AssetManager.
+     * @return true on success.
+     */
+    private boolean InitGL(AssetManager am)
+    {
+        // the GL objects created below are charged to this flipbook
+        String owner = GLResourceTracker.setOwner(mFlipbookUrl);
+        try {
+            return InitGLResources(am);
+        } finally {
+            GLResourceTracker.setOwner(owner);
+        }
+    }
+
+    /**
+     * \brief Create the OpenGL resources, see InitGL().
+     */
+    private boolean InitGLResources(AssetManager am)
+    {
+        long start = System.nanoTime();
+        InputStream is = null;
+        Flipbook flipbook;
+        try {
+            is = new BufferedInputStream(am.open(mFlipbookUrl, AssetManager.ACCESS_STREAMING), 64 * 1024);
+            flipbook = Flipbook.decode(is);
+        } catch (IOException e) {
+            Log.e("FlipbookMesh", "Error loading flipbook " + mFlipbookUrl + ", msg:" + e.getMessage());
+            return false;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+        mSheetTexture_GL_ID = RenderUtils.loadTextureFromData(flipbook.sheet, "frame sheet");
+        Log.i("FlipbookMesh", mFlipbookUrl + ": " + flipbook.frameCount + " frames of " + flipbook.frameWidth + "x"
+                + flipbook.frameHeight + " at " + flipbook.fps + " fps in a " + flipbook.sheet.width + "x"
+                + flipbook.sheet.height + " sheet, loaded in " + (System.nanoTime() - start) / 1000 + " us");
+        // the layout is all the shader needs, the pixels live in the texture
+        flipbook.sheet.release();
+        mFlipbook = flipbook;
+
+        mProgram_GL_ID = RenderUtils.createProgramFromShaderSrc(FLIPBOOK_VERTEX_SHADER, KEYFRAME_FRAGMENT_SHADER);
+
+        // OpenGL ES 3: the quad goes to buffers, its attribute setup recorded once
+        mVertexArray = 0;
+        if (GLState.hasVertexArrays()) {
+            GLState.bindVertexArray(0);
+            mVertices_VBO = RenderUtils.createBuffer(GLES20.GL_ARRAY_BUFFER, mVertices_Buffer.duplicate(), GLES20.GL_STATIC_DRAW, "positions");
+            mTexCoords_VBO = RenderUtils.createBuffer(GLES20.GL_ARRAY_BUFFER, mTexCoords_Buffer.duplicate(), GLES20.GL_STATIC_DRAW, "texture coordinates");
+            mIndex_VBO = RenderUtils.createBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_Buffer.duplicate(), GLES20.GL_STATIC_DRAW, "indices");
+            mVertexArray = RenderUtils.createVertexArray(mProgram_GL_ID, mVertices_VBO, mTexCoords_VBO, 0, mIndex_VBO);
+        }
+        return true;
+    }
+
+    /**
+     * \brief Recreate the OpenGL resources after the GL context has been lost, the loop keeps its position.
+     * @param am the app AssetManager.
+     * @return true on success.
+     */
+    @Override
+    public boolean RecreateGLResources(AssetManager am)
+    {
+        return InitGL(am);
+    }
+
+    /**
+     * \brief Delete the OpenGL objects (and stop tracking them) before the GL context is destroyed.
+     */
+    @Override
+    public void DestroyGLResources()
+    {
+        GLState.deleteVertexArray(mVertexArray);
+        mVertexArray = 0;
+        RenderUtils.deleteBuffer(mVertices_VBO);
+        RenderUtils.deleteBuffer(mTexCoords_VBO);
+        RenderUtils.deleteBuffer(mIndex_VBO);
+        mVertices_VBO = mTexCoords_VBO = mIndex_VBO = 0;
+        RenderUtils.deleteTexture(mSheetTexture_GL_ID);
+        mSheetTexture_GL_ID = 0;
+        RenderUtils.deleteProgram(mProgram_GL_ID);
+        mProgram_GL_ID = 0;
+        RenderUtils.checkGLError("DestroyGLResources");
+    }
+
+    /**
+     * \brief Nothing to reload: the loop has no player.
+     */
+    @Override
+    public void reloadOnResume()
+    {
+    }
+
+    private void play()
+    {
+        mPlayStart = System.nanoTime();
+        mPlaying = true;
+        mStarted = true;
+    }
+
+    /**
+     * \brief Pause the loop
+     */
+    @Override
+    public void pauseVideo()
+    {
+        if (mPlaying) {
+            mPlayedNanos += System.nanoTime() - mPlayStart;
+            mPlaying = false;
+        }
+    }
+
+    /**
+     * \brief Play/Pause the loop
+     */
+    @Override
+    public void playOrPauseVideo()
+    {
+        if (mPlaying) pauseVideo();
+        else play();
+    }
+
+    /**
+     * \brief Is the loop playing, not paused, as VideoMesh.isVideoPlaying()
+     * @return true if playing
+     */
+    @Override
+    public boolean isVideoPlaying()
+    {
+        return mPlaying;
+    }
+
+    /**
+     * \brief Is the loop playing.
+     *
+     * Unlike VideoMesh.isPlaying(), a paused loop is not playing: ARRenderer keeps drawing a
+     * playing video in a frontal position when tracking is lost, and a paused loop is only a
+     * still frame, not worth keeping on screen without its marker (a started one would stay
+     * there for good, as nothing unloads it).
+     * @return true if playing
+     */
+    @Override
+    public boolean isPlaying()
+    {
+        return mPlaying;
+    }
+
+    /**
+     * \brief Draw the current frame of the loop (in OpenGL).
+     * @param modelView the model-view matrix.
+     * @param projection the projection matrix.
+     */
+    @Override
+    public void DrawMesh(float[] modelView, float[] projection)
+    {
+        Marker currentMarker = RecognitionFragment.getCurrentMarker();
+        if (mFlipbook == null || currentMarker == null) return;
+        if (mAutostart && !mStarted) play();
+
+        float markerWidth = currentMarker.getWidth();
+        float[] scaleMatrix = new float[16];
+        RenderUtils.matrix44Identity(scaleMatrix);
+        scaleMatrix[0] = markerWidth;
+        scaleMatrix[5] = markerWidth * mFlipbook.frameHeight / mFlipbook.frameWidth;
+        scaleMatrix[10] = markerWidth;
+
+        float[] temp_mv = new float[16];
+        RenderUtils.matrixMultiply(4, 4, modelView, 4, 4, scaleMatrix, temp_mv);
+        float[] temp_mvp = new float[16];
+        RenderUtils.matrixMultiply(4, 4, projection, 4, 4, temp_mv, temp_mvp);
+        float[] mvpMatrix = new float[16];
+        RenderUtils.matrix44Transpose(temp_mvp, mvpMatrix);
+
+        mFrustum.extract(mvpMatrix);
+        if (!mFrustum.intersectsBox(mBox)) return;
+
+        long played = mPlayedNanos + (mPlaying ? System.nanoTime() - mPlayStart : 0);
+        float loopTime = mFlipbook.getLoopTime(played);
+
+        if (mGpuTimer != null) mGpuTimer.begin(FrameProfiler.STAGE_GPU_DRAW_VIDEO);
+        GLState.enable(GLES20.GL_DEPTH_TEST);
+        GLState.disable(GLES20.GL_CULL_FACE);
+        GLState.enable(GLES20.GL_BLEND);
+        GLState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        GLState.useProgram(mProgram_GL_ID);
+
+        int mvpMatrixHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "modelViewProjectionMatrix");
+        int texSampler2DHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "texSampler2D");
+        int loopTimeHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "loopTime");
+        int sheetLayoutHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "sheetLayout");
+        int frameScaleHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "frameScale");
+
+        if (mVertexArray != 0) {
+            GLState.bindVertexArray(mVertexArray);
+        }
+        else {
+            GLState.bindVertexArray(0);
+            int vertexHandle = GLES20.glGetAttribLocation(mProgram_GL_ID, "vertexPosition");
+            int textureCoordHandle = GLES20.glGetAttribLocation(mProgram_GL_ID, "vertexTexCoord");
+            GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, mVertices_Buffer);
+            GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, mTexCoords_Buffer);
+            GLState.setVertexAttribArrays(GLState.getAttribBit(vertexHandle) | GLState.getAttribBit(textureCoordHandle));
+        }
+
+        GLState.activeTexture(GLES20.GL_TEXTURE0);
+        GLState.bindTexture(GLES20.GL_TEXTURE_2D, mSheetTexture_GL_ID);
+        GLES20.glUniform1i(texSampler2DHandle, 0);
+        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+        GLES20.glUniform1f(loopTimeHandle, loopTime);
+        GLES20.glUniform3f(sheetLayoutHandle, mFlipbook.fps, mFlipbook.frameCount, mFlipbook.columns);
+        GLES20.glUniform4f(frameScaleHandle,
+                (float) mFlipbook.frameWidth / mFlipbook.sheet.width, (float) mFlipbook.frameHeight / mFlipbook.sheet.height,
+                0.5f / mFlipbook.frameWidth, 0.5f / mFlipbook.frameHeight);
+
+        if (mVertexArray != 0) GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, 0);
+        else GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, mIndex_Buffer);
+        if (mGpuTimer != null) mGpuTimer.end();
+        RenderUtils.checkGLError("FlipbookMesh:end flipbook renderer");
+    }
+}
@@ -0,0 +1,180 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class FrameProfiler
+ * \brief Per-stage timers for the AR render loop.
+ *
+ * Each stage of a frame (camera rendering, matrix computation, video update, mesh draws,
+ * buffer swap) feeds its own LatencyHistogram. Usage from the render thread:
+ *   long t = profiler.begin();
+ *   ... work ...
+ *   profiler.end(FrameProfiler.STAGE_CAMERA, t);
+ * When the profiler is disabled begin() returns 0 and end() returns immediately,
+ * nothing is allocated in either case. Plain Java, no Android dependencies.
+ */
+public class FrameProfiler
+{
+    public static final int STAGE_FRAME = 0; /**< the whole onDrawFrame */
+    public static final int STAGE_CAMERA = 1; /**< RecognitionFragment.renderCamera */
+    public static final int STAGE_MATRICES = 2; /**< model-view-projection computation */
+    public static final int STAGE_VIDEO_UPDATE = 3; /**< PikkartVideoPlayer.updateVideoData */
+    public static final int STAGE_DRAW_MESH = 4; /**< Mesh.DrawMesh */
+    public static final int STAGE_DRAW_VIDEO_MESH = 5; /**< VideoMesh.DrawMesh */
+    public static final int STAGE_SWAP = 6; /**< eglSwapBuffers in GLTextureView */
+    public static final int STAGE_GPU_DRAW_MESH = 7; /**< GPU time of Mesh.DrawMesh (see GpuTimer) */
+    public static final int STAGE_GPU_DRAW_VIDEO = 8; /**< GPU time of VideoMesh.DrawVideo (see GpuTimer) */
+    public static final int STAGE_RESUME = 9; /**< from GLTextureView.onResume to the end of the first frame */
+    public static final int STAGE_FIRST_PIXEL = 10; /**< from the marker being found to the end of the first frame drawing the mesh */
+    public static final int STAGE_COUNT = 11;
+
+    private static final String[] STAGE_NAMES = {
+            "frame", "camera", "matrices", "video upd", "draw mesh", "draw video", "swap",
+            "gpu mesh", "gpu video", "resume", "first pixel" };
+
+    private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGE_COUNT]; /**< one histogram per stage */
+    private volatile boolean mEnabled = false; /**< are we recording */
+
+    /**
+     * \brief Constructor.
+     */
+    public FrameProfiler()
+    {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            mHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * \brief Enable or disable recording.
+     * @param enabled true to start recording.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        mEnabled = enabled;
+    }
+
+    /**
+     * \brief Is the profiler recording.
+     * @return true if enabled.
+     */
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    /**
+     * \brief Start timing a stage.
+     * @return the start timestamp to pass to end(), 0 if the profiler is disabled.
+     */
+    public long begin()
+    {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * \brief Stop timing a stage and record its duration.
+     * @param stage the stage id (one of the STAGE_* constants).
+     * @param startNanos the value returned by begin().
+     */
+    public void end(int stage, long startNanos)
+    {
+        if (startNanos == 0 || !mEnabled) return;
+        mHistograms[stage].record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * \brief Record an already measured duration.
+     * @param stage the stage id (one of the STAGE_* constants).
+     * @param micros the duration in microseconds.
+     */
+    public void record(int stage, long micros)
+    {
+        if (!mEnabled) return;
+        mHistograms[stage].record(micros);
+    }
+
+    /**
+     * \brief Get the histogram of a stage.
+     * @param stage the stage id (one of the STAGE_* constants).
+     * @return the stage histogram.
+     */
+    public LatencyHistogram getHistogram(int stage)
+    {
+        return mHistograms[stage];
+    }
+
+    /**
+     * \brief Get a stage display name.
+     * @param stage the stage id (one of the STAGE_* constants).
+     * @return the stage name.
+     */
+    public static String getStageName(int stage)
+    {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * \brief Clear all the recorded values.
+     */
+    public void reset()
+    {
+        for (LatencyHistogram h : mHistograms) {
+            h.reset();
+        }
+    }
+
+    /**
+     * \brief Write a p50/p95/p99 table (in milliseconds) of all the stages with samples.
+     * @param sb the StringBuilder to append to (reuse it to avoid allocations).
+     */
+    public void formatSummary(StringBuilder sb)
+    {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram h = mHistograms[i];
+            if (h.getCount() == 0) continue;
+            sb.append(STAGE_NAMES[i]);
+            for (int pad = STAGE_NAMES[i].length(); pad < 11; pad++) sb.append(' ');
+            sb.append(" p50 ");
+            appendMillis(sb, h.getPercentile(50));
+            sb.append(" p95 ");
+            appendMillis(sb, h.getPercentile(95));
+            sb.append(" p99 ");
+            appendMillis(sb, h.getPercentile(99));
+            sb.append('\n');
+        }
+    }
+
+    /**
+     * \brief Append a microseconds value as milliseconds with two decimals.
+     * @param sb the StringBuilder to append to.
+     * @param micros the value in microseconds.
+     */
+    static void appendMillis(StringBuilder sb, long micros)
+    {
+        long hundredths = (micros + 5) / 10;
+        sb.append(hundredths / 100).append('.');
+        long frac = hundredths % 100;
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+}
@@ -0,0 +1,83 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.widget.TextView;
+
+/**
+ * \class FrameStatsOverlay
+ * \brief A debug text view showing the FrameProfiler percentiles on top of the AR view.
+ *
+ * The text is refreshed from the UI thread twice a second while the view is attached.
+ */
+public class FrameStatsOverlay extends TextView
+{
+    private static final long REFRESH_INTERVAL_MS = 500; /**< text refresh period */
+
+    private final FrameProfiler mProfiler; /**< the profiler to display */
+    private final StringBuilder mText = new StringBuilder(512); /**< reused text buffer */
+
+    /**
+     * Periodically refresh the text
+     */
+    private final Runnable mRefresh = new Runnable() {
+        @Override
+        public void run() {
+            mText.setLength(0);
+            mProfiler.formatSummary(mText);
+            setText(mText);
+            postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * \brief Constructor.
+     * @param context the view context.
+     * @param profiler the profiler to display.
+     */
+    public FrameStatsOverlay(Context context, FrameProfiler profiler)
+    {
+        super(context);
+        mProfiler = profiler;
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(10);
+        setTextColor(Color.GREEN);
+        setBackgroundColor(0x80000000);
+        setPadding(8, 8, 8, 8);
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        post(mRefresh);
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        removeCallbacks(mRefresh);
+        super.onDetachedFromWindow();
+    }
+}
@@ -0,0 +1,119 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class Frustum
+ * \brief The view frustum of a model-view-projection matrix, in model space.
+ *
+ * The six planes are extracted from the rows of the MVP matrix (Gribb and Hartmann), so
+ * bounding volumes can be tested in model space without transforming them. Tests are
+ * conservative: a volume crossing a frustum corner may be reported visible, never the
+ * opposite. Plain Java, no Android dependencies.
+ */
+public class Frustum
+{
+    public static final int LEFT = 0;
+    public static final int RIGHT = 1;
+    public static final int BOTTOM = 2;
+    public static final int TOP = 3;
+    public static final int NEAR = 4;
+    public static final int FAR = 5;
+
+    private final float[] mPlanes = new float[24]; /**< a, b, c, d of each plane, normals pointing inside */
+
+    /**
+     * \brief Extract the planes of a model-view-projection matrix.
+     * @param mvp the matrix, column major (as android.opengl.Matrix).
+     */
+    public void extract(float[] mvp)
+    {
+        for (int i = 0; i < 3; i++) {
+            // plane 2i is row3 + row i, plane 2i+1 is row3 - row i
+            for (int c = 0; c < 4; c++) {
+                mPlanes[(2 * i) * 4 + c] = mvp[c * 4 + 3] + mvp[c * 4 + i];
+                mPlanes[(2 * i + 1) * 4 + c] = mvp[c * 4 + 3] - mvp[c * 4 + i];
+            }
+        }
+        for (int p = 0; p < 6; p++) {
+            float a = mPlanes[p * 4], b = mPlanes[p * 4 + 1], c = mPlanes[p * 4 + 2];
+            float length = (float) Math.sqrt(a * a + b * b + c * c);
+            if (length > 0) {
+                for (int k = 0; k < 4; k++) mPlanes[p * 4 + k] /= length;
+            }
+        }
+    }
+
+    /**
+     * \brief Get a plane.
+     * @param plane one of LEFT, RIGHT, BOTTOM, TOP, NEAR, FAR.
+     * @param out receives a, b, c, d (normalized, ax + by + cz + d >= 0 inside).
+     */
+    public void getPlane(int plane, float[] out)
+    {
+        System.arraycopy(mPlanes, plane * 4, out, 0, 4);
+    }
+
+    /**
+     * \brief Does a sphere intersect the frustum.
+     * @param sphere center xyz and radius.
+     * @return false if the sphere is entirely outside.
+     */
+    public boolean intersectsSphere(float[] sphere)
+    {
+        for (int p = 0; p < 6; p++) {
+            float distance = mPlanes[p * 4] * sphere[0] + mPlanes[p * 4 + 1] * sphere[1]
+                    + mPlanes[p * 4 + 2] * sphere[2] + mPlanes[p * 4 + 3];
+            if (distance < -sphere[3]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * \brief Does an axis aligned box intersect the frustum.
+     * @param box min xyz followed by max xyz.
+     * @return false if the box is entirely outside.
+     */
+    public boolean intersectsBox(float[] box)
+    {
+        for (int p = 0; p < 6; p++) {
+            float a = mPlanes[p * 4], b = mPlanes[p * 4 + 1], c = mPlanes[p * 4 + 2];
+            // the corner furthest along the plane normal
+            float x = a >= 0 ? box[3] : box[0];
+            float y = b >= 0 ? box[4] : box[1];
+            float z = c >= 0 ? box[5] : box[2];
+            if (a * x + b * y + c * z + mPlanes[p * 4 + 3] < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * \brief Test the bounding volumes of a mesh, the sphere first as it is cheaper.
+     * @param sphere the bounding sphere, or null.
+     * @param box the bounding box, or null.
+     * @return false if one of the volumes is entirely outside.
+     */
+    public boolean isVisible(float[] sphere, float[] box)
+    {
+        if (sphere != null && !intersectsSphere(sphere)) return false;
+        return box == null || intersectsBox(box);
+    }
+}
@@ -0,0 +1,290 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+/**
+ * \class GLResourceLoader
+ * \brief A background thread owning an EGL context shared with the render context.
+ *
+ * Jobs create buffers, textures and programs on the loader thread (load()), then are handed
+ * back to the render thread (onLoaded()) once the GPU has finished with them: through a GL
+ * fence on ES 3.0+ contexts (polled, the render thread never blocks), through glFinish
+ * on the loader thread otherwise.
+ * The loader context is current on a 1x1 pbuffer, or on no surface at all if the render
+ * config does not support pbuffers. If neither works, jobs run on the render thread instead.
+ */
+public class GLResourceLoader
+{
+    /**
+     * \brief A unit of work for the loader.
+     */
+    public interface Job
+    {
+        /**
+         * \brief Create the GL resources. Runs on the loader thread (or on the render thread
+         * if the loader is not available).
+         */
+        void load();
+
+        /**
+         * \brief Hand the resources to the renderer. Runs on the render thread, once the
+         * resources are complete on the GPU.
+         */
+        void onLoaded();
+    }
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int GL_SYNC_NONE = 0; /**< "no fence" marker */
+
+    /**
+     * \brief A job waiting to be handed to the render thread.
+     */
+    private static class Completed
+    {
+        Job job; /**< the loaded job */
+        long fence; /**< the GL fence to wait for, GL_SYNC_NONE if already complete */
+    }
+
+    private final LinkedBlockingQueue<Job> mQueue = new LinkedBlockingQueue<Job>(); /**< jobs to load */
+    private final ArrayList<Completed> mCompleted = new ArrayList<Completed>(); /**< jobs loaded, guarded by itself */
+    private final ArrayList<Job> mSynchronous = new ArrayList<Job>(); /**< jobs to run on the render thread, guarded by mCompleted */
+
+    private Thread mThread = null; /**< the loader thread */
+    private volatile boolean mRunning = false; /**< is the loader thread usable */
+    private boolean mUseFences = false; /**< can we use GLES30 fences (set on the loader thread) */
+
+    /**
+     * \brief Start the loader thread with a context shared with the given one.
+     *
+     * Called by the EGL context factory right after the render context has been created.
+     * @param egl the EGL instance.
+     * @param display the EGL display.
+     * @param config the EGL config of the render context.
+     * @param shareContext the render context.
+     * @param clientVersion the GLES client version of the render context.
+     */
+    public synchronized void start(final EGL10 egl, final EGLDisplay display, final EGLConfig config,
+                                   final EGLContext shareContext, final int clientVersion)
+    {
+        stop();
+        final Object started = new Object();
+        final boolean[] done = { false };
+        mThread = new Thread("GLResourceLoader") {
+            @Override
+            public void run() {
+                int[] attribs = { EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL10.EGL_NONE };
+                EGLContext context = egl.eglCreateContext(display, config, shareContext, attribs);
+                EGLSurface surface = EGL10.EGL_NO_SURFACE;
+                boolean current = false;
+                if (context != null && context != EGL10.EGL_NO_CONTEXT) {
+                    int[] pbufferAttribs = { EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE };
+                    surface = egl.eglCreatePbufferSurface(display, config, pbufferAttribs);
+                    if (surface == null) surface = EGL10.EGL_NO_SURFACE;
+                    // without a pbuffer we can still try EGL_KHR_surfaceless_context
+                    current = egl.eglMakeCurrent(display, surface, surface, context);
+                }
+                if (current) {
+                    mUseFences = hasFences();
+                    mRunning = true;
+                    Log.i("GLResourceLoader", "loader context ready, fences: " + mUseFences);
+                } else {
+                    Log.w("GLResourceLoader", "could not create the loader context (0x"
+                            + Integer.toHexString(egl.eglGetError()) + "), loading on the render thread");
+                }
+                synchronized (started) {
+                    done[0] = true;
+                    started.notifyAll();
+                }
+                try {
+                    while (mRunning) {
+                        Job job = mQueue.take();
+                        try {
+                            job.load();
+                        } catch (RuntimeException e) {
+                            // a broken asset must not take down the loader and the jobs after it
+                            Log.e("GLResourceLoader", "job " + job + " failed, dropped", e);
+                            continue;
+                        }
+                        Completed c = new Completed();
+                        c.job = job;
+                        c.fence = GL_SYNC_NONE;
+                        if (mUseFences) {
+                            c.fence = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+                            GLES20.glFlush();
+                        } else {
+                            GLES20.glFinish();
+                        }
+                        synchronized (mCompleted) {
+                            mCompleted.add(c);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // fall thru and exit normally
+                } finally {
+                    mRunning = false;
+                    if (current && mUseFences) {
+                        // fences are context objects too: delete those never polled while we still can
+                        synchronized (mCompleted) {
+                            for (Completed c : mCompleted) {
+                                if (c.fence != GL_SYNC_NONE) GLES30.glDeleteSync(c.fence);
+                                c.fence = GL_SYNC_NONE;
+                            }
+                        }
+                    }
+                    if (current) {
+                        egl.eglMakeCurrent(display, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+                    }
+                    if (surface != EGL10.EGL_NO_SURFACE) egl.eglDestroySurface(display, surface);
+                    if (context != null && context != EGL10.EGL_NO_CONTEXT) egl.eglDestroyContext(display, context);
+                }
+            }
+        };
+        mThread.start();
+        // wait for the context so that jobs queued right after this call go to the right place
+        synchronized (started) {
+            while (!done[0]) {
+                try {
+                    started.wait();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * \brief Stop the loader thread and release its context.
+     *
+     * Called by the EGL context factory before the render context is destroyed. Pending jobs are
+     * dropped, the loader thread deletes their fences before releasing its context.
+     */
+    public synchronized void stop()
+    {
+        if (mThread == null) return;
+        mRunning = false;
+        mThread.interrupt();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mThread = null;
+        mQueue.clear();
+        synchronized (mCompleted) {
+            mCompleted.clear();
+            mSynchronous.clear();
+        }
+    }
+
+    /**
+     * \brief Is the loader thread running.
+     * @return true if jobs are loaded in background.
+     */
+    public boolean isRunning()
+    {
+        return mRunning;
+    }
+
+    /**
+     * \brief Queue a job.
+     * @param job the job to run.
+     */
+    public void queue(Job job)
+    {
+        if (mRunning) {
+            mQueue.add(job);
+        } else {
+            synchronized (mCompleted) {
+                mSynchronous.add(job);
+            }
+        }
+    }
+
+    /**
+     * \brief Hand the completed jobs to the renderer.
+     *
+     * Call once per frame from the render thread. Jobs whose fence has not signaled yet are kept for a later frame;
+     * a fence that can not be waited on is deleted and its job delivered, so it never blocks the ones after it.
+     */
+    public void deliverCompleted()
+    {
+        Job sync = null;
+        synchronized (mCompleted) {
+            if (!mSynchronous.isEmpty()) sync = mSynchronous.remove(0);
+        }
+        if (sync != null) {
+            // no loader: one job per frame, to spread the cost
+            try {
+                sync.load();
+            } catch (RuntimeException e) {
+                // as on the loader thread, a broken asset must not take down the render thread
+                Log.e("GLResourceLoader", "job " + sync + " failed, dropped", e);
+                return;
+            }
+            sync.onLoaded();
+            return;
+        }
+        while (true) {
+            Completed c;
+            synchronized (mCompleted) {
+                if (mCompleted.isEmpty()) return;
+                c = mCompleted.get(0);
+                if (c.fence != GL_SYNC_NONE) {
+                    int status = GLES30.glClientWaitSync(c.fence, 0, 0);
+                    if (status == GLES30.GL_TIMEOUT_EXPIRED) return;
+                    if (status == GLES30.GL_WAIT_FAILED) {
+                        // the loader flushed the job, it will complete: deliver it rather than block the queue
+                        Log.e("GLResourceLoader", "waiting on the fence of " + c.job + " failed (0x"
+                                + Integer.toHexString(GLES20.glGetError()) + "), delivered anyway");
+                    }
+                    GLES30.glDeleteSync(c.fence);
+                }
+                mCompleted.remove(0);
+            }
+            c.job.onLoaded();
+        }
+    }
+
+    /**
+     * \brief Are GLES30 fence syncs available on the current context.
+     * @return true if glFenceSync can be used.
+     */
+    private static boolean hasFences()
+    {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) return false;
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES 3");
+    }
+}
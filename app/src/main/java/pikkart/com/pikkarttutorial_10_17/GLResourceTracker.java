@@ -0,0 +1,289 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * \class GLResourceTracker
+ * \brief Estimated GPU memory of every live texture, buffer and program, by owner.
+ *
+ * RenderUtils and the meshes record each GL object when they create it and when they delete
+ * it, with its estimated size (texels times bytes per texel, buffer sizes, a flat estimate for
+ * programs). The owner is a per-thread current owner, set by a mesh around its initialization
+ * (see setOwner()), so objects created through RenderUtils are charged to it, on the render
+ * thread as on a GLResourceLoader thread. Objects are tagged with the context generation: those
+ * still alive when the next context is created were never deleted and are reported as leaked.
+ * Client side memory is accounted by the DirectBufferArena. Thread safe.
+ */
+public class GLResourceTracker
+{
+    public static final int TYPE_TEXTURE = 0; /**< glGenTextures */
+    public static final int TYPE_BUFFER = 1; /**< glGenBuffers */
+    public static final int TYPE_PROGRAM = 2; /**< glCreateProgram */
+    public static final int TYPE_COUNT = 3;
+    private static final String[] TYPE_NAMES = { "texture", "buffer", "program" };
+
+    public static final long PROGRAM_BYTES = 16 * 1024; /**< driver memory assumed per linked program (code and uniforms) */
+    public static final String NO_OWNER = "unowned"; /**< owner of the objects created outside of setOwner() */
+
+    /**
+     * \brief A live GL object.
+     */
+    public static class Resource
+    {
+        public final int type; /**< one of the TYPE_ constants */
+        public final int id; /**< the GL name */
+        public final String owner; /**< the owner when it was created */
+        public final String label; /**< what it holds, e.g. the texture file */
+        public final int generation; /**< the context it was created in */
+        public long bytes; /**< estimated GPU memory */
+
+        Resource(int type, int id, String owner, String label, int generation, long bytes)
+        {
+            this.type = type;
+            this.id = id;
+            this.owner = owner;
+            this.label = label;
+            this.generation = generation;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return TYPE_NAMES[type] + " " + id + " of " + owner + (label != null ? " (" + label + ")" : "") + ", " + (bytes / 1024) + " KB";
+        }
+    }
+
+    private static final LinkedHashMap<Long, Resource> sResources = new LinkedHashMap<Long, Resource>(); /**< live objects by type and id */
+    private static final ThreadLocal<String> sOwner = new ThreadLocal<String>(); /**< current owner of each thread */
+    private static int sGeneration = 0; /**< current context generation */
+    private static long sBytes = 0; /**< memory of the live objects */
+    private static long sPeakBytes = 0; /**< highest sBytes */
+    private static int sLeaked = 0; /**< objects lost with a context without being deleted */
+    private static long sLeakedBytes = 0; /**< their memory */
+
+    private static long key(int type, int id)
+    {
+        return ((long) type << 32) | (id & 0xffffffffL);
+    }
+
+    /**
+     * \brief Set the owner charged for the objects this thread creates.
+     * @param owner the owner, e.g. the mesh file; null for none.
+     * @return the previous owner, to be set back when done.
+     */
+    public static String setOwner(String owner)
+    {
+        String previous = sOwner.get();
+        sOwner.set(owner);
+        return previous;
+    }
+
+    /**
+     * \brief Estimate the memory of a texture.
+     * @param width the texture width.
+     * @param height the texture height.
+     * @param bytesPerTexel bytes per texel (see TextureData.getBytesPerPixel()).
+     * @param mipmapped true if it has a mipmap chain (a third more).
+     * @return the size in bytes.
+     */
+    public static long getTextureBytes(int width, int height, int bytesPerTexel, boolean mipmapped)
+    {
+        long bytes = (long) width * height * bytesPerTexel;
+        return mipmapped ? bytes * 4 / 3 : bytes;
+    }
+
+    /**
+     * \brief Record a created object.
+     * @param type one of the TYPE_ constants.
+     * @param id the GL name; 0 is ignored.
+     * @param bytes its estimated memory.
+     * @param label what it holds, null if nothing useful.
+     */
+    public static void track(int type, int id, long bytes, String label)
+    {
+        if (id == 0) return;
+        String owner = sOwner.get();
+        synchronized (GLResourceTracker.class) {
+            Resource previous = sResources.put(key(type, id), new Resource(type, id, owner != null ? owner : NO_OWNER, label, sGeneration, bytes));
+            // the id of a deleted object that was not untracked
+            if (previous != null) sBytes -= previous.bytes;
+            sBytes += bytes;
+            sPeakBytes = Math.max(sPeakBytes, sBytes);
+        }
+    }
+
+    /**
+     * \brief Update the estimated memory of an object, e.g. a texture redefined or a video texture once its size is known.
+     * @param type one of the TYPE_ constants.
+     * @param id the GL name.
+     * @param bytes its estimated memory.
+     */
+    public static synchronized void resize(int type, int id, long bytes)
+    {
+        Resource resource = sResources.get(key(type, id));
+        if (resource == null) return;
+        sBytes += bytes - resource.bytes;
+        resource.bytes = bytes;
+        sPeakBytes = Math.max(sPeakBytes, sBytes);
+    }
+
+    /**
+     * \brief Record a deleted object.
+     * @param type one of the TYPE_ constants.
+     * @param id the GL name.
+     * @return false if it was not tracked.
+     */
+    public static synchronized boolean release(int type, int id)
+    {
+        Resource resource = sResources.remove(key(type, id));
+        if (resource == null) return false;
+        sBytes -= resource.bytes;
+        return true;
+    }
+
+    /**
+     * \brief Start a new context generation, when a context is created.
+     *
+     * The objects of the previous contexts died with them: those not deleted before are leaks.
+     * They are counted in the report and forgotten. Nothing is left if onContextDestroyed()
+     * already ran, it only catches the contexts lost without a teardown.
+     * @return the leaked objects.
+     */
+    public static synchronized List<Resource> onContextCreated()
+    {
+        return endGeneration();
+    }
+
+    /**
+     * \brief End the context generation, after its owners deleted their objects and before it is destroyed.
+     *
+     * The objects still alive are leaks, counted in the report and forgotten.
+     * @return the leaked objects.
+     */
+    public static synchronized List<Resource> onContextDestroyed()
+    {
+        return endGeneration();
+    }
+
+    private static List<Resource> endGeneration()
+    {
+        List<Resource> leaked = new ArrayList<Resource>();
+        for (Iterator<Resource> it = sResources.values().iterator(); it.hasNext(); ) {
+            Resource resource = it.next();
+            if (resource.generation != sGeneration) continue;
+            leaked.add(resource);
+            sLeaked++;
+            sLeakedBytes += resource.bytes;
+            sBytes -= resource.bytes;
+            it.remove();
+        }
+        sGeneration++;
+        return leaked;
+    }
+
+    /**
+     * \brief Get the live objects.
+     * @param owner the owner, null for all.
+     * @return a copy, in creation order.
+     */
+    public static synchronized List<Resource> getResources(String owner)
+    {
+        List<Resource> resources = new ArrayList<Resource>();
+        for (Resource resource : sResources.values()) {
+            if (owner == null || owner.equals(resource.owner)) resources.add(resource);
+        }
+        return resources;
+    }
+
+    /**
+     * \brief Get the memory of the live objects of an owner.
+     * @param owner the owner, null for all.
+     * @param type one of the TYPE_ constants, -1 for all.
+     * @return the estimated size in bytes.
+     */
+    public static synchronized long getBytes(String owner, int type)
+    {
+        long bytes = 0;
+        for (Resource resource : sResources.values()) {
+            if ((owner == null || owner.equals(resource.owner)) && (type < 0 || resource.type == type)) bytes += resource.bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * \brief Get the live objects by owner.
+     * @return one line per owner: object counts and memory.
+     */
+    public static synchronized String getOwnerReport()
+    {
+        LinkedHashMap<String, long[]> owners = new LinkedHashMap<String, long[]>();
+        for (Resource resource : sResources.values()) {
+            long[] totals = owners.get(resource.owner);
+            if (totals == null) {
+                totals = new long[TYPE_COUNT * 2];
+                owners.put(resource.owner, totals);
+            }
+            totals[resource.type * 2]++;
+            totals[resource.type * 2 + 1] += resource.bytes;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> owner : owners.entrySet()) {
+            long[] totals = owner.getValue();
+            sb.append(owner.getKey()).append(':');
+            long bytes = 0;
+            for (int t = 0; t < TYPE_COUNT; t++) {
+                if (totals[t * 2] == 0) continue;
+                sb.append(' ').append(totals[t * 2]).append(' ').append(TYPE_NAMES[t]).append("s ").append(totals[t * 2 + 1] / 1024).append(" KB,");
+                bytes += totals[t * 2 + 1];
+            }
+            sb.append(" total ").append(bytes / 1024).append(" KB\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * \brief Get the totals.
+     * @return a one line report.
+     */
+    public static synchronized String getReport()
+    {
+        int[] counts = new int[TYPE_COUNT];
+        long[] bytes = new long[TYPE_COUNT];
+        for (Resource resource : sResources.values()) {
+            counts[resource.type]++;
+            bytes[resource.type] += resource.bytes;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < TYPE_COUNT; t++) {
+            sb.append(counts[t]).append(' ').append(TYPE_NAMES[t]).append("s ").append(bytes[t] / 1024).append(" KB, ");
+        }
+        return sb.append("total ").append(sBytes / 1024).append(" KB (peak ").append(sPeakBytes / 1024).append(" KB), ")
+                .append(sLeaked).append(" leaked (").append(sLeakedBytes / 1024).append(" KB); client buffers ")
+                .append(DirectBufferArena.getReservedBytes() / 1024).append(" KB").toString();
+    }
+}
@@ -0,0 +1,384 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * \class GLState
+ * \brief Cache of the render thread GL state, skipping the calls that would not change it.
+ *
+ * The draw paths set the state they need through it (capabilities, blend function, program,
+ * texture bindings, vertex attribute arrays) instead of setting and resetting it themselves:
+ * a call is only issued when the cached value differs, so consecutive draws sharing state cost
+ * nothing. Everything starts unknown and is invalidated whenever code outside of the cache may
+ * have changed it (the native camera renderer, SurfaceTexture.updateTexImage(), a new context);
+ * unknown state is always set; an attribute array in an unknown state is disabled by the next
+ * setVertexAttribArrays() that does not enable it. restoreDefaults() gives the native renderer
+ * back the state it expects, once per frame instead of after every draw. Buffer bindings are
+ * not cached, the uploads bind buffers directly.
+ *
+ * On OpenGL ES 3 contexts it also binds vertex array objects, so a mesh records its attribute
+ * setup once and then draws after a single bind. The attribute array cache is that of the
+ * default vertex array object (0): code setting attributes or binding GL_ELEMENT_ARRAY_BUFFER
+ * outside of a vertex array object binds 0 first (a no-op when not supported), and
+ * restoreDefaults() binds it back at the end of the frame. OES_vertex_array_object has no Java
+ * binding, so OpenGL ES 2 contexts always take that fallback path. All methods must be called
+ * from the render thread.
+ */
+public class GLState
+{
+    private static final int MAX_TEXTURE_UNITS = 8; /**< texture units cached, others are always set */
+    private static final int MAX_ATTRIB_ARRAYS = 32; /**< attribute arrays cached, one bit each */
+    private static final int UNKNOWN = -1;
+
+    private static final int[] CAPS = { GLES20.GL_DEPTH_TEST, GLES20.GL_CULL_FACE, GLES20.GL_BLEND }; /**< cached capabilities */
+    private static int sCaps = 0; /**< enabled capabilities, one bit per CAPS entry */
+    private static int sCapsKnown = 0; /**< capabilities whose bit is valid */
+    private static int sBlendSrc = UNKNOWN; /**< blend source factor */
+    private static int sBlendDst = UNKNOWN; /**< blend destination factor */
+    private static int sProgram = UNKNOWN; /**< program in use */
+    private static int sActiveUnit = UNKNOWN; /**< active texture unit, 0 based */
+    private static final int[] sTexture2D = new int[MAX_TEXTURE_UNITS]; /**< GL_TEXTURE_2D binding of each unit */
+    private static final int[] sTextureExternal = new int[MAX_TEXTURE_UNITS]; /**< GL_TEXTURE_EXTERNAL_OES binding of each unit */
+    private static int sAttribArrays = 0; /**< enabled attribute arrays of vertex array object 0, one bit per index */
+    private static int sAttribArraysKnown = 0; /**< attribute arrays whose bit is valid */
+    private static int sMaxAttribArrays = 8; /**< GL_MAX_VERTEX_ATTRIBS, capped to MAX_ATTRIB_ARRAYS */
+    private static boolean sVertexArrays = false; /**< are vertex array objects available (OpenGL ES 3) */
+    private static int sVertexArray = 0; /**< vertex array object bound */
+
+    private static long sIssued = 0; /**< calls passed to GL */
+    private static long sElided = 0; /**< calls skipped, the state was already current */
+
+    static {
+        invalidate();
+    }
+
+    /**
+     * \brief Check what the new context supports and forget the cached state.
+     *
+     * Call it every time the GL context is (re)created.
+     */
+    public static void onContextCreated()
+    {
+        sVertexArrays = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            String version = GLES20.glGetString(GLES20.GL_VERSION);
+            sVertexArrays = version != null && version.startsWith("OpenGL ES 3");
+        }
+        int[] maxAttribs = new int[1];
+        GLES20.glGetIntegerv(GLES20.GL_MAX_VERTEX_ATTRIBS, maxAttribs, 0);
+        sMaxAttribArrays = Math.max(1, Math.min(maxAttribs[0], MAX_ATTRIB_ARRAYS));
+        Log.i("GLState", "vertex array objects " + (sVertexArrays ? "enabled" : "not available, attributes set per draw"));
+        invalidate();
+    }
+
+    /**
+     * \brief Forget the cached state, so the next calls are all issued.
+     *
+     * Call it when the context is created and after any code that sets GL state directly.
+     */
+    public static void invalidate()
+    {
+        sCapsKnown = 0;
+        sBlendSrc = sBlendDst = UNKNOWN;
+        sProgram = UNKNOWN;
+        sAttribArrays = 0;
+        sAttribArraysKnown = 0;
+        sVertexArray = sVertexArrays ? UNKNOWN : 0;
+        invalidateTextures();
+    }
+
+    /**
+     * \brief Forget the cached texture bindings only, e.g. after SurfaceTexture.updateTexImage().
+     */
+    public static void invalidateTextures()
+    {
+        sActiveUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            sTexture2D[i] = UNKNOWN;
+            sTextureExternal[i] = UNKNOWN;
+        }
+    }
+
+    /**
+     * \brief Set back the state the code outside of the cache expects: no program, no blending,
+     * vertex array object 0 without attribute arrays and texture unit 0 active. Textures, depth
+     * test and culling are left as they are.
+     */
+    public static void restoreDefaults()
+    {
+        useProgram(0);
+        disable(GLES20.GL_BLEND);
+        bindVertexArray(0);
+        setVertexAttribArrays(0);
+        activeTexture(GLES20.GL_TEXTURE0);
+    }
+
+    private static int getCapBit(int cap)
+    {
+        for (int i = 0; i < CAPS.length; i++) {
+            if (CAPS[i] == cap) return 1 << i;
+        }
+        return 0;
+    }
+
+    /**
+     * \brief glEnable.
+     * @param cap the capability, e.g. GL_DEPTH_TEST.
+     */
+    public static void enable(int cap)
+    {
+        int bit = getCapBit(cap);
+        if ((sCapsKnown & bit) != 0 && (sCaps & bit) != 0) {
+            sElided++;
+            return;
+        }
+        GLES20.glEnable(cap);
+        sIssued++;
+        sCaps |= bit;
+        sCapsKnown |= bit;
+    }
+
+    /**
+     * \brief glDisable.
+     * @param cap the capability, e.g. GL_BLEND.
+     */
+    public static void disable(int cap)
+    {
+        int bit = getCapBit(cap);
+        if ((sCapsKnown & bit) != 0 && (sCaps & bit) == 0) {
+            sElided++;
+            return;
+        }
+        GLES20.glDisable(cap);
+        sIssued++;
+        sCaps &= ~bit;
+        sCapsKnown |= bit;
+    }
+
+    /**
+     * \brief glBlendFunc.
+     * @param src the source factor.
+     * @param dst the destination factor.
+     */
+    public static void blendFunc(int src, int dst)
+    {
+        if (sBlendSrc == src && sBlendDst == dst) {
+            sElided++;
+            return;
+        }
+        GLES20.glBlendFunc(src, dst);
+        sIssued++;
+        sBlendSrc = src;
+        sBlendDst = dst;
+    }
+
+    /**
+     * \brief glUseProgram.
+     * @param program the program, 0 for none.
+     */
+    public static void useProgram(int program)
+    {
+        if (sProgram == program) {
+            sElided++;
+            return;
+        }
+        GLES20.glUseProgram(program);
+        sIssued++;
+        sProgram = program;
+    }
+
+    /**
+     * \brief glActiveTexture.
+     * @param texture the unit, GL_TEXTURE0 + i.
+     */
+    public static void activeTexture(int texture)
+    {
+        int unit = texture - GLES20.GL_TEXTURE0;
+        if (unit == sActiveUnit) {
+            sElided++;
+            return;
+        }
+        GLES20.glActiveTexture(texture);
+        sIssued++;
+        sActiveUnit = unit;
+    }
+
+    /**
+     * \brief glBindTexture, on the active unit.
+     * @param target GL_TEXTURE_2D or GL_TEXTURE_EXTERNAL_OES (other targets are not cached).
+     * @param texture the texture, 0 for none.
+     */
+    public static void bindTexture(int target, int texture)
+    {
+        int[] bindings = target == GLES20.GL_TEXTURE_2D ? sTexture2D
+                : target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES ? sTextureExternal : null;
+        boolean cached = bindings != null && sActiveUnit >= 0 && sActiveUnit < MAX_TEXTURE_UNITS;
+        if (cached && bindings[sActiveUnit] == texture) {
+            sElided++;
+            return;
+        }
+        GLES20.glBindTexture(target, texture);
+        sIssued++;
+        if (cached) bindings[sActiveUnit] = texture;
+    }
+
+    /**
+     * \brief Forget the bindings of a deleted texture: GL reverts them to 0, and the name may be reused.
+     * @param texture the deleted texture.
+     */
+    public static void onTextureDeleted(int texture)
+    {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (sTexture2D[i] == texture) sTexture2D[i] = 0;
+            if (sTextureExternal[i] == texture) sTextureExternal[i] = 0;
+        }
+    }
+
+    /**
+     * \brief glEnableVertexAttribArray.
+     * @param index the attribute location; -1 (not in the program) is ignored.
+     */
+    public static void enableVertexAttribArray(int index)
+    {
+        if (index < 0) return;
+        int bit = sVertexArray == 0 ? getAttribBit(index) : 0;
+        if (bit != 0 && (sAttribArraysKnown & bit) != 0 && (sAttribArrays & bit) != 0) {
+            sElided++;
+            return;
+        }
+        GLES20.glEnableVertexAttribArray(index);
+        sIssued++;
+        sAttribArrays |= bit;
+        sAttribArraysKnown |= bit;
+    }
+
+    /**
+     * \brief glDisableVertexAttribArray.
+     * @param index the attribute location; -1 (not in the program) is ignored.
+     */
+    public static void disableVertexAttribArray(int index)
+    {
+        if (index < 0) return;
+        int bit = sVertexArray == 0 ? getAttribBit(index) : 0;
+        if (bit != 0 && (sAttribArraysKnown & bit) != 0 && (sAttribArrays & bit) == 0) {
+            sElided++;
+            return;
+        }
+        GLES20.glDisableVertexAttribArray(index);
+        sIssued++;
+        sAttribArrays &= ~bit;
+        sAttribArraysKnown |= bit;
+    }
+
+    /**
+     * \brief Enable exactly a set of attribute arrays: the enabled ones not in the set are disabled.
+     *
+     * A draw declares the arrays it reads, so arrays left enabled by the previous draw never
+     * point the driver at buffers this one does not use; after invalidate() that includes the
+     * arrays other code may have left enabled, up to GL_MAX_VERTEX_ATTRIBS. While a new vertex
+     * array object is being recorded, its arrays (all disabled) are enabled without going
+     * through the cache.
+     * @param mask one bit per attribute location (see getAttribBit()).
+     */
+    public static void setVertexAttribArrays(int mask)
+    {
+        for (int i = 0; i < MAX_ATTRIB_ARRAYS; i++) {
+            int bit = 1 << i;
+            if ((mask & bit) != 0) enableVertexAttribArray(i);
+            else if (sVertexArray == 0 && i < sMaxAttribArrays
+                    && ((sAttribArraysKnown & bit) == 0 || (sAttribArrays & bit) != 0)) disableVertexAttribArray(i);
+        }
+    }
+
+    /**
+     * \brief Get the setVertexAttribArrays() bit of an attribute location.
+     * @param index the attribute location, -1 if not in the program.
+     * @return the bit, 0 for -1.
+     */
+    public static int getAttribBit(int index)
+    {
+        return index >= 0 && index < MAX_ATTRIB_ARRAYS ? 1 << index : 0;
+    }
+
+    /**
+     * \brief Are vertex array objects available on the current context.
+     * @return false on OpenGL ES 2: set the attributes per draw then.
+     */
+    public static boolean hasVertexArrays()
+    {
+        return sVertexArrays;
+    }
+
+    /**
+     * \brief Create a vertex array object, to be bound and recorded by its owner.
+     * @return the object, 0 if not supported.
+     */
+    public static int genVertexArray()
+    {
+        if (!sVertexArrays) return 0;
+        int[] ids = new int[1];
+        GLES30.glGenVertexArrays(1, ids, 0);
+        return ids[0];
+    }
+
+    /**
+     * \brief Delete a vertex array object; if bound, GL reverts to the default one.
+     * @param vertexArray the object, 0 is ignored.
+     */
+    public static void deleteVertexArray(int vertexArray)
+    {
+        if (!sVertexArrays || vertexArray == 0) return;
+        GLES30.glDeleteVertexArrays(1, new int[] { vertexArray }, 0);
+        if (sVertexArray == vertexArray) sVertexArray = 0;
+    }
+
+    /**
+     * \brief glBindVertexArray; a no-op if vertex array objects are not supported.
+     * @param vertexArray the object, 0 for the default one.
+     */
+    public static void bindVertexArray(int vertexArray)
+    {
+        if (!sVertexArrays) return;
+        if (sVertexArray == vertexArray) {
+            sElided++;
+            return;
+        }
+        GLES30.glBindVertexArray(vertexArray);
+        sIssued++;
+        sVertexArray = vertexArray;
+    }
+
+    /**
+     * \brief Get the counts of issued and elided calls since start.
+     * @return a one line report.
+     */
+    public static String getReport()
+    {
+        long total = sIssued + sElided;
+        return sIssued + " calls issued, " + sElided + " elided (" + (total > 0 ? sElided * 100 / total : 0) + "%)";
+    }
+}
@@ -24,6 +24,7 @@ import android.content.Context;
 import android.graphics.SurfaceTexture;
 import android.opengl.GLDebugHelper;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.TextureView;
@@ -128,6 +129,21 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
         return mPreserveEGLContextOnPause;
     }
 
+    public void setFrameProfiler(FrameProfiler profiler)
+    {
+        mFrameProfiler = profiler;
+    }
+
+    /**
+     * Limit the frame rate in RENDERMODE_CONTINUOUSLY. Can be called from any thread,
+     * including the render thread from onDrawFrame.
+     * @param intervalMs the minimum time between the start of two frames, 0 for no limit.
+     */
+    public void setMinFrameInterval(long intervalMs)
+    {
+        mMinFrameIntervalMs = intervalMs;
+    }
+
     public void setRenderer(Renderer renderer) 
     {
         checkRenderThreadState();
@@ -1191,14 +1207,24 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
                     {
                         Log.w("GLThread", "onDrawFrame tid=" + getId());
                     }
+                    FrameProfiler profiler = null;
+                    long frameStartMs = SystemClock.uptimeMillis();
+                    long minFrameIntervalMs = 0;
                     {
                         GLTextureView view = mGLSurfaceViewWeakRef.get();
                         if (view != null) 
                         {
                             view.mRenderer.onDrawFrame(gl);
+                            profiler = view.mFrameProfiler;
+                            minFrameIntervalMs = view.mMinFrameIntervalMs;
                         }
                     }
+                    long swapStart = profiler == null ? 0 : profiler.begin();
                     int swapError = mEglHelper.swap();
+                    if (profiler != null)
+                    {
+                        profiler.end(FrameProfiler.STAGE_SWAP, swapStart);
+                    }
                     switch (swapError) 
                     {
                         case EGL10.EGL_SUCCESS:
@@ -1229,6 +1255,23 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
                     {
                         doRenderNotification = true;
                     }
+
+                    // Throttle the frame rate if asked to. Waiting on the manager lets
+                    // pause, surface and event requests wake us up early.
+                    if (minFrameIntervalMs > 0)
+                    {
+                        long waitMs = frameStartMs + minFrameIntervalMs - SystemClock.uptimeMillis();
+                        if (waitMs > 0)
+                        {
+                            synchronized (sGLThreadManager)
+                            {
+                                if (!mShouldExit && !mRequestPaused && mEventQueue.isEmpty())
+                                {
+                                    sGLThreadManager.wait(waitMs);
+                                }
+                            }
+                        }
+                    }
                 }
 
             } 
@@ -1679,6 +1722,8 @@ public class GLTextureView extends TextureView implements TextureView.SurfaceTex
     private int mDebugFlags;
     private int mEGLContextClientVersion;
     private boolean mPreserveEGLContextOnPause;
+    private FrameProfiler mFrameProfiler;
+    private volatile long mMinFrameIntervalMs;
 
 	@Override
 	public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) 
@@ -0,0 +1,105 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * \class GltfLoader
+ * \brief Loads glTF 2.0 binary files (.glb).
+ *
+ * The file is memory mapped when the asset is stored uncompressed in the APK (see
+ * aaptOptions in build.gradle), read into a single direct buffer otherwise, then parsed
+ * by GltfParser: the JSON chunk once into a GltfModel, the binary chunk never parsed nor
+ * copied, vertex and index data is accessed through slices of it.
+ */
+public class GltfLoader
+{
+    /**
+     * \brief Load a GLB file from the app asset dir.
+     * @param am the app AssetManager.
+     * @param file the file to load.
+     * @return the model, null on failure.
+     */
+    public static GltfModel load(AssetManager am, String file)
+    {
+        try {
+            return GltfParser.parse(mapAsset(am, file));
+        } catch (Exception e) {
+            Log.e("GltfLoader", "Error loading glb file " + file + ", msg:" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * \brief Map an asset in memory, or read it into a direct buffer if it is compressed.
+     * @param am the app AssetManager.
+     * @param file the asset to load.
+     * @return the asset content.
+     * @throws IOException on read errors.
+     */
+    private static ByteBuffer mapAsset(AssetManager am, String file) throws IOException
+    {
+        AssetFileDescriptor afd = null;
+        try {
+            afd = am.openFd(file);
+        } catch (IOException e) {
+            // compressed asset, can not be mapped
+        }
+        if (afd != null) {
+            FileInputStream fis = new FileInputStream(afd.getFileDescriptor());
+            try {
+                FileChannel channel = fis.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset(), afd.getLength());
+            } finally {
+                fis.close();
+                afd.close();
+            }
+        }
+        InputStream is = am.open(file, AssetManager.ACCESS_STREAMING);
+        try {
+            byte[] chunk = new byte[64 * 1024];
+            ByteBuffer bb = ByteBuffer.allocateDirect(Math.max(is.available(), chunk.length));
+            int read;
+            while ((read = is.read(chunk)) > 0) {
+                if (bb.remaining() < read) {
+                    ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(bb.capacity() * 2, bb.position() + read));
+                    bb.flip();
+                    larger.put(bb);
+                    bb = larger;
+                }
+                bb.put(chunk, 0, read);
+            }
+            bb.flip();
+            return bb;
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * \class GltfModel
+ * \brief The content of a GLB file, as loaded by GltfLoader.
+ *
+ * Only the glTF objects needed to draw meshes are kept (buffer views, accessors, meshes,
+ * materials, textures and images) and to animate their morph target weights (nodes and
+ * animations). Vertex and index data is never copied: accessors and
+ * buffer views are returned as slices of the binary chunk, which can be handed directly
+ * to glBufferData. Plain Java, no Android dependencies.
+ */
+public class GltfModel
+{
+    public static final int COMPONENT_BYTE = 5120;
+    public static final int COMPONENT_UNSIGNED_BYTE = 5121;
+    public static final int COMPONENT_SHORT = 5122;
+    public static final int COMPONENT_UNSIGNED_SHORT = 5123;
+    public static final int COMPONENT_UNSIGNED_INT = 5125;
+    public static final int COMPONENT_FLOAT = 5126;
+
+    public static final int MODE_TRIANGLES = 4;
+
+    /**
+     * \brief A range of the binary chunk.
+     */
+    public static class BufferView
+    {
+        public int buffer = 0; /**< buffer index (only the GLB binary chunk, 0, is supported) */
+        public int byteOffset = 0; /**< offset in the buffer */
+        public int byteLength = 0; /**< length of the view */
+        public int byteStride = 0; /**< vertex stride, 0 for tightly packed */
+        public int target = 0; /**< GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER, 0 if unspecified */
+    }
+
+    /**
+     * \brief A typed view of a buffer view.
+     */
+    public static class Accessor
+    {
+        public int bufferView = -1; /**< buffer view index, -1 for all zeros */
+        public int byteOffset = 0; /**< offset in the buffer view */
+        public int componentType = COMPONENT_FLOAT; /**< one of the COMPONENT_ constants (same values as GL) */
+        public boolean normalized = false; /**< are integer components normalized */
+        public int count = 0; /**< number of elements */
+        public int components = 1; /**< components per element (SCALAR 1, VEC2 2, VEC3 3, VEC4 4, MAT4 16...) */
+        public float[] min = null; /**< per component minimum, if given */
+        public float[] max = null; /**< per component maximum, if given */
+    }
+
+    /**
+     * \brief Part of a mesh drawn with a single material.
+     */
+    public static class Primitive
+    {
+        public int position = -1; /**< POSITION accessor */
+        public int normal = -1; /**< NORMAL accessor */
+        public int texCoord = -1; /**< TEXCOORD_0 accessor */
+        public int indices = -1; /**< indices accessor, -1 if not indexed */
+        public int material = -1; /**< material index, -1 for the default material */
+        public int mode = MODE_TRIANGLES; /**< primitive type (same values as GL) */
+        public ArrayList<Integer> targets = new ArrayList<Integer>(); /**< POSITION accessor of each morph target, -1 if it has none */
+    }
+
+    /**
+     * \brief A glTF mesh: a named list of primitives.
+     */
+    public static class Mesh
+    {
+        public String name = ""; /**< mesh name */
+        public ArrayList<Primitive> primitives = new ArrayList<Primitive>(); /**< mesh primitives */
+        public float[] weights = null; /**< default morph target weights, null for all zeros */
+    }
+
+    /**
+     * \brief A scene node; only its mesh is kept.
+     */
+    public static class Node
+    {
+        public String name = ""; /**< node name */
+        public int mesh = -1; /**< mesh index, -1 if none */
+    }
+
+    /**
+     * \brief Keyframes of an animation: input times and output values.
+     */
+    public static class AnimationSampler
+    {
+        public int input = -1; /**< accessor of the keyframe times */
+        public int output = -1; /**< accessor of the keyframe values */
+        public String interpolation = "LINEAR"; /**< LINEAR, STEP or CUBICSPLINE */
+    }
+
+    /**
+     * \brief What an animation sampler drives.
+     */
+    public static class AnimationChannel
+    {
+        public int sampler = -1; /**< sampler index in the animation */
+        public int node = -1; /**< target node */
+        public String path = ""; /**< target property: translation, rotation, scale or weights */
+    }
+
+    /**
+     * \brief A glTF animation: samplers and the channels they drive.
+     */
+    public static class Animation
+    {
+        public String name = ""; /**< animation name */
+        public ArrayList<AnimationSampler> samplers = new ArrayList<AnimationSampler>(); /**< animation samplers */
+        public ArrayList<AnimationChannel> channels = new ArrayList<AnimationChannel>(); /**< animation channels */
+    }
+
+    /**
+     * \brief The subset of a PBR material we can render.
+     */
+    public static class Material
+    {
+        public String name = ""; /**< material name */
+        public float[] baseColorFactor = { 1.0f, 1.0f, 1.0f, 1.0f }; /**< base color RGBA */
+        public int baseColorTexture = -1; /**< base color texture index */
+    }
+
+    /**
+     * \brief An image stored in the binary chunk (or referenced by uri).
+     */
+    public static class Image
+    {
+        public int bufferView = -1; /**< buffer view holding the encoded image */
+        public String mimeType = ""; /**< image/png or image/jpeg */
+        public String uri = null; /**< external image, if not embedded */
+    }
+
+    public ByteBuffer binary = null; /**< the GLB binary chunk, little endian */
+    public final ArrayList<BufferView> bufferViews = new ArrayList<BufferView>(); /**< buffer views */
+    public final ArrayList<Accessor> accessors = new ArrayList<Accessor>(); /**< accessors */
+    public final ArrayList<Mesh> meshes = new ArrayList<Mesh>(); /**< meshes */
+    public final ArrayList<Material> materials = new ArrayList<Material>(); /**< materials */
+    public final ArrayList<Integer> textures = new ArrayList<Integer>(); /**< image index of each texture */
+    public final ArrayList<Image> images = new ArrayList<Image>(); /**< images */
+    public final ArrayList<Node> nodes = new ArrayList<Node>(); /**< nodes */
+    public final ArrayList<Animation> animations = new ArrayList<Animation>(); /**< animations */
+
+    /**
+     * \brief Get the size of a component type.
+     * @param componentType one of the COMPONENT_ constants.
+     * @return the size in bytes.
+     */
+    public static int getComponentSize(int componentType)
+    {
+        switch (componentType) {
+            case COMPONENT_BYTE:
+            case COMPONENT_UNSIGNED_BYTE:
+                return 1;
+            case COMPONENT_SHORT:
+            case COMPONENT_UNSIGNED_SHORT:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * \brief Get the content of a buffer view, without copying it.
+     * @param index the buffer view index.
+     * @return a little endian slice of the binary chunk.
+     */
+    public ByteBuffer getBufferView(int index)
+    {
+        BufferView view = bufferViews.get(index);
+        return slice(view.byteOffset, view.byteLength);
+    }
+
+    /**
+     * \brief Get the distance between two elements of an accessor.
+     * @param index the accessor index.
+     * @return the stride in bytes.
+     */
+    public int getAccessorStride(int index)
+    {
+        Accessor accessor = accessors.get(index);
+        int stride = accessor.bufferView >= 0 ? bufferViews.get(accessor.bufferView).byteStride : 0;
+        return stride != 0 ? stride : getComponentSize(accessor.componentType) * accessor.components;
+    }
+
+    /**
+     * \brief Get the bytes covered by an accessor, without copying them.
+     *
+     * The slice starts at the first element and ends right after the last one, so it can be
+     * uploaded with glBufferData and drawn with offset 0 and getAccessorStride().
+     * @param index the accessor index.
+     * @return a little endian slice of the binary chunk, null for accessors without buffer view.
+     */
+    public ByteBuffer getAccessorData(int index)
+    {
+        Accessor accessor = accessors.get(index);
+        if (accessor.bufferView < 0 || accessor.count == 0) return null;
+        BufferView view = bufferViews.get(accessor.bufferView);
+        int elementSize = getComponentSize(accessor.componentType) * accessor.components;
+        int length = (accessor.count - 1) * getAccessorStride(index) + elementSize;
+        if (accessor.byteOffset + length > view.byteLength) {
+            throw new IndexOutOfBoundsException("accessor " + index + " exceeds its buffer view");
+        }
+        return slice(view.byteOffset + accessor.byteOffset, length);
+    }
+
+    /**
+     * \brief Read an accessor as floats, for the accessors parsed on the CPU (animations, merged primitives).
+     *
+     * Normalized integer components are converted as the glTF specification says.
+     * @param index the accessor index.
+     * @return count * components values, all zeros for accessors without buffer view.
+     */
+    public float[] readAccessorFloats(int index)
+    {
+        Accessor accessor = accessors.get(index);
+        float[] values = new float[accessor.count * accessor.components];
+        ByteBuffer data = getAccessorData(index);
+        if (data == null) return values;
+        int stride = getAccessorStride(index);
+        int size = getComponentSize(accessor.componentType);
+        for (int e = 0; e < accessor.count; e++) {
+            for (int c = 0; c < accessor.components; c++) {
+                int at = e * stride + c * size;
+                float v;
+                switch (accessor.componentType) {
+                    case COMPONENT_BYTE:
+                        v = data.get(at);
+                        if (accessor.normalized) v = Math.max(v / 127.0f, -1.0f);
+                        break;
+                    case COMPONENT_UNSIGNED_BYTE:
+                        v = data.get(at) & 0xff;
+                        if (accessor.normalized) v /= 255.0f;
+                        break;
+                    case COMPONENT_SHORT:
+                        v = data.getShort(at);
+                        if (accessor.normalized) v = Math.max(v / 32767.0f, -1.0f);
+                        break;
+                    case COMPONENT_UNSIGNED_SHORT:
+                        v = data.getShort(at) & 0xffff;
+                        if (accessor.normalized) v /= 65535.0f;
+                        break;
+                    case COMPONENT_UNSIGNED_INT:
+                        v = data.getInt(at) & 0xffffffffL;
+                        break;
+                    default:
+                        v = data.getFloat(at);
+                        break;
+                }
+                values[e * accessor.components + c] = v;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * \brief Get the first animation driving the morph target weights of a mesh.
+     * @param mesh the mesh index.
+     * @param targets the number of morph targets of the mesh.
+     * @return the clip, null if no animation drives the mesh weights.
+     */
+    public AnimationClip getMorphClip(int mesh, int targets)
+    {
+        for (Animation animation : animations) {
+            for (AnimationChannel channel : animation.channels) {
+                if (!channel.path.equals("weights") || channel.node < 0 || channel.node >= nodes.size()
+                        || nodes.get(channel.node).mesh != mesh || channel.sampler < 0
+                        || channel.sampler >= animation.samplers.size()) {
+                    continue;
+                }
+                AnimationSampler sampler = animation.samplers.get(channel.sampler);
+                if (sampler.input < 0 || sampler.output < 0) continue;
+                return new AnimationClip(animation.name, readAccessorFloats(sampler.input), readAccessorFloats(sampler.output),
+                        targets, AnimationClip.getInterpolation(sampler.interpolation));
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer slice(int offset, int length)
+    {
+        if (offset < 0 || length < 0 || offset + length > binary.capacity()) {
+            throw new IndexOutOfBoundsException("range " + offset + "+" + length + " exceeds the binary chunk");
+        }
+        ByteBuffer bb = binary.duplicate();
+        bb.limit(offset + length);
+        bb.position(offset);
+        return bb.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,635 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * \class GltfParser
+ * \brief Parses glTF 2.0 binary files (.glb) into a GltfModel.
+ *
+ * The JSON chunk is scanned straight from its bytes, as MeshJsonParser does, by a small pull
+ * reader with the android.util.JsonReader calls (beginObject(), nextName(), nextInt()...); the
+ * binary chunk is never parsed nor copied. Plain Java, no Android dependencies: GltfLoader
+ * maps the asset, the tests and tools parse files from disk.
+ */
+public class GltfParser
+{
+    private static final int GLB_MAGIC = 0x46546C67; /**< "glTF" */
+    private static final int CHUNK_JSON = 0x4E4F534A; /**< "JSON" */
+    private static final int CHUNK_BIN = 0x004E4942; /**< "BIN\0" */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] mJson;
+    private int mPos = 0;
+
+    private GltfParser(byte[] json)
+    {
+        mJson = json;
+    }
+
+    /**
+     * \brief Parse a GLB file.
+     * @param glb the whole file content, from its position to its limit.
+     * @return the model.
+     * @throws IOException if the file is not a valid GLB file.
+     */
+    public static GltfModel parse(ByteBuffer glb) throws IOException
+    {
+        glb = glb.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = glb.position();
+        if (glb.remaining() < 12 || glb.getInt(start) != GLB_MAGIC) throw new IOException("not a glb file");
+        int version = glb.getInt(start + 4);
+        if (version != 2) throw new IOException("unsupported glb version " + version);
+        int length = glb.getInt(start + 8);
+        if (length > glb.remaining()) throw new IOException("truncated glb file");
+
+        GltfModel model = new GltfModel();
+        byte[] json = null;
+        int offset = start + 12;
+        while (offset + 8 <= start + length) {
+            int chunkLength = glb.getInt(offset);
+            int chunkType = glb.getInt(offset + 4);
+            offset += 8;
+            if (chunkLength < 0 || offset + chunkLength > start + length) throw new IOException("truncated glb chunk");
+            ByteBuffer chunk = glb.duplicate();
+            chunk.limit(offset + chunkLength);
+            chunk.position(offset);
+            if (chunkType == CHUNK_JSON && json == null) {
+                json = new byte[chunkLength];
+                chunk.get(json);
+            } else if (chunkType == CHUNK_BIN && model.binary == null) {
+                model.binary = chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            // chunks are 4 bytes aligned
+            offset += (chunkLength + 3) & ~3;
+        }
+        if (json == null) throw new IOException("missing glb JSON chunk");
+        if (model.binary == null) model.binary = ByteBuffer.allocateDirect(0).order(ByteOrder.LITTLE_ENDIAN);
+
+        GltfParser parser = new GltfParser(json);
+        try {
+            parser.readRoot(model);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("unexpected end of json");
+        } catch (NumberFormatException e) {
+            throw new IOException("bad number in json: " + e.getMessage());
+        }
+        for (GltfModel.BufferView view : model.bufferViews) {
+            if (view.buffer != 0) throw new IOException("external buffers are not supported");
+        }
+        return model;
+    }
+
+    private void readRoot(GltfModel model) throws IOException
+    {
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("bufferViews")) {
+                beginArray();
+                while (hasNext()) model.bufferViews.add(readBufferView());
+                endArray();
+            } else if (name.equals("accessors")) {
+                beginArray();
+                while (hasNext()) model.accessors.add(readAccessor());
+                endArray();
+            } else if (name.equals("meshes")) {
+                beginArray();
+                while (hasNext()) model.meshes.add(readMesh());
+                endArray();
+            } else if (name.equals("materials")) {
+                beginArray();
+                while (hasNext()) model.materials.add(readMaterial());
+                endArray();
+            } else if (name.equals("textures")) {
+                beginArray();
+                while (hasNext()) model.textures.add(readTexture());
+                endArray();
+            } else if (name.equals("images")) {
+                beginArray();
+                while (hasNext()) model.images.add(readImage());
+                endArray();
+            } else if (name.equals("nodes")) {
+                beginArray();
+                while (hasNext()) model.nodes.add(readNode());
+                endArray();
+            } else if (name.equals("animations")) {
+                beginArray();
+                while (hasNext()) model.animations.add(readAnimation());
+                endArray();
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+    }
+
+    private GltfModel.BufferView readBufferView() throws IOException
+    {
+        GltfModel.BufferView view = new GltfModel.BufferView();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("buffer")) view.buffer = nextInt();
+            else if (name.equals("byteOffset")) view.byteOffset = nextInt();
+            else if (name.equals("byteLength")) view.byteLength = nextInt();
+            else if (name.equals("byteStride")) view.byteStride = nextInt();
+            else if (name.equals("target")) view.target = nextInt();
+            else skipValue();
+        }
+        endObject();
+        return view;
+    }
+
+    private GltfModel.Accessor readAccessor() throws IOException
+    {
+        GltfModel.Accessor accessor = new GltfModel.Accessor();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("bufferView")) accessor.bufferView = nextInt();
+            else if (name.equals("byteOffset")) accessor.byteOffset = nextInt();
+            else if (name.equals("componentType")) accessor.componentType = nextInt();
+            else if (name.equals("normalized")) accessor.normalized = nextBoolean();
+            else if (name.equals("count")) accessor.count = nextInt();
+            else if (name.equals("type")) accessor.components = getComponentCount(nextString());
+            else if (name.equals("min")) accessor.min = readFloats();
+            else if (name.equals("max")) accessor.max = readFloats();
+            else skipValue();
+        }
+        endObject();
+        return accessor;
+    }
+
+    private GltfModel.Mesh readMesh() throws IOException
+    {
+        GltfModel.Mesh mesh = new GltfModel.Mesh();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("name")) {
+                mesh.name = nextString();
+            } else if (name.equals("primitives")) {
+                beginArray();
+                while (hasNext()) mesh.primitives.add(readPrimitive());
+                endArray();
+            } else if (name.equals("weights")) {
+                mesh.weights = readFloats();
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+        return mesh;
+    }
+
+    private GltfModel.Primitive readPrimitive() throws IOException
+    {
+        GltfModel.Primitive primitive = new GltfModel.Primitive();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("attributes")) {
+                beginObject();
+                while (hasNext()) {
+                    String attribute = nextName();
+                    if (attribute.equals("POSITION")) primitive.position = nextInt();
+                    else if (attribute.equals("NORMAL")) primitive.normal = nextInt();
+                    else if (attribute.equals("TEXCOORD_0")) primitive.texCoord = nextInt();
+                    else skipValue();
+                }
+                endObject();
+            }
+            else if (name.equals("indices")) primitive.indices = nextInt();
+            else if (name.equals("material")) primitive.material = nextInt();
+            else if (name.equals("mode")) primitive.mode = nextInt();
+            else if (name.equals("targets")) {
+                beginArray();
+                while (hasNext()) {
+                    int position = -1;
+                    beginObject();
+                    while (hasNext()) {
+                        if (nextName().equals("POSITION")) position = nextInt();
+                        else skipValue();
+                    }
+                    endObject();
+                    primitive.targets.add(position);
+                }
+                endArray();
+            }
+            else skipValue();
+        }
+        endObject();
+        return primitive;
+    }
+
+    private GltfModel.Material readMaterial() throws IOException
+    {
+        GltfModel.Material material = new GltfModel.Material();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("name")) {
+                material.name = nextString();
+            } else if (name.equals("pbrMetallicRoughness")) {
+                beginObject();
+                while (hasNext()) {
+                    String pbr = nextName();
+                    if (pbr.equals("baseColorFactor")) {
+                        beginArray();
+                        for (int i = 0; hasNext(); i++) {
+                            float v = (float) nextDouble();
+                            if (i < 4) material.baseColorFactor[i] = v;
+                        }
+                        endArray();
+                    } else if (pbr.equals("baseColorTexture")) {
+                        material.baseColorTexture = readTextureIndex();
+                    } else {
+                        skipValue();
+                    }
+                }
+                endObject();
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+        return material;
+    }
+
+    private int readTextureIndex() throws IOException
+    {
+        int index = -1;
+        beginObject();
+        while (hasNext()) {
+            if (nextName().equals("index")) index = nextInt();
+            else skipValue();
+        }
+        endObject();
+        return index;
+    }
+
+    private Integer readTexture() throws IOException
+    {
+        int source = -1;
+        beginObject();
+        while (hasNext()) {
+            if (nextName().equals("source")) source = nextInt();
+            else skipValue();
+        }
+        endObject();
+        return source;
+    }
+
+    private GltfModel.Image readImage() throws IOException
+    {
+        GltfModel.Image image = new GltfModel.Image();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("bufferView")) image.bufferView = nextInt();
+            else if (name.equals("mimeType")) image.mimeType = nextString();
+            else if (name.equals("uri")) image.uri = nextString();
+            else skipValue();
+        }
+        endObject();
+        return image;
+    }
+
+    private GltfModel.Node readNode() throws IOException
+    {
+        GltfModel.Node node = new GltfModel.Node();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("name")) node.name = nextString();
+            else if (name.equals("mesh")) node.mesh = nextInt();
+            else skipValue();
+        }
+        endObject();
+        return node;
+    }
+
+    private GltfModel.Animation readAnimation() throws IOException
+    {
+        GltfModel.Animation animation = new GltfModel.Animation();
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            if (name.equals("name")) {
+                animation.name = nextString();
+            } else if (name.equals("samplers")) {
+                beginArray();
+                while (hasNext()) {
+                    GltfModel.AnimationSampler sampler = new GltfModel.AnimationSampler();
+                    beginObject();
+                    while (hasNext()) {
+                        String field = nextName();
+                        if (field.equals("input")) sampler.input = nextInt();
+                        else if (field.equals("output")) sampler.output = nextInt();
+                        else if (field.equals("interpolation")) sampler.interpolation = nextString();
+                        else skipValue();
+                    }
+                    endObject();
+                    animation.samplers.add(sampler);
+                }
+                endArray();
+            } else if (name.equals("channels")) {
+                beginArray();
+                while (hasNext()) {
+                    GltfModel.AnimationChannel channel = new GltfModel.AnimationChannel();
+                    beginObject();
+                    while (hasNext()) {
+                        String field = nextName();
+                        if (field.equals("sampler")) {
+                            channel.sampler = nextInt();
+                        } else if (field.equals("target")) {
+                            beginObject();
+                            while (hasNext()) {
+                                String target = nextName();
+                                if (target.equals("node")) channel.node = nextInt();
+                                else if (target.equals("path")) channel.path = nextString();
+                                else skipValue();
+                            }
+                            endObject();
+                        } else {
+                            skipValue();
+                        }
+                    }
+                    endObject();
+                    animation.channels.add(channel);
+                }
+                endArray();
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+        return animation;
+    }
+
+    private float[] readFloats() throws IOException
+    {
+        float[] values = new float[16];
+        int count = 0;
+        beginArray();
+        while (hasNext()) {
+            float v = (float) nextDouble();
+            if (count == values.length) {
+                float[] larger = new float[count * 2];
+                System.arraycopy(values, 0, larger, 0, count);
+                values = larger;
+            }
+            values[count++] = v;
+        }
+        endArray();
+        float[] result = new float[count];
+        System.arraycopy(values, 0, result, 0, count);
+        return result;
+    }
+
+    private static int getComponentCount(String type)
+    {
+        if (type.equals("SCALAR")) return 1;
+        if (type.equals("VEC2")) return 2;
+        if (type.equals("VEC3")) return 3;
+        if (type.equals("VEC4")) return 4;
+        if (type.equals("MAT2")) return 4;
+        if (type.equals("MAT3")) return 9;
+        if (type.equals("MAT4")) return 16;
+        return 1;
+    }
+
+    // ------------------------------------------------------------------------------------
+    // pull reader
+
+    private void beginObject() throws IOException
+    {
+        expect('{');
+    }
+
+    private void endObject() throws IOException
+    {
+        expect('}');
+    }
+
+    private void beginArray() throws IOException
+    {
+        expect('[');
+    }
+
+    private void endArray() throws IOException
+    {
+        expect(']');
+    }
+
+    /**
+     * \brief Is there another member or element, moving past the ',' before it.
+     */
+    private boolean hasNext() throws IOException
+    {
+        skipSpaces();
+        byte c = mJson[mPos];
+        if (c == '}' || c == ']') return false;
+        byte previous = previousToken();
+        if (previous == '{' || previous == '[') return true;
+        if (c != ',') throw new IOException("expected ',' at " + mPos);
+        mPos++;
+        return true;
+    }
+
+    /**
+     * \brief The last non space character before mPos.
+     */
+    private byte previousToken()
+    {
+        int i = mPos - 1;
+        while (i >= 0 && isSpace(mJson[i])) i--;
+        return i >= 0 ? mJson[i] : 0;
+    }
+
+    private String nextName() throws IOException
+    {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    private String nextString() throws IOException
+    {
+        expect('"');
+        int start = mPos;
+        boolean escaped = false;
+        while (mJson[mPos] != '"') {
+            if (mJson[mPos] == '\\') {
+                escaped = true;
+                mPos++;
+            }
+            mPos++;
+        }
+        String raw = new String(mJson, start, mPos - start, UTF8);
+        mPos++;
+        return escaped ? unescape(raw) : raw;
+    }
+
+    private boolean nextBoolean() throws IOException
+    {
+        skipSpaces();
+        if (startsWith("true")) {
+            mPos += 4;
+            return true;
+        }
+        if (startsWith("false")) {
+            mPos += 5;
+            return false;
+        }
+        throw new IOException("expected a boolean at " + mPos);
+    }
+
+    /**
+     * \brief Read an int; like JsonReader, a number with a fraction or exponent is accepted if it is an exact int.
+     */
+    private int nextInt() throws IOException
+    {
+        skipSpaces();
+        int start = mPos;
+        boolean negative = mJson[mPos] == '-';
+        if (negative) mPos++;
+        long value = 0;
+        int digits = 0;
+        while (mPos < mJson.length && mJson[mPos] >= '0' && mJson[mPos] <= '9' && digits < 11) {
+            value = value * 10 + (mJson[mPos++] - '0');
+            digits++;
+        }
+        if (negative) value = -value;
+        if (digits > 0 && digits < 11 && !isNumberPart(mPos) && value == (int) value) return (int) value;
+        mPos = start;
+        double d = nextDouble();
+        if (d != (int) d) throw new IOException("expected an int at " + start);
+        return (int) d;
+    }
+
+    private double nextDouble() throws IOException
+    {
+        skipSpaces();
+        int start = mPos;
+        while (isNumberPart(mPos)) mPos++;
+        if (mPos == start) throw new IOException("expected a number at " + start);
+        return Double.parseDouble(new String(mJson, start, mPos - start, UTF8));
+    }
+
+    private boolean isNumberPart(int pos)
+    {
+        if (pos >= mJson.length) return false;
+        byte c = mJson[pos];
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private void skipValue() throws IOException
+    {
+        skipSpaces();
+        byte c = mJson[mPos];
+        if (c == '"') {
+            skipString();
+        }
+        else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = mJson[mPos];
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+                mPos++;
+            }
+            while (depth > 0);
+        }
+        else {
+            // number or literal
+            int start = mPos;
+            while (mPos < mJson.length && c != ',' && c != '}' && c != ']' && !isSpace(c)) {
+                c = mJson[++mPos];
+            }
+            if (mPos == start) throw new IOException("expected a value at " + start);
+        }
+    }
+
+    private void skipString()
+    {
+        mPos++;
+        while (mJson[mPos] != '"') {
+            if (mJson[mPos] == '\\') mPos++;
+            mPos++;
+        }
+        mPos++;
+    }
+
+    private static String unescape(String raw)
+    {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = raw.charAt(++i);
+            if (e == 'u') {
+                sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                i += 4;
+            }
+            else sb.append(e == 'n' ? '\n' : e == 't' ? '\t' : e == 'r' ? '\r' : e == 'b' ? '\b' : e == 'f' ? '\f' : e);
+        }
+        return sb.toString();
+    }
+
+    private boolean startsWith(String literal)
+    {
+        if (mPos + literal.length() > mJson.length) return false;
+        for (int i = 0; i < literal.length(); i++) {
+            if (mJson[mPos + i] != literal.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void expect(char c) throws IOException
+    {
+        skipSpaces();
+        if (mJson[mPos] != c) throw new IOException("expected '" + c + "' at " + mPos);
+        mPos++;
+    }
+
+    private void skipSpaces()
+    {
+        while (mPos < mJson.length && isSpace(mJson[mPos])) mPos++;
+    }
+
+    private static boolean isSpace(byte c)
+    {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+}
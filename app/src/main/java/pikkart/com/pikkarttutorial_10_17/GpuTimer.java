@@ -0,0 +1,149 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * \class GpuTimer
+ * \brief GPU time of single draws through EXT_disjoint_timer_query.
+ *
+ * Queries are taken from a ring and read back a few frames later, only once their result
+ * is available, so the render thread never waits for the GPU. If the ring is full the draw
+ * is simply not timed. Results go to the GPU stages of a FrameProfiler.
+ * The Java bindings only expose query objects through GLES30, so timing is available on
+ * ES 3.0+ drivers exposing the extension; everywhere else every call is a no-op.
+ * All methods must be called from the render thread.
+ */
+public class GpuTimer
+{
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF; /**< EXT_disjoint_timer_query query target */
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB; /**< EXT_disjoint_timer_query disjoint flag */
+    private static final int RING_SIZE = 16; /**< query objects in flight */
+
+    private final FrameProfiler mProfiler; /**< where results are recorded */
+    private boolean mSupported = false; /**< is the extension usable on this context */
+
+    private final int[] mQueries = new int[RING_SIZE]; /**< query object ids */
+    private final int[] mStages = new int[RING_SIZE]; /**< profiler stage of each pending query */
+    private int mHead = 0; /**< next slot to issue */
+    private int mTail = 0; /**< oldest pending slot */
+    private int mPending = 0; /**< issued queries not yet read back */
+    private boolean mActive = false; /**< is a query running */
+    private final int[] mResult = new int[1]; /**< reused read-back array */
+
+    /**
+     * \brief Constructor.
+     * @param profiler the profiler receiving GPU timings.
+     */
+    public GpuTimer(FrameProfiler profiler)
+    {
+        mProfiler = profiler;
+    }
+
+    /**
+     * \brief Check for the extension and create the query objects.
+     *
+     * Call it every time the GL context is (re)created.
+     */
+    public void init()
+    {
+        mSupported = false;
+        mHead = mTail = mPending = 0;
+        mActive = false;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) return;
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        if (version == null || extensions == null) return;
+        if (!version.startsWith("OpenGL ES 3") || !extensions.contains("GL_EXT_disjoint_timer_query")) {
+            Log.i("GpuTimer", "GPU timer queries not available, GPU timings disabled");
+            return;
+        }
+        GLES30.glGenQueries(RING_SIZE, mQueries, 0);
+        // reading the flag clears it
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, mResult, 0);
+        mSupported = GLES20.glGetError() == GLES20.GL_NO_ERROR;
+        if (!mSupported) {
+            Log.w("GpuTimer", "GPU timer queries failed to initialize, GPU timings disabled");
+        }
+    }
+
+    /**
+     * \brief Are GPU timings available.
+     * @return true if the extension is usable.
+     */
+    public boolean isSupported()
+    {
+        return mSupported;
+    }
+
+    /**
+     * \brief Start timing a draw.
+     * @param stage the profiler stage the GPU time is recorded into.
+     */
+    public void begin(int stage)
+    {
+        if (!mSupported || mActive || !mProfiler.isEnabled()) return;
+        if (mPending == RING_SIZE) return; // all queries in flight, skip this one
+        mStages[mHead] = stage;
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, mQueries[mHead]);
+        mActive = true;
+    }
+
+    /**
+     * \brief Stop timing the current draw.
+     */
+    public void end()
+    {
+        if (!mActive) return;
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        mActive = false;
+        mHead = (mHead + 1) % RING_SIZE;
+        mPending++;
+    }
+
+    /**
+     * \brief Read back the results that are ready, without blocking.
+     *
+     * Call once per frame (i.e. at the beginning of onDrawFrame).
+     */
+    public void collect()
+    {
+        if (!mSupported || mPending == 0) return;
+        GLES20.glGetIntegerv(GL_GPU_DISJOINT_EXT, mResult, 0);
+        boolean disjoint = mResult[0] != 0;
+        while (mPending > 0) {
+            int query = mQueries[mTail];
+            GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT_AVAILABLE, mResult, 0);
+            if (mResult[0] == GLES20.GL_FALSE) break;
+            GLES30.glGetQueryObjectuiv(query, GLES30.GL_QUERY_RESULT, mResult, 0);
+            // results are meaningless if the GPU got disjoint (i.e. frequency change)
+            if (!disjoint) {
+                mProfiler.record(mStages[mTail], (mResult[0] & 0xffffffffL) / 1000);
+            }
+            mTail = (mTail + 1) % RING_SIZE;
+            mPending--;
+        }
+    }
+}
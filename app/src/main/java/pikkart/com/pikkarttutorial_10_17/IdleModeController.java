@@ -0,0 +1,152 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class IdleModeController
+ * \brief Decides when the renderer can drop to a low frame rate.
+ *
+ * The renderer is idle when nothing is tracked and no video is playing for at least
+ * IDLE_DELAY_MS (so that a marker flickering in and out does not toggle the mode every
+ * frame); it goes back to active on the very first frame with tracking or playback.
+ * It also counts frames, time and battery current samples per mode for the power report.
+ * Plain Java, no Android dependencies.
+ */
+public class IdleModeController
+{
+    public static final int MODE_ACTIVE = 0; /**< full frame rate */
+    public static final int MODE_IDLE = 1; /**< reduced frame rate, cheaper frames */
+
+    public static final long IDLE_DELAY_MS = 1000; /**< inactivity needed before going idle */
+    public static final long IDLE_FRAME_INTERVAL_MS = 66; /**< about 15 fps while idle */
+
+    private int mMode = MODE_ACTIVE; /**< current mode */
+    private long mLastActivityMs = -1; /**< last time something was tracked or playing */
+    private long mLastUpdateMs = -1; /**< last update time */
+
+    private final long[] mFrames = new long[2]; /**< frames per mode */
+    private final long[] mTimeMs = new long[2]; /**< time per mode */
+    private final long[] mCurrentSum = new long[2]; /**< sum of current samples (uA) per mode */
+    private final long[] mCurrentSamples = new long[2]; /**< number of current samples per mode */
+
+    /**
+     * \brief Update the mode at the beginning of a frame.
+     * @param tracking is a marker tracked.
+     * @param videoActive is a video playing.
+     * @param nowMs the current time in milliseconds.
+     * @return the mode to render this frame with.
+     */
+    public int update(boolean tracking, boolean videoActive, long nowMs)
+    {
+        if (mLastUpdateMs >= 0) {
+            mTimeMs[mMode] += nowMs - mLastUpdateMs;
+        }
+        mLastUpdateMs = nowMs;
+        if (tracking || videoActive || mLastActivityMs < 0) {
+            mLastActivityMs = nowMs;
+            mMode = MODE_ACTIVE;
+        } else if (nowMs - mLastActivityMs >= IDLE_DELAY_MS) {
+            mMode = MODE_IDLE;
+        }
+        mFrames[mMode]++;
+        return mMode;
+    }
+
+    /**
+     * \brief Get the current mode.
+     * @return MODE_ACTIVE or MODE_IDLE.
+     */
+    public int getMode()
+    {
+        return mMode;
+    }
+
+    /**
+     * \brief Get the minimum interval between frames for the current mode.
+     * @return the interval in milliseconds, 0 for no limit.
+     */
+    public long getFrameIntervalMs()
+    {
+        return mMode == MODE_IDLE ? IDLE_FRAME_INTERVAL_MS : 0;
+    }
+
+    /**
+     * \brief Add a battery current sample to the current mode.
+     * @param microAmps the battery current in microamperes.
+     */
+    public void addCurrentSample(long microAmps)
+    {
+        mCurrentSum[mMode] += Math.abs(microAmps);
+        mCurrentSamples[mMode]++;
+    }
+
+    /**
+     * \brief Get the number of frames rendered in a mode.
+     * @param mode MODE_ACTIVE or MODE_IDLE.
+     * @return the number of frames.
+     */
+    public long getFrames(int mode)
+    {
+        return mFrames[mode];
+    }
+
+    /**
+     * \brief Get the time spent in a mode.
+     * @param mode MODE_ACTIVE or MODE_IDLE.
+     * @return the time in milliseconds.
+     */
+    public long getTimeMs(int mode)
+    {
+        return mTimeMs[mode];
+    }
+
+    /**
+     * \brief Get the average battery current measured in a mode.
+     * @param mode MODE_ACTIVE or MODE_IDLE.
+     * @return the average current in microamperes, -1 if no sample.
+     */
+    public long getAverageCurrent(int mode)
+    {
+        return mCurrentSamples[mode] == 0 ? -1 : mCurrentSum[mode] / mCurrentSamples[mode];
+    }
+
+    /**
+     * \brief Build a one line report of frames, frame rate and current draw per mode.
+     * @return the report.
+     */
+    public String getReport()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int mode = MODE_ACTIVE; mode <= MODE_IDLE; mode++) {
+            if (mode != MODE_ACTIVE) sb.append(", ");
+            sb.append(mode == MODE_ACTIVE ? "active: " : "idle: ");
+            sb.append(mFrames[mode]).append(" frames in ").append(mTimeMs[mode] / 1000).append(" s");
+            if (mTimeMs[mode] > 0) {
+                sb.append(" (").append(mFrames[mode] * 1000 / mTimeMs[mode]).append(" fps)");
+            }
+            long current = getAverageCurrent(mode);
+            if (current >= 0) {
+                sb.append(" avg ").append(current / 1000).append(" mA");
+            }
+        }
+        return sb.toString();
+    }
+}
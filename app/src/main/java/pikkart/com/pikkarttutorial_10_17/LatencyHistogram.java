@@ -0,0 +1,163 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * \class LatencyHistogram
+ * \brief A lock-free log-linear histogram of durations (in microseconds).
+ *
+ * Values below 64us get their own bucket, larger values are grouped in 32 sub-buckets
+ * per power of two (about 3% relative error). Recording never allocates or locks, so it
+ * can be called from the render thread while another thread reads percentiles.
+ * Plain Java, no Android dependencies.
+ */
+public class LatencyHistogram
+{
+    private static final int LINEAR_BUCKETS = 64; /**< one bucket per microsecond below this value */
+    private static final int SUB_BUCKET_BITS = 5; /**< 32 sub-buckets per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 6; /**< log2(LINEAR_BUCKETS) */
+    private static final int MAX_EXPONENT = 36; /**< about 19 hours, anything above is clamped */
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT); /**< per bucket counts */
+    private final AtomicLong mTotalCount = new AtomicLong(); /**< number of recorded values */
+    private final AtomicLong mTotalSum = new AtomicLong(); /**< sum of recorded values */
+    private final AtomicLong mMax = new AtomicLong(); /**< largest recorded value */
+
+    /**
+     * \brief Map a value to its bucket index.
+     * @param value the value in microseconds.
+     * @return the bucket index.
+     */
+    static int bucketIndex(long value)
+    {
+        if (value < LINEAR_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * \brief Get the highest value that falls in a bucket.
+     * @param index the bucket index.
+     * @return the bucket upper bound in microseconds.
+     */
+    static long bucketUpperBound(int index)
+    {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long step = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * step - 1;
+    }
+
+    /**
+     * \brief Record a value.
+     * @param micros the value in microseconds.
+     */
+    public void record(long micros)
+    {
+        mCounts.incrementAndGet(bucketIndex(micros));
+        mTotalCount.incrementAndGet();
+        mTotalSum.addAndGet(micros);
+        long max = mMax.get();
+        while (micros > max && !mMax.compareAndSet(max, micros)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * \brief Get the number of recorded values.
+     * @return the number of values.
+     */
+    public long getCount()
+    {
+        return mTotalCount.get();
+    }
+
+    /**
+     * \brief Get the mean of the recorded values.
+     * @return the mean in microseconds, 0 if empty.
+     */
+    public long getMean()
+    {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : mTotalSum.get() / count;
+    }
+
+    /**
+     * \brief Get the largest recorded value.
+     * @return the maximum in microseconds.
+     */
+    public long getMax()
+    {
+        return mMax.get();
+    }
+
+    /**
+     * \brief Get the value below which a given fraction of the recorded values falls.
+     * @param percentile the percentile, between 0 and 100.
+     * @return the percentile value in microseconds (bucket upper bound), 0 if empty.
+     */
+    public long getPercentile(double percentile)
+    {
+        long count = mTotalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * \brief Clear all the recorded values.
+     *
+     * Values recorded concurrently with a reset may be partially lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mTotalCount.set(0);
+        mTotalSum.set(0);
+        mMax.set(0);
+    }
+}
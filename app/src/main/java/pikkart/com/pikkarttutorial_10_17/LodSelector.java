@@ -0,0 +1,143 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class LodSelector
+ * \brief Chooses the level of detail of a mesh from its size on screen.
+ *
+ * The screen coverage is the radius of the projected bounding sphere in normalized device
+ * coordinates (1 = half the viewport). Level l is used below FULL_DETAIL_COVERAGE / 2^(l-1),
+ * so that the triangle density on screen stays about the same when each level halves the
+ * triangle count. A level only changes once the coverage is HYSTERESIS past its threshold,
+ * to avoid popping back and forth when the marker size is close to a threshold.
+ * It also counts the triangles drawn against the full resolution ones, from the level actually
+ * drawn (recordDrawn()), which may be coarser than the selected one while the finer levels are
+ * still streaming. Plain Java, no Android dependencies.
+ */
+public class LodSelector
+{
+    public static final float FULL_DETAIL_COVERAGE = 0.3f; /**< coverage below which level 1 is used */
+    public static final float HYSTERESIS = 0.15f; /**< relative distance from a threshold needed to switch */
+
+    private final int[] mTriangles; /**< triangles of each level */
+    private int mLevel = 0; /**< current level */
+
+    private long mFrames = 0; /**< number of selections */
+    private long mFullTriangles = 0; /**< triangles that the full resolution mesh would have drawn */
+    private long mDrawnTriangles = 0; /**< triangles actually drawn */
+
+    /**
+     * \brief Constructor.
+     * @param triangles number of triangles of each level, full resolution first.
+     */
+    public LodSelector(int[] triangles)
+    {
+        mTriangles = triangles.clone();
+    }
+
+    /**
+     * \brief Compute the screen coverage of a bounding sphere.
+     * @param mvp the model-view-projection matrix (column major, as android.opengl.Matrix).
+     * @param sphere the bounding sphere center xyz and radius, in model space.
+     * @return the projected radius in normalized device coordinates, -1 if the center is behind the camera.
+     */
+    public static float computeCoverage(float[] mvp, float[] sphere)
+    {
+        float w = mvp[3] * sphere[0] + mvp[7] * sphere[1] + mvp[11] * sphere[2] + mvp[15];
+        if (w <= 0) return -1;
+        // the largest scale of the x and y rows bounds the projected radius
+        float sx = mvp[0] * mvp[0] + mvp[4] * mvp[4] + mvp[8] * mvp[8];
+        float sy = mvp[1] * mvp[1] + mvp[5] * mvp[5] + mvp[9] * mvp[9];
+        return sphere[3] * (float) Math.sqrt(Math.max(sx, sy)) / w;
+    }
+
+    /**
+     * \brief Get the coverage below which a level is used.
+     * @param level the level (greater than 0).
+     * @return the coverage threshold.
+     */
+    public static float getThreshold(int level)
+    {
+        return FULL_DETAIL_COVERAGE / (1 << (level - 1));
+    }
+
+    /**
+     * \brief Select the level to draw.
+     * @param coverage the screen coverage, as returned by computeCoverage. If negative the current level is kept.
+     * @return the level to draw, 0 being the full resolution.
+     */
+    public int select(float coverage)
+    {
+        if (coverage >= 0) {
+            while (mLevel + 1 < mTriangles.length && coverage < getThreshold(mLevel + 1) * (1 - HYSTERESIS)) {
+                mLevel++;
+            }
+            while (mLevel > 0 && coverage > getThreshold(mLevel) * (1 + HYSTERESIS)) {
+                mLevel--;
+            }
+        }
+        return mLevel;
+    }
+
+    /**
+     * \brief Count the triangles of a draw in the report.
+     * @param level the level drawn, 0 being the full resolution.
+     */
+    public void recordDrawn(int level)
+    {
+        mFrames++;
+        mFullTriangles += mTriangles[0];
+        mDrawnTriangles += mTriangles[level];
+    }
+
+    /**
+     * \brief Get the current level.
+     * @return the level, 0 being the full resolution.
+     */
+    public int getLevel()
+    {
+        return mLevel;
+    }
+
+    /**
+     * \brief Build a one line report of the triangles saved by the level selection.
+     * @return the report.
+     */
+    public String getReport()
+    {
+        if (mFrames == 0) return "no frames";
+        long full = mFullTriangles / mFrames;
+        long drawn = mDrawnTriangles / mFrames;
+        return drawn + " of " + full + " triangles per frame (" + (100 - 100 * drawn / Math.max(full, 1))
+                + "% saved), level " + mLevel + " of " + mTriangles.length;
+    }
+
+    /**
+     * \brief Reset the triangle counters.
+     */
+    public void resetStats()
+    {
+        mFrames = 0;
+        mFullTriangles = 0;
+        mDrawnTriangles = 0;
+    }
+}
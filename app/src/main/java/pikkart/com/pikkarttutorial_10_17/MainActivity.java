@@ -22,6 +22,8 @@ import java.util.List;
 public class MainActivity extends AppCompatActivity implements IRecognitionListener {
     private int m_permissionCode = 100; // unique permission request code
     private ARView m_arView = null;
+    // set to true to record frame timings and show them on screen
+    private static final boolean SHOW_FRAME_STATS = false;
 
     private void initLayout() {
         setContentView(R.layout.activity_main);
@@ -29,6 +31,12 @@ public class MainActivity extends AppCompatActivity implements IRecognitionListe
         m_arView = new ARView(this);
         addContentView(m_arView, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
 
+        if (SHOW_FRAME_STATS) {
+            m_arView.getFrameProfiler().setEnabled(true);
+            addContentView(new FrameStatsOverlay(this, m_arView.getFrameProfiler()),
+                    new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT));
+        }
+
         RecognitionFragment t_cameraFragment = ((RecognitionFragment) getFragmentManager().findFragmentById(R.id.ar_fragment));
         t_cameraFragment.startRecognition(
                 new RecognitionOptions(
@@ -22,30 +22,35 @@ package pikkart.com.pikkarttutorial_10_17;// change this to your package name
 
 import android.content.res.AssetManager;
 import android.opengl.GLES20;
+import android.os.Build;
 import android.support.annotation.NonNull;
-import android.util.JsonReader;
 import android.util.Log;
 
-import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * \class Mesh
  * \brief A Mesh: a collection of vertices, normals, texture coordinates and related opengl rendering functions
+ *
+ * A mesh can be made of sub-meshes with their own material (texture and color), sharing the
+ * mesh buffers. Each sub-mesh is a draw of a RenderList, which sorts the draws of all the
+ * meshes of a frame to minimize state changes.
  */
-public class Mesh
+public class Mesh implements RenderList.Submitter
 {
     private String mName; /**< mesh name */
     /**
@@ -60,13 +65,75 @@ public class Mesh
     private ByteBuffer mNormals_Buffer; /**< normals data */
     private ByteBuffer mIndex_Buffer; /**< triangle indices data */
 
-    private int mIndices_Number = 0; /**< number of indices */
+    private int mIndices_Number = 0; /**< number of indices, 0 if not indexed */
     private int mVertices_Number = 0; /**< number of vertices */
 
+    private int mVertices_Type = GLES20.GL_FLOAT; /**< vertices component type */
+    private int mVertices_Stride = 0; /**< vertices stride in bytes, 0 for tightly packed */
+    private int mTexCoords_Type = GLES20.GL_FLOAT; /**< texture coordinates component type */
+    private boolean mTexCoords_Normalized = false; /**< are integer texture coordinates normalized */
+    private int mTexCoords_Stride = 0; /**< texture coordinates stride in bytes, 0 for tightly packed */
+    private int mIndex_Type = GLES20.GL_UNSIGNED_SHORT; /**< indices type */
+
+    private static final int LOD_LEVELS = 4; /**< levels of detail generated for json meshes */
+    private int[] mLod_Offsets; /**< first index of each level of detail */
+    private int[] mLod_Counts; /**< number of indices of each level of detail */
+    private float[] mBounds; /**< bounding sphere (center xyz, radius), null if unknown */
+    private float[] mBox; /**< bounding box (min xyz, max xyz), null if unknown */
+    private final Frustum mFrustum = new Frustum(); /**< view frustum of the last draw, for culling */
+    private LodSelector mLodSelector; /**< level of detail selection, null if there is a single level */
+    private int mFinest_Level = 0; /**< finest level uploaded (levels stream in coarsest first), mLod_Counts.length if none */
+
+    /** the conversion done on json and .mshz meshes, part of their DiskCache key */
+    private static final String MESH_CONVERSION = "pmesh3 scale=-0.2 offset=0.5,0.5,0 weld lods=" + LOD_LEVELS + " vcache=" + MeshOptimizer.CACHE_SIZE;
+    private final ConcurrentLinkedQueue<ProgressiveMesh.Batch> mPending_Batches = new ConcurrentLinkedQueue<ProgressiveMesh.Batch>(); /**< batches read but not uploaded yet */
+
+    private int mVertices_VBO = 0; /**< vertices opengl buffer id */
+    private int mTexCoords_VBO = 0; /**< texture coordinates opengl buffer id */
+    private int mIndex_VBO = 0; /**< triangle indices opengl buffer id */
+    private int mVertexArray = 0; /**< vertex array object recording the attribute setup (render thread), 0 until the first draw, if not supported or morphing */
+
     private int mTexture_GL_ID = 0; /**< mesh texture opengl id */
+    private int mTexture_Size = RenderUtils.TEXTURE_SIZE_FULL; /**< longest side the textures need on screen */
+
+    /**
+     * \brief A part of the mesh drawn with its own material: an index range, a texture and a color.
+     */
+    private static class SubMesh
+    {
+        int first = 0; /**< first index (first vertex if not indexed) */
+        int count = 0; /**< number of indices (vertices if not indexed) */
+        int image = -1; /**< glTF image of the texture, -1 for the mesh texture */
+        int texture = 0; /**< texture opengl id, 0 for the mesh texture */
+        float[] baseColor = WHITE; /**< color multiplied with the texture */
+    }
+
+    private static final float[] WHITE = { 1.0f, 1.0f, 1.0f, 1.0f };
+    private SubMesh[] mSubMeshes = null; /**< the sub-meshes, null for a single material over the levels of detail */
+    private HashMap<Integer, TextureData> mMaterial_Images = null; /**< decoded glTF images, until uploaded */
+    private final float[] mDraw_MVP = new float[16]; /**< model-view-projection matrix of the submitted draws */
+    private int mDraw_Level = 0; /**< level of detail of the submitted draws */
+    private int mDraw_VertexHandle = -1; /**< attribute and uniform locations of the program in use */
+    private int mDraw_TexCoordHandle = -1;
+    private int mDraw_MVPHandle = -1;
+    private int mDraw_BaseColorHandle = -1;
+    private final RenderList mDraw_List = new RenderList(); /**< draws of DrawMesh() */
 
     private int mProgram_GL_ID = 0; /**< mesh shader program opengl id */
 
+    private static final int MAX_MORPH_TARGETS = 4; /**< morph targets blended per draw, the vertex attributes GLES 2.0 has left */
+    private static final String[] MORPH_ATTRIBUTES = { "morphTarget0", "morphTarget1", "morphTarget2", "morphTarget3" };
+    private ByteBuffer[] mMorph_Buffers = null; /**< position deltas of each morph target, until uploaded */
+    private int[] mMorph_Types = null; /**< position deltas component type of each morph target */
+    private boolean[] mMorph_Normalized = null; /**< are integer position deltas normalized */
+    private int[] mMorph_Strides = null; /**< position deltas stride in bytes of each morph target */
+    private int[] mMorph_VBOs = null; /**< position deltas opengl buffer ids, null if the mesh has no morph targets */
+    private float[] mMorph_Weights = null; /**< current weight of each morph target */
+    private final int[] mMorph_Active = new int[MAX_MORPH_TARGETS]; /**< morph targets drawn, largest weights first */
+    private final float[] mMorph_DrawWeights = new float[MAX_MORPH_TARGETS]; /**< morphWeights uniform of the draw, 0 past the targets drawn */
+    private AnimationPlayer mAnimation = null; /**< animates mMorph_Weights, null if the weights are static */
+    private int mMorph_Program_GL_ID = 0; /**< morphing shader program opengl id */
+
     /**
      * This mesh vertex shader code. A very basic vetex shader
      */
@@ -79,26 +146,46 @@ public class Mesh
             + "   gl_Position = modelViewProjectionMatrix * vertexPosition; \n"
             + "   texCoord = vertexTexCoord; \n"
             + "} \n";
+    /**
+     * The vertex shader of meshes with morph targets: the weighted position deltas of up to
+     * four targets are added to the base position.
+     */
+    public static final String MESH_MORPH_VERTEX_SHADER = " \n" + "\n"
+            + "attribute vec4 vertexPosition; \n"
+            + "attribute vec2 vertexTexCoord; \n"
+            + "attribute vec3 morphTarget0; \n"
+            + "attribute vec3 morphTarget1; \n"
+            + "attribute vec3 morphTarget2; \n"
+            + "attribute vec3 morphTarget3; \n" + "\n"
+            + "varying vec2 texCoord; \n" + "\n"
+            + "uniform mat4 modelViewProjectionMatrix; \n"
+            + "uniform vec4 morphWeights; \n" + "\n"
+            + "void main() \n" + "{ \n"
+            + "   vec3 position = vertexPosition.xyz + morphWeights.x * morphTarget0 + morphWeights.y * morphTarget1 \n"
+            + "           + morphWeights.z * morphTarget2 + morphWeights.w * morphTarget3; \n"
+            + "   gl_Position = modelViewProjectionMatrix * vec4(position, 1.0); \n"
+            + "   texCoord = vertexTexCoord; \n"
+            + "} \n";
     /**
      * This mesh fragment shader code. A very basic fragment shader
      */
     public static final String MESH_FRAGMENT_SHADER = " \n" + "\n"
             + "precision mediump float; \n" + " \n"
             + "varying vec2 texCoord; \n" + " \n"
-            + "uniform sampler2D texSampler2D; \n" + " \n"
+            + "uniform sampler2D texSampler2D; \n"
+            + "uniform vec4 baseColor; \n" + " \n"
             + "void main() \n" + "{ \n"
-            + "   gl_FragColor = texture2D(texSampler2D, texCoord); \n"
+            + "   gl_FragColor = texture2D(texSampler2D, texCoord) * baseColor; \n"
             + "} \n";
 
     /**
      * \brief Generate a ByteBuffer from a float array.
      * @param array the float array.
-     * @return the generated ByteBuffer.
+     * @return the generated ByteBuffer, from the DirectBufferArena.
      */
     protected ByteBuffer fillBuffer(float[] array)
     {
-        ByteBuffer bb = ByteBuffer.allocateDirect(4 * array.length);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer bb = DirectBufferArena.allocate(4 * array.length);
         for (float d : array) {
             bb.putFloat(d);
         }
@@ -109,12 +196,11 @@ public class Mesh
     /**
      * \brief Generate a ByteBuffer from a short array.
      * @param array the short array.
-     * @return the generated ByteBuffer.
+     * @return the generated ByteBuffer, from the DirectBufferArena.
      */
     protected ByteBuffer fillBuffer(short[] array)
     {
-        ByteBuffer bb = ByteBuffer.allocateDirect(2 * array.length);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer bb = DirectBufferArena.allocate(2 * array.length);
         for (short s : array) {
             bb.putShort(s);
         }
@@ -123,182 +209,769 @@ public class Mesh
     }
 
     /**
-     * \brief Load mesh data from a json file stored in the app asset dir.
+     * \brief Parse mesh data from a json file stored in the app asset dir.
+     *
+     * The numbers are parsed on all cores from API level 21 (see MeshJsonParser).
      * @param am the app AssetManager.
      * @param file the file to load
-     * @return true on success.
+     * @return the mesh data, null on failure.
      */
-    private boolean LoadMesh(AssetManager am, String file)
+    private static MeshData ParseMeshJson(AssetManager am, String file)
     {
         InputStream is;
         try {
-            is = am.open(file);
+            is = am.open(file, AssetManager.ACCESS_STREAMING);
         } catch(IOException e) {
             Log.e("appTest","Error loading mesh file from app asset, msg:" + e.getMessage());
-            return false;
+            return null;
         }
-        Reader isReader = new InputStreamReader(is);
-        JsonReader reader = new JsonReader(isReader);
 
-        mVertices_Buffer=ByteBuffer.allocateDirect(524288);
-        mVertices_Buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] json = MeshJsonParser.readFully(is);
+            return MeshJsonParser.parse(json, Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? MeshJsonParser.getSharedPool() : null);
+        }
+        catch (Exception e) {
+            Log.e("appTest","Error parsing mesh json, msg:" + e.getMessage());
+            return null;
+        }
+        finally {
+            closeQuietly(is);
+        }
+    }
 
-        mTexCoords_Buffer=ByteBuffer.allocateDirect(524288);
-        mTexCoords_Buffer.order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * \brief Decode a compressed mesh (.mshz, see MeshCodec) stored in the app asset dir.
+     * @param am the app AssetManager.
+     * @param file the file to load
+     * @return the mesh data, null on failure.
+     */
+    private static MeshData DecodeMesh(AssetManager am, String file)
+    {
+        InputStream is = null;
+        try {
+            is = new BufferedInputStream(am.open(file, AssetManager.ACCESS_STREAMING), 64 * 1024);
+            return MeshCodec.decode(is);
+        } catch (IOException e) {
+            Log.e("Mesh", "Error decoding mesh file " + file + ", msg:" + e.getMessage());
+            return null;
+        } finally {
+            if (is != null) closeQuietly(is);
+        }
+    }
 
-        mNormals_Buffer=ByteBuffer.allocateDirect(524288);
-        mNormals_Buffer.order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * \brief Load mesh data from a json or compressed (.mshz) file stored in the app asset dir.
+     *
+     * Parsed json data is welded (MeshWelder), simplified into a LOD chain (MeshSimplifier) and reordered
+     * for the vertex cache (MeshOptimizer); compressed meshes were already processed by the encoder.
+     * The result is kept in the AssetCache, so reloading after a GL context loss does not parse or
+     * optimize the file again, and in the DiskCache in the progressive format for the next launches.
+     * @param am the app AssetManager.
+     * @param file the file to load
+     * @param cacheKey the DiskCache key of the converted mesh, null not to store it.
+     * @return true on success.
+     */
+    private boolean LoadMesh(AssetManager am, String file, String cacheKey)
+    {
+        MeshData data = AssetCache.getMesh(file);
+        if (data == null && file.endsWith(".mshz")) {
+            data = DecodeMesh(am, file);
+            if (data == null) return false;
+            AssetCache.putMesh(file, data);
+            WriteProgressive(cacheKey, data);
+        }
+        if (data == null) {
+            data = ParseMeshJson(am, file);
+            if (data == null) return false;
+            int parsedVertices = data.getVertexCount();
+            int weldedVertices = MeshWelder.weld(data);
+            if (parsedVertices > 0) {
+                Log.i("Mesh", file + ": welded " + parsedVertices + " -> " + weldedVertices + " vertices ("
+                        + (100 * weldedVertices / parsedVertices) + "%)");
+            }
+            MeshSimplifier.buildLods(data, LOD_LEVELS);
+            float acmrBefore = MeshOptimizer.computeACMR(data.indices, data.getVertexCount(), MeshOptimizer.CACHE_SIZE);
+            MeshOptimizer.optimize(data);
+            float acmrAfter = MeshOptimizer.computeACMR(data.indices, data.getVertexCount(), MeshOptimizer.CACHE_SIZE);
+            Log.i("Mesh", file + ": " + data.getTriangleCount() + " triangles, ACMR " + acmrBefore + " -> " + acmrAfter);
+            AssetCache.putMesh(file, data);
+            WriteProgressive(cacheKey, data);
+        }
+
+        mName = data.name;
+        mVertices_Buffer = fillBuffer(data.positions);
+        mTexCoords_Buffer = fillBuffer(data.texCoords);
+        mNormals_Buffer = fillBuffer(data.normals);
+        mIndex_Buffer = fillBuffer(data.getShortIndices());
+        mVertices_Number = data.getVertexCount();
+        mIndices_Number = data.getIndexCount();
+
+        int levels = data.getLodCount();
+        mLod_Offsets = new int[levels];
+        mLod_Counts = new int[levels];
+        int[] triangles = new int[levels];
+        for (int l = 0; l < levels; l++) {
+            mLod_Offsets[l] = data.lodOffsets == null ? 0 : data.lodOffsets[l];
+            mLod_Counts[l] = data.lodCounts == null ? mIndices_Number : data.lodCounts[l];
+            triangles[l] = mLod_Counts[l] / 3;
+        }
+        mLodSelector = levels > 1 ? new LodSelector(triangles) : null;
+        mBounds = data.computeBoundingSphere();
+        mBox = data.computeBoundingBox();
+        mFinest_Level = 0;
+
+        return true;
+    }
+
+    /**
+     * \brief Get the DiskCache key of a converted mesh.
+     * @param am the app AssetManager.
+     * @param file the mesh asset path.
+     * @return the key, null if the cache is disabled or the asset cannot be read.
+     */
+    private static String GetCacheKey(AssetManager am, String file)
+    {
+        if (!DiskCache.isEnabled()) return null;
+        InputStream is = null;
+        try {
+            is = am.open(file, AssetManager.ACCESS_STREAMING);
+            return DiskCache.computeKey(is, MESH_CONVERSION);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (is != null) closeQuietly(is);
+        }
+    }
 
-        mIndex_Buffer=ByteBuffer.allocateDirect(524288);
-        mIndex_Buffer.order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * \brief Store the progressive version of a converted mesh in the DiskCache.
+     * @param cacheKey the DiskCache key, null not to store it.
+     * @param data the mesh data, with its LOD chain.
+     */
+    private static void WriteProgressive(String cacheKey, MeshData data)
+    {
+        if (cacheKey == null) return;
+        try {
+            if (!DiskCache.put(cacheKey, ProgressiveMesh.write(data))) {
+                Log.w("Mesh", "Could not cache progressive mesh " + data.name);
+            }
+        } catch (IOException e) {
+            Log.w("Mesh", "Could not write progressive mesh " + data.name + ", msg:" + e.getMessage());
+        }
+    }
 
+    /**
+     * \brief Start loading a mesh from its progressive version.
+     *
+     * The version stored in the DiskCache is memory mapped, its batches being slices of the
+     * mapping. The coarsest level is uploaded right away, so the mesh can be drawn as soon as
+     * this returns; the other levels are uploaded by StreamBatches(), within a per frame budget.
+     * @param cacheKey the DiskCache key of the converted mesh, null if there is none.
+     * @return false if there is no usable progressive version.
+     */
+    private boolean StartProgressive(String cacheKey)
+    {
+        if (cacheKey == null) return false;
+        ByteBuffer in = DiskCache.get(cacheKey);
+        if (in == null) return false;
+
+        ProgressiveMesh.Header header;
+        ProgressiveMesh.Batch first;
+        ProgressiveMesh.Batch[] rest;
+        try {
+            header = ProgressiveMesh.readHeader(in);
+            first = ProgressiveMesh.readBatch(in, header);
+            rest = new ProgressiveMesh.Batch[first.level];
+            for (int i = 0; i < rest.length; i++) {
+                rest[i] = ProgressiveMesh.readBatch(in, header);
+            }
+        } catch (IOException e) {
+            // the CRC matched, so this was written by another version of the format
+            Log.e("Mesh", "Error reading progressive mesh, msg:" + e.getMessage());
+            return false;
+        }
+
+        int levels = header.lodCounts.length;
+        mName = header.name;
+        mVertices_Number = header.vertexCount;
+        mLod_Counts = header.lodCounts.clone();
+        mLod_Offsets = ProgressiveMesh.getLodOffsets(header);
+        int[] triangles = new int[levels];
         mIndices_Number = 0;
-        mVertices_Number = 0;
+        for (int l = 0; l < levels; l++) {
+            triangles[l] = mLod_Counts[l] / 3;
+            mIndices_Number += mLod_Counts[l];
+        }
+        mLodSelector = levels > 1 ? new LodSelector(triangles) : null;
+        mBounds = header.bounds;
+        mBox = header.box;
+        mFinest_Level = levels;
 
+        // full size buffers, filled batch by batch
+        int[] ids = new int[3];
+        GLES20.glGenBuffers(3, ids, 0);
+        mVertices_VBO = ids[0];
+        mTexCoords_VBO = ids[1];
+        mIndex_VBO = ids[2];
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertices_VBO);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices_Number * 3 * 4, null, GLES20.GL_STATIC_DRAW);
+        if (header.hasTexCoords) {
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTexCoords_VBO);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices_Number * 2 * 4, null, GLES20.GL_STATIC_DRAW);
+        }
+        else {
+            RenderUtils.deleteBuffer(mTexCoords_VBO);
+            mTexCoords_VBO = 0;
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_VBO);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndices_Number * 2, null, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mVertices_VBO, mVertices_Number * 3 * 4, "positions");
+        GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mTexCoords_VBO, mVertices_Number * 2 * 4, "texture coordinates");
+        GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mIndex_VBO, mIndices_Number * 2, "indices");
+
+        UploadBatch(first, Integer.MAX_VALUE);
+        mFinest_Level = first.level;
+        RenderUtils.checkGLError("StartProgressive");
+
+        for (ProgressiveMesh.Batch batch : rest) {
+            batch.normals = null; // not used by the shaders
+            mPending_Batches.add(batch);
+        }
+        return true;
+    }
+
+    private static void closeQuietly(InputStream is)
+    {
         try {
-            reader.beginObject();
-            do {
-                String txt = reader.nextName();
-                if(txt.compareTo("name")==0) {
-                    String val = reader.nextString();
-                    mName = val;
+            is.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * \brief Upload the streamed levels, within a budget.
+     *
+     * Call once per frame from the render thread. A level becomes drawable once all its data is uploaded.
+     * @param budgetBytes the maximum number of bytes to upload.
+     */
+    public void StreamBatches(int budgetBytes)
+    {
+        ProgressiveMesh.Batch batch;
+        while (budgetBytes > 0 && (batch = mPending_Batches.peek()) != null) {
+            budgetBytes -= UploadBatch(batch, budgetBytes);
+            if (batch.positions.hasRemaining() || (batch.texCoords != null && batch.texCoords.hasRemaining())
+                    || batch.indices.hasRemaining()) {
+                break;
+            }
+            mPending_Batches.poll();
+            mFinest_Level = Math.min(mFinest_Level, batch.level);
+        }
+    }
+
+    /**
+     * \brief Is there something to draw yet.
+     * @return true once the mesh has at least one level uploaded.
+     */
+    public boolean IsDrawable()
+    {
+        return mLod_Counts != null && mFinest_Level < mLod_Counts.length;
+    }
+
+    /**
+     * \brief Upload (part of) a progressive mesh batch.
+     * @param batch the batch, its buffers positions tell what has been uploaded already.
+     * @param budget the maximum number of bytes to upload.
+     * @return the number of bytes uploaded.
+     */
+    private int UploadBatch(ProgressiveMesh.Batch batch, int budget)
+    {
+        int used = UploadRange(GLES20.GL_ARRAY_BUFFER, mVertices_VBO, batch.firstVertex * 3 * 4, batch.positions, budget);
+        if (batch.texCoords != null && mTexCoords_VBO != 0) {
+            used += UploadRange(GLES20.GL_ARRAY_BUFFER, mTexCoords_VBO, batch.firstVertex * 2 * 4, batch.texCoords, budget - used);
+        }
+        used += UploadRange(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_VBO, mLod_Offsets[batch.level] * 2, batch.indices, budget - used);
+        return used;
+    }
+
+    private static int UploadRange(int target, int vbo, int dstOffset, ByteBuffer src, int budget)
+    {
+        int size = Math.min(src.remaining(), budget);
+        // partial uploads stay aligned on whole values
+        if (size < src.remaining()) size &= ~3;
+        if (size <= 0) return 0;
+        GLES20.glBindBuffer(target, vbo);
+        GLES20.glBufferSubData(target, dstOffset + src.position(), size, src.slice());
+        GLES20.glBindBuffer(target, 0);
+        src.position(src.position() + size);
+        return size;
+    }
+
+    /**
+     * \brief Load mesh data from a glTF binary file (.glb) stored in the app asset dir.
+     *
+     * The triangle primitives of the first mesh having some become sub-meshes, with the
+     * texture and color of their material. A single primitive goes to OpenGL without being
+     * parsed or copied: vertex and index data are slices of the (memory mapped) file, only 32
+     * bit indices are converted to 16 bit. Several primitives are merged into shared buffers.
+     * @param am the app AssetManager.
+     * @param file the file to load
+     * @return true on success.
+     */
+    private boolean LoadGltf(AssetManager am, String file)
+    {
+        GltfModel model = GltfLoader.load(am, file);
+        if (model == null) return false;
+
+        ArrayList<GltfModel.Primitive> primitives = new ArrayList<GltfModel.Primitive>();
+        int meshIndex = -1;
+        for (int m = 0; m < model.meshes.size() && meshIndex < 0; m++) {
+            GltfModel.Mesh mesh = model.meshes.get(m);
+            for (GltfModel.Primitive p : mesh.primitives) {
+                if (p.mode == GltfModel.MODE_TRIANGLES && p.position >= 0) primitives.add(p);
+            }
+            if (!primitives.isEmpty()) {
+                meshIndex = m;
+                mName = mesh.name;
+            }
+        }
+        if (primitives.isEmpty()) {
+            Log.e("Mesh", "No triangle primitive in " + file);
+            return false;
+        }
+
+        if (primitives.size() == 1) {
+            GltfModel.Primitive primitive = primitives.get(0);
+            if (!LoadGltfPrimitive(model, primitive, file)) return false;
+            SubMesh sub = new SubMesh();
+            sub.count = mIndices_Number > 0 ? mIndices_Number : mVertices_Number;
+            mSubMeshes = new SubMesh[] { sub };
+            if (!primitive.targets.isEmpty()) LoadMorphTargets(model, meshIndex, primitive, file);
+        }
+        else {
+            if (!LoadGltfPrimitives(model, primitives, file)) return false;
+            for (GltfModel.Primitive p : primitives) {
+                if (!p.targets.isEmpty()) {
+                    Log.w("Mesh", file + " has several primitives, morph targets ignored");
+                    break;
+                }
+            }
+        }
+        LoadMaterials(am, model, primitives, file);
+        return true;
+    }
+
+    /**
+     * \brief Load a glTF primitive without copying it.
+     * @param model the glTF model.
+     * @param primitive the primitive.
+     * @param file the file name, for the logs.
+     * @return true on success.
+     */
+    private boolean LoadGltfPrimitive(GltfModel model, GltfModel.Primitive primitive, String file)
+    {
+        GltfModel.Accessor position = model.accessors.get(primitive.position);
+        mVertices_Buffer = model.getAccessorData(primitive.position);
+        mVertices_Type = position.componentType;
+        mVertices_Stride = model.getAccessorStride(primitive.position);
+        mVertices_Number = position.count;
+        mBounds = null;
+        mBox = null;
+        if (position.min != null && position.max != null && position.min.length >= 3 && position.max.length >= 3) {
+            mBox = new float[] { position.min[0], position.min[1], position.min[2], position.max[0], position.max[1], position.max[2] };
+            mBounds = GetBoxSphere(mBox);
+        }
+
+        if (primitive.texCoord >= 0) {
+            GltfModel.Accessor texCoord = model.accessors.get(primitive.texCoord);
+            mTexCoords_Buffer = model.getAccessorData(primitive.texCoord);
+            mTexCoords_Type = texCoord.componentType;
+            mTexCoords_Normalized = texCoord.normalized;
+            mTexCoords_Stride = model.getAccessorStride(primitive.texCoord);
+        }
+
+        mIndices_Number = 0;
+        if (primitive.indices >= 0) {
+            GltfModel.Accessor indices = model.accessors.get(primitive.indices);
+            ByteBuffer data = model.getAccessorData(primitive.indices);
+            mIndices_Number = indices.count;
+            if (indices.componentType == GltfModel.COMPONENT_UNSIGNED_INT) {
+                // GLES 2.0 has no 32 bit indices without OES_element_index_uint
+                if (mVertices_Number > 65536) {
+                    Log.e("Mesh", "Too many vertices for 16 bit indices in " + file);
+                    return false;
+                }
+                ByteBuffer shorts = DirectBufferArena.allocate(indices.count * 2);
+                for (int i = 0; i < indices.count; i++) {
+                    shorts.putShort((short) data.getInt(i * 4));
                 }
-                else if(txt.compareTo("vertices")==0) {
-                    reader.beginArray();
-                    do {
-                        reader.beginObject();
-                        String element_name="";
-                        int element_size=0;
-                        String element_type="float32";
-                        Boolean element_normalized = false;
-                        do {
-                            String elmnt = reader.nextName();
-                            if(elmnt.compareTo("name")==0) {
-                                element_name = reader.nextString();
-                            }
-                            else if(elmnt.compareTo("size")==0) {
-                                element_size = reader.nextInt();
-                            }
-                            else if(elmnt.compareTo("type")==0) {
-                                element_type = reader.nextString();
-                            }
-                            else if(elmnt.compareTo("normalized")==0) {
-                                element_normalized = reader.nextBoolean();
-                            }
-                            else if(elmnt.compareTo("values")==0) {
-                                reader.beginArray();
-                                if(element_type.compareTo("float32")==0 && element_name.compareTo("position_buffer")==0) {
-                                    do {
-                                        float x = (float) reader.nextDouble() * -0.2f + 0.5f;
-                                        reader.hasNext();
-                                        float y = (float) reader.nextDouble() * -0.2f + 0.5f;
-                                        reader.hasNext();
-                                        float z = (float) reader.nextDouble() * -0.2f;
-                                        mVertices_Buffer.putFloat(x);
-                                        mVertices_Buffer.putFloat(y);
-                                        mVertices_Buffer.putFloat(z);
-                                        mVertices_Number++;
-                                    }
-                                    while (reader.hasNext());
-                                }
-                                else if(element_type.compareTo("float32")==0 && element_name.compareTo("normal_buffer")==0) {
-                                    do {
-                                        float v = (float) reader.nextDouble();
-                                        mNormals_Buffer.putFloat(v);
-                                    }
-                                    while (reader.hasNext());
-                                }
-                                else if(element_type.compareTo("float32")==0 && element_name.compareTo("texcoord_buffer")==0) {
-                                    do {
-                                        float v = (float) reader.nextDouble();
-                                        mTexCoords_Buffer.putFloat(v);
-                                    }
-                                    while (reader.hasNext());
-                                }
-                                reader.endArray();
-                            }
-                            else {
-                                reader.skipValue();
-                            }
-                            Log.d("appTest", reader.toString());
-                        }
-                        while(reader.hasNext());
-                        reader.endObject();
-                    }
-                    while(reader.hasNext());
-                    reader.endArray();
+                shorts.rewind();
+                mIndex_Buffer = shorts;
+                mIndex_Type = GLES20.GL_UNSIGNED_SHORT;
+            } else {
+                mIndex_Buffer = data;
+                mIndex_Type = indices.componentType;
+            }
+        }
+        mLod_Offsets = new int[] { 0 };
+        mLod_Counts = new int[] { mIndices_Number };
+        mLodSelector = null;
+        return true;
+    }
+
+    /**
+     * \brief Merge glTF primitives into shared float vertex buffers and a 16 bit index buffer,
+     * one sub-mesh per primitive.
+     * @param model the glTF model.
+     * @param primitives the triangle primitives.
+     * @param file the file name, for the logs.
+     * @return true on success.
+     */
+    private boolean LoadGltfPrimitives(GltfModel model, ArrayList<GltfModel.Primitive> primitives, String file)
+    {
+        int vertices = 0;
+        int indices = 0;
+        boolean texCoords = false;
+        for (GltfModel.Primitive p : primitives) {
+            int count = model.accessors.get(p.position).count;
+            vertices += count;
+            indices += p.indices >= 0 ? model.accessors.get(p.indices).count : count;
+            texCoords |= p.texCoord >= 0;
+        }
+        if (vertices > 65536) {
+            Log.e("Mesh", "Too many vertices for 16 bit indices in " + file);
+            return false;
+        }
+
+        MeshData data = new MeshData();
+        data.positions = new float[vertices * 3];
+        data.texCoords = new float[texCoords ? vertices * 2 : 0];
+        data.indices = new int[indices];
+        mSubMeshes = new SubMesh[primitives.size()];
+        int base = 0;
+        int first = 0;
+        for (int i = 0; i < primitives.size(); i++) {
+            GltfModel.Primitive p = primitives.get(i);
+            float[] positions = model.readAccessorFloats(p.position);
+            int count = positions.length / 3;
+            System.arraycopy(positions, 0, data.positions, base * 3, positions.length);
+            if (p.texCoord >= 0) {
+                float[] uvs = model.readAccessorFloats(p.texCoord);
+                System.arraycopy(uvs, 0, data.texCoords, base * 2, Math.min(uvs.length, count * 2));
+            }
+            SubMesh sub = new SubMesh();
+            sub.first = first;
+            if (p.indices >= 0) {
+                float[] primitiveIndices = model.readAccessorFloats(p.indices);
+                for (int k = 0; k < primitiveIndices.length; k++) data.indices[first + k] = base + (int) primitiveIndices[k];
+                sub.count = primitiveIndices.length;
+            }
+            else {
+                for (int k = 0; k < count; k++) data.indices[first + k] = base + k;
+                sub.count = count;
+            }
+            mSubMeshes[i] = sub;
+            base += count;
+            first += sub.count;
+        }
+
+        mVertices_Buffer = fillBuffer(data.positions);
+        mVertices_Type = GLES20.GL_FLOAT;
+        mVertices_Stride = 0;
+        mTexCoords_Buffer = texCoords ? fillBuffer(data.texCoords) : null;
+        mTexCoords_Type = GLES20.GL_FLOAT;
+        mTexCoords_Normalized = false;
+        mTexCoords_Stride = 0;
+        mIndex_Buffer = fillBuffer(data.getShortIndices());
+        mIndex_Type = GLES20.GL_UNSIGNED_SHORT;
+        mVertices_Number = vertices;
+        mIndices_Number = indices;
+        mBox = data.computeBoundingBox();
+        mBounds = data.computeBoundingSphere();
+        mLod_Offsets = new int[] { 0 };
+        mLod_Counts = new int[] { mIndices_Number };
+        mLodSelector = null;
+        Log.i("Mesh", file + ": merged " + primitives.size() + " primitives, " + vertices + " vertices");
+        return true;
+    }
+
+    /**
+     * \brief Set the sub-mesh materials: base color and decoded base color texture.
+     *
+     * Images are decoded once even if several materials use them; they are uploaded by InitMesh().
+     * @param am the app AssetManager, for external images.
+     * @param model the glTF model.
+     * @param primitives the primitive of each sub-mesh.
+     * @param file the file name, for the logs and the external image paths.
+     */
+    private void LoadMaterials(AssetManager am, GltfModel model, ArrayList<GltfModel.Primitive> primitives, String file)
+    {
+        mMaterial_Images = new HashMap<Integer, TextureData>();
+        for (int i = 0; i < mSubMeshes.length; i++) {
+            int material = primitives.get(i).material;
+            if (material < 0 || material >= model.materials.size()) continue;
+            GltfModel.Material m = model.materials.get(material);
+            mSubMeshes[i].baseColor = m.baseColorFactor;
+            if (m.baseColorTexture < 0 || m.baseColorTexture >= model.textures.size()) continue;
+            int image = model.textures.get(m.baseColorTexture);
+            if (image < 0 || image >= model.images.size()) continue;
+            if (!mMaterial_Images.containsKey(image)) {
+                GltfModel.Image source = model.images.get(image);
+                TextureData texture = null;
+                if (source.bufferView >= 0) {
+                    texture = RenderUtils.decodeTexture(model.getBufferView(source.bufferView), mTexture_Size);
                 }
-                else if(txt.compareTo("connectivity")==0) {
-                    reader.beginArray();
-                    do {
-                        reader.beginObject();
-                        String element_name="";
-                        String element_mode="";
-                        Boolean element_indexed=true;
-                        String element_indexType="";
-                        do {
-                            String elmnt = reader.nextName();
-                            if(elmnt.compareTo("name")==0) {
-                                element_name = reader.nextString();
-                            }
-                            else if(elmnt.compareTo("mode")==0) {
-                                element_mode = reader.nextString();
-                            }
-                            else if(elmnt.compareTo("indexed")==0) {
-                                element_indexed = reader.nextBoolean();
-                            }
-                            else if(elmnt.compareTo("indexType")==0) {
-                                element_indexType = reader.nextString();
-                            }
-                            else if(elmnt.compareTo("indices")==0) {
-                                reader.beginArray();
-                                if(element_mode.compareTo("triangles_list")==0 && element_indexed && element_indexType.compareTo("uint32")==0) {
-                                    do {
-                                        int v = reader.nextInt();
-                                        mIndex_Buffer.putShort((short)v);
-                                        mIndices_Number++;
-                                    }
-                                    while(reader.hasNext());
-                                }
-                                reader.endArray();
-                            }
-                            else {
-                                reader.skipValue();
-                            }
-                            Log.d("appTest", reader.toString());
-
-                        }
-                        while(reader.hasNext());
-                        reader.endObject();
-                    }
-                    while(reader.hasNext());
-                    reader.endArray();
+                else if (source.uri != null && !source.uri.startsWith("data:")) {
+                    texture = RenderUtils.decodeTextureFromApk(am, file.substring(0, file.lastIndexOf('/') + 1) + source.uri, mTexture_Size);
                 }
                 else {
-                    reader.skipValue();
+                    Log.w("Mesh", "Unsupported image " + image + " in " + file + ", using the mesh texture");
                 }
-                Log.d("appTest", reader.toString());
+                mMaterial_Images.put(image, texture);
             }
-            while (reader.hasNext());
-            reader.endObject();
+            if (mMaterial_Images.get(image) != null) mSubMeshes[i].image = image;
         }
-        catch (Exception e) {
-            Log.e("appTest","Error parsing mesh json, msg:" + e.getMessage());
-            return false;
+    }
+
+    /**
+     * \brief Upload the decoded material images and set the sub-mesh textures.
+     */
+    private void UploadMaterials()
+    {
+        if (mMaterial_Images == null) return;
+        HashMap<Integer, Integer> textures = new HashMap<Integer, Integer>();
+        for (Map.Entry<Integer, TextureData> image : mMaterial_Images.entrySet()) {
+            if (image.getValue() == null) continue;
+            textures.put(image.getKey(), RenderUtils.loadTextureFromData(image.getValue(), "material image " + image.getKey()));
+            image.getValue().release();
         }
+        for (SubMesh sub : mSubMeshes) {
+            if (sub.image >= 0) sub.texture = textures.get(sub.image);
+        }
+        mMaterial_Images = null;
+    }
 
-        mVertices_Number /= 3;
+    /**
+     * \brief Get the sphere enclosing a box.
+     * @param box min xyz and max xyz.
+     * @return the center xyz and the radius.
+     */
+    private static float[] GetBoxSphere(float[] box)
+    {
+        float dx = box[3] - box[0];
+        float dy = box[4] - box[1];
+        float dz = box[5] - box[2];
+        return new float[] { (box[0] + box[3]) * 0.5f, (box[1] + box[4]) * 0.5f, (box[2] + box[5]) * 0.5f,
+                (float) Math.sqrt(dx * dx + dy * dy + dz * dz) * 0.5f };
+    }
 
-        mVertices_Buffer.rewind();
-        mTexCoords_Buffer.rewind();
-        mNormals_Buffer.rewind();
-        mIndex_Buffer.rewind();
+    /**
+     * \brief Load the morph targets of a glTF primitive, and the animation of their weights.
+     *
+     * Only position deltas are used (the shaders do not light the mesh). The bounding volumes
+     * grow by the deltas, assuming weights within [0, 1], so culling stays conservative.
+     * @param model the glTF model.
+     * @param meshIndex the index of the mesh holding the primitive.
+     * @param primitive the primitive being loaded.
+     * @param file the file name, for the logs.
+     */
+    private void LoadMorphTargets(GltfModel model, int meshIndex, GltfModel.Primitive primitive, String file)
+    {
+        int targets = primitive.targets.size();
+        ByteBuffer[] buffers = new ByteBuffer[targets];
+        int[] types = new int[targets];
+        boolean[] normalized = new boolean[targets];
+        int[] strides = new int[targets];
+        float[] box = mBox == null ? null : mBox.clone();
+        for (int t = 0; t < targets; t++) {
+            int index = primitive.targets.get(t);
+            GltfModel.Accessor deltas = index >= 0 ? model.accessors.get(index) : null;
+            buffers[t] = index >= 0 ? model.getAccessorData(index) : null;
+            if (buffers[t] == null || deltas.count != mVertices_Number || deltas.components != 3) {
+                Log.w("Mesh", "Morph target " + t + " of " + file + " has no usable position deltas, morphing disabled");
+                return;
+            }
+            types[t] = deltas.componentType;
+            normalized[t] = deltas.normalized;
+            strides[t] = model.getAccessorStride(index);
+            if (box != null && deltas.min != null && deltas.max != null && deltas.min.length >= 3 && deltas.max.length >= 3) {
+                for (int c = 0; c < 3; c++) {
+                    box[c] += Math.min(0, deltas.min[c]);
+                    box[c + 3] += Math.max(0, deltas.max[c]);
+                }
+            }
+            else {
+                box = null;
+            }
+        }
+        mBox = box;
+        mBounds = box == null ? null : GetBoxSphere(box);
+
+        mMorph_Buffers = buffers;
+        mMorph_Types = types;
+        mMorph_Normalized = normalized;
+        mMorph_Strides = strides;
+        mMorph_Weights = new float[targets];
+        float[] defaults = model.meshes.get(meshIndex).weights;
+        if (defaults != null) System.arraycopy(defaults, 0, mMorph_Weights, 0, Math.min(targets, defaults.length));
 
+        mAnimation = null;
+        try {
+            AnimationClip clip = model.getMorphClip(meshIndex, targets);
+            if (clip != null) {
+                mAnimation = new AnimationPlayer(clip);
+                Log.i("Mesh", file + ": " + targets + " morph targets, clip '" + clip.getName() + "' of " + clip.getDuration() + " s");
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w("Mesh", "Bad morph animation in " + file + ", msg:" + e.getMessage());
+        }
+    }
+
+    /**
+     * \brief Get the animation of the morph target weights.
+     * @return the player (to pause, seek or change speed), null if the mesh is not animated.
+     */
+    public AnimationPlayer GetAnimation()
+    {
+        return mAnimation;
+    }
+
+    /**
+     * \brief Advance the animation to the time of a new frame.
+     *
+     * Call once per frame from the render thread, before DrawMesh().
+     * @param frameTimeNanos the frame time (System.nanoTime() clock).
+     */
+    public void UpdateAnimation(long frameTimeNanos)
+    {
+        if (mAnimation != null) mMorph_Weights = mAnimation.update(frameTimeNanos);
+    }
+
+    /**
+     * \brief Upload the mesh data to OpenGL buffer objects.
+     *
+     * The client side copies are released afterwards. It only needs a current context, so it
+     * can run on a GLResourceLoader thread sharing its context with the renderer.
+     */
+    private void UploadBuffers()
+    {
+        int[] ids = new int[3];
+        GLES20.glGenBuffers(3, ids, 0);
+        mVertices_VBO = ids[0];
+        mTexCoords_VBO = ids[1];
+        mIndex_VBO = ids[2];
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertices_VBO);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices_Buffer.remaining(), mVertices_Buffer, GLES20.GL_STATIC_DRAW);
+        GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mVertices_VBO, mVertices_Buffer.remaining(), "positions");
+        if (mTexCoords_Buffer != null) {
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTexCoords_VBO);
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mTexCoords_Buffer.remaining(), mTexCoords_Buffer, GLES20.GL_STATIC_DRAW);
+            GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mTexCoords_VBO, mTexCoords_Buffer.remaining(), "texture coordinates");
+        }
+        else {
+            // no texture coordinates: the attribute keeps its constant value
+            RenderUtils.deleteBuffer(mTexCoords_VBO);
+            mTexCoords_VBO = 0;
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        if (mIndex_Buffer != null) {
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_VBO);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_Buffer.remaining(), mIndex_Buffer, GLES20.GL_STATIC_DRAW);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mIndex_VBO, mIndex_Buffer.remaining(), "indices");
+        }
+        if (mMorph_Buffers != null) {
+            mMorph_VBOs = new int[mMorph_Buffers.length];
+            GLES20.glGenBuffers(mMorph_VBOs.length, mMorph_VBOs, 0);
+            for (int t = 0; t < mMorph_VBOs.length; t++) {
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mMorph_VBOs[t]);
+                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mMorph_Buffers[t].remaining(), mMorph_Buffers[t], GLES20.GL_STATIC_DRAW);
+                GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, mMorph_VBOs[t], mMorph_Buffers[t].remaining(), "morph target " + t);
+            }
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            mMorph_Buffers = null;
+        }
+        RenderUtils.checkGLError("UploadBuffers");
+
+        // staging copies go back to the arena (glTF slices are not the arena's and are left alone)
+        DirectBufferArena.release(mVertices_Buffer);
+        DirectBufferArena.release(mTexCoords_Buffer);
+        DirectBufferArena.release(mNormals_Buffer);
+        DirectBufferArena.release(mIndex_Buffer);
+        mVertices_Buffer = null;
+        mTexCoords_Buffer = null;
+        mNormals_Buffer = null;
+        mIndex_Buffer = null;
+    }
+
+    /**
+     * \brief Create a Mesh from a json file (comntaining mesh data), a compressed mesh (.mshz) or a glTF binary file (.glb), and a texture file.
+     * @param am the app AssetManager.
+     * @param mesh_file the mesh file to load
+     * @param texture_file the texture file to load
+     * @param texture_size the longest side the textures need on screen (RenderUtils.TEXTURE_SIZE_FULL for no limit):
+     *                     larger images are subsampled when decoded.
+     * @return true on success.
+     */
+    public boolean InitMesh(AssetManager am, String mesh_file, String texture_file, int texture_size)
+    {
+        // the GL objects created below are charged to this mesh
+        String owner = GLResourceTracker.setOwner(mesh_file);
+        try {
+            return InitMeshResources(am, mesh_file, texture_file, texture_size);
+        } finally {
+            GLResourceTracker.setOwner(owner);
+        }
+    }
+
+    /**
+     * \brief Load the mesh and create its GL objects, see InitMesh().
+     */
+    private boolean InitMeshResources(AssetManager am, String mesh_file, String texture_file, int texture_size)
+    {
+        mTexture_Size = texture_size;
+        long start = System.nanoTime();
+        boolean loaded;
+        boolean progressive = false;
+        String source;
+        if (mesh_file.endsWith(".glb")) {
+            loaded = LoadGltf(am, mesh_file);
+            source = "mapped";
+        }
+        else if (AssetCache.getMesh(mesh_file) != null) {
+            loaded = LoadMesh(am, mesh_file, null);
+            source = "memory cache";
+        }
+        else {
+            String cacheKey = GetCacheKey(am, mesh_file);
+            if (StartProgressive(cacheKey)) {
+                loaded = progressive = true;
+                source = "disk cache (warm)";
+            }
+            else {
+                loaded = LoadMesh(am, mesh_file, cacheKey);
+                source = "converted (cold)";
+            }
+        }
+        if (!loaded) return false;
+        Log.i("Mesh", mesh_file + (progressive ? " coarse level" : "") + " loaded from " + source + " in "
+                + (System.nanoTime() - start) / 1000 + " us");
+        if (!progressive) UploadBuffers();
+        mTexture_GL_ID = RenderUtils.loadTextureFromApk(am, texture_file, new int[2], mTexture_Size);
+        UploadMaterials();
+        mProgram_GL_ID = RenderUtils.createProgramFromShaderSrc(MESH_VERTEX_SHADER, MESH_FRAGMENT_SHADER);
+        if (mMorph_VBOs != null) {
+            mMorph_Program_GL_ID = RenderUtils.createProgramFromShaderSrc(MESH_MORPH_VERTEX_SHADER, MESH_FRAGMENT_SHADER);
+        }
         return true;
     }
 
     /**
-     * \brief Create a Mesh from a json file (comntaining mesh data) and a texture file.
+     * \brief Create a Mesh with textures at full resolution.
      * @param am the app AssetManager.
      * @param mesh_file the mesh file to load
      * @param texture_file the texture file to load
@@ -306,66 +979,273 @@ public class Mesh
      */
     public boolean InitMesh(AssetManager am, String mesh_file, String texture_file)
     {
-        LoadMesh(am,mesh_file);
-        mTexture_GL_ID = RenderUtils.loadTextureFromApk(am, texture_file);
-        mProgram_GL_ID = RenderUtils.createProgramFromShaderSrc(MESH_VERTEX_SHADER, MESH_FRAGMENT_SHADER);
+        return InitMesh(am, mesh_file, texture_file, RenderUtils.TEXTURE_SIZE_FULL);
+    }
+
+    /**
+     * \brief Delete the GL objects of this mesh (and stop tracking them) while its context is still current.
+     *
+     * Call it from the render thread; the mesh cannot be drawn anymore.
+     */
+    public void DestroyGLResources()
+    {
+        GLState.deleteVertexArray(mVertexArray);
+        mVertexArray = 0;
+        RenderUtils.deleteBuffer(mVertices_VBO);
+        RenderUtils.deleteBuffer(mTexCoords_VBO);
+        RenderUtils.deleteBuffer(mIndex_VBO);
+        mVertices_VBO = mTexCoords_VBO = mIndex_VBO = 0;
+        if (mMorph_VBOs != null) {
+            for (int vbo : mMorph_VBOs) RenderUtils.deleteBuffer(vbo);
+            mMorph_VBOs = null;
+        }
+        if (mSubMeshes != null) {
+            // sub-meshes sharing an image share its texture
+            for (int i = 0; i < mSubMeshes.length; i++) {
+                int texture = mSubMeshes[i].texture;
+                for (int j = 0; j < i && texture != 0; j++) {
+                    if (mSubMeshes[j].texture == texture) texture = 0;
+                }
+                RenderUtils.deleteTexture(texture);
+            }
+            for (SubMesh sub : mSubMeshes) sub.texture = 0;
+        }
+        RenderUtils.deleteTexture(mTexture_GL_ID);
+        mTexture_GL_ID = 0;
+        RenderUtils.deleteProgram(mProgram_GL_ID);
+        RenderUtils.deleteProgram(mMorph_Program_GL_ID);
+        mProgram_GL_ID = mMorph_Program_GL_ID = 0;
+        mPending_Batches.clear();
+        RenderUtils.checkGLError("DestroyGLResources");
+    }
+
+    /**
+     * \brief Get the level of detail statistics.
+     * @return a one line report, null if this mesh has a single level.
+     */
+    public String getLodReport()
+    {
+        return mLodSelector == null ? null : mLodSelector.getReport();
+    }
+
+    /**
+     * \brief Is this mesh at least partly inside the view frustum.
+     * @param modelViewProjection this mesh model-view-projection matrix.
+     * @return false if the mesh bounding volumes are entirely off screen, true if unknown.
+     */
+    public boolean IsVisible(float[] modelViewProjection)
+    {
+        if (mBounds == null && mBox == null) return true;
+        mFrustum.extract(modelViewProjection);
+        return mFrustum.isVisible(mBounds, mBox);
+    }
+
+    /**
+     * \brief Add the draws of this mesh to a frame's RenderList.
+     *
+     * Nothing is added if the mesh is outside the view frustum. The level of detail is chosen
+     * from the size of the mesh on screen. A mesh is submitted at most once per list.
+     * @param list the render list of the frame.
+     * @param modelViewProjection this mesh model-view-projection matrix.
+     * @return true if draws were added, false if the mesh is still loading or off screen.
+     */
+    public boolean Submit(RenderList list, float[] modelViewProjection)
+    {
+        if (!IsDrawable() || !IsVisible(modelViewProjection)) return false;
+        int level = 0;
+        if (mLodSelector != null) {
+            level = mLodSelector.select(LodSelector.computeCoverage(modelViewProjection, mBounds));
+        }
+        // levels finer than the uploaded ones are still streaming
+        mDraw_Level = Math.max(level, mFinest_Level);
+        if (mLodSelector != null) mLodSelector.recordDrawn(mDraw_Level);
+        System.arraycopy(modelViewProjection, 0, mDraw_MVP, 0, 16);
+
+        int program = mMorph_VBOs != null && mMorph_Program_GL_ID != 0 ? mMorph_Program_GL_ID : mProgram_GL_ID;
+        if (mSubMeshes == null) {
+            list.add(program, mTexture_GL_ID, mVertices_VBO, this, 0);
+        }
+        else {
+            for (int i = 0; i < mSubMeshes.length; i++) {
+                int texture = mSubMeshes[i].texture != 0 ? mSubMeshes[i].texture : mTexture_GL_ID;
+                list.add(program, texture, mVertices_VBO, this, i);
+            }
+        }
         return true;
     }
 
     /**
-     * \brief Draw this mesh (in OpenGL).
+     * \brief Draw this mesh (in OpenGL), on its own.
+     *
+     * Meshes drawn together should rather be submitted to a shared RenderList.
      * @param modelViewProjection this mesh model-view-projection matrix.
+     * @return true if the mesh was drawn, false if it is still loading or off screen.
+     */
+    public boolean DrawMesh(float[] modelViewProjection)
+    {
+        mDraw_List.clear();
+        if (!Submit(mDraw_List, modelViewProjection)) return false;
+        mDraw_List.sort();
+        mDraw_List.execute();
+        return true;
+    }
+
+    /**
+     * \brief Draw a sub-mesh (in OpenGL), setting only the states the RenderList says changed.
+     * @param part the sub-mesh index.
+     * @param flags RenderList CHANGE_ and LAST_OF_BUFFER flags.
      */
-    public void DrawMesh(float[] modelViewProjection)
+    @Override
+    public void DrawPart(int part, int flags)
     {
-        //set up gl state
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-        GLES20.glDisable(GLES20.GL_CULL_FACE);
-        //GLES20.glCullFace(GLES20.GL_BACK);
-        //GLES20.glFrontFace(GLES20.GL_CCW);
+        boolean morphing = mMorph_VBOs != null && mMorph_Program_GL_ID != 0;
+        int program = morphing ? mMorph_Program_GL_ID : mProgram_GL_ID;
 
-        //set shader program to use
-        GLES20.glUseProgram(mProgram_GL_ID);
-        RenderUtils.checkGLError("DrawMesh:glUseProgram");
+        if ((flags & RenderList.CHANGE_PROGRAM) != 0) {
+            //set up gl state
+            GLState.enable(GLES20.GL_DEPTH_TEST);
+            GLState.disable(GLES20.GL_CULL_FACE);
+            GLState.disable(GLES20.GL_BLEND);
+            //GLES20.glCullFace(GLES20.GL_BACK);
+            //GLES20.glFrontFace(GLES20.GL_CCW);
 
-        //find attrib and unifroms in shader program
-        int vertexHandle = GLES20.glGetAttribLocation(mProgram_GL_ID, "vertexPosition");
-        //int normalHandle = GLES20.glGetAttribLocation(Program_GL_ID, "vertexNormal");
-        int textureCoordHandle = GLES20.glGetAttribLocation(mProgram_GL_ID, "vertexTexCoord");
-        int mvpMatrixHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "modelViewProjectionMatrix");
-        int texSampler2DHandle = GLES20.glGetUniformLocation(mProgram_GL_ID, "texSampler2D");
-        RenderUtils.checkGLError("DrawMesh:get attribs and uniforms");
+            //set shader program to use
+            GLState.useProgram(program);
+            GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "texSampler2D"), 0);
+            RenderUtils.checkGLError("DrawPart:glUseProgram");
+        }
 
-        //upload mesh data to OpenGL attribs
-        GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, mVertices_Buffer);
-        //GLES20.glVertexAttribPointer(normalHandle, 3, GLES20.GL_FLOAT, false, 0, Normals_Buffer);
-        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, mTexCoords_Buffer);
-        RenderUtils.checkGLError("DrawMesh:put attrib pointers");
+        if ((flags & RenderList.CHANGE_BUFFER) != 0) {
+            //find unifroms in shader program
+            mDraw_MVPHandle = GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix");
+            mDraw_BaseColorHandle = GLES20.glGetUniformLocation(program, "baseColor");
+            RenderUtils.checkGLError("DrawPart:get uniforms");
 
-        //enable gl attribs to use
-        GLES20.glEnableVertexAttribArray(vertexHandle);
-        //GLES20.glEnableVertexAttribArray(normalHandle);
-        GLES20.glEnableVertexAttribArray(textureCoordHandle);
-        RenderUtils.checkGLError("DrawMesh:enable attrib arrays");
+            if (!morphing && GLState.hasVertexArrays()) {
+                // recorded once, every later buffer change is a single bind
+                if (mVertexArray == 0) {
+                    mVertexArray = GLState.genVertexArray();
+                    GLState.bindVertexArray(mVertexArray);
+                    SetupAttributes(program, false);
+                }
+                GLState.bindVertexArray(mVertexArray);
+            }
+            else {
+                // the morph targets bound change with their weights
+                GLState.bindVertexArray(0);
+                SetupAttributes(program, morphing);
+            }
+        }
 
-        // activate texture 0, bind it, and pass to shader
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture_GL_ID);
-        GLES20.glUniform1i(texSampler2DHandle, 0);
-        RenderUtils.checkGLError("DrawMesh:activate texturing");
+        if ((flags & RenderList.CHANGE_TEXTURE) != 0) {
+            // activate texture 0 and bind it
+            int texture = mSubMeshes != null && mSubMeshes[part].texture != 0 ? mSubMeshes[part].texture : mTexture_GL_ID;
+            GLState.activeTexture(GLES20.GL_TEXTURE0);
+            GLState.bindTexture(GLES20.GL_TEXTURE_2D, texture);
+            RenderUtils.checkGLError("DrawPart:activate texturing");
+        }
 
-        // pass the model view matrix to the shader
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, modelViewProjection, 0);
-        RenderUtils.checkGLError("DrawMesh:upload matrix");
+        // pass the model view matrix and the material color to the shader
+        GLES20.glUniformMatrix4fv(mDraw_MVPHandle, 1, false, mDraw_MVP, 0);
+        GLES20.glUniform4fv(mDraw_BaseColorHandle, 1, mSubMeshes != null ? mSubMeshes[part].baseColor : WHITE, 0);
+        RenderUtils.checkGLError("DrawPart:upload uniforms");
 
         // finally draw the teapot
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndices_Number, GLES20.GL_UNSIGNED_SHORT, mIndex_Buffer);
-        RenderUtils.checkGLError("DrawMesh:draw elements");
-
-        // disable the enabled arrays
-        GLES20.glDisableVertexAttribArray(vertexHandle);
-        //GLES20.glDisableVertexAttribArray(normalHandle);
-        GLES20.glDisableVertexAttribArray(textureCoordHandle);
-        RenderUtils.checkGLError("DrawMesh:disable attrib arrays");
+        int first = mSubMeshes != null ? mSubMeshes[part].first : mLod_Offsets[mDraw_Level];
+        int count = mSubMeshes != null ? mSubMeshes[part].count : mLod_Counts[mDraw_Level];
+        if (mIndices_Number > 0) {
+            int indexSize = mIndex_Type == GLES20.GL_UNSIGNED_BYTE ? 1 : 2;
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, count, mIndex_Type, first * indexSize);
+        }
+        else {
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, first, mSubMeshes != null ? count : mVertices_Number);
+        }
+        RenderUtils.checkGLError("DrawPart:draw elements");
+
+        if ((flags & RenderList.LAST_OF_BUFFER) != 0) {
+            // the attrib arrays stay enabled for the next draw (GLState), the client side index arrays need no index buffer
+            if (mIndices_Number > 0 && mVertexArray == 0) GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            RenderUtils.checkGLError("DrawPart:unbind index buffer");
+        }
+    }
+
+    /**
+     * \brief Point the attributes to the mesh buffers, enable them and bind the index buffer.
+     *
+     * Done at every buffer change, or once while recording the vertex array object.
+     * @param program the shader program, in use.
+     * @param morphing true to bind the morph targets too.
+     */
+    private void SetupAttributes(int program, boolean morphing)
+    {
+        //find attribs in shader program
+        mDraw_VertexHandle = GLES20.glGetAttribLocation(program, "vertexPosition");
+        //int normalHandle = GLES20.glGetAttribLocation(Program_GL_ID, "vertexNormal");
+        mDraw_TexCoordHandle = GLES20.glGetAttribLocation(program, "vertexTexCoord");
+
+        //point OpenGL attribs to the mesh buffers
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVertices_VBO);
+        GLES20.glVertexAttribPointer(mDraw_VertexHandle, 3, mVertices_Type, false, mVertices_Stride, 0);
+        //GLES20.glVertexAttribPointer(normalHandle, 3, GLES20.GL_FLOAT, false, 0, Normals_Buffer);
+        if (mTexCoords_VBO != 0) {
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mTexCoords_VBO);
+            GLES20.glVertexAttribPointer(mDraw_TexCoordHandle, 2, mTexCoords_Type, mTexCoords_Normalized, mTexCoords_Stride, 0);
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        RenderUtils.checkGLError("SetupAttributes:put attrib pointers");
+
+        //enable gl attribs to use, the arrays of the previous buffer are left enabled until then
+        int arrays = GLState.getAttribBit(mDraw_VertexHandle);
+        //arrays |= GLState.getAttribBit(normalHandle);
+        if (mTexCoords_VBO != 0) arrays |= GLState.getAttribBit(mDraw_TexCoordHandle);
+        if (morphing) arrays |= BindMorphTargets(program);
+        GLState.setVertexAttribArrays(arrays);
+        if (mIndices_Number > 0) GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_VBO);
+        RenderUtils.checkGLError("SetupAttributes");
+    }
+
+    /**
+     * \brief Bind the morph targets with the largest weights and set their weights.
+     *
+     * Targets beyond MAX_MORPH_TARGETS or with a zero weight are left out; their attributes
+     * are left out of the enabled arrays, reading as zero deltas.
+     * @param program the morphing shader program, in use.
+     * @return the GLState attribute array bits of the bound targets, to be enabled.
+     */
+    private int BindMorphTargets(int program)
+    {
+        int count = 0;
+        for (int t = 0; t < mMorph_Weights.length; t++) {
+            float w = Math.abs(mMorph_Weights[t]);
+            if (w == 0) continue;
+            // insertion into the largest weights so far
+            int i = Math.min(count, MAX_MORPH_TARGETS - 1);
+            if (count == MAX_MORPH_TARGETS && w <= Math.abs(mMorph_Weights[mMorph_Active[i]])) continue;
+            while (i > 0 && Math.abs(mMorph_Weights[mMorph_Active[i - 1]]) < w) {
+                mMorph_Active[i] = mMorph_Active[i - 1];
+                i--;
+            }
+            mMorph_Active[i] = t;
+            if (count < MAX_MORPH_TARGETS) count++;
+        }
+
+        int arrays = 0;
+        for (int i = 0; i < MAX_MORPH_TARGETS; i++) {
+            int handle = GLES20.glGetAttribLocation(program, MORPH_ATTRIBUTES[i]);
+            mMorph_DrawWeights[i] = 0;
+            if (i < count) {
+                int t = mMorph_Active[i];
+                mMorph_DrawWeights[i] = mMorph_Weights[t];
+                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mMorph_VBOs[t]);
+                GLES20.glVertexAttribPointer(handle, 3, mMorph_Types[t], mMorph_Normalized[t], mMorph_Strides[t], 0);
+                arrays |= GLState.getAttribBit(handle);
+            }
+            else if (handle >= 0) {
+                GLES20.glVertexAttrib3f(handle, 0, 0, 0);
+            }
+        }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glUniform4fv(GLES20.glGetUniformLocation(program, "morphWeights"), 1, mMorph_DrawWeights, 0);
+        return arrays;
     }
 }
@@ -0,0 +1,376 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * \class MeshCodec
+ * \brief Compact binary encoding of MeshData (.mshz files).
+ *
+ * - positions are quantized to 16 bits per component over the mesh bounding box,
+ *   the error is at most half a step (extent / 65535 / 2 per axis) plus the float rounding;
+ * - texture coordinates are quantized to 16 bits over their range, same error bound;
+ * - normals are quantized to 8 bit signed components, error at most 1 / 254;
+ * - each quantized stream is delta coded between consecutive vertices, indices between
+ *   consecutive indices, and written as zigzag varints;
+ * - the varint streams are compressed with Deflate.
+ * Levels of detail (lodOffsets / lodCounts) are kept. Vertices ordered for the vertex
+ * fetch (see MeshOptimizer) give small deltas and compress best.
+ * The encoder is used on the JVM by tools/mesh-encoder, the decoder by Mesh.
+ * Plain Java, no Android dependencies.
+ */
+public class MeshCodec
+{
+    private static final int MAGIC = 0x4d53485a; /**< "MSHZ" */
+    private static final int VERSION = 1;
+
+    private static final int FLAG_TEXCOORDS = 1;
+    private static final int FLAG_NORMALS = 2;
+
+    private static final int POSITION_STEPS = 65535; /**< 16 bit positions */
+    private static final int TEXCOORD_STEPS = 65535; /**< 16 bit texture coordinates */
+    private static final int NORMAL_STEPS = 127; /**< 8 bit signed normals */
+
+    /**
+     * \brief Encode a mesh.
+     * @param data the mesh to encode.
+     * @return the encoded bytes.
+     * @throws IOException never in practice (in memory streams).
+     */
+    public static byte[] encode(MeshData data) throws IOException
+    {
+        int vertexCount = data.getVertexCount();
+        boolean hasTexCoords = vertexCount > 0 && data.texCoords.length == vertexCount * 2;
+        boolean hasNormals = vertexCount > 0 && data.normals.length == vertexCount * 3;
+
+        float[] positionRange = range(data.positions, 3);
+        float[] texCoordRange = hasTexCoords ? range(data.texCoords, 2) : null;
+
+        VarintWriter payload = new VarintWriter(data.positions.length * 2 + data.indices.length * 2);
+        encodeQuantized(payload, data.positions, 3, positionRange, POSITION_STEPS);
+        if (hasTexCoords) encodeQuantized(payload, data.texCoords, 2, texCoordRange, TEXCOORD_STEPS);
+        if (hasNormals) {
+            int[] previous = new int[3];
+            for (int v = 0; v < vertexCount; v++) {
+                for (int c = 0; c < 3; c++) {
+                    float n = Math.max(-1.0f, Math.min(1.0f, data.normals[v * 3 + c]));
+                    int q = Math.round(n * NORMAL_STEPS);
+                    payload.writeSigned(q - previous[c]);
+                    previous[c] = q;
+                }
+            }
+        }
+        int previousIndex = 0;
+        for (int i = 0; i < data.indices.length; i++) {
+            payload.writeSigned(data.indices[i] - previousIndex);
+            previousIndex = data.indices[i];
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        deflater.setInput(payload.buffer, 0, payload.size);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.size / 2 + 64);
+        byte[] chunk = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            compressed.write(chunk, 0, n);
+        }
+        deflater.end();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.size() + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(data.name == null ? "" : data.name);
+        out.writeInt((hasTexCoords ? FLAG_TEXCOORDS : 0) | (hasNormals ? FLAG_NORMALS : 0));
+        out.writeInt(vertexCount);
+        out.writeInt(data.indices.length);
+        writeFloats(out, positionRange);
+        if (hasTexCoords) writeFloats(out, texCoordRange);
+        int levels = data.lodOffsets == null ? 0 : data.lodOffsets.length;
+        out.writeInt(levels);
+        for (int l = 0; l < levels; l++) {
+            out.writeInt(data.lodOffsets[l]);
+            out.writeInt(data.lodCounts[l]);
+        }
+        out.writeInt(payload.size);
+        out.writeInt(compressed.size());
+        compressed.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * \brief Decode a mesh.
+     * @param is the encoded stream (not closed).
+     * @return the decoded mesh.
+     * @throws IOException on read errors or if the data is not a valid encoded mesh.
+     */
+    public static MeshData decode(InputStream is) throws IOException
+    {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) throw new IOException("not an encoded mesh");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("unsupported encoded mesh version " + version);
+
+        MeshData data = new MeshData();
+        data.name = in.readUTF();
+        int flags = in.readInt();
+        int vertexCount = in.readInt();
+        int indexCount = in.readInt();
+        if (vertexCount < 0 || indexCount < 0) throw new IOException("bad encoded mesh sizes");
+        float[] positionRange = readFloats(in, 6);
+        float[] texCoordRange = (flags & FLAG_TEXCOORDS) != 0 ? readFloats(in, 4) : null;
+        int levels = in.readInt();
+        if (levels < 0 || levels > 32) throw new IOException("bad level count " + levels);
+        if (levels > 0) {
+            data.lodOffsets = new int[levels];
+            data.lodCounts = new int[levels];
+            for (int l = 0; l < levels; l++) {
+                data.lodOffsets[l] = in.readInt();
+                data.lodCounts[l] = in.readInt();
+                if (data.lodOffsets[l] < 0 || data.lodCounts[l] < 0 || data.lodOffsets[l] + data.lodCounts[l] > indexCount) {
+                    throw new IOException("bad level range");
+                }
+            }
+        }
+        int payloadSize = in.readInt();
+        int compressedSize = in.readInt();
+        if (payloadSize < 0 || compressedSize < 0) throw new IOException("bad encoded mesh sizes");
+        byte[] compressed = new byte[compressedSize];
+        in.readFully(compressed);
+
+        byte[] payload = new byte[payloadSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int done = 0;
+            while (done < payloadSize) {
+                int n = inflater.inflate(payload, done, payloadSize - done);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) throw new IOException("truncated encoded mesh");
+                done += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted encoded mesh: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        VarintReader reader = new VarintReader(payload);
+        data.positions = decodeQuantized(reader, vertexCount, 3, positionRange, POSITION_STEPS);
+        if (texCoordRange != null) data.texCoords = decodeQuantized(reader, vertexCount, 2, texCoordRange, TEXCOORD_STEPS);
+        if ((flags & FLAG_NORMALS) != 0) {
+            float[] normals = new float[vertexCount * 3];
+            int[] previous = new int[3];
+            for (int v = 0; v < vertexCount; v++) {
+                for (int c = 0; c < 3; c++) {
+                    previous[c] += reader.readSigned();
+                    normals[v * 3 + c] = (float) previous[c] / NORMAL_STEPS;
+                }
+            }
+            data.normals = normals;
+        }
+        int[] indices = new int[indexCount];
+        int previousIndex = 0;
+        for (int i = 0; i < indexCount; i++) {
+            previousIndex += reader.readSigned();
+            if (previousIndex < 0 || previousIndex >= vertexCount) throw new IOException("index out of range");
+            indices[i] = previousIndex;
+        }
+        data.indices = indices;
+        return data;
+    }
+
+    /**
+     * \brief Get the maximum quantization error of the positions of a mesh, per axis.
+     * @param data the mesh.
+     * @return the error bound of x, y and z.
+     */
+    public static float[] getPositionErrorBound(MeshData data)
+    {
+        return errorBound(range(data.positions, 3), 3, POSITION_STEPS);
+    }
+
+    /**
+     * \brief Get the maximum quantization error of the texture coordinates of a mesh, per axis.
+     * @param data the mesh.
+     * @return the error bound of u and v.
+     */
+    public static float[] getTexCoordErrorBound(MeshData data)
+    {
+        return errorBound(range(data.texCoords, 2), 2, TEXCOORD_STEPS);
+    }
+
+    /**
+     * \brief Get the maximum quantization error of the normal components.
+     * @return the error bound.
+     */
+    public static float getNormalErrorBound()
+    {
+        return 0.5f / NORMAL_STEPS;
+    }
+
+    /**
+     * \brief Half a quantization step, plus the rounding of the decoded value to a float.
+     */
+    private static float[] errorBound(float[] range, int components, int steps)
+    {
+        float[] bound = new float[components];
+        for (int c = 0; c < components; c++) {
+            float largest = Math.max(Math.abs(range[c]), Math.abs(range[c] + range[components + c]));
+            bound[c] = range[components + c] / steps / 2 + Math.ulp(largest);
+        }
+        return bound;
+    }
+
+    /**
+     * \brief Compute the minimum and extent of each component.
+     * @return the minimums followed by the extents.
+     */
+    private static float[] range(float[] values, int components)
+    {
+        float[] result = new float[components * 2];
+        int count = values.length / components;
+        if (count == 0) return result;
+        for (int c = 0; c < components; c++) {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, values[i * components + c]);
+                max = Math.max(max, values[i * components + c]);
+            }
+            result[c] = min;
+            result[components + c] = max - min;
+        }
+        return result;
+    }
+
+    private static void encodeQuantized(VarintWriter out, float[] values, int components, float[] range, int steps)
+    {
+        int count = values.length / components;
+        int[] previous = new int[components];
+        for (int i = 0; i < count; i++) {
+            for (int c = 0; c < components; c++) {
+                double extent = range[components + c];
+                int q = extent > 0 ? (int) Math.round((values[i * components + c] - range[c]) / extent * steps) : 0;
+                out.writeSigned(q - previous[c]);
+                previous[c] = q;
+            }
+        }
+    }
+
+    private static float[] decodeQuantized(VarintReader in, int count, int components, float[] range, int steps) throws IOException
+    {
+        float[] values = new float[count * components];
+        int[] previous = new int[components];
+        double[] scale = new double[components];
+        for (int c = 0; c < components; c++) {
+            scale[c] = (double) range[components + c] / steps;
+        }
+        for (int i = 0; i < count; i++) {
+            for (int c = 0; c < components; c++) {
+                previous[c] += in.readSigned();
+                values[i * components + c] = (float) (range[c] + previous[c] * scale[c]);
+            }
+        }
+        return values;
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] values) throws IOException
+    {
+        for (float v : values) {
+            out.writeFloat(v);
+        }
+    }
+
+    private static float[] readFloats(DataInputStream in, int count) throws IOException
+    {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+
+    /**
+     * \brief A growable byte array of zigzag varints.
+     */
+    private static class VarintWriter
+    {
+        byte[] buffer; /**< encoded bytes */
+        int size = 0; /**< used bytes */
+
+        VarintWriter(int capacity)
+        {
+            buffer = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeSigned(int value)
+        {
+            int v = (value << 1) ^ (value >> 31);
+            if (size + 5 > buffer.length) {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, size);
+                buffer = larger;
+            }
+            while ((v & ~0x7f) != 0) {
+                buffer[size++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            buffer[size++] = (byte) v;
+        }
+    }
+
+    /**
+     * \brief Reads the zigzag varints written by VarintWriter.
+     */
+    private static class VarintReader
+    {
+        final byte[] buffer; /**< encoded bytes */
+        int position = 0; /**< next byte */
+
+        VarintReader(byte[] buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        int readSigned() throws IOException
+        {
+            int v = 0;
+            int shift = 0;
+            while (true) {
+                if (position >= buffer.length || shift > 28) throw new IOException("truncated varint");
+                int b = buffer[position++];
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) break;
+                shift += 7;
+            }
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+/**
+ * \class MeshData
+ * \brief CPU side mesh data: the arrays a Mesh uploads to OpenGL.
+ *
+ * Kept separately from the GL objects so it can be cached and reused when the GL context
+ * is recreated. Plain Java, no Android dependencies.
+ */
+public class MeshData
+{
+    public String name = ""; /**< mesh name */
+    public float[] positions = new float[0]; /**< xyz per vertex */
+    public float[] texCoords = new float[0]; /**< uv per vertex */
+    public float[] normals = new float[0]; /**< xyz per vertex */
+    public int[] indices = new int[0]; /**< triangle list indices */
+    public int[] lodOffsets = null; /**< first index of each level of detail, null if there is a single level */
+    public int[] lodCounts = null; /**< number of indices of each level of detail */
+
+    /**
+     * \brief Get the number of vertices.
+     * @return the number of vertices.
+     */
+    public int getVertexCount()
+    {
+        return positions.length / 3;
+    }
+
+    /**
+     * \brief Get the number of indices.
+     * @return the number of indices.
+     */
+    public int getIndexCount()
+    {
+        return indices.length;
+    }
+
+    /**
+     * \brief Get the number of triangles.
+     * @return the number of triangles.
+     */
+    public int getTriangleCount()
+    {
+        return indices.length / 3;
+    }
+
+    /**
+     * \brief Get the number of levels of detail.
+     * @return the number of levels, 1 if the mesh has no LOD chain.
+     */
+    public int getLodCount()
+    {
+        return lodOffsets == null ? 1 : lodOffsets.length;
+    }
+
+    /**
+     * \brief Get the number of triangles of a level of detail.
+     * @param level the level, 0 being the full resolution.
+     * @return the number of triangles.
+     */
+    public int getLodTriangleCount(int level)
+    {
+        return lodCounts == null ? getTriangleCount() : lodCounts[level] / 3;
+    }
+
+    /**
+     * \brief Compute the axis aligned bounding box of the vertices.
+     * @return min xyz followed by max xyz, all 0 for an empty mesh.
+     */
+    public float[] computeBoundingBox()
+    {
+        float[] box = new float[6];
+        int count = getVertexCount();
+        if (count == 0) return box;
+        box[0] = box[1] = box[2] = Float.MAX_VALUE;
+        box[3] = box[4] = box[5] = -Float.MAX_VALUE;
+        for (int v = 0; v < count; v++) {
+            for (int c = 0; c < 3; c++) {
+                box[c] = Math.min(box[c], positions[v * 3 + c]);
+                box[c + 3] = Math.max(box[c + 3], positions[v * 3 + c]);
+            }
+        }
+        return box;
+    }
+
+    /**
+     * \brief Compute a bounding sphere of the vertices, centered on the bounding box.
+     * @return the center xyz and the radius, all 0 for an empty mesh.
+     */
+    public float[] computeBoundingSphere()
+    {
+        float[] sphere = new float[4];
+        int count = getVertexCount();
+        if (count == 0) return sphere;
+        float[] box = computeBoundingBox();
+        sphere[0] = (box[0] + box[3]) * 0.5f;
+        sphere[1] = (box[1] + box[4]) * 0.5f;
+        sphere[2] = (box[2] + box[5]) * 0.5f;
+        float r2 = 0;
+        for (int v = 0; v < count; v++) {
+            float dx = positions[v * 3] - sphere[0];
+            float dy = positions[v * 3 + 1] - sphere[1];
+            float dz = positions[v * 3 + 2] - sphere[2];
+            r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+        }
+        sphere[3] = (float) Math.sqrt(r2);
+        return sphere;
+    }
+
+    /**
+     * \brief Get the indices as 16 bit values, as used by the renderer.
+     * @return the indices as a short array.
+     */
+    public short[] getShortIndices()
+    {
+        short[] result = new short[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = (short) indices[i];
+        }
+        return result;
+    }
+
+    /**
+     * \brief Get an approximation of the memory used by this mesh data.
+     * @return the size in bytes.
+     */
+    public int getSizeInBytes()
+    {
+        return 4 * (positions.length + texCoords.length + normals.length + indices.length);
+    }
+}
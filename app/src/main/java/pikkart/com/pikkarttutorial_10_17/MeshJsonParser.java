@@ -0,0 +1,599 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * \class MeshJsonParser
+ * \brief A parser for the MeshLab json meshes, splitting the number parsing across cores.
+ *
+ * The file is scanned once to find the ranges of the vertex "values" and the triangle
+ * "indices" arrays, without parsing their content. The ranges are then cut at commas into
+ * chunks parsed in parallel on a fork-join pool, and the chunk results concatenated.
+ * Numbers are parsed straight from the bytes: when the digits fit an exact double (below
+ * 2^53) and the exponent is at most 22, mantissa and power of ten are both exact, so one
+ * double multiplication or division gives the correctly rounded value (Clinger's fast path);
+ * anything else falls back to Double.parseDouble. The output is bit for bit the one of
+ * android.util.JsonReader nextDouble()/nextInt(), positions included (same float scale and
+ * offset). Plain Java, no Android dependencies; ForkJoinPool needs API level 21, without a
+ * pool everything is parsed on the calling thread.
+ */
+public class MeshJsonParser
+{
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MIN_CHUNK_BYTES = 32 * 1024; /**< smaller chunks cost more to schedule than to parse */
+    private static final int CHUNKS_PER_THREAD = 4; /**< extra chunks to balance uneven threads */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53; /**< integers up to this are exact doubles */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 }; /**< exact doubles */
+
+    private static final int TARGET_NONE = -1;
+    private static final int TARGET_POSITIONS = 0;
+    private static final int TARGET_NORMALS = 1;
+    private static final int TARGET_TEXCOORDS = 2;
+    private static final int TARGET_INDICES = 3;
+
+    private static ForkJoinPool sSharedPool = null; /**< pool of getSharedPool() */
+
+    private final byte[] mJson;
+    private int mPos = 0;
+    private String mName = null;
+    private final List<int[]> mRanges = new ArrayList<int[]>(); /**< target, start, end of each numeric array */
+
+    private MeshJsonParser(byte[] json)
+    {
+        mJson = json;
+    }
+
+    /**
+     * \brief Read a whole stream.
+     * @param is the stream, not closed.
+     * @return the bytes read.
+     * @throws IOException on read errors.
+     */
+    public static byte[] readFully(InputStream is) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(is.available(), 64 * 1024));
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = is.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * \brief Get a pool with a thread per core, shared by all the mesh loads.
+     * @return the pool, created on the first call.
+     */
+    public static synchronized ForkJoinPool getSharedPool()
+    {
+        if (sSharedPool == null) sSharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sSharedPool;
+    }
+
+    /**
+     * \brief Parse a MeshLab json mesh.
+     * @param json the file content, UTF-8.
+     * @param pool the pool parsing the numbers, null to parse on the calling thread.
+     * @return the mesh data (positions scaled and offset as the app draws them).
+     * @throws IOException if the json is malformed.
+     */
+    public static MeshData parse(byte[] json, ForkJoinPool pool) throws IOException
+    {
+        int parallelism = pool == null ? 1 : pool.getParallelism();
+        MeshJsonParser parser = new MeshJsonParser(json);
+        try {
+            parser.scanRoot();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("unexpected end of json");
+        }
+
+        // cut every array into chunks, keeping their order per target
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int[] range : parser.mRanges) {
+            parser.split(range[0], range[1], range[2], parallelism, chunks);
+        }
+        try {
+            if (parallelism > 1 && chunks.size() > 1) {
+                runParallel(chunks, pool);
+            }
+            else {
+                for (Chunk chunk : chunks) chunk.call();
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("bad number in json: " + e.getMessage());
+        }
+
+        MeshData data = new MeshData();
+        if (parser.mName != null) data.name = parser.mName;
+        data.positions = concatFloats(chunks, TARGET_POSITIONS);
+        data.normals = concatFloats(chunks, TARGET_NORMALS);
+        data.texCoords = concatFloats(chunks, TARGET_TEXCOORDS);
+        data.indices = concatInts(chunks);
+        // same float arithmetic as the JsonReader loop
+        float[] positions = data.positions;
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i % 3 == 2 ? positions[i] * -0.2f : positions[i] * -0.2f + 0.5f;
+        }
+        return data;
+    }
+
+    private static void runParallel(List<Chunk> chunks, ForkJoinPool pool) throws IOException
+    {
+        List<Future<Chunk>> futures = pool.invokeAll(chunks);
+        for (Future<Chunk> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            } catch (ExecutionException e) {
+                throw new IOException("bad number in json: " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    private static float[] concatFloats(List<Chunk> chunks, int target)
+    {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.target == target) count += chunk.count;
+        }
+        float[] result = new float[count];
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.target != target) continue;
+            System.arraycopy(chunk.floats, 0, result, offset, chunk.count);
+            offset += chunk.count;
+        }
+        return result;
+    }
+
+    private static int[] concatInts(List<Chunk> chunks)
+    {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.target == TARGET_INDICES) count += chunk.count;
+        }
+        int[] result = new int[count];
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.target != TARGET_INDICES) continue;
+            System.arraycopy(chunk.ints, 0, result, offset, chunk.count);
+            offset += chunk.count;
+        }
+        return result;
+    }
+
+    /**
+     * \brief Cut an array range into chunks ending right after a comma.
+     */
+    private void split(int target, int start, int end, int parallelism, List<Chunk> chunks)
+    {
+        int pieces = Math.max(1, Math.min(parallelism * CHUNKS_PER_THREAD, (end - start) / MIN_CHUNK_BYTES));
+        if (parallelism <= 1) pieces = 1;
+        int chunkStart = start;
+        for (int i = 1; i < pieces; i++) {
+            int cut = Math.max(chunkStart, start + (int) ((long) (end - start) * i / pieces));
+            while (cut < end && mJson[cut] != ',') cut++;
+            if (cut >= end) break;
+            chunks.add(new Chunk(mJson, target, chunkStart, cut + 1));
+            chunkStart = cut + 1;
+        }
+        chunks.add(new Chunk(mJson, target, chunkStart, end));
+    }
+
+    // ------------------------------------------------------------------------------------
+    // structure scan
+
+    private void scanRoot() throws IOException
+    {
+        skipSpaces();
+        expect('{');
+        if (peek() == '}') return;
+        do {
+            String key = readString();
+            expect(':');
+            if (key.equals("name")) {
+                mName = readString();
+            }
+            else if (key.equals("vertices")) {
+                scanElements(true);
+            }
+            else if (key.equals("connectivity")) {
+                scanElements(false);
+            }
+            else {
+                skipValue();
+            }
+        }
+        while (nextMember('}'));
+    }
+
+    /**
+     * \brief Scan the array of vertex or connectivity elements.
+     */
+    private void scanElements(boolean vertices) throws IOException
+    {
+        expect('[');
+        if (peek() == ']') {
+            mPos++;
+            return;
+        }
+        do {
+            expect('{');
+            String name = "";
+            String type = "float32";
+            String mode = "";
+            boolean indexed = true;
+            String indexType = "";
+            if (peek() != '}') {
+                do {
+                    String key = readString();
+                    expect(':');
+                    if (key.equals("name")) name = readString();
+                    else if (key.equals("type")) type = readString();
+                    else if (key.equals("mode")) mode = readString();
+                    else if (key.equals("indexType")) indexType = readString();
+                    else if (key.equals("indexed")) indexed = readBoolean();
+                    else if (key.equals(vertices ? "values" : "indices")) {
+                        // as with JsonReader, only the attributes seen before the array count
+                        int target = TARGET_NONE;
+                        if (vertices && type.equals("float32")) {
+                            if (name.equals("position_buffer")) target = TARGET_POSITIONS;
+                            else if (name.equals("normal_buffer")) target = TARGET_NORMALS;
+                            else if (name.equals("texcoord_buffer")) target = TARGET_TEXCOORDS;
+                        }
+                        else if (!vertices && mode.equals("triangles_list") && indexed && indexType.equals("uint32")) {
+                            target = TARGET_INDICES;
+                        }
+                        if (target == TARGET_NONE) skipValue();
+                        else scanNumberArray(target);
+                    }
+                    else {
+                        skipValue();
+                    }
+                }
+                while (nextMember('}'));
+            }
+            else {
+                mPos++;
+            }
+        }
+        while (nextMember(']'));
+    }
+
+    /**
+     * \brief Record the range of an array of numbers, which can hold no bracket nor string.
+     */
+    private void scanNumberArray(int target) throws IOException
+    {
+        expect('[');
+        int start = mPos;
+        while (mJson[mPos] != ']') {
+            byte c = mJson[mPos];
+            if (c == '"' || c == '[' || c == '{') throw new IOException("not an array of numbers at " + mPos);
+            mPos++;
+        }
+        mRanges.add(new int[] { target, start, mPos });
+        mPos++;
+    }
+
+    private void skipValue() throws IOException
+    {
+        skipSpaces();
+        byte c = mJson[mPos];
+        if (c == '"') {
+            skipString();
+        }
+        else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = mJson[mPos];
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+                mPos++;
+            }
+            while (depth > 0);
+        }
+        else {
+            // number or literal
+            while (mPos < mJson.length && c != ',' && c != '}' && c != ']' && !isSpace(c)) {
+                c = mJson[++mPos];
+            }
+        }
+    }
+
+    private void skipString()
+    {
+        mPos++;
+        while (mJson[mPos] != '"') {
+            if (mJson[mPos] == '\\') mPos++;
+            mPos++;
+        }
+        mPos++;
+    }
+
+    private String readString() throws IOException
+    {
+        expect('"');
+        int start = mPos;
+        boolean escaped = false;
+        while (mJson[mPos] != '"') {
+            if (mJson[mPos] == '\\') {
+                escaped = true;
+                mPos++;
+            }
+            mPos++;
+        }
+        String raw = new String(mJson, start, mPos - start, UTF8);
+        mPos++;
+        return escaped ? unescape(raw) : raw;
+    }
+
+    private static String unescape(String raw)
+    {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = raw.charAt(++i);
+            if (e == 'u') {
+                sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                i += 4;
+            }
+            else sb.append(e == 'n' ? '\n' : e == 't' ? '\t' : e == 'r' ? '\r' : e == 'b' ? '\b' : e == 'f' ? '\f' : e);
+        }
+        return sb.toString();
+    }
+
+    private boolean readBoolean() throws IOException
+    {
+        skipSpaces();
+        if (startsWith("true")) {
+            mPos += 4;
+            return true;
+        }
+        if (startsWith("false")) {
+            mPos += 5;
+            return false;
+        }
+        throw new IOException("expected a boolean at " + mPos);
+    }
+
+    private boolean startsWith(String literal)
+    {
+        if (mPos + literal.length() > mJson.length) return false;
+        for (int i = 0; i < literal.length(); i++) {
+            if (mJson[mPos + i] != literal.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * \brief Move past a ',' (true) or the closing character (false).
+     */
+    private boolean nextMember(char close) throws IOException
+    {
+        skipSpaces();
+        byte c = mJson[mPos++];
+        if (c == ',') return true;
+        if (c == close) return false;
+        throw new IOException("expected ',' or '" + close + "' at " + (mPos - 1));
+    }
+
+    private byte peek()
+    {
+        skipSpaces();
+        return mJson[mPos];
+    }
+
+    private void expect(char c) throws IOException
+    {
+        skipSpaces();
+        if (mJson[mPos] != c) throw new IOException("expected '" + c + "' at " + mPos);
+        mPos++;
+    }
+
+    private void skipSpaces()
+    {
+        while (mPos < mJson.length && isSpace(mJson[mPos])) mPos++;
+    }
+
+    private static boolean isSpace(byte c)
+    {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    // ------------------------------------------------------------------------------------
+    // number parsing
+
+    /**
+     * \brief A comma separated run of numbers of one array, parsed on a pool thread.
+     */
+    private static class Chunk implements Callable<Chunk>
+    {
+        final byte[] json;
+        final int target;
+        final int start;
+        final int end;
+        float[] floats = null; /**< parsed values, for the vertex targets */
+        int[] ints = null; /**< parsed values, for the indices */
+        int count = 0; /**< values parsed */
+        private int pos = 0; /**< parse position, past the last number parsed */
+
+        Chunk(byte[] json, int target, int start, int end)
+        {
+            this.json = json;
+            this.target = target;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Chunk call()
+        {
+            // numbers take at least 2 bytes with their comma, usually many more
+            int capacity = Math.max(16, (end - start) / 6);
+            if (target == TARGET_INDICES) ints = new int[capacity];
+            else floats = new float[capacity];
+
+            pos = start;
+            while (true) {
+                while (pos < end && isSpace(json[pos])) pos++;
+                if (pos >= end) break;
+                double value = parseNumber();
+                if (target == TARGET_INDICES) {
+                    int v = (int) value;
+                    if (v != value) throw new NumberFormatException("not an int at " + pos);
+                    if (count == ints.length) ints = grow(ints);
+                    ints[count++] = v;
+                }
+                else {
+                    if (count == floats.length) floats = grow(floats);
+                    floats[count++] = (float) value;
+                }
+                while (pos < end && isSpace(json[pos])) pos++;
+                if (pos < end) {
+                    if (json[pos] != ',') throw new NumberFormatException("expected ',' at " + pos);
+                    pos++;
+                }
+            }
+            return this;
+        }
+
+        /**
+         * \brief Parse the number at pos, exactly as Double.parseDouble would.
+         */
+        private double parseNumber()
+        {
+            int tokenStart = pos;
+            boolean negative = false;
+            if (json[pos] == '-') {
+                negative = true;
+                pos++;
+            }
+            long mantissa = 0;
+            int digits = 0; // significant digits in mantissa
+            int exponent = 0;
+            boolean exact = true;
+            boolean anyDigit = false;
+            while (pos < end && isDigit(json[pos])) {
+                int d = json[pos++] - '0';
+                anyDigit = true;
+                if (mantissa == 0 && d == 0) continue;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d;
+                    digits++;
+                }
+                else {
+                    exact = false;
+                }
+            }
+            if (pos < end && json[pos] == '.') {
+                pos++;
+                while (pos < end && isDigit(json[pos])) {
+                    int d = json[pos++] - '0';
+                    anyDigit = true;
+                    if (mantissa == 0 && d == 0) {
+                        exponent--;
+                    }
+                    else if (digits < 18) {
+                        mantissa = mantissa * 10 + d;
+                        digits++;
+                        exponent--;
+                    }
+                    else {
+                        exact = false;
+                    }
+                }
+            }
+            if (pos < end && (json[pos] == 'e' || json[pos] == 'E')) {
+                pos++;
+                boolean negativeExponent = false;
+                if (pos < end && (json[pos] == '-' || json[pos] == '+')) {
+                    negativeExponent = json[pos] == '-';
+                    pos++;
+                }
+                int e = 0;
+                boolean anyExponentDigit = false;
+                while (pos < end && isDigit(json[pos])) {
+                    if (e < 10000) e = e * 10 + (json[pos] - '0');
+                    pos++;
+                    anyExponentDigit = true;
+                }
+                if (!anyExponentDigit) exact = false;
+                exponent += negativeExponent ? -e : e;
+            }
+            if (!anyDigit) exact = false;
+
+            if (exact && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+                double value = mantissa;
+                if (exponent < 0) value /= POWERS_OF_TEN[-exponent];
+                else value *= POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            // too many digits or too large an exponent, or not a number at all
+            while (pos < end && json[pos] != ',' && !isSpace(json[pos])) pos++;
+            return Double.parseDouble(new String(json, tokenStart, pos - tokenStart, ASCII));
+        }
+
+        private static boolean isDigit(byte c)
+        {
+            return c >= '0' && c <= '9';
+        }
+
+        private static float[] grow(float[] array)
+        {
+            float[] result = new float[array.length * 2];
+            System.arraycopy(array, 0, result, 0, array.length);
+            return result;
+        }
+
+        private static int[] grow(int[] array)
+        {
+            int[] result = new int[array.length * 2];
+            System.arraycopy(array, 0, result, 0, array.length);
+            return result;
+        }
+    }
+}
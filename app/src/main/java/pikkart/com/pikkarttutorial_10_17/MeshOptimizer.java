@@ -0,0 +1,357 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.Arrays;
+
+/**
+ * \class MeshOptimizer
+ * \brief Import time reordering of triangles and vertices for faster rendering.
+ *
+ * - optimizeVertexCache: Forsyth's linear-speed vertex cache optimization of the index buffer.
+ * - optimizeOverdraw: groups the cache optimized triangles in clusters and sorts the clusters
+ *   so that the outer, outward facing ones are drawn first.
+ * - optimizeVertexFetch: renumbers the vertices in the order they are first used.
+ * computeACMR measures the result (average number of vertices transformed per triangle
+ * with a FIFO post-transform cache). Plain Java, no Android dependencies.
+ */
+public class MeshOptimizer
+{
+    public static final int CACHE_SIZE = 32; /**< simulated post-transform cache size */
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRI_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    /**
+     * \brief Run all the optimizations on a mesh, in place.
+     *
+     * Each level of detail is optimized on its own; vertices are then ordered for the full
+     * resolution level, which comes first in the index buffer.
+     * @param data the mesh to optimize.
+     */
+    public static void optimize(MeshData data)
+    {
+        int vertexCount = data.getVertexCount();
+        for (int l = 0; l < data.getLodCount(); l++) {
+            int offset = data.lodOffsets == null ? 0 : data.lodOffsets[l];
+            int count = data.lodCounts == null ? data.indices.length : data.lodCounts[l];
+            int[] indices = optimizeVertexCache(Arrays.copyOfRange(data.indices, offset, offset + count), vertexCount);
+            if (data.positions.length == vertexCount * 3) {
+                indices = optimizeOverdraw(indices, data.positions, vertexCount);
+            }
+            System.arraycopy(indices, 0, data.indices, offset, count);
+        }
+        optimizeVertexFetch(data);
+    }
+
+    /**
+     * \brief Compute the average cache miss ratio of an index buffer.
+     * @param indices the triangle list indices.
+     * @param vertexCount the number of vertices.
+     * @param cacheSize the FIFO cache size to simulate.
+     * @return the number of cache misses per triangle (between 0.5 and 3 for typical meshes).
+     */
+    public static float computeACMR(int[] indices, int vertexCount, int cacheSize)
+    {
+        int triCount = indices.length / 3;
+        if (triCount == 0) return 0;
+        // a vertex is in the FIFO if it was inserted less than cacheSize insertions ago
+        int[] insertedAt = new int[vertexCount];
+        Arrays.fill(insertedAt, -cacheSize - 1);
+        int time = 0;
+        int misses = 0;
+        for (int i = 0; i < triCount * 3; i++) {
+            int v = indices[i];
+            if (time - insertedAt[v] > cacheSize) {
+                insertedAt[v] = time++;
+                misses++;
+            }
+        }
+        return (float) misses / triCount;
+    }
+
+    /**
+     * \brief Reorder triangles for post-transform vertex cache locality (Forsyth).
+     * @param indices the triangle list indices.
+     * @param vertexCount the number of vertices.
+     * @return the reordered indices.
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount)
+    {
+        int triCount = indices.length / 3;
+        int[] result = new int[triCount * 3];
+        if (triCount == 0) return result;
+
+        // vertex to triangles adjacency; the live triangles of v are adj[adjOffset[v] .. adjOffset[v]+remaining[v]-1]
+        int[] remaining = new int[vertexCount];
+        for (int i = 0; i < triCount * 3; i++) {
+            remaining[indices[i]]++;
+        }
+        int[] adjOffset = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjOffset[v + 1] = adjOffset[v] + remaining[v];
+        }
+        int[] adj = new int[triCount * 3];
+        int[] fill = new int[vertexCount];
+        for (int t = 0; t < triCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                adj[adjOffset[v] + fill[v]++] = t;
+            }
+        }
+
+        int[] cachePos = new int[vertexCount];
+        Arrays.fill(cachePos, -1);
+        float[] vertexScore = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = scoreVertex(-1, remaining[v]);
+        }
+        float[] triScore = new float[triCount];
+        boolean[] emitted = new boolean[triCount];
+        int best = 0;
+        for (int t = 0; t < triCount; t++) {
+            triScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+            if (triScore[t] > triScore[best]) best = t;
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int cursor = 0;
+        int out = 0;
+        while (best >= 0) {
+            emitted[best] = true;
+            int a = indices[best * 3];
+            int b = indices[best * 3 + 1];
+            int c = indices[best * 3 + 2];
+            int newCount = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[best * 3 + k];
+                result[out++] = v;
+                newCache[newCount++] = v;
+                // move the triangle out of the live range of v
+                int start = adjOffset[v];
+                int end = start + --remaining[v];
+                for (int j = start; j <= end; j++) {
+                    if (adj[j] == best) {
+                        adj[j] = adj[end];
+                        adj[end] = best;
+                        break;
+                    }
+                }
+            }
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) newCache[newCount++] = v;
+            }
+
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                cachePos[v] = i < CACHE_SIZE ? i : -1;
+                vertexScore[v] = scoreVertex(cachePos[v], remaining[v]);
+            }
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < newCount; i++) {
+                int v = newCache[i];
+                for (int j = adjOffset[v]; j < adjOffset[v] + remaining[v]; j++) {
+                    int t = adj[j];
+                    float score = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+                    triScore[t] = score;
+                    if (score > bestScore) {
+                        bestScore = score;
+                        best = t;
+                    }
+                }
+            }
+
+            int[] tmp = cache;
+            cache = newCache;
+            newCache = tmp;
+            cacheCount = Math.min(newCount, CACHE_SIZE);
+
+            if (best < 0) {
+                // nothing left around the cache: restart from the next triangle in the original order
+                while (cursor < triCount && emitted[cursor]) cursor++;
+                if (cursor < triCount) best = cursor;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * \brief Reorder clusters of a cache optimized index buffer to reduce overdraw.
+     *
+     * A cluster starts at every triangle whose three vertices all miss the cache, so that
+     * reordering clusters barely changes the ACMR. Clusters are sorted on the distance of
+     * their centroid from the mesh centroid along their average normal: the outer, outward
+     * facing ones are drawn first and hide the rest with the depth test.
+     * @param indices the cache optimized triangle list indices.
+     * @param positions xyz per vertex.
+     * @param vertexCount the number of vertices.
+     * @return the reordered indices.
+     */
+    public static int[] optimizeOverdraw(int[] indices, float[] positions, int vertexCount)
+    {
+        int triCount = indices.length / 3;
+        if (triCount == 0) return indices;
+
+        // split in clusters
+        int[] clusterStart = new int[triCount + 1];
+        int clusterCount = 0;
+        int[] insertedAt = new int[vertexCount];
+        Arrays.fill(insertedAt, -CACHE_SIZE - 1);
+        int time = 0;
+        for (int t = 0; t < triCount; t++) {
+            int misses = 0;
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (time - insertedAt[v] > CACHE_SIZE) {
+                    insertedAt[v] = time++;
+                    misses++;
+                }
+            }
+            if (t == 0 || misses == 3) clusterStart[clusterCount++] = t;
+        }
+        clusterStart[clusterCount] = triCount;
+        if (clusterCount == 1) return indices;
+
+        // mesh centroid
+        double mx = 0, my = 0, mz = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            mx += positions[v * 3];
+            my += positions[v * 3 + 1];
+            mz += positions[v * 3 + 2];
+        }
+        if (vertexCount > 0) {
+            mx /= vertexCount;
+            my /= vertexCount;
+            mz /= vertexCount;
+        }
+
+        // sort key per cluster: area weighted centroid and normal
+        long[] keys = new long[clusterCount];
+        for (int cl = 0; cl < clusterCount; cl++) {
+            double cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0, area = 0;
+            for (int t = clusterStart[cl]; t < clusterStart[cl + 1]; t++) {
+                int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+                double e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+                double e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+                double tx = e1y * e2z - e1z * e2y;
+                double ty = e1z * e2x - e1x * e2z;
+                double tz = e1x * e2y - e1y * e2x;
+                double w = Math.sqrt(tx * tx + ty * ty + tz * tz);
+                cx += (positions[a] + positions[b] + positions[c]) * w / 3;
+                cy += (positions[a + 1] + positions[b + 1] + positions[c + 1]) * w / 3;
+                cz += (positions[a + 2] + positions[b + 2] + positions[c + 2]) * w / 3;
+                nx += tx;
+                ny += ty;
+                nz += tz;
+                area += w;
+            }
+            float key = 0;
+            double nl = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (area > 0 && nl > 0) {
+                key = (float) (((cx / area - mx) * nx + (cy / area - my) * ny + (cz / area - mz) * nz) / nl);
+            }
+            // descending key, stable on the cluster index
+            int bits = Float.floatToIntBits(-key);
+            bits ^= (bits >> 31) & 0x7fffffff;
+            keys[cl] = ((long) bits << 32) | cl;
+        }
+        Arrays.sort(keys);
+
+        int[] result = new int[triCount * 3];
+        int out = 0;
+        for (int i = 0; i < clusterCount; i++) {
+            int cl = (int) (keys[i] & 0xffffffffL);
+            int from = clusterStart[cl] * 3;
+            int count = (clusterStart[cl + 1] - clusterStart[cl]) * 3;
+            System.arraycopy(indices, from, result, out, count);
+            out += count;
+        }
+        return result;
+    }
+
+    /**
+     * \brief Renumber the vertices in the order the index buffer uses them, in place.
+     *
+     * Vertices not referenced by any triangle are dropped. Nothing is done if the vertex
+     * attributes do not all have one entry per vertex.
+     * @param data the mesh to reorder.
+     * @return the new number of vertices.
+     */
+    public static int optimizeVertexFetch(MeshData data)
+    {
+        int vertexCount = data.getVertexCount();
+        if (!hasPerVertex(data.texCoords, 2, vertexCount) || !hasPerVertex(data.normals, 3, vertexCount)) {
+            return vertexCount;
+        }
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        int[] indices = data.indices;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) remap[v] = next++;
+            indices[i] = remap[v];
+        }
+        data.positions = remapAttribute(data.positions, 3, remap, next);
+        data.texCoords = remapAttribute(data.texCoords, 2, remap, next);
+        data.normals = remapAttribute(data.normals, 3, remap, next);
+        return next;
+    }
+
+    private static boolean hasPerVertex(float[] attribute, int size, int vertexCount)
+    {
+        return attribute.length == 0 || attribute.length == vertexCount * size;
+    }
+
+    private static float[] remapAttribute(float[] attribute, int size, int[] remap, int newCount)
+    {
+        if (attribute.length == 0) return attribute;
+        float[] result = new float[newCount * size];
+        for (int v = 0; v < remap.length; v++) {
+            if (remap[v] >= 0) System.arraycopy(attribute, v * size, result, remap[v] * size, size);
+        }
+        return result;
+    }
+
+    private static float scoreVertex(int cachePosition, int remainingTris)
+    {
+        if (remainingTris == 0) return -1.0f;
+        float score = 0.0f;
+        if (cachePosition >= 0) {
+            if (cachePosition < 3) {
+                // the triangle just drawn: same score whatever its order, and not too high to avoid strips
+                score = LAST_TRI_SCORE;
+            } else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        // boost vertices with few triangles left, to finish them off
+        score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingTris, -VALENCE_BOOST_POWER);
+        return score;
+    }
+}
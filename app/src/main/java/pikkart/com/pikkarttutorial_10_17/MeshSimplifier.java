@@ -0,0 +1,294 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.Arrays;
+
+/**
+ * \class MeshSimplifier
+ * \brief Quadric error edge collapse simplification, used to build LOD chains.
+ *
+ * Collapses are half-edge collapses (a vertex moves onto one of its neighbours), so every
+ * level reuses the vertex buffer of the full resolution mesh and the levels are simply
+ * different index ranges of the same index buffer. Border vertices (including texture
+ * seams, where vertices are split) never move, and collapses that would flip a triangle
+ * are rejected. Plain Java, no Android dependencies.
+ */
+public class MeshSimplifier
+{
+    private static final int MAX_PASSES = 100;
+
+    /**
+     * \brief Build a LOD chain of a mesh, in place.
+     *
+     * Each level has about half the triangles of the previous one. On return data.indices holds
+     * all the levels one after the other, and data.lodOffsets / data.lodCounts their ranges.
+     * The chain stops early when a level can not be simplified any further.
+     * @param data the mesh.
+     * @param levels the maximum number of levels, including the full resolution one.
+     */
+    public static void buildLods(MeshData data, int levels)
+    {
+        int vertexCount = data.getVertexCount();
+        int[][] lods = new int[levels][];
+        lods[0] = data.indices;
+        int count = 1;
+        int total = data.indices.length;
+        while (count < levels) {
+            int[] previous = lods[count - 1];
+            int[] next = simplify(data.positions, vertexCount, previous, previous.length / 6);
+            if (next.length == 0 || next.length > previous.length * 9 / 10) break;
+            lods[count++] = next;
+            total += next.length;
+        }
+
+        int[] indices = new int[total];
+        data.lodOffsets = new int[count];
+        data.lodCounts = new int[count];
+        int offset = 0;
+        for (int l = 0; l < count; l++) {
+            System.arraycopy(lods[l], 0, indices, offset, lods[l].length);
+            data.lodOffsets[l] = offset;
+            data.lodCounts[l] = lods[l].length;
+            offset += lods[l].length;
+        }
+        data.indices = indices;
+    }
+
+    /**
+     * \brief Simplify a triangle list.
+     * @param positions xyz per vertex.
+     * @param vertexCount the number of vertices.
+     * @param indices the triangle list indices.
+     * @param targetTriangles the number of triangles to reach.
+     * @return the simplified triangle list indices (may have more triangles than requested).
+     */
+    public static int[] simplify(float[] positions, int vertexCount, int[] indices, int targetTriangles)
+    {
+        int[] tris = indices.clone();
+        int live = tris.length / 3;
+
+        // vertex quadrics: the sum of the (area weighted) planes of the triangles around them
+        double[] quadrics = new double[vertexCount * 10];
+        for (int t = 0; t < live; t++) {
+            int a = tris[t * 3] * 3, b = tris[t * 3 + 1] * 3, c = tris[t * 3 + 2] * 3;
+            double e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+            double e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+            double nx = e1y * e2z - e1z * e2y;
+            double ny = e1z * e2x - e1x * e2z;
+            double nz = e1x * e2y - e1y * e2x;
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) continue;
+            double area = length * 0.5;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            double d = -(nx * positions[a] + ny * positions[a + 1] + nz * positions[a + 2]);
+            for (int k = 0; k < 3; k++) {
+                addPlane(quadrics, tris[t * 3 + k], nx, ny, nz, d, area);
+            }
+        }
+
+        boolean[] border = findBorderVertices(tris, vertexCount);
+        int[] remap = new int[vertexCount];
+        boolean[] dirty = new boolean[vertexCount];
+        int[] adjStart = new int[vertexCount + 1];
+
+        for (int pass = 0; pass < MAX_PASSES && live > targetTriangles; pass++) {
+            // vertex to triangles adjacency of the current triangles
+            Arrays.fill(adjStart, 0);
+            for (int i = 0; i < live * 3; i++) {
+                adjStart[tris[i] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                adjStart[v + 1] += adjStart[v];
+            }
+            int[] adj = new int[live * 3];
+            int[] fill = new int[vertexCount];
+            for (int t = 0; t < live; t++) {
+                for (int k = 0; k < 3; k++) {
+                    int v = tris[t * 3 + k];
+                    adj[adjStart[v] + fill[v]++] = t;
+                }
+            }
+
+            // candidate collapses, cheapest first
+            int[] from = new int[live * 3];
+            int[] to = new int[live * 3];
+            long[] keys = new long[live * 3];
+            int candidates = 0;
+            for (int t = 0; t < live; t++) {
+                for (int k = 0; k < 3; k++) {
+                    int u = tris[t * 3 + k];
+                    int v = tris[t * 3 + (k + 1) % 3];
+                    double cost = Double.MAX_VALUE;
+                    if (!border[u]) {
+                        cost = collapseCost(quadrics, positions, u, v);
+                        from[candidates] = u;
+                        to[candidates] = v;
+                    }
+                    if (!border[v]) {
+                        double reverse = collapseCost(quadrics, positions, v, u);
+                        if (reverse < cost) {
+                            cost = reverse;
+                            from[candidates] = v;
+                            to[candidates] = u;
+                        }
+                    }
+                    if (cost == Double.MAX_VALUE) continue;
+                    // positive floats sort like their bits
+                    keys[candidates] = ((long) Float.floatToIntBits((float) Math.max(cost, 0)) << 32) | candidates;
+                    candidates++;
+                }
+            }
+            Arrays.sort(keys, 0, candidates);
+
+            for (int v = 0; v < vertexCount; v++) {
+                remap[v] = v;
+            }
+            Arrays.fill(dirty, false);
+            int collapsed = 0;
+            int remaining = live;
+            for (int i = 0; i < candidates && remaining > targetTriangles; i++) {
+                int c = (int) (keys[i] & 0xffffffffL);
+                int f = from[c];
+                int t = to[c];
+                // vertices next to a collapse of this pass have moved or have stale quadrics
+                if (dirty[f] || dirty[t]) continue;
+                if (flips(positions, tris, adj, adjStart, f, t)) continue;
+
+                remap[f] = t;
+                for (int q = 0; q < 10; q++) {
+                    quadrics[t * 10 + q] += quadrics[f * 10 + q];
+                }
+                for (int j = adjStart[f]; j < adjStart[f + 1]; j++) {
+                    int tri = adj[j];
+                    if (tris[tri * 3] == t || tris[tri * 3 + 1] == t || tris[tri * 3 + 2] == t) remaining--;
+                    for (int k = 0; k < 3; k++) dirty[tris[tri * 3 + k]] = true;
+                }
+                for (int j = adjStart[t]; j < adjStart[t + 1]; j++) {
+                    int tri = adj[j];
+                    for (int k = 0; k < 3; k++) dirty[tris[tri * 3 + k]] = true;
+                }
+                collapsed++;
+            }
+            if (collapsed == 0) break;
+
+            // apply the collapses and drop the degenerate triangles
+            int out = 0;
+            for (int tri = 0; tri < live; tri++) {
+                int a = remap[tris[tri * 3]];
+                int b = remap[tris[tri * 3 + 1]];
+                int c = remap[tris[tri * 3 + 2]];
+                if (a == b || b == c || a == c) continue;
+                tris[out * 3] = a;
+                tris[out * 3 + 1] = b;
+                tris[out * 3 + 2] = c;
+                out++;
+            }
+            live = out;
+        }
+        return Arrays.copyOf(tris, live * 3);
+    }
+
+    private static void addPlane(double[] q, int v, double a, double b, double c, double d, double w)
+    {
+        int o = v * 10;
+        q[o] += w * a * a;
+        q[o + 1] += w * a * b;
+        q[o + 2] += w * a * c;
+        q[o + 3] += w * a * d;
+        q[o + 4] += w * b * b;
+        q[o + 5] += w * b * c;
+        q[o + 6] += w * b * d;
+        q[o + 7] += w * c * c;
+        q[o + 8] += w * c * d;
+        q[o + 9] += w * d * d;
+    }
+
+    /**
+     * \brief Error of moving vertex f onto vertex t: (Qf + Qt) evaluated at the position of t.
+     */
+    private static double collapseCost(double[] q, float[] positions, int f, int t)
+    {
+        double x = positions[t * 3], y = positions[t * 3 + 1], z = positions[t * 3 + 2];
+        int a = f * 10, b = t * 10;
+        return (q[a] + q[b]) * x * x + 2 * (q[a + 1] + q[b + 1]) * x * y + 2 * (q[a + 2] + q[b + 2]) * x * z
+                + 2 * (q[a + 3] + q[b + 3]) * x + (q[a + 4] + q[b + 4]) * y * y + 2 * (q[a + 5] + q[b + 5]) * y * z
+                + 2 * (q[a + 6] + q[b + 6]) * y + (q[a + 7] + q[b + 7]) * z * z + 2 * (q[a + 8] + q[b + 8]) * z
+                + (q[a + 9] + q[b + 9]);
+    }
+
+    /**
+     * \brief Would moving vertex f onto vertex t flip one of the triangles that survive the collapse.
+     */
+    private static boolean flips(float[] positions, int[] tris, int[] adj, int[] adjStart, int f, int t)
+    {
+        for (int j = adjStart[f]; j < adjStart[f + 1]; j++) {
+            int tri = adj[j];
+            int a = tris[tri * 3], b = tris[tri * 3 + 1], c = tris[tri * 3 + 2];
+            if (a == t || b == t || c == t) continue;
+            double[] before = normal(positions, a, b, c);
+            double[] after = normal(positions, a == f ? t : a, b == f ? t : b, c == f ? t : c);
+            if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0) return true;
+        }
+        return false;
+    }
+
+    private static double[] normal(float[] positions, int a, int b, int c)
+    {
+        a *= 3;
+        b *= 3;
+        c *= 3;
+        double e1x = positions[b] - positions[a], e1y = positions[b + 1] - positions[a + 1], e1z = positions[b + 2] - positions[a + 2];
+        double e2x = positions[c] - positions[a], e2y = positions[c + 1] - positions[a + 1], e2z = positions[c + 2] - positions[a + 2];
+        return new double[] { e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x };
+    }
+
+    /**
+     * \brief Find the vertices on edges used by a single triangle.
+     */
+    private static boolean[] findBorderVertices(int[] tris, int vertexCount)
+    {
+        int edgeCount = tris.length;
+        long[] edges = new long[edgeCount];
+        for (int t = 0; t < edgeCount / 3; t++) {
+            for (int k = 0; k < 3; k++) {
+                int u = tris[t * 3 + k];
+                int v = tris[t * 3 + (k + 1) % 3];
+                edges[t * 3 + k] = ((long) Math.min(u, v) << 32) | Math.max(u, v);
+            }
+        }
+        Arrays.sort(edges);
+        boolean[] border = new boolean[vertexCount];
+        int i = 0;
+        while (i < edgeCount) {
+            int j = i + 1;
+            while (j < edgeCount && edges[j] == edges[i]) j++;
+            if (j - i == 1) {
+                border[(int) (edges[i] >>> 32)] = true;
+                border[(int) (edges[i] & 0xffffffffL)] = true;
+            }
+            i = j;
+        }
+        return border;
+    }
+}
@@ -0,0 +1,136 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.Arrays;
+
+/**
+ * \class MeshWelder
+ * \brief Merges the vertices that have exactly the same position, texcoord and normal.
+ *
+ * Vertices are hashed on the bits of their full attribute tuple into an open addressing
+ * table of ints (linear probing, no boxing); the first occurrence of each tuple is kept
+ * and the index buffer is remapped. Plain Java, no Android dependencies.
+ */
+public class MeshWelder
+{
+    private static final int EMPTY = -1; /**< free slot in the hash table */
+
+    /**
+     * \brief Weld the duplicated vertices of a mesh, in place.
+     *
+     * Nothing is done if the vertex attributes do not all have one entry per vertex.
+     * @param data the mesh to weld.
+     * @return the new number of vertices.
+     */
+    public static int weld(MeshData data)
+    {
+        int vertexCount = data.getVertexCount();
+        boolean hasTexCoords = data.texCoords.length == vertexCount * 2;
+        boolean hasNormals = data.normals.length == vertexCount * 3;
+        if ((!hasTexCoords && data.texCoords.length != 0) || (!hasNormals && data.normals.length != 0)) {
+            return vertexCount;
+        }
+
+        int stride = 3 + (hasTexCoords ? 2 : 0) + (hasNormals ? 3 : 0);
+        int[] bits = new int[vertexCount * stride];
+        for (int v = 0; v < vertexCount; v++) {
+            int o = v * stride;
+            o = copyBits(data.positions, v * 3, 3, bits, o);
+            if (hasTexCoords) o = copyBits(data.texCoords, v * 2, 2, bits, o);
+            if (hasNormals) copyBits(data.normals, v * 3, 3, bits, o);
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(vertexCount, 1) * 2 - 1) << 1;
+        int mask = tableSize - 1;
+        int[] table = new int[tableSize]; // index of the kept vertex (in the old numbering)
+        Arrays.fill(table, EMPTY);
+        int[] remap = new int[vertexCount];
+        int[] kept = new int[vertexCount];
+        int keptCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            int slot = hash(bits, v * stride, stride) & mask;
+            while (true) {
+                int other = table[slot];
+                if (other == EMPTY) {
+                    table[slot] = v;
+                    remap[v] = keptCount;
+                    kept[keptCount++] = v;
+                    break;
+                }
+                if (equals(bits, v * stride, other * stride, stride)) {
+                    remap[v] = remap[other];
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        if (keptCount == vertexCount) return vertexCount;
+
+        for (int i = 0; i < data.indices.length; i++) {
+            data.indices[i] = remap[data.indices[i]];
+        }
+        data.positions = compact(data.positions, 3, kept, keptCount);
+        if (hasTexCoords) data.texCoords = compact(data.texCoords, 2, kept, keptCount);
+        if (hasNormals) data.normals = compact(data.normals, 3, kept, keptCount);
+        return keptCount;
+    }
+
+    private static int copyBits(float[] src, int from, int count, int[] dst, int to)
+    {
+        for (int i = 0; i < count; i++) {
+            float f = src[from + i];
+            // +0 and -0 are the same vertex
+            dst[to++] = f == 0.0f ? 0 : Float.floatToIntBits(f);
+        }
+        return to;
+    }
+
+    private static int hash(int[] bits, int from, int count)
+    {
+        int h = 0;
+        for (int i = 0; i < count; i++) {
+            h = h * 31 + bits[from + i];
+        }
+        // spread the high bits, positions of nearby vertices differ mostly there
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static boolean equals(int[] bits, int a, int b, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            if (bits[a + i] != bits[b + i]) return false;
+        }
+        return true;
+    }
+
+    private static float[] compact(float[] attribute, int size, int[] kept, int keptCount)
+    {
+        float[] result = new float[keptCount * size];
+        for (int i = 0; i < keptCount; i++) {
+            System.arraycopy(attribute, kept[i] * size, result, i * size, size);
+        }
+        return result;
+    }
+}
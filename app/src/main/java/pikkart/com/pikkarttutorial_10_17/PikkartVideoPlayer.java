@@ -226,6 +226,8 @@ public class PikkartVideoPlayer implements MediaPlayer.OnBufferingUpdateListener
         unload();
 
         mSurfaceTextureLock.lock();
+        if (mSurfaceTexture != null)
+            mSurfaceTexture.release();
         mSurfaceTexture = null;
         mSurfaceTextureLock.unlock();
     }
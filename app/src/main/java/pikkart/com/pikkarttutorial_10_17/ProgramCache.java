@@ -0,0 +1,192 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * \class ProgramCache
+ * \brief Linked shader programs kept in the DiskCache as driver binaries, so later launches
+ * and context recreations skip compiling and linking.
+ *
+ * Binaries are read and written with glGetProgramBinary / glProgramBinary, which the Java
+ * bindings only expose through GLES30: the cache is used on OpenGL ES 3 contexts whose driver
+ * has at least one binary format, RenderUtils compiles from source otherwise. Entries are keyed
+ * by the shader sources and GL_RENDERER / GL_VERSION, so a driver update never loads a binary
+ * of the previous driver (its entries age out of the DiskCache); a binary the driver still
+ * rejects is deleted and the program compiled from source again. Thread safe.
+ */
+public class ProgramCache
+{
+    private static final String CONVERSION = "program-binary"; /**< part of the DiskCache key, with the driver */
+
+    private static int sSupported = -1; /**< 1 if binaries can be used, 0 if not, -1 until checked */
+    private static String sDriver = ""; /**< GL_RENDERER and GL_VERSION */
+    private static int sLoaded = 0; /**< programs created from a binary */
+    private static int sCompiled = 0; /**< programs compiled from source */
+    private static int sRejected = 0; /**< binaries the driver refused */
+    private static long sLoadMicros = 0; /**< time spent creating programs from binaries */
+    private static long sCompileMicros = 0; /**< time spent compiling and linking programs */
+
+    /**
+     * \brief Can binaries be used with the current context (checked once, the driver does not change while running).
+     * @return true if the cache is usable.
+     */
+    private static synchronized boolean isSupported()
+    {
+        if (sSupported < 0) {
+            sSupported = 0;
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) return false;
+            String version = GLES20.glGetString(GLES20.GL_VERSION);
+            String renderer = GLES20.glGetString(GLES20.GL_RENDERER);
+            if (version == null || renderer == null) {
+                // no current context: check again next time
+                sSupported = -1;
+                return false;
+            }
+            sDriver = renderer + " " + version;
+            if (version.startsWith("OpenGL ES 3")) {
+                int[] formats = new int[1];
+                GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+                if (formats[0] > 0) sSupported = 1;
+            }
+            Log.i("ProgramCache", "program binaries " + (sSupported > 0 ? "enabled" : "not available") + " on " + sDriver);
+        }
+        return sSupported > 0;
+    }
+
+    /**
+     * \brief Get the DiskCache key of a program.
+     * @return the key, null if the cache is not usable.
+     */
+    private static String getKey(String vertexShaderSrc, String fragmentShaderSrc)
+    {
+        if (!DiskCache.isEnabled() || !isSupported()) return null;
+        try {
+            byte[] sources = (vertexShaderSrc + "\u0000" + fragmentShaderSrc).getBytes("UTF-8");
+            return DiskCache.computeKey(new ByteArrayInputStream(sources), CONVERSION + " " + sDriver);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * \brief Create a program from its cached binary.
+     * @param vertexShaderSrc vertex shader code.
+     * @param fragmentShaderSrc fragment shader code.
+     * @return the linked program, 0 if not cached (or rejected): compile it from source then.
+     */
+    public static int load(String vertexShaderSrc, String fragmentShaderSrc)
+    {
+        long start = System.nanoTime();
+        String key = getKey(vertexShaderSrc, fragmentShaderSrc);
+        ByteBuffer blob = key == null ? null : DiskCache.get(key);
+        if (blob == null || blob.remaining() <= 4) return 0;
+        int format = blob.getInt(blob.position());
+        ByteBuffer binary = blob.duplicate();
+        binary.position(blob.position() + 4);
+        binary = binary.slice();
+
+        int program = GLES20.glCreateProgram();
+        if (program == 0) return 0;
+        GLES30.glProgramBinary(program, format, binary, binary.remaining());
+        int[] status = { GLES20.GL_FALSE };
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == GLES20.GL_FALSE) {
+            // e.g. the driver was updated without changing its version string
+            GLES20.glDeleteProgram(program);
+            DiskCache.remove(key);
+            synchronized (ProgramCache.class) {
+                sRejected++;
+            }
+            return 0;
+        }
+        synchronized (ProgramCache.class) {
+            sLoaded++;
+            sLoadMicros += (System.nanoTime() - start) / 1000;
+        }
+        return program;
+    }
+
+    /**
+     * \brief Ask the driver to keep the binary of a program about to be linked.
+     * @param program the program, before glLinkProgram.
+     */
+    public static void prepareLink(int program)
+    {
+        if (DiskCache.isEnabled() && isSupported()) {
+            GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+    }
+
+    /**
+     * \brief Store the binary of a program compiled from source.
+     * @param program the linked program.
+     * @param vertexShaderSrc vertex shader code.
+     * @param fragmentShaderSrc fragment shader code.
+     * @param compileMicros the time spent compiling and linking it.
+     */
+    public static void store(int program, String vertexShaderSrc, String fragmentShaderSrc, long compileMicros)
+    {
+        synchronized (ProgramCache.class) {
+            sCompiled++;
+            sCompileMicros += compileMicros;
+        }
+        String key = getKey(vertexShaderSrc, fragmentShaderSrc);
+        if (key == null) return;
+        int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) return;
+
+        ByteBuffer blob = DirectBufferArena.allocate(4 + length[0]);
+        ByteBuffer binary = blob.duplicate();
+        binary.position(4);
+        binary = binary.slice();
+        IntBuffer written = IntBuffer.allocate(1);
+        IntBuffer format = IntBuffer.allocate(1);
+        GLES30.glGetProgramBinary(program, length[0], written, format, binary);
+        if (written.get(0) > 0) {
+            blob.putInt(0, format.get(0));
+            blob.limit(4 + written.get(0));
+            DiskCache.put(key, blob);
+        }
+        DirectBufferArena.release(blob);
+    }
+
+    /**
+     * \brief Get the cache statistics.
+     * @return a one line report.
+     */
+    public static synchronized String getReport()
+    {
+        return sLoaded + " programs from binaries (" + (sLoaded > 0 ? sLoadMicros / sLoaded : 0) + " us avg), "
+                + sCompiled + " compiled (" + (sCompiled > 0 ? sCompileMicros / sCompiled : 0) + " us avg), "
+                + sRejected + " binaries rejected" + (sSupported == 0 ? ", binaries not available" : "");
+    }
+}
@@ -0,0 +1,321 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * \class ProgressiveMesh
+ * \brief A streamable mesh format: the LOD chain of a mesh, coarsest level first.
+ *
+ * Vertices are numbered in the order the levels first use them, from the coarsest to the
+ * finest, so each level only adds vertices after the ones of the coarser levels. The file
+ * is a header (sizes, bounding volumes) followed by one batch per level, coarsest first,
+ * holding the new vertices and the indices of that level: the header and the first batch
+ * are enough to draw the mesh, and later batches refine it.
+ * Everything is little endian and 4 byte aligned, so batches read from a memory mapped file
+ * are slices of it, ready for glBufferSubData without any copy.
+ * Plain Java, no Android dependencies.
+ */
+public class ProgressiveMesh
+{
+    private static final int MAGIC = 0x504d5348; /**< "PMSH" */
+    private static final int VERSION = 3;
+
+    /**
+     * \brief The sizes of a progressive mesh, known before any batch is read.
+     */
+    public static class Header
+    {
+        public String name = ""; /**< mesh name */
+        public int vertexCount = 0; /**< vertices of the full resolution mesh */
+        public boolean hasTexCoords = false; /**< does the mesh have texture coordinates */
+        public boolean hasNormals = false; /**< does the mesh have normals */
+        public float[] bounds = new float[4]; /**< bounding sphere center xyz and radius */
+        public float[] box = new float[6]; /**< bounding box min xyz and max xyz */
+        public int[] lodCounts = new int[0]; /**< indices of each level, full resolution first */
+    }
+
+    /**
+     * \brief The data one level adds: its new vertices and its indices.
+     */
+    public static class Batch
+    {
+        public int level = 0; /**< the level made drawable by this batch, 0 being the full resolution */
+        public int firstVertex = 0; /**< index of the first vertex of this batch */
+        public int vertexCount = 0; /**< number of vertices of this batch */
+        public ByteBuffer positions = null; /**< xyz floats */
+        public ByteBuffer texCoords = null; /**< uv floats, null if the mesh has none */
+        public ByteBuffer normals = null; /**< xyz floats, null if the mesh has none */
+        public ByteBuffer indices = null; /**< 16 bit indices of the level */
+
+        /**
+         * \brief Get the memory used by the batch data.
+         * @return the size in bytes.
+         */
+        public int getSizeInBytes()
+        {
+            return capacity(positions) + capacity(texCoords) + capacity(normals) + capacity(indices);
+        }
+
+        private static int capacity(ByteBuffer bb)
+        {
+            return bb == null ? 0 : bb.capacity();
+        }
+    }
+
+    /**
+     * \brief Write a mesh with a LOD chain in the progressive format.
+     *
+     * The mesh itself is not modified.
+     * @param data the mesh, with lodOffsets and lodCounts (a single level is fine).
+     * @return the encoded mesh, from position 0 to its limit.
+     * @throws IOException if the mesh has more than 65536 vertices.
+     */
+    public static ByteBuffer write(MeshData data) throws IOException
+    {
+        int vertexCount = data.getVertexCount();
+        if (vertexCount > 65536) throw new IOException("too many vertices for 16 bit indices");
+        int levels = data.getLodCount();
+        boolean hasTexCoords = data.texCoords.length == vertexCount * 2 && vertexCount > 0;
+        boolean hasNormals = data.normals.length == vertexCount * 3 && vertexCount > 0;
+
+        // renumber the vertices by first use, coarsest level first
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int[] order = new int[vertexCount];
+        int[] levelVertexEnd = new int[levels];
+        int next = 0;
+        int totalIndices = 0;
+        for (int l = levels - 1; l >= 0; l--) {
+            int offset = getLodOffset(data, l);
+            int count = getLodCount(data, l);
+            for (int i = offset; i < offset + count; i++) {
+                int v = data.indices[i];
+                if (remap[v] < 0) {
+                    remap[v] = next;
+                    order[next++] = v;
+                }
+            }
+            levelVertexEnd[l] = next;
+            totalIndices += align(count * 2);
+        }
+
+        byte[] name = encodeName(data.name);
+        int vertexSize = 12 + (hasTexCoords ? 8 : 0) + (hasNormals ? 12 : 0);
+        int size = 4 * 5 + align(name.length) + 4 * (4 + 6) + 4 + 4 * levels
+                + levels * 12 + next * vertexSize + totalIndices;
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        float[] bounds = data.computeBoundingSphere();
+        float[] box = data.computeBoundingBox();
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(name.length);
+        out.put(name);
+        pad(out);
+        out.putInt(next);
+        out.putInt((hasTexCoords ? 1 : 0) | (hasNormals ? 2 : 0));
+        for (int i = 0; i < 4; i++) {
+            out.putFloat(bounds[i]);
+        }
+        for (int i = 0; i < 6; i++) {
+            out.putFloat(box[i]);
+        }
+        out.putInt(levels);
+        for (int l = 0; l < levels; l++) {
+            out.putInt(getLodCount(data, l));
+        }
+
+        int firstVertex = 0;
+        for (int l = levels - 1; l >= 0; l--) {
+            int end = levelVertexEnd[l];
+            out.putInt(l);
+            out.putInt(firstVertex);
+            out.putInt(end - firstVertex);
+            for (int i = firstVertex; i < end; i++) {
+                int v = order[i];
+                out.putFloat(data.positions[v * 3]);
+                out.putFloat(data.positions[v * 3 + 1]);
+                out.putFloat(data.positions[v * 3 + 2]);
+            }
+            if (hasTexCoords) {
+                for (int i = firstVertex; i < end; i++) {
+                    out.putFloat(data.texCoords[order[i] * 2]);
+                    out.putFloat(data.texCoords[order[i] * 2 + 1]);
+                }
+            }
+            if (hasNormals) {
+                for (int i = firstVertex; i < end; i++) {
+                    int v = order[i];
+                    out.putFloat(data.normals[v * 3]);
+                    out.putFloat(data.normals[v * 3 + 1]);
+                    out.putFloat(data.normals[v * 3 + 2]);
+                }
+            }
+            int offset = getLodOffset(data, l);
+            int count = getLodCount(data, l);
+            for (int i = offset; i < offset + count; i++) {
+                out.putShort((short) remap[data.indices[i]]);
+            }
+            pad(out);
+            firstVertex = end;
+        }
+        out.flip();
+        return out;
+    }
+
+    private static int getLodOffset(MeshData data, int level)
+    {
+        return data.lodOffsets == null ? 0 : data.lodOffsets[level];
+    }
+
+    private static int getLodCount(MeshData data, int level)
+    {
+        return data.lodCounts == null ? data.indices.length : data.lodCounts[level];
+    }
+
+    private static byte[] encodeName(String name)
+    {
+        try {
+            return (name == null ? "" : name).getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            return new byte[0];
+        }
+    }
+
+    private static int align(int size)
+    {
+        return (size + 3) & ~3;
+    }
+
+    private static void pad(ByteBuffer out)
+    {
+        while ((out.position() & 3) != 0) out.put((byte) 0);
+    }
+
+    /**
+     * \brief Read the header of a progressive mesh.
+     * @param in the encoded mesh, little endian, positioned at its start; left after the header.
+     * @return the header.
+     * @throws IOException if this is not a valid progressive mesh.
+     */
+    public static Header readHeader(ByteBuffer in) throws IOException
+    {
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("not a progressive mesh");
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException("unsupported progressive mesh version " + version);
+            Header header = new Header();
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            header.name = new String(name, "UTF-8");
+            in.position(align(in.position()));
+            header.vertexCount = in.getInt();
+            int flags = in.getInt();
+            header.hasTexCoords = (flags & 1) != 0;
+            header.hasNormals = (flags & 2) != 0;
+            for (int i = 0; i < 4; i++) {
+                header.bounds[i] = in.getFloat();
+            }
+            for (int i = 0; i < 6; i++) {
+                header.box[i] = in.getFloat();
+            }
+            int levels = in.getInt();
+            if (levels <= 0 || levels > 32) throw new IOException("bad level count " + levels);
+            header.lodCounts = new int[levels];
+            for (int l = 0; l < levels; l++) {
+                header.lodCounts[l] = in.getInt();
+            }
+            return header;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated progressive mesh");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("truncated progressive mesh");
+        } catch (NegativeArraySizeException e) {
+            throw new IOException("bad progressive mesh name");
+        }
+    }
+
+    /**
+     * \brief Get the first index of each level in an index buffer holding the levels in file order.
+     * @param header the mesh header.
+     * @return the offsets, full resolution first.
+     */
+    public static int[] getLodOffsets(Header header)
+    {
+        int levels = header.lodCounts.length;
+        int[] offsets = new int[levels];
+        int offset = 0;
+        for (int l = levels - 1; l >= 0; l--) {
+            offsets[l] = offset;
+            offset += header.lodCounts[l];
+        }
+        return offsets;
+    }
+
+    /**
+     * \brief Read the next batch.
+     *
+     * The batch buffers are slices of the input, nothing is copied.
+     * @param in the encoded mesh, positioned after the header or the previous batch.
+     * @param header the mesh header.
+     * @return the batch.
+     * @throws IOException if the batch is invalid or truncated.
+     */
+    public static Batch readBatch(ByteBuffer in, Header header) throws IOException
+    {
+        try {
+            Batch batch = new Batch();
+            batch.level = in.getInt();
+            batch.firstVertex = in.getInt();
+            batch.vertexCount = in.getInt();
+            if (batch.level < 0 || batch.level >= header.lodCounts.length || batch.firstVertex < 0
+                    || batch.vertexCount < 0 || batch.firstVertex + batch.vertexCount > header.vertexCount) {
+                throw new IOException("bad progressive mesh batch");
+            }
+            batch.positions = slice(in, batch.vertexCount * 3 * 4);
+            if (header.hasTexCoords) batch.texCoords = slice(in, batch.vertexCount * 2 * 4);
+            if (header.hasNormals) batch.normals = slice(in, batch.vertexCount * 3 * 4);
+            batch.indices = slice(in, header.lodCounts[batch.level] * 2);
+            in.position(align(in.position()));
+            return batch;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated progressive mesh");
+        } catch (IllegalArgumentException e) {
+            throw new IOException("truncated progressive mesh");
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int size)
+    {
+        if (size > in.remaining()) throw new BufferUnderflowException();
+        ByteBuffer view = in.slice();
+        view.limit(size);
+        in.position(in.position() + size);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
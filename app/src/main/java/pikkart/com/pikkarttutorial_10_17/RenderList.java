@@ -0,0 +1,216 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.util.Arrays;
+
+/**
+ * \class RenderList
+ * \brief The draws of a frame, sorted by program, then texture, then buffer before being
+ * submitted, so that each state is set once for all the draws sharing it.
+ *
+ * Each draw is a part of a Submitter (a sub-mesh of a Mesh) and the GL objects it needs.
+ * execute() calls the submitters in sorted order and tells each draw which states differ from
+ * the previous draw, so unchanged ones are not set again, and whether the next draw uses other
+ * buffers, so vertex arrays are disabled once per run. Sorting packs the low 16 bits of each id
+ * and the draw index into a long, so it allocates nothing; ids above 16 bits only make the order
+ * less good, change detection uses the full ids. Plain Java, no Android dependencies.
+ */
+public class RenderList
+{
+    public static final int CHANGE_PROGRAM = 1; /**< the draw uses another program than the previous one */
+    public static final int CHANGE_TEXTURE = 2; /**< the draw uses another texture than the previous one */
+    public static final int CHANGE_BUFFER = 4; /**< the vertex arrays must be set up again (other buffers or program) */
+    public static final int LAST_OF_BUFFER = 8; /**< the next draw sets up other vertex arrays, or there is none */
+
+    /**
+     * \brief Something drawn in parts through a RenderList.
+     */
+    public interface Submitter
+    {
+        /**
+         * \brief Draw a part.
+         * @param part the part given to RenderList.add().
+         * @param flags CHANGE_ and LAST_OF_BUFFER flags.
+         */
+        void DrawPart(int part, int flags);
+    }
+
+    private static final int ID_BITS = 16;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+    private int mSize = 0; /**< number of draws */
+    private long[] mKeys = new long[16]; /**< sort keys: program, texture, buffer and draw index, 16 bits each */
+    private int[] mPrograms = new int[16]; /**< program of each draw, in submission order */
+    private int[] mTextures = new int[16]; /**< texture of each draw */
+    private int[] mBuffers = new int[16]; /**< vertex buffer of each draw */
+    private int[] mParts = new int[16]; /**< part of each draw */
+    private Submitter[] mSubmitters = new Submitter[16]; /**< submitter of each draw */
+    private int mUnsortedChanges = 0; /**< state changes in submission order, at the last sort */
+    private int mProgramChanges = 0; /**< programs set by the last execute */
+    private int mTextureChanges = 0; /**< textures bound by the last execute */
+    private int mBufferChanges = 0; /**< vertex arrays set up by the last execute */
+
+    /**
+     * \brief Remove all the draws, to build the list of a new frame.
+     */
+    public void clear()
+    {
+        Arrays.fill(mSubmitters, 0, mSize, null);
+        mSize = 0;
+    }
+
+    /**
+     * \brief Get the number of draws.
+     * @return the number of draws.
+     */
+    public int size()
+    {
+        return mSize;
+    }
+
+    /**
+     * \brief Add a draw.
+     * @param program the shader program it uses.
+     * @param texture the texture it uses.
+     * @param buffer the vertex buffer it uses.
+     * @param submitter the object drawing it.
+     * @param part the part of the submitter, given back to Submitter.DrawPart().
+     */
+    public void add(int program, int texture, int buffer, Submitter submitter, int part)
+    {
+        if (mSize == 1 << ID_BITS) throw new IllegalStateException("more than " + (1 << ID_BITS) + " draws");
+        if (mSize == mKeys.length) {
+            int capacity = mSize * 2;
+            mKeys = Arrays.copyOf(mKeys, capacity);
+            mPrograms = Arrays.copyOf(mPrograms, capacity);
+            mTextures = Arrays.copyOf(mTextures, capacity);
+            mBuffers = Arrays.copyOf(mBuffers, capacity);
+            mParts = Arrays.copyOf(mParts, capacity);
+            mSubmitters = Arrays.copyOf(mSubmitters, capacity);
+        }
+        mPrograms[mSize] = program;
+        mTextures[mSize] = texture;
+        mBuffers[mSize] = buffer;
+        mParts[mSize] = part;
+        mSubmitters[mSize] = submitter;
+        mKeys[mSize] = makeKey(program, texture, buffer, mSize);
+        mSize++;
+    }
+
+    private static long makeKey(int program, int texture, int buffer, int index)
+    {
+        return ((program & ID_MASK) << (3 * ID_BITS)) | ((texture & ID_MASK) << (2 * ID_BITS))
+                | ((buffer & ID_MASK) << ID_BITS) | index;
+    }
+
+    /**
+     * \brief Sort the draws by program, then texture, then buffer (submission order among equals).
+     */
+    public void sort()
+    {
+        mUnsortedChanges = countStateChanges();
+        Arrays.sort(mKeys, 0, mSize);
+    }
+
+    /**
+     * \brief Get a draw in the current order.
+     * @param i the position, 0 to size() - 1.
+     * @return the index of the draw in submission order.
+     */
+    private int getDraw(int i)
+    {
+        return (int) (mKeys[i] & ID_MASK);
+    }
+
+    /**
+     * \brief Get the flags of a draw in the current order.
+     * @param i the position, 0 to size() - 1.
+     * @return CHANGE_ and LAST_OF_BUFFER flags.
+     */
+    public int getFlags(int i)
+    {
+        int draw = getDraw(i);
+        int flags = 0;
+        if (i == 0) {
+            flags = CHANGE_PROGRAM | CHANGE_TEXTURE | CHANGE_BUFFER;
+        }
+        else {
+            int previous = getDraw(i - 1);
+            if (mPrograms[draw] != mPrograms[previous]) flags |= CHANGE_PROGRAM | CHANGE_BUFFER;
+            if (mTextures[draw] != mTextures[previous]) flags |= CHANGE_TEXTURE;
+            if (mBuffers[draw] != mBuffers[previous]) flags |= CHANGE_BUFFER;
+        }
+        if (i == mSize - 1) {
+            flags |= LAST_OF_BUFFER;
+        }
+        else {
+            int next = getDraw(i + 1);
+            if (mPrograms[draw] != mPrograms[next] || mBuffers[draw] != mBuffers[next]) flags |= LAST_OF_BUFFER;
+        }
+        return flags;
+    }
+
+    /**
+     * \brief Count the states set to submit the draws in the current order.
+     * @return the program, texture and vertex array changes.
+     */
+    public int countStateChanges()
+    {
+        int changes = 0;
+        for (int i = 0; i < mSize; i++) {
+            int flags = getFlags(i);
+            if ((flags & CHANGE_PROGRAM) != 0) changes++;
+            if ((flags & CHANGE_TEXTURE) != 0) changes++;
+            if ((flags & CHANGE_BUFFER) != 0) changes++;
+        }
+        return changes;
+    }
+
+    /**
+     * \brief Submit the draws in the current order.
+     */
+    public void execute()
+    {
+        mProgramChanges = 0;
+        mTextureChanges = 0;
+        mBufferChanges = 0;
+        for (int i = 0; i < mSize; i++) {
+            int draw = getDraw(i);
+            int flags = getFlags(i);
+            if ((flags & CHANGE_PROGRAM) != 0) mProgramChanges++;
+            if ((flags & CHANGE_TEXTURE) != 0) mTextureChanges++;
+            if ((flags & CHANGE_BUFFER) != 0) mBufferChanges++;
+            mSubmitters[draw].DrawPart(mParts[draw], flags);
+        }
+    }
+
+    /**
+     * \brief Get the statistics of the last frame.
+     * @return a one line report.
+     */
+    public String getReport()
+    {
+        return mSize + " draws, " + mProgramChanges + " programs, " + mTextureChanges + " textures, "
+                + mBufferChanges + " vertex array setups (" + (mProgramChanges + mTextureChanges + mBufferChanges)
+                + " state changes, " + mUnsortedChanges + " unsorted)";
+    }
+}
@@ -30,8 +30,11 @@ import android.util.Log;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Vector;
 
 /**
  * \class RenderUtils
@@ -44,6 +47,18 @@ import java.nio.ByteOrder;
  */
 public class RenderUtils
 {
+    /** the conversion done by decodeTextureFromApk(), part of the DiskCache key of textures (with the sizes) */
+    private static final String TEXTURE_CONVERSION = "flip-y rgba8 jpeg=rgb565 pow2-sampled";
+    /** target size of the textures decoded at full resolution (up to GL_MAX_TEXTURE_SIZE) */
+    public static final int TEXTURE_SIZE_FULL = 0;
+    /** GL_MAX_TEXTURE_SIZE assumed when no context is current */
+    private static final int DEFAULT_MAX_TEXTURE_SIZE = 2048;
+
+    private static int sMaxTextureSize = 0; /**< GL_MAX_TEXTURE_SIZE, 0 until queried */
+    private static int sDecodedTextures = 0; /**< textures decoded by decodeTextureFromApk() and decodeTexture() */
+    private static long sDecodedBytes = 0; /**< pixel bytes of the decoded textures */
+    private static long sSavedBytes = 0; /**< pixel bytes saved versus full resolution RGBA decoding */
+
     /**
      * \brief Compile shader code.
      * @param shaderType type of shader (either GLES20.GL_VERTEX_SHADER or GLES20.GL_FRAGMENT_SHADER).
@@ -69,12 +84,30 @@ public class RenderUtils
 
     /**
      * \brief Create a gl shader from source code.
+     *
+     * The program comes from its cached driver binary when the ProgramCache has it; otherwise it
+     * is compiled and linked, and its binary cached for the next time.
      * @param vertexShaderSrc vertex shader code.
      * @param fragmentShaderSrc fragment shader code.
      * @return gl program id.
      */
     public static int createProgramFromShaderSrc(String vertexShaderSrc, String fragmentShaderSrc)
     {
+        int program = ProgramCache.load(vertexShaderSrc, fragmentShaderSrc);
+        if (program == 0) program = compileProgram(vertexShaderSrc, fragmentShaderSrc);
+        GLResourceTracker.track(GLResourceTracker.TYPE_PROGRAM, program, GLResourceTracker.PROGRAM_BYTES, null);
+        return program;
+    }
+
+    /**
+     * \brief Compile and link a program from source code, and store its binary in the ProgramCache.
+     * @param vertexShaderSrc vertex shader code.
+     * @param fragmentShaderSrc fragment shader code.
+     * @return gl program id, 0 on failure.
+     */
+    private static int compileProgram(String vertexShaderSrc, String fragmentShaderSrc)
+    {
+        long start = System.nanoTime();
         int vertShader = initShader(GLES20.GL_VERTEX_SHADER, vertexShaderSrc);
         int fragShader = initShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderSrc);
         if (vertShader == 0 || fragShader == 0) {
@@ -84,6 +117,7 @@ public class RenderUtils
         if (program != 0) {
             GLES20.glAttachShader(program, vertShader);
             GLES20.glAttachShader(program, fragShader);
+            ProgramCache.prepareLink(program);
             GLES20.glLinkProgram(program);
             int[] glStatusVar = { GLES20.GL_FALSE };
             GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, glStatusVar, 0);
@@ -92,36 +126,411 @@ public class RenderUtils
                 GLES20.glDeleteProgram(program);
                 program = 0;
             }
+            else {
+                ProgramCache.store(program, vertexShaderSrc, fragmentShaderSrc, (System.nanoTime() - start) / 1000);
+            }
         }
         return program;
     }
 
+    /**
+     * \brief Get the largest texture size of the device.
+     * @return GL_MAX_TEXTURE_SIZE, or DEFAULT_MAX_TEXTURE_SIZE if no context is current.
+     */
+    public static synchronized int getMaxTextureSize()
+    {
+        if (sMaxTextureSize == 0) {
+            int[] size = new int[1];
+            GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, size, 0);
+            if (size[0] > 0) sMaxTextureSize = size[0];
+        }
+        return sMaxTextureSize != 0 ? sMaxTextureSize : DEFAULT_MAX_TEXTURE_SIZE;
+    }
+
+    /**
+     * \brief Choose the BitmapFactory subsampling of an image.
+     *
+     * The largest power of two keeping the longest side at least targetSize, then larger if
+     * needed to fit maxSize. Plain Java, so it can be checked on a JVM.
+     * @param width the image width.
+     * @param height the image height.
+     * @param targetSize the longest side the texture needs, TEXTURE_SIZE_FULL for no limit.
+     * @param maxSize the largest texture size of the device.
+     * @return the inSampleSize, a power of two.
+     */
+    public static int computeSampleSize(int width, int height, int targetSize, int maxSize)
+    {
+        int longest = Math.max(width, height);
+        int sample = 1;
+        if (targetSize > 0) {
+            while (longest / (sample * 2) >= targetSize) sample *= 2;
+        }
+        // BitmapFactory may round the subsampled size up
+        while ((longest + sample - 1) / sample > maxSize) sample *= 2;
+        return sample;
+    }
+
+    /**
+     * \brief Decode a texture from app assets, bottom row first.
+     *
+     * The image bounds are read first to subsample it to targetSize (see computeSampleSize());
+     * JPEG images, having no alpha, are decoded to 16 bit RGB. The bitmap is decoded into a
+     * BitmapPool bitmap when one fits, and given back to the pool once converted.
+     * @param assets app AssetManager.
+     * @param fileName filepath (inside app assets dir) of the file to be loaded.
+     * @param targetSize the longest side the texture needs on screen, TEXTURE_SIZE_FULL for no limit.
+     * @return the decoded texture, null on failure.
+     */
+    public static TextureData decodeTextureFromApk(AssetManager assets, String fileName, int targetSize)
+    {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decodeAsset(assets, fileName, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                Log.e("RenderUtils", "loadTextureFromApk failed to read the size of texture '" + fileName + "'");
+                return null;
+            }
+            int width = options.outWidth;
+            int height = options.outHeight;
+            boolean opaque = setDecodeOptions(options, targetSize);
+            Bitmap bitMap;
+            try {
+                bitMap = decodeAsset(assets, fileName, options);
+            } catch (IllegalArgumentException e) {
+                // the pooled bitmap cannot hold this image after all
+                BitmapPool.put(options.inBitmap);
+                options.inBitmap = null;
+                bitMap = decodeAsset(assets, fileName, options);
+            }
+            if (bitMap == null) {
+                Log.e("RenderUtils", "loadTextureFromApk failed to decode texture '" + fileName + "'");
+                return null;
+            }
+            TextureData texture = convertBitmap(bitMap, opaque);
+            recordDecode(fileName, width, height, options.inSampleSize, texture);
+            return texture;
+        } catch (IOException e) {
+            Log.e("RenderUtils", "loadTextureFromApk failed to load texture '" + fileName + "' from APK with error " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * \brief Decode a texture from app assets at full resolution.
+     * @param assets app AssetManager.
+     * @param fileName filepath (inside app assets dir) of the file to be loaded.
+     * @return the decoded texture, null on failure.
+     */
+    public static TextureData decodeTextureFromApk(AssetManager assets, String fileName)
+    {
+        return decodeTextureFromApk(assets, fileName, TEXTURE_SIZE_FULL);
+    }
+
+    /**
+     * \brief Decode an encoded (PNG, JPEG...) image, bottom row first, as decodeTextureFromApk() does.
+     * @param encoded the encoded image, e.g. a glTF embedded image.
+     * @param targetSize the longest side the texture needs on screen, TEXTURE_SIZE_FULL for no limit.
+     * @return the decoded texture, null on failure.
+     */
+    public static TextureData decodeTexture(ByteBuffer encoded, int targetSize)
+    {
+        int length = encoded.remaining();
+        byte[] bytes = BitmapPool.getBytes(length);
+        encoded.duplicate().get(bytes, 0, length);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        Bitmap bitMap = null;
+        if (width > 0 && height > 0) {
+            setDecodeOptions(options, targetSize);
+            try {
+                bitMap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+            } catch (IllegalArgumentException e) {
+                BitmapPool.put(options.inBitmap);
+                options.inBitmap = null;
+                bitMap = BitmapFactory.decodeByteArray(bytes, 0, length, options);
+            }
+        }
+        BitmapPool.putBytes(bytes);
+        if (bitMap == null) {
+            Log.e("RenderUtils", "decodeTexture failed to decode a " + length + " bytes image");
+            return null;
+        }
+        boolean opaque = options.inPreferredConfig == Bitmap.Config.RGB_565;
+        TextureData texture = convertBitmap(bitMap, opaque);
+        recordDecode("embedded image", width, height, options.inSampleSize, texture);
+        return texture;
+    }
+
+    /**
+     * \brief Set the decoding options once the bounds are known, with a pooled bitmap to decode into.
+     * @return true if the image is decoded to 16 bit RGB.
+     */
+    private static boolean setDecodeOptions(BitmapFactory.Options options, int targetSize)
+    {
+        boolean opaque = "image/jpeg".equals(options.outMimeType);
+        options.inJustDecodeBounds = false;
+        int sample = computeSampleSize(options.outWidth, options.outHeight, targetSize, getMaxTextureSize());
+        options.inSampleSize = sample;
+        options.inPreferredConfig = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        options.inScaled = false;
+        // reused bitmaps must be mutable, and decoded bitmaps are pooled afterwards
+        options.inMutable = true;
+        long pixels = (long) ((options.outWidth + sample - 1) / sample) * ((options.outHeight + sample - 1) / sample);
+        options.inBitmap = BitmapPool.get(pixels * (opaque ? 2 : 4), options.inPreferredConfig);
+        return opaque;
+    }
+
+    private static Bitmap decodeAsset(AssetManager assets, String fileName, BitmapFactory.Options options) throws IOException
+    {
+        InputStream inputStream = assets.open(fileName, AssetManager.ACCESS_BUFFER);
+        try {
+            return BitmapFactory.decodeStream(new BufferedInputStream(inputStream), null, options);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * \brief Count the bytes a decoding saved, and log it.
+     */
+    private static void recordDecode(String name, int width, int height, int sampleSize, TextureData texture)
+    {
+        long full = (long) width * height * 4;
+        long bytes = texture.getSizeInBytes();
+        synchronized (RenderUtils.class) {
+            sDecodedTextures++;
+            sDecodedBytes += bytes;
+            sSavedBytes += full - bytes;
+        }
+        if (full > bytes) {
+            Log.i("RenderUtils", name + ": " + width + "x" + height + " decoded as " + texture.width + "x" + texture.height
+                    + (texture.type == TextureData.TYPE_UNSIGNED_SHORT_5_6_5 ? " RGB565" : " RGBA8")
+                    + " (sample " + sampleSize + "), " + ((full - bytes) / 1024) + " KB saved");
+        }
+    }
+
+    /**
+     * \brief Get the texture decoding statistics.
+     * @return a one line report.
+     */
+    public static synchronized String getTextureReport()
+    {
+        long full = sDecodedBytes + sSavedBytes;
+        return sDecodedTextures + " textures decoded, " + (sDecodedBytes / 1024) + " KB, " + (sSavedBytes / 1024)
+                + " KB saved (" + (full > 0 ? 100 * sSavedBytes / full : 0) + "%)";
+    }
+
+    /**
+     * \brief Convert a bitmap to texture pixels, flipping rows for OpenGL.
+     *
+     * Rows are converted one at a time, so the heap never holds a second copy of the image.
+     * @param bitMap the decoded image, given back to the BitmapPool afterwards.
+     * @param rgb565 convert to 16 bit RGB rather than RGBA.
+     * @return the texture.
+     */
+    private static TextureData convertBitmap(Bitmap bitMap, boolean rgb565)
+    {
+        TextureData texture = new TextureData();
+        texture.width = bitMap.getWidth();
+        texture.height = bitMap.getHeight();
+        texture.format = rgb565 ? TextureData.FORMAT_RGB : TextureData.FORMAT_RGBA;
+        texture.type = rgb565 ? TextureData.TYPE_UNSIGNED_SHORT_5_6_5 : TextureData.TYPE_UNSIGNED_BYTE;
+        int width = texture.width;
+        ByteBuffer pixels = DirectBufferArena.allocate(width * texture.height * TextureData.getBytesPerPixel(texture.type))
+                .order(ByteOrder.nativeOrder());
+        ShortBuffer shorts = pixels.asShortBuffer();
+        int[] row = BitmapPool.getInts(width);
+        short[] rowShorts = rgb565 ? BitmapPool.getShorts(width) : null;
+        byte[] rowBytes = rgb565 ? null : BitmapPool.getBytes(width * 4);
+        for (int r = 0; r < texture.height; r++) {
+            bitMap.getPixels(row, 0, width, 0, texture.height - 1 - r, width, 1);
+            if (rgb565) {
+                for (int p = 0; p < width; ++p) {
+                    int colour = row[p];
+                    rowShorts[p] = (short) (((colour >> 8) & 0xf800) | ((colour >> 5) & 0x07e0) | ((colour >> 3) & 0x001f));
+                }
+                shorts.put(rowShorts, 0, width);
+            }
+            else {
+                for (int p = 0; p < width; ++p) {
+                    int colour = row[p];
+                    rowBytes[p * 4] = (byte) (colour >>> 16); // R
+                    rowBytes[p * 4 + 1] = (byte) (colour >>> 8); // G
+                    rowBytes[p * 4 + 2] = (byte) colour; // B
+                    rowBytes[p * 4 + 3] = (byte) (colour >>> 24); // A
+                }
+                pixels.put(rowBytes, 0, width * 4);
+            }
+        }
+        pixels.rewind();
+        BitmapPool.putInts(row);
+        BitmapPool.putShorts(rowShorts);
+        BitmapPool.putBytes(rowBytes);
+        BitmapPool.put(bitMap);
+        texture.pixels = pixels;
+        return texture;
+    }
+
     /**
      * \brief Load a texture from app assets and create related OpenGL structures.
+     *
+     * Decoded pixels are kept in the AssetCache, so reloading after a GL context loss does not decode the file again,
+     * and in the DiskCache, so later launches map them instead of decoding and converting the image.
      * @param assets app AssetManager.
      * @param fileName filepath (inside app assets dir) of the file to be loaded.
      * @param dims int array used to output texture dimensions (width, height).
+     * @param targetSize the longest side the texture needs on screen, TEXTURE_SIZE_FULL for no limit.
      * @return gl texture id.
      */
-    public static int loadTextureFromApk(AssetManager assets, String fileName, int[] dims)
+    public static int loadTextureFromApk(AssetManager assets, String fileName, int[] dims, int targetSize)
     {
-        InputStream inputStream = null;
+        String cacheName = fileName + "@" + targetSize;
+        TextureData texture = AssetCache.getTexture(cacheName);
+        if (texture == null) {
+            long start = System.nanoTime();
+            String cacheKey = getTextureCacheKey(assets, fileName, targetSize);
+            ByteBuffer blob = cacheKey == null ? null : DiskCache.get(cacheKey);
+            texture = blob == null ? null : TextureData.fromBlob(blob);
+            boolean warm = texture != null;
+            if (!warm) {
+                texture = decodeTextureFromApk(assets, fileName, targetSize);
+                if (texture == null) return -1;
+                if (cacheKey != null) {
+                    ByteBuffer entry = texture.toBlob();
+                    DiskCache.put(cacheKey, entry);
+                    DirectBufferArena.release(entry);
+                }
+            }
+            Log.i("RenderUtils", fileName + " loaded from " + (warm ? "disk cache (warm)" : "image (cold)") + " in "
+                    + (System.nanoTime() - start) / 1000 + " us");
+            AssetCache.putTexture(cacheName, texture);
+        }
+        // pinned by the get or put: another thread evicting it can not release the pixels under the upload
         try {
-            inputStream = assets.open(fileName, AssetManager.ACCESS_BUFFER);
-            BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
-            Bitmap bitMap = BitmapFactory.decodeStream(bufferedStream);
-            //get data array
-            int[] data = new int[bitMap.getWidth() * bitMap.getHeight()];
-            bitMap.getPixels(data, 0, bitMap.getWidth(), 0, 0, bitMap.getWidth(), bitMap.getHeight());
-            dims[0] = bitMap.getWidth();
-            dims[1] = bitMap.getHeight();
-            return loadTextureFromIntBuffer(data, bitMap.getWidth(), bitMap.getHeight());
+            dims[0] = texture.width;
+            dims[1] = texture.height;
+            return loadTextureFromData(texture, fileName);
+        } finally {
+            AssetCache.unpinTexture(texture);
+        }
+    }
+
+    /**
+     * \brief Get the DiskCache key of a decoded texture.
+     * @return the key, null if the cache is disabled or the asset cannot be read.
+     */
+    private static String getTextureCacheKey(AssetManager assets, String fileName, int targetSize)
+    {
+        if (!DiskCache.isEnabled()) return null;
+        InputStream is = null;
+        try {
+            is = assets.open(fileName, AssetManager.ACCESS_STREAMING);
+            return DiskCache.computeKey(is, TEXTURE_CONVERSION + " target=" + targetSize + " max=" + getMaxTextureSize());
         } catch (IOException e) {
-            Log.e("RenderUtils", "loadTextureFromApk failed to load texture '" + fileName + "' from APK with error " + e.getMessage());
-            return -1;
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
         }
     }
 
+    /**
+     * \brief Load small textures from app assets into one atlas and create its OpenGL texture.
+     *
+     * The packed atlas is kept in the DiskCache, so later launches map it instead of decoding
+     * and packing the images; its pixels are released once uploaded.
+     * @param assets app AssetManager.
+     * @param fileNames filepaths (inside app assets dir) of the files to be loaded, image i of the atlas being file i.
+     * @param targetSize the longest side the images need on screen, TEXTURE_SIZE_FULL for no limit.
+     * @return the atlas, its texture id set, null on failure.
+     */
+    public static TextureAtlas loadAtlasFromApk(AssetManager assets, String[] fileNames, int targetSize)
+    {
+        long start = System.nanoTime();
+        String cacheKey = getAtlasCacheKey(assets, fileNames, targetSize);
+        ByteBuffer blob = cacheKey == null ? null : DiskCache.get(cacheKey);
+        TextureAtlas atlas = blob == null ? null : TextureAtlas.fromBlob(blob, fileNames.length);
+        boolean warm = atlas != null;
+        if (!warm) {
+            TextureData[] images = new TextureData[fileNames.length];
+            try {
+                for (int i = 0; i < fileNames.length; i++) {
+                    images[i] = decodeTextureFromApk(assets, fileNames[i], targetSize);
+                    if (images[i] == null) return null;
+                }
+                atlas = TextureAtlas.build(images, getMaxTextureSize());
+            } catch (IllegalArgumentException e) {
+                Log.e("RenderUtils", "loadAtlasFromApk failed: " + e.getMessage());
+                return null;
+            } finally {
+                for (TextureData image : images) {
+                    if (image != null) image.release();
+                }
+            }
+            if (cacheKey != null) {
+                ByteBuffer entry = atlas.toBlob();
+                DiskCache.put(cacheKey, entry);
+                DirectBufferArena.release(entry);
+            }
+        }
+        TextureData texture = atlas.getTexture();
+        Log.i("RenderUtils", fileNames.length + " images packed in a " + texture.width + "x" + texture.height + " atlas, loaded from "
+                + (warm ? "disk cache (warm)" : "images (cold)") + " in " + (System.nanoTime() - start) / 1000 + " us");
+        atlas.setTextureId(loadTextureFromData(texture, "atlas of " + fileNames.length + " images"));
+        texture.release();
+        return atlas;
+    }
+
+    /**
+     * \brief Get the DiskCache key of a packed atlas, over the content of all its images.
+     * @return the key, null if the cache is disabled or an asset cannot be read.
+     */
+    private static String getAtlasCacheKey(AssetManager assets, String[] fileNames, int targetSize)
+    {
+        if (!DiskCache.isEnabled()) return null;
+        Vector<InputStream> streams = new Vector<InputStream>();
+        try {
+            StringBuilder conversion = new StringBuilder("atlas padding=" + TextureAtlas.PADDING);
+            for (String fileName : fileNames) {
+                streams.add(assets.open(fileName, AssetManager.ACCESS_STREAMING));
+                conversion.append(' ').append(fileName);
+            }
+            conversion.append(' ').append(TEXTURE_CONVERSION).append(" target=").append(targetSize).append(" max=").append(getMaxTextureSize());
+            return DiskCache.computeKey(new SequenceInputStream(streams.elements()), conversion.toString());
+        } catch (IOException e) {
+            return null;
+        } finally {
+            for (InputStream is : streams) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * \brief Load a texture from app assets and create related OpenGL structures.
+     * @param assets app AssetManager.
+     * @param fileName filepath (inside app assets dir) of the file to be loaded.
+     * @param dims int array used to output texture dimensions (width, height).
+     * @return gl texture id.
+     */
+    public static int loadTextureFromApk(AssetManager assets, String fileName, int[] dims)
+    {
+        return loadTextureFromApk(assets, fileName, dims, TEXTURE_SIZE_FULL);
+    }
+
     /**
      * \brief Load a texture from app assets and create related OpenGL structures.
      * @param assets app AssetManager.
@@ -135,41 +544,36 @@ public class RenderUtils
     }
 
     /**
-     * \brief Load a texture from a data buffer and create related OpenGL structures.
-     * @param data texture data buffer as int array.
-     * @param width texture width.
-     * @param height texture height
+     * \brief Create a texture from decoded pixels and upload them.
+     * @param texture the decoded texture.
      * @return gl texture id.
      */
-    private static int loadTextureFromIntBuffer(int[] data, int width, int height)
+    public static int loadTextureFromData(TextureData texture)
+    {
+        return loadTextureFromData(texture, null);
+    }
+
+    /**
+     * \brief Create a texture from decoded pixels and upload them.
+     * @param texture the decoded texture.
+     * @param label what the texture holds, for the GLResourceTracker; null if nothing useful.
+     * @return gl texture id.
+     */
+    public static int loadTextureFromData(TextureData texture, String label)
     {
-        // convert from int array to byte RGBA array
-        int numPixels = width * height;
-        byte[] dataBytes = new byte[numPixels * 4];
-        for (int p = 0; p < numPixels; ++p) {
-            int colour = data[p];
-            dataBytes[p * 4] = (byte) (colour >>> 16); // R
-            dataBytes[p * 4 + 1] = (byte) (colour >>> 8); // G
-            dataBytes[p * 4 + 2] = (byte) colour; // B
-            dataBytes[p * 4 + 3] = (byte) (colour >>> 24); // A
-        }
-        // put data into a direct memory byte buffer
-        ByteBuffer bb_data = ByteBuffer.allocateDirect(dataBytes.length).order(ByteOrder.nativeOrder());
-        int rowSize = width * 4;
-        for (int r = 0; r < height; r++) {
-            bb_data.put(dataBytes, rowSize * (height - 1 - r), rowSize);
-        }
-        bb_data.rewind();
-        // cleans variables
-        dataBytes = null;
-        data = null;
         // create gl texture and upload data
         int[] gl_textureID = new int[1];
         GLES20.glGenTextures(1, gl_textureID, 0);
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, gl_textureID[0]);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, bb_data);
+        texture.pixels.rewind();
+        // 16 bit rows of odd widths are not 4 byte aligned
+        if (texture.type != TextureData.TYPE_UNSIGNED_BYTE) GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 2);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, texture.format, texture.width, texture.height, 0, texture.format, texture.type, texture.pixels);
+        if (texture.type != TextureData.TYPE_UNSIGNED_BYTE) GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+        GLResourceTracker.track(GLResourceTracker.TYPE_TEXTURE, gl_textureID[0], GLResourceTracker.getTextureBytes(texture.width,
+                texture.height, TextureData.getBytesPerPixel(texture.type), false), label);
 
         return gl_textureID[0];
     }
@@ -186,9 +590,93 @@ public class RenderUtils
         GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
         GLES20.glTexParameterf(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
         GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+        // sized by the video player once the video size is known
+        GLResourceTracker.track(GLResourceTracker.TYPE_TEXTURE, gl_textureID[0], 0, "video");
         return gl_textureID[0];
     }
 
+    /**
+     * \brief Delete a texture and stop tracking it. Render thread only (the GLState bindings are updated).
+     * @param texture gl texture id; 0 or -1 (failed load) are ignored.
+     */
+    public static void deleteTexture(int texture)
+    {
+        if (texture <= 0) return;
+        GLES20.glDeleteTextures(1, new int[] { texture }, 0);
+        GLState.onTextureDeleted(texture);
+        GLResourceTracker.release(GLResourceTracker.TYPE_TEXTURE, texture);
+    }
+
+    /**
+     * \brief Delete a buffer object and stop tracking it.
+     * @param buffer gl buffer id, 0 is ignored.
+     */
+    public static void deleteBuffer(int buffer)
+    {
+        if (buffer <= 0) return;
+        GLES20.glDeleteBuffers(1, new int[] { buffer }, 0);
+        GLResourceTracker.release(GLResourceTracker.TYPE_BUFFER, buffer);
+    }
+
+    /**
+     * \brief Delete a shader program and stop tracking it.
+     * @param program gl program id, 0 is ignored.
+     */
+    public static void deleteProgram(int program)
+    {
+        if (program <= 0) return;
+        GLES20.glDeleteProgram(program);
+        GLResourceTracker.release(GLResourceTracker.TYPE_PROGRAM, program);
+    }
+
+    /**
+     * \brief Create a buffer object and upload data to it.
+     * @param target GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER (bind vertex array object 0 first, see GLState).
+     * @param data the data, from its position to its limit.
+     * @param usage GL_STATIC_DRAW, or GL_DYNAMIC_DRAW for data updated while drawing.
+     * @param label what the buffer holds, for the GLResourceTracker.
+     * @return gl buffer id.
+     */
+    public static int createBuffer(int target, ByteBuffer data, int usage, String label)
+    {
+        int[] gl_bufferID = new int[1];
+        GLES20.glGenBuffers(1, gl_bufferID, 0);
+        GLES20.glBindBuffer(target, gl_bufferID[0]);
+        GLES20.glBufferData(target, data.remaining(), data, usage);
+        GLES20.glBindBuffer(target, 0);
+        GLResourceTracker.track(GLResourceTracker.TYPE_BUFFER, gl_bufferID[0], data.remaining(), label);
+        return gl_bufferID[0];
+    }
+
+    /**
+     * \brief Record the attribute setup of a textured mesh (float "vertexPosition" and "vertexTexCoord", 16 bit indices) in a vertex array object.
+     * @param program the shader program the attributes are located in.
+     * @param verticesVBO the positions buffer, 3 floats per vertex.
+     * @param texCoordsVBO the texture coordinates buffer, 2 floats per vertex.
+     * @param texCoordsOffset where the texture coordinates start in their buffer, in bytes.
+     * @param indexVBO the indices buffer.
+     * @return the vertex array object, 0 if not supported: set the attributes per draw then.
+     */
+    public static int createVertexArray(int program, int verticesVBO, int texCoordsVBO, int texCoordsOffset, int indexVBO)
+    {
+        int vertexArray = GLState.genVertexArray();
+        if (vertexArray == 0) return 0;
+        int vertexHandle = GLES20.glGetAttribLocation(program, "vertexPosition");
+        int textureCoordHandle = GLES20.glGetAttribLocation(program, "vertexTexCoord");
+
+        GLState.bindVertexArray(vertexArray);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, verticesVBO);
+        GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, texCoordsVBO);
+        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, texCoordsOffset);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLState.setVertexAttribArrays(GLState.getAttribBit(vertexHandle) | GLState.getAttribBit(textureCoordHandle));
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexVBO);
+        GLState.bindVertexArray(0);
+        checkGLError("createVertexArray");
+        return vertexArray;
+    }
+
     /**
      * \brief Fill matrix data with Identity 4x4 matrix values.
      * @param mat_data matrix data.
@@ -0,0 +1,256 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * \class TextureAtlas
+ * \brief Small textures packed into one, each drawn through its UV rectangle.
+ *
+ * Images are placed on shelves, tallest first, in a power of two texture (NPOT textures are
+ * incomplete with the default GLES 2.0 wrap mode). Each image is surrounded by PADDING
+ * texels repeating its border, so linear filtering never blends neighbours. Switching between
+ * atlas images only changes texture coordinates, so no texture is bound between their draws.
+ * The atlas is stored as a DiskCache payload by toBlob(). Plain Java, no Android dependencies.
+ */
+public class TextureAtlas
+{
+    public static final int PADDING = 2; /**< texels around each image */
+
+    private final TextureData mTexture; /**< the packed RGBA pixels, bottom row first */
+    private final float[] mRects; /**< u0, v0, u1, v1 of each image */
+    private int mTexture_GL_ID = 0; /**< opengl id, once uploaded */
+
+    private TextureAtlas(TextureData texture, float[] rects)
+    {
+        mTexture = texture;
+        mRects = rects;
+    }
+
+    /**
+     * \brief Place images on shelves.
+     * @param widths the image widths.
+     * @param heights the image heights.
+     * @param maxSize the largest texture size.
+     * @return x and y of each image (padding excluded), then the atlas width and height.
+     * @throws IllegalArgumentException if the images do not fit in maxSize.
+     */
+    public static int[] pack(final int[] widths, final int[] heights, int maxSize)
+    {
+        int count = widths.length;
+        Integer[] order = new Integer[count];
+        long area = 0;
+        int widest = 1;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            area += (long) (widths[i] + 2 * PADDING) * (heights[i] + 2 * PADDING);
+            widest = Math.max(widest, widths[i] + 2 * PADDING);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return heights[b] - heights[a];
+            }
+        });
+        int width = 1;
+        while (width < widest || (long) width * width < area) width *= 2;
+
+        int[] placement = new int[2 * count + 2];
+        for (; width <= maxSize; width *= 2) {
+            int x = 0;
+            int y = 0;
+            int shelf = 0;
+            for (int i : order) {
+                int w = widths[i] + 2 * PADDING;
+                int h = heights[i] + 2 * PADDING;
+                if (x + w > width) {
+                    // next shelf
+                    y += shelf;
+                    x = 0;
+                    shelf = 0;
+                }
+                placement[2 * i] = x + PADDING;
+                placement[2 * i + 1] = y + PADDING;
+                x += w;
+                shelf = Math.max(shelf, h);
+            }
+            int height = 1;
+            while (height < y + shelf) height *= 2;
+            if (height <= maxSize) {
+                placement[2 * count] = width;
+                placement[2 * count + 1] = height;
+                return placement;
+            }
+        }
+        throw new IllegalArgumentException(count + " images do not fit a " + maxSize + " texture");
+    }
+
+    /**
+     * \brief Pack images into an atlas.
+     * @param images the images, RGBA or RGB565; they are not released.
+     * @param maxSize the largest texture size.
+     * @return the atlas, image i being drawn through getRect(i).
+     * @throws IllegalArgumentException if the images do not fit in maxSize.
+     */
+    public static TextureAtlas build(TextureData[] images, int maxSize)
+    {
+        int count = images.length;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = images[i].width;
+            heights[i] = images[i].height;
+        }
+        int[] placement = pack(widths, heights, maxSize);
+        int width = placement[2 * count];
+        int height = placement[2 * count + 1];
+
+        TextureData texture = new TextureData();
+        texture.width = width;
+        texture.height = height;
+        texture.pixels = DirectBufferArena.allocate(width * height * 4);
+        ByteBuffer pixels = texture.pixels;
+        for (int p = 0; p < width * height * 4; p++) pixels.put(p, (byte) 0);
+
+        float[] rects = new float[4 * count];
+        for (int i = 0; i < count; i++) {
+            int x0 = placement[2 * i];
+            int y0 = placement[2 * i + 1];
+            TextureData image = images[i];
+            // the image and its padding, border texels repeated
+            for (int y = -PADDING; y < image.height + PADDING; y++) {
+                int sy = Math.min(Math.max(y, 0), image.height - 1);
+                for (int x = -PADDING; x < image.width + PADDING; x++) {
+                    int sx = Math.min(Math.max(x, 0), image.width - 1);
+                    pixels.putInt(((y0 + y) * width + x0 + x) * 4, getRGBA(image, sx, sy));
+                }
+            }
+            rects[4 * i] = (float) x0 / width;
+            rects[4 * i + 1] = (float) y0 / height;
+            rects[4 * i + 2] = (float) (x0 + image.width) / width;
+            rects[4 * i + 3] = (float) (y0 + image.height) / height;
+        }
+        return new TextureAtlas(texture, rects);
+    }
+
+    /**
+     * \brief Read a texel as RGBA bytes in memory order (an int of the little endian pixel buffer).
+     */
+    private static int getRGBA(TextureData image, int x, int y)
+    {
+        int i = y * image.width + x;
+        if (image.type == TextureData.TYPE_UNSIGNED_SHORT_5_6_5) {
+            int c = image.pixels.getShort(i * 2) & 0xffff;
+            int r = (c >> 11) & 0x1f, g = (c >> 5) & 0x3f, b = c & 0x1f;
+            r = (r << 3) | (r >> 2);
+            g = (g << 2) | (g >> 4);
+            b = (b << 3) | (b >> 2);
+            return 0xff000000 | (b << 16) | (g << 8) | r;
+        }
+        return image.pixels.order() == java.nio.ByteOrder.LITTLE_ENDIAN
+                ? image.pixels.getInt(i * 4) : Integer.reverseBytes(image.pixels.getInt(i * 4));
+    }
+
+    /**
+     * \brief Get the atlas pixels.
+     * @return the RGBA texture, to upload with RenderUtils.loadTextureFromData().
+     */
+    public TextureData getTexture()
+    {
+        return mTexture;
+    }
+
+    public int getCount()
+    {
+        return mRects.length / 4;
+    }
+
+    /**
+     * \brief Get where an image is in the atlas.
+     * @param image the image index.
+     * @param rect receives u0, v0, u1, v1.
+     */
+    public void getRect(int image, float[] rect)
+    {
+        System.arraycopy(mRects, 4 * image, rect, 0, 4);
+    }
+
+    /**
+     * \brief Map quad texture coordinates (0 to 1) to an image of the atlas.
+     * @param image the image index.
+     * @param texCoords uv pairs in the unit square, mapped in place.
+     */
+    public void mapTexCoords(int image, float[] texCoords)
+    {
+        float u0 = mRects[4 * image], v0 = mRects[4 * image + 1];
+        float du = mRects[4 * image + 2] - u0, dv = mRects[4 * image + 3] - v0;
+        for (int i = 0; i + 1 < texCoords.length; i += 2) {
+            texCoords[i] = u0 + texCoords[i] * du;
+            texCoords[i + 1] = v0 + texCoords[i + 1] * dv;
+        }
+    }
+
+    public int getTextureId()
+    {
+        return mTexture_GL_ID;
+    }
+
+    public void setTextureId(int textureId)
+    {
+        mTexture_GL_ID = textureId;
+    }
+
+    /**
+     * \brief Encode the atlas as a DiskCache payload: the image count, the rectangles and the texture.
+     * @return the payload, from position 0 to its limit, to be released to the DirectBufferArena.
+     */
+    public ByteBuffer toBlob()
+    {
+        ByteBuffer texture = mTexture.toBlob();
+        ByteBuffer blob = DirectBufferArena.allocate(4 + mRects.length * 4 + texture.remaining());
+        blob.putInt(getCount());
+        for (float f : mRects) blob.putFloat(f);
+        blob.put(texture);
+        blob.flip();
+        DirectBufferArena.release(texture);
+        return blob;
+    }
+
+    /**
+     * \brief Decode a DiskCache payload written by toBlob().
+     * @param blob the payload, little endian; the pixels are a slice of it.
+     * @param count the expected image count.
+     * @return the atlas, null if the payload does not match.
+     */
+    public static TextureAtlas fromBlob(ByteBuffer blob, int count)
+    {
+        if (blob.remaining() < 4 + count * 16 || blob.getInt(blob.position()) != count) return null;
+        float[] rects = new float[4 * count];
+        for (int i = 0; i < rects.length; i++) rects[i] = blob.getFloat(blob.position() + 4 + i * 4);
+        ByteBuffer texture = blob.duplicate();
+        texture.position(blob.position() + 4 + count * 16);
+        TextureData data = TextureData.fromBlob(texture.slice().order(blob.order()));
+        return data == null ? null : new TextureAtlas(data, rects);
+    }
+}
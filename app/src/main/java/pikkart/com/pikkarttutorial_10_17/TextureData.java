@@ -0,0 +1,112 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import java.nio.ByteBuffer;
+
+/**
+ * \class TextureData
+ * \brief A decoded texture, ready to be uploaded with glTexImage2D.
+ */
+public class TextureData
+{
+    public static final int FORMAT_RGB = 0x1907; /**< GL_RGB */
+    public static final int FORMAT_RGBA = 0x1908; /**< GL_RGBA */
+    public static final int TYPE_UNSIGNED_BYTE = 0x1401; /**< GL_UNSIGNED_BYTE, 4 bytes per RGBA pixel */
+    public static final int TYPE_UNSIGNED_SHORT_5_6_5 = 0x8363; /**< GL_UNSIGNED_SHORT_5_6_5, 2 bytes per RGB pixel */
+
+    public int width; /**< texture width */
+    public int height; /**< texture height */
+    public int format = FORMAT_RGBA; /**< pixel format, one of the FORMAT_ constants (same values as GL) */
+    public int type = TYPE_UNSIGNED_BYTE; /**< pixel type, one of the TYPE_ constants (same values as GL) */
+    public ByteBuffer pixels; /**< pixels, bottom row first, rows tightly packed */
+
+    /**
+     * \brief Get the size of a pixel.
+     * @param type one of the TYPE_ constants.
+     * @return the size in bytes.
+     */
+    public static int getBytesPerPixel(int type)
+    {
+        return type == TYPE_UNSIGNED_SHORT_5_6_5 ? 2 : 4;
+    }
+
+    /**
+     * \brief Get the size of the pixel data.
+     * @return the size in bytes.
+     */
+    public int getSizeInBytes()
+    {
+        return pixels == null ? 0 : pixels.capacity();
+    }
+
+    /**
+     * \brief Release the pixels to the DirectBufferArena, if they were allocated from it.
+     *
+     * The texture must not be uploaded anymore.
+     */
+    public void release()
+    {
+        DirectBufferArena.release(pixels);
+        pixels = null;
+    }
+
+    /**
+     * \brief Encode the texture as a DiskCache payload: width, height, format, type and the pixels.
+     * @return the payload, from position 0 to its limit, to be released to the DirectBufferArena.
+     */
+    public ByteBuffer toBlob()
+    {
+        ByteBuffer src = pixels.duplicate();
+        src.rewind();
+        ByteBuffer blob = DirectBufferArena.allocate(16 + src.remaining());
+        blob.putInt(width);
+        blob.putInt(height);
+        blob.putInt(format);
+        blob.putInt(type);
+        blob.put(src);
+        blob.flip();
+        return blob;
+    }
+
+    /**
+     * \brief Decode a DiskCache payload written by toBlob().
+     * @param blob the payload, little endian; the pixels are a slice of it.
+     * @return the texture, null if the payload does not match its size.
+     */
+    public static TextureData fromBlob(ByteBuffer blob)
+    {
+        if (blob.remaining() < 16) return null;
+        TextureData texture = new TextureData();
+        texture.width = blob.getInt(blob.position());
+        texture.height = blob.getInt(blob.position() + 4);
+        texture.format = blob.getInt(blob.position() + 8);
+        texture.type = blob.getInt(blob.position() + 12);
+        if (texture.width <= 0 || texture.height <= 0
+                || (long) texture.width * texture.height * getBytesPerPixel(texture.type) != blob.remaining() - 16) {
+            return null;
+        }
+        ByteBuffer pixels = blob.duplicate();
+        pixels.position(blob.position() + 16);
+        texture.pixels = pixels.slice();
+        return texture;
+    }
+}
@@ -24,13 +24,14 @@ import android.app.Activity;
 import android.content.res.AssetManager;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.util.DisplayMetrics;
 
 
 import com.pikkart.ar.recognition.RecognitionFragment;
 import com.pikkart.ar.recognition.items.Marker;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * \class VideoMesh
@@ -39,6 +40,7 @@ import java.nio.ByteOrder;
 public class VideoMesh
 {
     private Activity mParentActivity = null; /**< the activity holding this mesh/video player */
+    private static final int ICON_SCREEN_FRACTION = 4; /**< icons are decoded to 1/4 of the screen size at most */
 
     private String mName; /**< mesh name */
     /**
@@ -56,10 +58,22 @@ public class VideoMesh
     private int mIndices_Number = 0; /**< number of indices */
     private int mVertices_Number = 0; /**< number of vertices */
 
+    private int mVertices_VBO = 0; /**< vertices opengl buffer id, 0 without vertex array objects */
+    private int mTexCoords_VBO = 0; /**< keyframe then icon texture coordinates opengl buffer id */
+    private int mVideoTexCoords_VBO = 0; /**< video texture coordinates opengl buffer id, updated when they change */
+    private int mIndex_VBO = 0; /**< triangle indices opengl buffer id */
+    private final float[] mVideoTexCoords_Uploaded = new float[8]; /**< content of mVideoTexCoords_VBO */
+    private int mKeyframe_VAO = 0; /**< keyframe vertex array object, 0 if not supported (attributes set per draw) */
+    private int mVideo_VAO = 0; /**< video vertex array object */
+
     private int mKeyframeTexture_GL_ID = 0; /**< video keyframe texture opengl id */
-    private int mIconBusyTexture_GL_ID = 0; /**< busy icon texture opengl id */
-    private int mIconPlayTexture_GL_ID = 0; /**< play icon texture opengl id */
-    private int mIconErrorTexture_GL_ID = 0; /**< error icon texture opengl id */
+    private static final String[] ICON_FILES = { "media/play.png", "media/busy.png", "media/error.png" }; /**< icon images, in atlas order */
+    private static final int ICON_PLAY = 0; /**< play icon index in the atlas */
+    private static final int ICON_BUSY = 1; /**< busy icon index in the atlas */
+    private static final int ICON_ERROR = 2; /**< error icon index in the atlas */
+    private int mIconAtlasTexture_GL_ID = 0; /**< icon atlas texture opengl id */
+    private ByteBuffer[] mIconTexCoords_Buffers = new ByteBuffer[ICON_FILES.length]; /**< texture coordinates of each icon in the atlas */
+    private final int[] mIcon_VAOs = new int[ICON_FILES.length]; /**< vertex array object of each icon */
     private int mVideoTexture_GL_ID = 0; /**< busy icon texture opengl id */
 
     private int mVideo_Program_GL_ID = 0; /**< video shader program opengl id */
@@ -67,6 +81,7 @@ public class VideoMesh
 
     private PikkartVideoPlayer mPikkartVideoPlayer = null; /**< the AR video player */
     private String mMovieUrl = ""; /**< the video URL (ot file path<) */
+    private String mKeyframeUrl = ""; /**< the keyframe image file path */
     private int mSeekPosition = 0; /**< starting position (in millesconds) */
     private boolean mAutostart = false; /**< mesh shader program opengl id */
 
@@ -74,6 +89,14 @@ public class VideoMesh
     private float videoAspectRatio = 1.0f; /**< aspect ratio of the video */
 
     private float[] mTexCoordTransformationMatrix = null; /**< trasnformation matrix for the video texture coords */
+    private static final int VIDEO_BUFFERS = 3; /**< SurfaceTexture buffers assumed for the GLResourceTracker estimate */
+    private long mVideoTexture_Bytes = 0; /**< estimated memory of the video texture, 0 until the size is known */
+
+    protected FrameProfiler mFrameProfiler = null; /**< optional frame timers */
+    protected GpuTimer mGpuTimer = null; /**< optional GPU timers */
+
+    private float[] mBox = null; /**< bounding box of the quad (min xyz, max xyz), shared by keyframe, video and icon */
+    private final Frustum mFrustum = new Frustum(); /**< view frustum of the part being drawn, for culling */
 
     /**
      * texture coordinates of the video
@@ -127,12 +150,11 @@ public class VideoMesh
     /**
      * \brief Generate a ByteBuffer from a float array.
      * @param array the float array.
-     * @return the generated ByteBuffer.
+     * @return the generated ByteBuffer, from the DirectBufferArena.
      */
     protected ByteBuffer fillBuffer(float[] array)
     {
-        ByteBuffer bb = ByteBuffer.allocateDirect(4 * array.length);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer bb = DirectBufferArena.allocate(4 * array.length);
         for (float d : array) {
             bb.putFloat(d);
         }
@@ -143,12 +165,11 @@ public class VideoMesh
     /**
      * \brief Generate a ByteBuffer from a short array.
      * @param array the short array.
-     * @return the generated ByteBuffer.
+     * @return the generated ByteBuffer, from the DirectBufferArena.
      */
     protected ByteBuffer fillBuffer(short[] array)
     {
-        ByteBuffer bb = ByteBuffer.allocateDirect(2 * array.length);
-        bb.order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer bb = DirectBufferArena.allocate(2 * array.length);
         for (short s : array) {
             bb.putShort(s);
         }
@@ -166,6 +187,7 @@ public class VideoMesh
                 1.0f, 0.0f, 0.0f, 1.0f, 0.0f };
         mVertices_Buffer = fillBuffer(verticesArray);
         mVertices_Number = 4;
+        mBox = new float[] { 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 0.0f };
 
         float texCoordsArray[] = { 0.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f,
                 0.0f };
@@ -191,6 +213,24 @@ public class VideoMesh
         mParentActivity = parent;
     }
 
+    /**
+     * \brief Set the frame timers used to time the video data update.
+     * @param profiler the FrameProfiler, or null.
+     */
+    public void setFrameProfiler(FrameProfiler profiler)
+    {
+        mFrameProfiler = profiler;
+    }
+
+    /**
+     * \brief Set the GPU timers used to time the video draw.
+     * @param gpuTimer the GpuTimer, or null.
+     */
+    public void setGpuTimer(GpuTimer gpuTimer)
+    {
+        mGpuTimer = gpuTimer;
+    }
+
     /**
      * \brief Set to use an external video player.
      *
@@ -231,21 +271,62 @@ public class VideoMesh
             mPikkartVideoPlayer = pikkartVideoPlayer;
         }
         mMovieUrl = movieUrl;
-        int dims[] = new int[2];
-        mKeyframeTexture_GL_ID = RenderUtils.loadTextureFromApk(am, keyframeUrl, dims);
-        keyframeAspectRatio = (float)dims[1] / (float)dims[0];
-
+        mKeyframeUrl = keyframeUrl;
         mSeekPosition = seekPosition;
         mAutostart = autostart;
+        mTexCoordTransformationMatrix = new float[16];
+
+        return InitGL(am);
+    }
+
+    /**
+     * \brief Create the OpenGL resources (textures, programs, video texture) and load the video on them.
+     * @param am the app AssetManager.
+     * @return true on success.
+     */
+    private boolean InitGL(AssetManager am)
+    {
+        // the GL objects created below are charged to this video
+        String owner = GLResourceTracker.setOwner(mMovieUrl);
+        try {
+            return InitGLResources(am);
+        } finally {
+            GLResourceTracker.setOwner(owner);
+        }
+    }
 
-        mIconBusyTexture_GL_ID = RenderUtils.loadTextureFromApk(am, "media/busy.png");
-        mIconPlayTexture_GL_ID = RenderUtils.loadTextureFromApk(am, "media/play.png");
-        mIconErrorTexture_GL_ID = RenderUtils.loadTextureFromApk(am, "media/error.png");
+    /**
+     * \brief Create the OpenGL resources, see InitGL().
+     */
+    private boolean InitGLResources(AssetManager am)
+    {
+        // the keyframe never covers more than the screen, the icons a fraction of it
+        DisplayMetrics metrics = mParentActivity.getResources().getDisplayMetrics();
+        int screenSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+        int iconSize = screenSize / ICON_SCREEN_FRACTION;
+
+        int dims[] = new int[2];
+        mKeyframeTexture_GL_ID = RenderUtils.loadTextureFromApk(am, mKeyframeUrl, dims, screenSize);
+        keyframeAspectRatio = (float)dims[1] / (float)dims[0];
+
+        // the icons share one texture, each drawn through its own texture coordinates
+        TextureAtlas atlas = RenderUtils.loadAtlasFromApk(am, ICON_FILES, iconSize);
+        if (atlas != null) {
+            mIconAtlasTexture_GL_ID = atlas.getTextureId();
+            for (int i = 0; i < ICON_FILES.length; i++) {
+                float texCoordsArray[] = { 0.0f, 1.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f, 0.0f };
+                atlas.mapTexCoords(i, texCoordsArray);
+                DirectBufferArena.release(mIconTexCoords_Buffers[i]);
+                mIconTexCoords_Buffers[i] = fillBuffer(texCoordsArray);
+            }
+        }
 
         mKeyframe_Program_GL_ID = RenderUtils.createProgramFromShaderSrc(VERTEX_SHADER, KEYFRAME_FRAGMENT_SHADER);
         mVideo_Program_GL_ID = RenderUtils.createProgramFromShaderSrc(VERTEX_SHADER, VIDEO_FRAGMENT_SHADER);
 
         mVideoTexture_GL_ID = RenderUtils.createVideoTexture();
+        mVideoTexture_Bytes = 0;
+        CreateVertexArrays(atlas != null);
 
         boolean canFullscreen = true;
         if(mPikkartVideoPlayer!=null) {
@@ -255,11 +336,102 @@ public class VideoMesh
             mPikkartVideoPlayer.load(mMovieUrl,canFullscreen,mAutostart,mSeekPosition);
         }
 
-        mTexCoordTransformationMatrix = new float[16];
-
         return true;
     }
 
+    /**
+     * \brief Upload the quad to buffers and record the keyframe, video and icon draws in vertex array objects.
+     *
+     * Without vertex array object support nothing is created: the draws point the attributes to
+     * the client side buffers every time.
+     * @param icons true if the icon atlas was loaded.
+     */
+    private void CreateVertexArrays(boolean icons)
+    {
+        mKeyframe_VAO = mVideo_VAO = 0;
+        Arrays.fill(mIcon_VAOs, 0);
+        if (!GLState.hasVertexArrays()) return;
+
+        GLState.bindVertexArray(0);
+        mVertices_VBO = RenderUtils.createBuffer(GLES20.GL_ARRAY_BUFFER, mVertices_Buffer.duplicate(), GLES20.GL_STATIC_DRAW, "positions");
+        int texCoordsBytes = mTexCoords_Buffer.remaining();
+        ByteBuffer texCoords = DirectBufferArena.allocate(texCoordsBytes * (1 + (icons ? ICON_FILES.length : 0)));
+        texCoords.put(mTexCoords_Buffer.duplicate());
+        for (int i = 0; icons && i < ICON_FILES.length; i++) texCoords.put(mIconTexCoords_Buffers[i].duplicate());
+        texCoords.rewind();
+        mTexCoords_VBO = RenderUtils.createBuffer(GLES20.GL_ARRAY_BUFFER, texCoords, GLES20.GL_STATIC_DRAW, "texture coordinates");
+        DirectBufferArena.release(texCoords);
+        ByteBuffer videoTexCoords = fillBuffer(videoTextureCoordsTransformed);
+        mVideoTexCoords_VBO = RenderUtils.createBuffer(GLES20.GL_ARRAY_BUFFER, videoTexCoords, GLES20.GL_DYNAMIC_DRAW, "video texture coordinates");
+        DirectBufferArena.release(videoTexCoords);
+        System.arraycopy(videoTextureCoordsTransformed, 0, mVideoTexCoords_Uploaded, 0, mVideoTexCoords_Uploaded.length);
+        mIndex_VBO = RenderUtils.createBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mIndex_Buffer.duplicate(), GLES20.GL_STATIC_DRAW, "indices");
+
+        mKeyframe_VAO = RenderUtils.createVertexArray(mKeyframe_Program_GL_ID, mVertices_VBO, mTexCoords_VBO, 0, mIndex_VBO);
+        mVideo_VAO = RenderUtils.createVertexArray(mVideo_Program_GL_ID, mVertices_VBO, mVideoTexCoords_VBO, 0, mIndex_VBO);
+        for (int i = 0; icons && i < ICON_FILES.length; i++) {
+            mIcon_VAOs[i] = RenderUtils.createVertexArray(mKeyframe_Program_GL_ID, mVertices_VBO, mTexCoords_VBO, texCoordsBytes * (1 + i), mIndex_VBO);
+        }
+    }
+
+    /**
+     * \brief Upload the video texture coordinates to their buffer if they changed.
+     */
+    private void UpdateVideoTexCoords()
+    {
+        if (Arrays.equals(videoTextureCoordsTransformed, mVideoTexCoords_Uploaded)) return;
+        System.arraycopy(videoTextureCoordsTransformed, 0, mVideoTexCoords_Uploaded, 0, mVideoTexCoords_Uploaded.length);
+        ByteBuffer videoTexCoords = fillBuffer(videoTextureCoordsTransformed);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mVideoTexCoords_VBO);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, videoTexCoords.remaining(), videoTexCoords);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        DirectBufferArena.release(videoTexCoords);
+    }
+
+    /**
+     * \brief Recreate the OpenGL resources after the GL context has been lost.
+     *
+     * The old GL objects died with the context. The video player is kept: it is only unloaded
+     * and reloaded on a new video texture, so no MediaPlayer is leaked.
+     * @param am the app AssetManager.
+     * @return true on success.
+     */
+    public boolean RecreateGLResources(AssetManager am)
+    {
+        if(mPikkartVideoPlayer!=null) {
+            mPikkartVideoPlayer.deinit();
+        }
+        return InitGL(am);
+    }
+
+    /**
+     * \brief Delete the OpenGL objects (and stop tracking them) before the GL context is destroyed.
+     *
+     * Call it from the render thread with the context current. The video player is kept: its
+     * surface texture is moved to a new video texture by RecreateGLResources().
+     */
+    public void DestroyGLResources()
+    {
+        GLState.deleteVertexArray(mKeyframe_VAO);
+        GLState.deleteVertexArray(mVideo_VAO);
+        for (int vao : mIcon_VAOs) GLState.deleteVertexArray(vao);
+        mKeyframe_VAO = mVideo_VAO = 0;
+        Arrays.fill(mIcon_VAOs, 0);
+        RenderUtils.deleteBuffer(mVertices_VBO);
+        RenderUtils.deleteBuffer(mTexCoords_VBO);
+        RenderUtils.deleteBuffer(mVideoTexCoords_VBO);
+        RenderUtils.deleteBuffer(mIndex_VBO);
+        mVertices_VBO = mTexCoords_VBO = mVideoTexCoords_VBO = mIndex_VBO = 0;
+        RenderUtils.deleteTexture(mKeyframeTexture_GL_ID);
+        RenderUtils.deleteTexture(mIconAtlasTexture_GL_ID);
+        RenderUtils.deleteTexture(mVideoTexture_GL_ID);
+        mKeyframeTexture_GL_ID = mIconAtlasTexture_GL_ID = mVideoTexture_GL_ID = 0;
+        RenderUtils.deleteProgram(mKeyframe_Program_GL_ID);
+        RenderUtils.deleteProgram(mVideo_Program_GL_ID);
+        mKeyframe_Program_GL_ID = mVideo_Program_GL_ID = 0;
+        RenderUtils.checkGLError("DestroyGLResources");
+    }
+
     /**
      * \brief Reload the video
      */
@@ -336,42 +508,74 @@ public class VideoMesh
         videoTextureCoordsTransformed[7] = tempUVMultRes[1];
     }
 
+    /**
+     * \brief Is the quad at least partly inside the view frustum.
+     * @param mvpMatrix the model-view-projection matrix of the part to draw.
+     * @return false if the quad is entirely off screen.
+     */
+    private boolean IsVisible(float[] mvpMatrix)
+    {
+        if (mBox == null) return true;
+        mFrustum.extract(mvpMatrix);
+        return mFrustum.intersectsBox(mBox);
+    }
+
+    /**
+     * \brief Set up the quad attributes of a draw: bind its vertex array object, or point the attributes to the client side buffers.
+     * @param program the shader program in use.
+     * @param vertexArray the vertex array object of the draw, 0 if none.
+     * @param texCoords the texture coordinates of the draw, used without vertex array object.
+     */
+    private void BindQuad(int program, int vertexArray, ByteBuffer texCoords)
+    {
+        if (vertexArray != 0) {
+            GLState.bindVertexArray(vertexArray);
+            return;
+        }
+        GLState.bindVertexArray(0);
+        int vertexHandle = GLES20.glGetAttribLocation(program, "vertexPosition");
+        int textureCoordHandle = GLES20.glGetAttribLocation(program, "vertexTexCoord");
+
+        GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, mVertices_Buffer);
+        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, texCoords);
+
+        GLState.setVertexAttribArrays(GLState.getAttribBit(vertexHandle) | GLState.getAttribBit(textureCoordHandle));
+    }
+
+    /**
+     * \brief Draw the quad set up by BindQuad().
+     * @param vertexArray the vertex array object of the draw, 0 if none.
+     */
+    private void DrawQuad(int vertexArray)
+    {
+        if (vertexArray != 0) GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndices_Number, GLES20.GL_UNSIGNED_SHORT, 0);
+        else GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndices_Number, GLES20.GL_UNSIGNED_SHORT, mIndex_Buffer);
+    }
+
     /**
      * \brief Draw the video keyframe (in OpenGL).
      * @param mvpMatrix the model-view-projection matrix.
      */
     private void DrawKeyFrame(float[] mvpMatrix)
     {
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.enable(GLES20.GL_BLEND);
+        GLState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-        GLES20.glUseProgram(mKeyframe_Program_GL_ID);
+        GLState.useProgram(mKeyframe_Program_GL_ID);
 
-        int vertexHandle = GLES20.glGetAttribLocation(mKeyframe_Program_GL_ID, "vertexPosition");
-        int textureCoordHandle = GLES20.glGetAttribLocation(mKeyframe_Program_GL_ID, "vertexTexCoord");
         int mvpMatrixHandle = GLES20.glGetUniformLocation(mKeyframe_Program_GL_ID, "modelViewProjectionMatrix");
         int texSampler2DHandle = GLES20.glGetUniformLocation(mKeyframe_Program_GL_ID, "texSampler2D");
 
-        GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, mVertices_Buffer);
-        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, mTexCoords_Buffer);
-
-        GLES20.glEnableVertexAttribArray(vertexHandle);
-        GLES20.glEnableVertexAttribArray(textureCoordHandle);
+        BindQuad(mKeyframe_Program_GL_ID, mKeyframe_VAO, mTexCoords_Buffer);
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mKeyframeTexture_GL_ID);
+        GLState.activeTexture(GLES20.GL_TEXTURE0);
+        GLState.bindTexture(GLES20.GL_TEXTURE_2D, mKeyframeTexture_GL_ID);
         GLES20.glUniform1i(texSampler2DHandle, 0);
 
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
 
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndices_Number, GLES20.GL_UNSIGNED_SHORT, mIndex_Buffer);
-
-        GLES20.glDisableVertexAttribArray(vertexHandle);
-        GLES20.glDisableVertexAttribArray(textureCoordHandle);
-
-        GLES20.glUseProgram(0);
-        GLES20.glDisable(GLES20.GL_BLEND);
+        DrawQuad(mKeyframe_VAO);
     }
 
     /**
@@ -380,33 +584,44 @@ public class VideoMesh
      */
     private void DrawVideo(float[] mvpMatrix)
     {
-        GLES20.glUseProgram(mVideo_Program_GL_ID);
-
-        int vertexHandle = GLES20.glGetAttribLocation(mKeyframe_Program_GL_ID, "vertexPosition");
-        int textureCoordHandle = GLES20.glGetAttribLocation(mKeyframe_Program_GL_ID, "vertexTexCoord");
-        int mvpMatrixHandle = GLES20.glGetUniformLocation(mKeyframe_Program_GL_ID, "modelViewProjectionMatrix");
-        int texSampler2DHandle = GLES20.glGetUniformLocation(mKeyframe_Program_GL_ID, "texSamplerOES");
+        GLState.disable(GLES20.GL_BLEND);
+        GLState.useProgram(mVideo_Program_GL_ID);
 
-        GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, mVertices_Buffer);
-        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, mVideoTexCoords_Buffer);
+        int mvpMatrixHandle = GLES20.glGetUniformLocation(mVideo_Program_GL_ID, "modelViewProjectionMatrix");
+        int texSampler2DHandle = GLES20.glGetUniformLocation(mVideo_Program_GL_ID, "texSamplerOES");
 
-        GLES20.glEnableVertexAttribArray(vertexHandle);
-        GLES20.glEnableVertexAttribArray(textureCoordHandle);
+        BindQuad(mVideo_Program_GL_ID, mVideo_VAO, mVideoTexCoords_Buffer);
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mVideoTexture_GL_ID);
+        GLState.activeTexture(GLES20.GL_TEXTURE0);
+        GLState.bindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, mVideoTexture_GL_ID);
         GLES20.glUniform1i(texSampler2DHandle, 0);
 
 
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
         // Render
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndices_Number, GLES20.GL_UNSIGNED_SHORT, mIndex_Buffer);
-
-        GLES20.glDisableVertexAttribArray(vertexHandle);
-        GLES20.glDisableVertexAttribArray(textureCoordHandle);
+        DrawQuad(mVideo_VAO);
+    }
 
-        GLES20.glUseProgram(0);
+    /**
+     * \brief Get the icon shown for a video state.
+     * @param status the video state.
+     * @return the icon index in the atlas.
+     */
+    private static int GetIcon(PikkartVideoPlayer.VIDEO_STATE status)
+    {
+        switch(status.getNumericType()) {
+            case 0://end
+            case 1://paused
+            case 2://stopped
+            case 3://playing
+            case 4://ready
+                return ICON_PLAY;
+            case 7://error
+                return ICON_ERROR;
+            default://not ready, buffering
+                return ICON_BUSY;
+        }
     }
 
     /**
@@ -416,64 +631,27 @@ public class VideoMesh
      */
     private void DrawIcon(float[] mvpMatrix, PikkartVideoPlayer.VIDEO_STATE status)
     {
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        if (mIconAtlasTexture_GL_ID == 0) return;
 
-        GLES20.glUseProgram(mKeyframe_Program_GL_ID);
+        GLState.enable(GLES20.GL_BLEND);
+        GLState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+        GLState.useProgram(mKeyframe_Program_GL_ID);
 
-        int vertexHandle = GLES20.glGetAttribLocation(mKeyframe_Program_GL_ID, "vertexPosition");
-        int textureCoordHandle = GLES20.glGetAttribLocation(mKeyframe_Program_GL_ID, "vertexTexCoord");
         int mvpMatrixHandle = GLES20.glGetUniformLocation(mKeyframe_Program_GL_ID, "modelViewProjectionMatrix");
         int texSampler2DHandle = GLES20.glGetUniformLocation(mKeyframe_Program_GL_ID, "texSampler2D");
 
-        GLES20.glVertexAttribPointer(vertexHandle, 3, GLES20.GL_FLOAT, false, 0, mVertices_Buffer);
-        GLES20.glVertexAttribPointer(textureCoordHandle, 2, GLES20.GL_FLOAT, false, 0, mTexCoords_Buffer);
-
-        GLES20.glEnableVertexAttribArray(vertexHandle);
-        GLES20.glEnableVertexAttribArray(textureCoordHandle);
+        int icon = GetIcon(status);
+        BindQuad(mKeyframe_Program_GL_ID, mIcon_VAOs[icon], mIconTexCoords_Buffers[icon]);
 
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        switch(status.getNumericType()) {
-            case 0://end
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconPlayTexture_GL_ID);
-                break;
-            case 1://pasued
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconPlayTexture_GL_ID);
-                break;
-            case 2://stopped
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconPlayTexture_GL_ID);
-                break;
-            case 3://playing
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconPlayTexture_GL_ID);
-                break;
-            case 4://ready
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconPlayTexture_GL_ID);
-                break;
-            case 5://not ready
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconBusyTexture_GL_ID);
-                break;
-            case 6://buffering
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconBusyTexture_GL_ID);
-                break;
-            case 7://error
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconErrorTexture_GL_ID);
-                break;
-            default:
-                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mIconBusyTexture_GL_ID);
-                break;
-        }
+        GLState.activeTexture(GLES20.GL_TEXTURE0);
+        GLState.bindTexture(GLES20.GL_TEXTURE_2D, mIconAtlasTexture_GL_ID);
         GLES20.glUniform1i(texSampler2DHandle, 0);
 
         GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
 
 
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mIndices_Number, GLES20.GL_UNSIGNED_SHORT, mIndex_Buffer);
-
-        GLES20.glDisableVertexAttribArray(vertexHandle);
-        GLES20.glDisableVertexAttribArray(textureCoordHandle);
-
-        GLES20.glUseProgram(0);
-        GLES20.glDisable(GLES20.GL_BLEND);
+        DrawQuad(mIcon_VAOs[icon]);
     }
 
     /**
@@ -488,11 +666,28 @@ public class VideoMesh
             currentStatus = mPikkartVideoPlayer.getVideoStatus();
             if(!mPikkartVideoPlayer.isFullscreen()) {
                 if (mPikkartVideoPlayer.getVideoStatus() == PikkartVideoPlayer.VIDEO_STATE.PLAYING) {
+                    long updateStart = mFrameProfiler != null ? mFrameProfiler.begin() : 0;
                     mPikkartVideoPlayer.updateVideoData();
+                    // updateTexImage() binds the video texture behind GLState
+                    GLState.invalidateTextures();
+                    if (mFrameProfiler != null) mFrameProfiler.end(FrameProfiler.STAGE_VIDEO_UPDATE, updateStart);
                 }
                 mPikkartVideoPlayer.getSurfaceTextureTransformMatrix(mTexCoordTransformationMatrix);
                 setVideoDimensions(mPikkartVideoPlayer.getVideoWidth(), mPikkartVideoPlayer.getVideoHeight(), mTexCoordTransformationMatrix);
-                mVideoTexCoords_Buffer = fillBuffer(videoTextureCoordsTransformed);
+                // decoded frames are YUV 4:2:0, 12 bits per pixel
+                long videoBytes = (long) mPikkartVideoPlayer.getVideoWidth() * mPikkartVideoPlayer.getVideoHeight() * 3 / 2 * VIDEO_BUFFERS;
+                if (videoBytes != mVideoTexture_Bytes) {
+                    mVideoTexture_Bytes = videoBytes;
+                    GLResourceTracker.resize(GLResourceTracker.TYPE_TEXTURE, mVideoTexture_GL_ID, videoBytes);
+                }
+                if (mVideo_VAO != 0) {
+                    UpdateVideoTexCoords();
+                }
+                else {
+                    // refilled every frame: the previous buffer is handed back and reused
+                    DirectBufferArena.release(mVideoTexCoords_Buffer);
+                    mVideoTexCoords_Buffer = fillBuffer(videoTextureCoordsTransformed);
+                }
             }
         }
 
@@ -501,8 +696,8 @@ public class VideoMesh
             float markerWidth = currentMarker.getWidth();
             float markerHeight = currentMarker.getWidth();
 
-            GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-            GLES20.glDisable(GLES20.GL_CULL_FACE);
+            GLState.enable(GLES20.GL_DEPTH_TEST);
+            GLState.disable(GLES20.GL_CULL_FACE);
             //GLES20.glCullFace(GLES20.GL_BACK);
             //GLES20.glFrontFace(GLES20.GL_CCW);
 
@@ -525,7 +720,7 @@ public class VideoMesh
                 float[] mvpMatrix = new float[16];
                 RenderUtils.matrix44Transpose(temp_mvp, mvpMatrix);
 
-                DrawKeyFrame(mvpMatrix);
+                if (IsVisible(mvpMatrix)) DrawKeyFrame(mvpMatrix);
             } else {
                 float[] scaleMatrix = new float[16];
                 RenderUtils.matrix44Identity(scaleMatrix);
@@ -541,7 +736,12 @@ public class VideoMesh
                 float[] mvpMatrix = new float[16];
                 RenderUtils.matrix44Transpose(temp_mvp, mvpMatrix);
 
-                DrawVideo(mvpMatrix);
+                // the video keeps decoding off screen, only the draw is skipped
+                if (IsVisible(mvpMatrix)) {
+                    if (mGpuTimer != null) mGpuTimer.begin(FrameProfiler.STAGE_GPU_DRAW_VIDEO);
+                    DrawVideo(mvpMatrix);
+                    if (mGpuTimer != null) mGpuTimer.end();
+                }
             }
 
             if ((currentStatus == PikkartVideoPlayer.VIDEO_STATE.READY)
@@ -569,16 +769,25 @@ public class VideoMesh
                 float[] mvpMatrix = new float[16];
                 RenderUtils.matrix44Transpose(temp_mvp, mvpMatrix);
 
-                DrawIcon(mvpMatrix, currentStatus);
+                if (IsVisible(mvpMatrix)) DrawIcon(mvpMatrix, currentStatus);
             }
             RenderUtils.checkGLError("VideoMesh:end video renderer");
         }
     }
 
     /**
-     * \brief Is the media player playing the video
+     * \brief Is the media player playing the video, not paused: the frames change.
      * @return true if playing
      */
+    public boolean isVideoPlaying()
+    {
+        return mPikkartVideoPlayer != null && mPikkartVideoPlayer.getVideoStatus() == PikkartVideoPlayer.VIDEO_STATE.PLAYING;
+    }
+
+    /**
+     * \brief Is the media player playing the video, or paused on it
+     * @return true if playing or paused
+     */
     public boolean isPlaying()
     {
         if(mPikkartVideoPlayer!=null) {
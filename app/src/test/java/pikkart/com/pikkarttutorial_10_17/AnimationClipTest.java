@@ -0,0 +1,145 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * \class AnimationClipTest
+ * \brief AnimationClip sampling with each glTF interpolation, and the weights held outside of the keyframes.
+ */
+public class AnimationClipTest
+{
+    private static final float EPSILON = 1e-6f;
+
+    /** two targets, keyframes at 0, 1 and 3 seconds */
+    private static final float[] TIMES = { 0, 1, 3 };
+    private static final float[] VALUES = { 0, 1, 1, 0, 3, 4 };
+
+    @Test
+    public void samplesLinear()
+    {
+        AnimationClip clip = new AnimationClip("linear", TIMES, VALUES, 2, AnimationClip.INTERPOLATION_LINEAR);
+
+        assertSample(clip, 0.5f, 0.5f, 0.5f);
+        assertSample(clip, 1.0f, 1, 0);
+        assertSample(clip, 2.0f, 2, 2);
+        assertSample(clip, 2.5f, 2.5f, 3);
+        assertEquals(3.0f, clip.getDuration(), 0.0f);
+    }
+
+    @Test
+    public void samplesStep()
+    {
+        AnimationClip clip = new AnimationClip("step", TIMES, VALUES, 2, AnimationClip.INTERPOLATION_STEP);
+
+        assertSample(clip, 0.99f, 0, 1);
+        assertSample(clip, 1.0f, 1, 0);
+        assertSample(clip, 2.99f, 1, 0);
+        assertSample(clip, 3.0f, 3, 4);
+    }
+
+    @Test
+    public void samplesCubicSpline()
+    {
+        // one target from 0 to 1 over 2 seconds; keyframes hold in tangent, value, out tangent
+        float[] times = { 0, 2 };
+        AnimationClip flat = new AnimationClip("flat", times, new float[] { 5, 0, 0, 0, 1, 5 }, 1,
+                AnimationClip.INTERPOLATION_CUBICSPLINE);
+        AnimationClip tangents = new AnimationClip("tangents", times, new float[] { 0, 0, 1, 3, 1, 0 }, 1,
+                AnimationClip.INTERPOLATION_CUBICSPLINE);
+
+        // flat tangents: smoothstep, 3t^2 - 2t^3; the tangents of the ends are not used
+        assertSample(flat, 0.5f, 0.15625f);
+        assertSample(flat, 1.0f, 0.5f);
+        assertSample(flat, 1.5f, 0.84375f);
+        // h10 * dt * out0 + h01 * v1 + h11 * dt * in1, at t = 0.25 then 0.5
+        assertSample(tangents, 0.5f, 0.28125f + 0.15625f - 0.09375f * 3);
+        assertSample(tangents, 1.0f, 0.25f + 0.5f - 0.25f * 3);
+        // the keyframes give their value, not a tangent
+        assertSample(tangents, 0.0f, 0);
+        assertSample(tangents, 2.0f, 1);
+    }
+
+    @Test
+    public void holdsOutsideOfTheKeyframes()
+    {
+        AnimationClip linear = new AnimationClip("linear", TIMES, VALUES, 2, AnimationClip.INTERPOLATION_LINEAR);
+        AnimationClip cubic = new AnimationClip("cubic", new float[] { 1, 2 }, new float[] { 9, 0.25f, 9, 9, 0.75f, 9 }, 1,
+                AnimationClip.INTERPOLATION_CUBICSPLINE);
+
+        assertSample(linear, -1.0f, 0, 1);
+        assertSample(linear, 10.0f, 3, 4);
+        assertSample(cubic, 0.5f, 0.25f);
+        assertSample(cubic, 3.0f, 0.75f);
+    }
+
+    @Test
+    public void holdsASingleKeyframe()
+    {
+        AnimationClip clip = new AnimationClip("single", new float[] { 0.5f }, new float[] { 0.7f, 0.2f }, 2,
+                AnimationClip.INTERPOLATION_LINEAR);
+
+        assertSample(clip, 0.0f, 0.7f, 0.2f);
+        assertSample(clip, 0.5f, 0.7f, 0.2f);
+        assertSample(clip, 1.0f, 0.7f, 0.2f);
+        assertEquals(0.5f, clip.getDuration(), 0.0f);
+    }
+
+    @Test
+    public void readsInterpolationNames()
+    {
+        assertEquals(AnimationClip.INTERPOLATION_LINEAR, AnimationClip.getInterpolation("LINEAR"));
+        assertEquals(AnimationClip.INTERPOLATION_STEP, AnimationClip.getInterpolation("STEP"));
+        assertEquals(AnimationClip.INTERPOLATION_CUBICSPLINE, AnimationClip.getInterpolation("CUBICSPLINE"));
+        assertEquals(AnimationClip.INTERPOLATION_LINEAR, AnimationClip.getInterpolation(null));
+    }
+
+    @Test
+    public void rejectsMalformedClips()
+    {
+        assertRejected("no keyframe", new float[0], new float[0], AnimationClip.INTERPOLATION_LINEAR);
+        assertRejected("value count", TIMES, new float[] { 0, 1, 2 }, AnimationClip.INTERPOLATION_LINEAR);
+        assertRejected("no tangents", TIMES, VALUES, AnimationClip.INTERPOLATION_CUBICSPLINE);
+        assertRejected("decreasing times", new float[] { 0, 2, 1 }, VALUES, AnimationClip.INTERPOLATION_LINEAR);
+    }
+
+    private static void assertRejected(String what, float[] times, float[] values, int interpolation)
+    {
+        try {
+            new AnimationClip(what, times, values, 2, interpolation);
+            fail(what + " accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void assertSample(AnimationClip clip, float time, float... expected)
+    {
+        float[] weights = new float[expected.length];
+        clip.sample(time, weights);
+        assertArrayEquals(expected, weights, EPSILON);
+    }
+}
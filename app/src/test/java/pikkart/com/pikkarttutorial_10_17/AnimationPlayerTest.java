@@ -0,0 +1,116 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * \class AnimationPlayerTest
+ * \brief AnimationPlayer advancing from the frame clock: gaps capped, pause and resume, looping.
+ *
+ * The clip ramps its weight from 0 to 1 in 1 second, so the weight is the clip time.
+ */
+public class AnimationPlayerTest
+{
+    private static final float EPSILON = 1e-5f;
+    private static final long SECOND = 1000000000L;
+    private static final long START = 123 * SECOND; /**< any System.nanoTime() origin */
+
+    private static AnimationPlayer newPlayer()
+    {
+        AnimationClip ramp = new AnimationClip("ramp", new float[] { 0, 1 }, new float[] { 0, 1 }, 1,
+                AnimationClip.INTERPOLATION_LINEAR);
+        return new AnimationPlayer(ramp);
+    }
+
+    @Test
+    public void advancesByTheFrameTime()
+    {
+        AnimationPlayer player = newPlayer();
+
+        // the first frame only starts the clock
+        assertWeight(0, player.update(START));
+        assertWeight(0.05f, player.update(START + SECOND / 20));
+        assertWeight(0.1f, player.update(START + SECOND / 10));
+        assertEquals(0.1f, player.getTime(), EPSILON);
+
+        player.setSpeed(2);
+        assertWeight(0.2f, player.update(START + 3 * SECOND / 20));
+    }
+
+    @Test
+    public void capsLongGaps()
+    {
+        AnimationPlayer player = newPlayer();
+        player.update(START);
+        player.update(START + SECOND / 20);
+
+        // the marker was lost for 10 seconds: one frame step at most
+        assertWeight(0.05f + AnimationPlayer.MAX_FRAME_STEP_S, player.update(START + 10 * SECOND));
+        // a clock going back does not rewind it
+        assertWeight(0.05f + AnimationPlayer.MAX_FRAME_STEP_S, player.update(START + 9 * SECOND));
+    }
+
+    @Test
+    public void resumesWherePaused()
+    {
+        AnimationPlayer player = newPlayer();
+        player.update(START);
+        player.update(START + SECOND / 10);
+        player.pause();
+        assertFalse(player.isPlaying());
+
+        assertWeight(0.1f, player.update(START + SECOND / 5));
+        player.play();
+        assertTrue(player.isPlaying());
+        // the time spent paused is not played, whatever its length
+        assertWeight(0.1f, player.update(START + 60 * SECOND));
+        assertWeight(0.15f, player.update(START + 60 * SECOND + SECOND / 20));
+    }
+
+    @Test
+    public void loopsOrStopsAtTheEnd()
+    {
+        AnimationPlayer looping = newPlayer();
+        looping.seek(0.95f);
+        looping.update(START);
+        assertWeight(0.05f, looping.update(START + SECOND / 10));
+        assertTrue(looping.isPlaying());
+
+        AnimationPlayer once = newPlayer();
+        once.setLooping(false);
+        once.seek(0.95f);
+        once.update(START);
+        assertWeight(1, once.update(START + SECOND / 10));
+        assertFalse(once.isPlaying());
+        assertEquals(1.0f, once.getTime(), EPSILON);
+    }
+
+    private static void assertWeight(float expected, float[] weights)
+    {
+        assertEquals(1, weights.length);
+        assertEquals(expected, weights[0], EPSILON);
+    }
+}
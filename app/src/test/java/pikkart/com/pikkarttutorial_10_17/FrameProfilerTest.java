@@ -0,0 +1,112 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * \class FrameProfilerTest
+ * \brief FrameProfiler stage accounting and summary formatting.
+ */
+public class FrameProfilerTest
+{
+    @Test
+    public void recordsNothingWhenDisabled()
+    {
+        FrameProfiler profiler = new FrameProfiler();
+        assertFalse(profiler.isEnabled());
+
+        long start = profiler.begin();
+        assertEquals(0, start);
+        profiler.end(FrameProfiler.STAGE_CAMERA, start);
+        profiler.record(FrameProfiler.STAGE_SWAP, 1000);
+        assertEquals(0, totalCount(profiler));
+
+        // a stage begun while disabled is not recorded when it ends after enabling
+        profiler.setEnabled(true);
+        profiler.end(FrameProfiler.STAGE_CAMERA, start);
+        assertEquals(0, totalCount(profiler));
+    }
+
+    @Test
+    public void recordsEachStageInItsHistogram()
+    {
+        FrameProfiler profiler = new FrameProfiler();
+        profiler.setEnabled(true);
+
+        long start = profiler.begin();
+        assertTrue(start != 0);
+        profiler.end(FrameProfiler.STAGE_MATRICES, start);
+        profiler.record(FrameProfiler.STAGE_DRAW_MESH, 1500);
+        profiler.record(FrameProfiler.STAGE_DRAW_MESH, 2500);
+
+        assertEquals(1, profiler.getHistogram(FrameProfiler.STAGE_MATRICES).getCount());
+        assertEquals(2, profiler.getHistogram(FrameProfiler.STAGE_DRAW_MESH).getCount());
+        assertEquals(2500, profiler.getHistogram(FrameProfiler.STAGE_DRAW_MESH).getMax());
+        assertEquals(3, totalCount(profiler));
+
+        profiler.reset();
+        assertEquals(0, totalCount(profiler));
+    }
+
+    @Test
+    public void formatsStagesWithSamples()
+    {
+        FrameProfiler profiler = new FrameProfiler();
+        profiler.setEnabled(true);
+        for (int i = 0; i < 100; i++) profiler.record(FrameProfiler.STAGE_CAMERA, 1500);
+        for (int i = 1; i <= 100; i++) profiler.record(FrameProfiler.STAGE_SWAP, i);
+
+        StringBuilder sb = new StringBuilder();
+        profiler.formatSummary(sb);
+        assertEquals("camera      p50 1.50 p95 1.50 p99 1.50\n"
+                + "swap        p50 0.05 p95 0.10 p99 0.10\n", sb.toString());
+    }
+
+    @Test
+    public void appendsMillis()
+    {
+        assertEquals("0.00", millis(0));
+        assertEquals("0.01", millis(5));
+        assertEquals("1.23", millis(1234));
+        assertEquals("1.24", millis(1235));
+        assertEquals("16.67", millis(16666));
+        assertEquals("100.00", millis(100000));
+    }
+
+    private static String millis(long micros)
+    {
+        StringBuilder sb = new StringBuilder();
+        FrameProfiler.appendMillis(sb, micros);
+        return sb.toString();
+    }
+
+    private static long totalCount(FrameProfiler profiler)
+    {
+        long count = 0;
+        for (int i = 0; i < FrameProfiler.STAGE_COUNT; i++) count += profiler.getHistogram(i).getCount();
+        return count;
+    }
+}
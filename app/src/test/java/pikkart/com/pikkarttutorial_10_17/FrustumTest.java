@@ -0,0 +1,200 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * \class FrustumTest
+ * \brief Frustum plane extraction and culling tests.
+ *
+ * The camera is a 90 degrees square perspective with near 1 and far 10 looking down -z, so
+ * the frustum is the pyramid |x| <= -z, |y| <= -z between z = -1 and z = -10. The matrices
+ * are built here, column major as android.opengl.Matrix does (which is not available on the JVM).
+ */
+public class FrustumTest
+{
+    private static final float EPSILON = 1e-5f;
+    private static final float SQRT_HALF = (float) Math.sqrt(0.5);
+
+    @Test
+    public void extractsPerspectivePlanes()
+    {
+        Frustum frustum = new Frustum();
+        frustum.extract(perspective(90, 1, 10));
+
+        assertPlane(frustum, Frustum.LEFT, SQRT_HALF, 0, -SQRT_HALF, 0);
+        assertPlane(frustum, Frustum.RIGHT, -SQRT_HALF, 0, -SQRT_HALF, 0);
+        assertPlane(frustum, Frustum.BOTTOM, 0, SQRT_HALF, -SQRT_HALF, 0);
+        assertPlane(frustum, Frustum.TOP, 0, -SQRT_HALF, -SQRT_HALF, 0);
+        assertPlane(frustum, Frustum.NEAR, 0, 0, -1, -1);
+        assertPlane(frustum, Frustum.FAR, 0, 0, 1, 10);
+    }
+
+    @Test
+    public void extractsPlanesInModelSpace()
+    {
+        // the model moved 5 along -z: the near plane is at model z = 4
+        Frustum frustum = new Frustum();
+        frustum.extract(multiply(perspective(90, 1, 10), translation(0, 0, -5)));
+
+        assertPlane(frustum, Frustum.NEAR, 0, 0, -1, 4);
+        assertPlane(frustum, Frustum.FAR, 0, 0, 1, 5);
+    }
+
+    @Test
+    public void classifiesSpheres()
+    {
+        Frustum frustum = new Frustum();
+        frustum.extract(perspective(90, 1, 10));
+
+        assertTrue("inside", frustum.intersectsSphere(new float[] { 0, 0, -5, 1 }));
+        assertTrue("around the camera", frustum.intersectsSphere(new float[] { 0, 0, 0, 20 }));
+        assertTrue("straddling the near plane", frustum.intersectsSphere(new float[] { 0, 0, -0.5f, 1 }));
+        assertTrue("straddling the left plane", frustum.intersectsSphere(new float[] { -6, 0, -5, 1 }));
+        assertFalse("behind the camera", frustum.intersectsSphere(new float[] { 0, 0, 5, 1 }));
+        assertFalse("beyond the far plane", frustum.intersectsSphere(new float[] { 0, 0, -12, 1 }));
+        assertFalse("left", frustum.intersectsSphere(new float[] { -8, 0, -5, 1 }));
+        assertFalse("above", frustum.intersectsSphere(new float[] { 0, 8, -5, 1 }));
+    }
+
+    @Test
+    public void classifiesBoxes()
+    {
+        Frustum frustum = new Frustum();
+        frustum.extract(perspective(90, 1, 10));
+
+        assertTrue("inside", frustum.intersectsBox(new float[] { -1, -1, -6, 1, 1, -4 }));
+        assertTrue("containing the frustum", frustum.intersectsBox(new float[] { -20, -20, -20, 20, 20, 20 }));
+        assertTrue("straddling the far plane", frustum.intersectsBox(new float[] { -1, -1, -11, 1, 1, -9 }));
+        assertTrue("straddling the right plane", frustum.intersectsBox(new float[] { 4, -1, -6, 6, 1, -4 }));
+        assertFalse("behind the camera", frustum.intersectsBox(new float[] { -1, -1, 1, 1, 1, 3 }));
+        assertFalse("right", frustum.intersectsBox(new float[] { 6, -1, -5, 8, 1, -4 }));
+        assertFalse("below", frustum.intersectsBox(new float[] { -1, -8, -5, 1, -6, -4 }));
+        assertFalse("before the near plane", frustum.intersectsBox(new float[] { -0.1f, -0.1f, -0.9f, 0.1f, 0.1f, -0.5f }));
+    }
+
+    @Test
+    public void isVisibleNeedsBothVolumes()
+    {
+        Frustum frustum = new Frustum();
+        frustum.extract(perspective(90, 1, 10));
+        float[] sphereIn = { 0, 0, -5, 1 };
+        float[] sphereOut = { 0, 0, 5, 1 };
+        float[] boxIn = { -1, -1, -6, 1, 1, -4 };
+        float[] boxOut = { -1, -1, 1, 1, 1, 3 };
+
+        assertTrue(frustum.isVisible(null, null));
+        assertTrue(frustum.isVisible(sphereIn, boxIn));
+        assertTrue(frustum.isVisible(sphereIn, null));
+        assertTrue(frustum.isVisible(null, boxIn));
+        assertFalse(frustum.isVisible(sphereOut, boxIn));
+        assertFalse(frustum.isVisible(sphereIn, boxOut));
+    }
+
+    @Test
+    public void normalizesScaledPlanes()
+    {
+        // a model scaled by 4: the rows of the MVP are 4 times longer, the sphere radius
+        // is compared to distances in model units only once the planes are normalized
+        Frustum frustum = new Frustum();
+        frustum.extract(multiply(perspective(90, 1, 10), scale(4)));
+
+        assertPlane(frustum, Frustum.LEFT, SQRT_HALF, 0, -SQRT_HALF, 0);
+        assertPlane(frustum, Frustum.NEAR, 0, 0, -1, -0.25f);
+        // the near plane is at model z = -0.25: 0.5 beyond it
+        assertTrue(frustum.intersectsSphere(new float[] { 0, 0, 0.25f, 0.6f }));
+        assertFalse(frustum.intersectsSphere(new float[] { 0, 0, 0.25f, 0.4f }));
+    }
+
+    @Test
+    public void keepsDegeneratePlanes()
+    {
+        // all the rows equal: row3 - row i is zero, it can not be normalized nor cull anything
+        float[] mvp = new float[16];
+        for (int c = 0; c < 4; c++) {
+            for (int r = 0; r < 4; r++) mvp[c * 4 + r] = c == 3 ? 1 : 0;
+        }
+        Frustum frustum = new Frustum();
+        frustum.extract(mvp);
+
+        assertPlane(frustum, Frustum.RIGHT, 0, 0, 0, 0);
+        assertPlane(frustum, Frustum.LEFT, 0, 0, 0, 2);
+        assertTrue(frustum.intersectsSphere(new float[] { 100, -100, 100, 0 }));
+        assertTrue(frustum.intersectsBox(new float[] { 100, 100, 100, 101, 101, 101 }));
+    }
+
+    private static void assertPlane(Frustum frustum, int plane, float a, float b, float c, float d)
+    {
+        float[] actual = new float[4];
+        frustum.getPlane(plane, actual);
+        assertArrayEquals(new float[] { a, b, c, d }, actual, EPSILON);
+    }
+
+    /**
+     * \brief A perspective projection, as android.opengl.Matrix.perspectiveM with a square aspect.
+     */
+    private static float[] perspective(float fovy, float near, float far)
+    {
+        float f = 1.0f / (float) Math.tan(Math.toRadians(fovy) / 2);
+        float[] m = new float[16];
+        m[0] = f;
+        m[5] = f;
+        m[10] = (far + near) / (near - far);
+        m[11] = -1;
+        m[14] = 2 * far * near / (near - far);
+        return m;
+    }
+
+    private static float[] translation(float x, float y, float z)
+    {
+        float[] m = scale(1);
+        m[12] = x;
+        m[13] = y;
+        m[14] = z;
+        return m;
+    }
+
+    private static float[] scale(float s)
+    {
+        float[] m = new float[16];
+        m[0] = s;
+        m[5] = s;
+        m[10] = s;
+        m[15] = 1;
+        return m;
+    }
+
+    private static float[] multiply(float[] lhs, float[] rhs)
+    {
+        float[] m = new float[16];
+        for (int c = 0; c < 4; c++) {
+            for (int r = 0; r < 4; r++) {
+                for (int k = 0; k < 4; k++) m[c * 4 + r] += lhs[k * 4 + r] * rhs[c * 4 + k];
+            }
+        }
+        return m;
+    }
+}
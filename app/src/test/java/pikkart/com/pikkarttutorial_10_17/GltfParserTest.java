@@ -0,0 +1,223 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * \class GltfParserTest
+ * \brief GltfParser on the GLB fixtures of src/test/resources/gltf, and on malformed files.
+ *
+ * triangle.glb is compact JSON with a textured material, an embedded image and members the
+ * parser must skip (escaped strings, nested extras, null); morph.glb is pretty printed, with
+ * interleaved attributes, a morph target and the animation driving its weight.
+ */
+public class GltfParserTest
+{
+    private static final float EPSILON = 1e-6f;
+
+    @Test
+    public void parsesTriangle() throws IOException
+    {
+        GltfModel model = GltfParser.parse(loadFixture("triangle.glb"));
+
+        assertEquals(1, model.meshes.size());
+        GltfModel.Mesh mesh = model.meshes.get(0);
+        assertEquals("tri\"angleé", mesh.name);
+        assertEquals(1, mesh.primitives.size());
+        GltfModel.Primitive primitive = mesh.primitives.get(0);
+        assertEquals(0, primitive.position);
+        assertEquals(1, primitive.texCoord);
+        assertEquals(-1, primitive.normal);
+        assertEquals(2, primitive.indices);
+        assertEquals(0, primitive.material);
+        assertEquals(GltfModel.MODE_TRIANGLES, primitive.mode);
+
+        GltfModel.Accessor position = model.accessors.get(primitive.position);
+        assertEquals(GltfModel.COMPONENT_FLOAT, position.componentType);
+        assertEquals(3, position.count);
+        assertEquals(3, position.components);
+        assertArrayEquals(new float[] { 0, 0, 0 }, position.min, EPSILON);
+        assertArrayEquals(new float[] { 1, 1, 0 }, position.max, EPSILON);
+        assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, model.readAccessorFloats(primitive.position), EPSILON);
+        assertArrayEquals(new float[] { 0, 0, 1, 0, 0, 1 }, model.readAccessorFloats(primitive.texCoord), EPSILON);
+
+        ByteBuffer indices = model.getAccessorData(primitive.indices);
+        assertEquals(6, indices.remaining());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, indices.order());
+        assertEquals(0, indices.getShort(0));
+        assertEquals(1, indices.getShort(2));
+        assertEquals(2, indices.getShort(4));
+
+        GltfModel.Material material = model.materials.get(0);
+        assertEquals("red", material.name);
+        assertArrayEquals(new float[] { 1.0f, 0.25f, 0.5f, 0.75f }, material.baseColorFactor, EPSILON);
+        assertEquals(0, material.baseColorTexture);
+        assertEquals(Integer.valueOf(0), model.textures.get(0));
+
+        GltfModel.Image image = model.images.get(0);
+        assertEquals("image/png", image.mimeType);
+        assertNull(image.uri);
+        ByteBuffer png = model.getBufferView(image.bufferView);
+        assertEquals(12, png.remaining());
+        assertEquals((byte) 0x89, png.get(0));
+        assertEquals((byte) 'P', png.get(1));
+
+        assertEquals(1, model.nodes.size());
+        assertEquals("triangle", model.nodes.get(0).name);
+        assertEquals(0, model.nodes.get(0).mesh);
+    }
+
+    @Test
+    public void parsesMorphAnimation() throws IOException
+    {
+        GltfModel model = GltfParser.parse(loadFixture("morph.glb"));
+
+        GltfModel.Mesh mesh = model.meshes.get(0);
+        assertArrayEquals(new float[] { 0.5f }, mesh.weights, EPSILON);
+        GltfModel.Primitive primitive = mesh.primitives.get(0);
+        assertEquals(-1, primitive.indices);
+        assertEquals(1, primitive.targets.size());
+        assertEquals(Integer.valueOf(2), primitive.targets.get(0));
+
+        // positions and texture coordinates share one interleaved buffer view
+        assertEquals(20, model.getAccessorStride(primitive.position));
+        assertEquals(20, model.getAccessorStride(primitive.texCoord));
+        assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 0, 1, 0 }, model.readAccessorFloats(primitive.position), EPSILON);
+        assertArrayEquals(new float[] { 0, 0, 1, 0, 0, 1 }, model.readAccessorFloats(primitive.texCoord), EPSILON);
+        assertEquals(2 * 20 + 12, model.getAccessorData(primitive.position).remaining());
+
+        assertEquals(2, model.nodes.size());
+        assertEquals(-1, model.nodes.get(0).mesh);
+        GltfModel.Animation animation = model.animations.get(0);
+        assertEquals("grow", animation.name);
+        assertEquals("weights", animation.channels.get(0).path);
+        assertEquals(1, animation.channels.get(0).node);
+
+        AnimationClip clip = model.getMorphClip(0, 1);
+        assertNotNull(clip);
+        assertEquals("grow", clip.getName());
+        assertEquals(2.0f, clip.getDuration(), EPSILON);
+        float[] weights = new float[1];
+        clip.sample(1.0f, weights);
+        assertEquals(0.5f, weights[0], EPSILON);
+        assertNull(model.getMorphClip(1, 1));
+    }
+
+    @Test
+    public void parsesWithoutBinaryChunk() throws IOException
+    {
+        GltfModel model = GltfParser.parse(glb("{ \"asset\" : { \"version\" : \"2.0\" } , \"meshes\" : [ ] }", null));
+        assertEquals(0, model.meshes.size());
+        assertEquals(0, model.binary.remaining());
+    }
+
+    @Test
+    public void parsesIntegralNumbersWrittenAsDoubles() throws IOException
+    {
+        GltfModel model = GltfParser.parse(glb("{\"bufferViews\":[{\"buffer\":0,\"byteOffset\":4.0,\"byteLength\":1e1}]}", new byte[16]));
+        assertEquals(4, model.bufferViews.get(0).byteOffset);
+        assertEquals(10, model.bufferViews.get(0).byteLength);
+    }
+
+    @Test
+    public void rejectsMalformedFiles()
+    {
+        ByteBuffer notGlb = ByteBuffer.wrap("not a glb file at all".getBytes(Charset.forName("US-ASCII")));
+        assertRejected("bad magic", notGlb);
+
+        ByteBuffer version1 = glb("{}", null);
+        version1.putInt(4, 1);
+        assertRejected("version 1", version1);
+
+        ByteBuffer truncated = glb("{}", new byte[16]);
+        truncated.limit(truncated.limit() - 4);
+        assertRejected("truncated", truncated);
+
+        assertRejected("missing JSON chunk", glb(null, new byte[16]));
+        assertRejected("missing comma", glb("{\"meshes\":[{\"name\":\"a\"} {\"name\":\"b\"}]}", null));
+        assertRejected("leading comma", glb("{\"meshes\":[,{\"name\":\"a\"}]}", null));
+        assertRejected("unterminated", glb("{\"meshes\":[{\"name\":\"a\"}", null));
+        assertRejected("fractional int", glb("{\"accessors\":[{\"count\":1.5}]}", null));
+        assertRejected("external buffer", glb("{\"bufferViews\":[{\"buffer\":1,\"byteLength\":4}]}", null));
+    }
+
+    private static void assertRejected(String what, ByteBuffer glb)
+    {
+        try {
+            GltfParser.parse(glb);
+            fail(what + " parsed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static ByteBuffer loadFixture(String name) throws IOException
+    {
+        InputStream is = GltfParserTest.class.getClassLoader().getResourceAsStream("gltf/" + name);
+        assertNotNull("missing fixture " + name, is);
+        try {
+            byte[] bytes = MeshJsonParser.readFully(is);
+            ByteBuffer glb = ByteBuffer.allocateDirect(bytes.length);
+            glb.put(bytes).flip();
+            return glb;
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * \brief Build a GLB file.
+     * @param json the JSON chunk, null for none.
+     * @param binary the binary chunk, null for none.
+     */
+    private static ByteBuffer glb(String json, byte[] binary)
+    {
+        byte[] jsonBytes = json == null ? new byte[0] : json.getBytes(Charset.forName("UTF-8"));
+        int jsonLength = (jsonBytes.length + 3) & ~3;
+        int binaryLength = binary == null ? 0 : (binary.length + 3) & ~3;
+        int length = 12 + (json == null ? 0 : 8 + jsonLength) + (binary == null ? 0 : 8 + binaryLength);
+        ByteBuffer glb = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        glb.putInt(0x46546C67).putInt(2).putInt(length);
+        if (json != null) {
+            glb.putInt(jsonLength).putInt(0x4E4F534A).put(jsonBytes);
+            while (glb.position() % 4 != 0) glb.put((byte) ' ');
+        }
+        if (binary != null) {
+            glb.putInt(binaryLength).putInt(0x004E4942).put(binary);
+            while (glb.position() % 4 != 0) glb.put((byte) 0);
+        }
+        glb.flip();
+        return glb;
+    }
+}
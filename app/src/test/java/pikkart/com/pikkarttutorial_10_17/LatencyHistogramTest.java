@@ -0,0 +1,123 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * \class LatencyHistogramTest
+ * \brief LatencyHistogram log-linear buckets, and percentiles checked against a sorted copy of the values.
+ */
+public class LatencyHistogramTest
+{
+    @Test
+    public void bucketsBelow64AreExact()
+    {
+        for (long v = 0; v < 64; v++) {
+            assertEquals(v, LatencyHistogram.bucketIndex(v));
+            assertEquals(v, LatencyHistogram.bucketUpperBound((int) v));
+        }
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+        assertEquals(64, LatencyHistogram.bucketIndex(64));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndNarrow()
+    {
+        int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals("values above the range are clamped", last, LatencyHistogram.bucketIndex(1L << 40));
+        long lower = 0;
+        for (int i = 0; i < last; i++) {
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            // each bucket starts right after the previous one and holds its bounds
+            assertEquals("bucket " + i, i, LatencyHistogram.bucketIndex(lower));
+            assertEquals("bucket " + i, i, LatencyHistogram.bucketIndex(upper));
+            assertEquals("bucket " + i, i + 1, LatencyHistogram.bucketIndex(upper + 1));
+            // 32 sub-buckets per power of two: at most 1/32 wide relative to their start
+            if (lower >= 64) assertTrue("bucket " + i, (upper - lower + 1) * 32 <= lower);
+            lower = upper + 1;
+        }
+    }
+
+    @Test
+    public void percentilesMatchSortedValues()
+    {
+        // a long tailed distribution, as frame times: mostly 2-20 ms with rare spikes up to 1 s
+        Random random = new Random(7);
+        long[] values = new long[10000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (2000 * Math.exp(random.nextGaussian() * 0.8)) + (random.nextInt(100) == 0 ? random.nextInt(1000000) : 0);
+            histogram.record(values[i]);
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        for (double p : new double[] { 50, 95, 99, 99.9, 100 }) {
+            long exact = sorted[(int) Math.ceil(values.length * p / 100) - 1];
+            long estimate = histogram.getPercentile(p);
+            // the upper bound of the bucket holding the exact value, never below it
+            assertTrue("p" + p + " " + estimate + " < " + exact, estimate >= exact);
+            assertTrue("p" + p + " " + estimate + " vs " + exact, estimate <= exact + exact / 32);
+        }
+        assertEquals(sorted[sorted.length - 1], histogram.getPercentile(100));
+        assertEquals(sorted[0], histogram.getPercentile(0));
+    }
+
+    @Test
+    public void percentilesOfSmallValuesAreExact()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 20; v++) histogram.record(v);
+
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(19, histogram.getPercentile(95));
+        assertEquals(20, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void keepsCountMeanAndMax()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+
+        histogram.record(1000);
+        histogram.record(3000);
+        histogram.record(100000);
+        assertEquals(3, histogram.getCount());
+        assertEquals(104000 / 3, histogram.getMean());
+        assertEquals(100000, histogram.getMax());
+        // the max caps the bucket upper bound
+        assertEquals(100000, histogram.getPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
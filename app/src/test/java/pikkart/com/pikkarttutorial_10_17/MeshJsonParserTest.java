@@ -0,0 +1,179 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * \class MeshJsonParserTest
+ * \brief MeshJsonParser numbers checked against Double.parseDouble, on one thread and on a pool.
+ *
+ * Texture coordinates are stored as parsed, so the numbers under test go in a texcoord_buffer;
+ * positions are scaled and offset as the app draws them.
+ */
+public class MeshJsonParserTest
+{
+    private static final String MONKEY = "src/main/assets/media/monkey.json";
+
+    @Test
+    public void parsesNumbersLikeParseDouble() throws IOException
+    {
+        String[] numbers = {
+                "0", "-0", "1", "-1", "0.5", "0.1", "-0.720703", "1.2489", "3.14159265358979",
+                "1e3", "1E-3", "-2.5e+2", "0.000001", "123456789012345678901234", "0.12345678901234567890123",
+                "1e-30", "4e38", "9007199254740993", "1e22", "1e23" };
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < numbers.length; i++) values.append(i > 0 ? ", " : "").append(numbers[i]);
+        MeshData data = MeshJsonParser.parse(mesh(values.toString(), "", ""), null);
+
+        assertEquals(numbers.length, data.texCoords.length);
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals(numbers[i], Float.floatToIntBits((float) Double.parseDouble(numbers[i])),
+                    Float.floatToIntBits(data.texCoords[i]));
+        }
+    }
+
+    @Test
+    public void parsesRandomNumbersOnAPool() throws IOException
+    {
+        // large enough to be cut into many chunks
+        Random random = new Random(3);
+        int count = 60000;
+        String[] numbers = new String[count];
+        StringBuilder values = new StringBuilder();
+        StringBuilder indices = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            double v = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 6);
+            numbers[i] = random.nextBoolean() ? Double.toString(v) : String.format("%.6f", v);
+            values.append(i > 0 ? ",\n" : "").append(numbers[i]);
+            indices.append(i > 0 ? "," : "").append(i);
+        }
+        byte[] json = mesh(values.toString(), "", indices.toString());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MeshData sequential = MeshJsonParser.parse(json, null);
+            MeshData parallel = MeshJsonParser.parse(json, pool);
+
+            for (int i = 0; i < count; i++) {
+                assertEquals(numbers[i], Float.floatToIntBits((float) Double.parseDouble(numbers[i])),
+                        Float.floatToIntBits(parallel.texCoords[i]));
+                assertEquals(i, parallel.indices[i]);
+            }
+            assertArrayEquals(sequential.texCoords, parallel.texCoords, 0.0f);
+            assertArrayEquals(sequential.indices, parallel.indices);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parsesMonkeyTheSameOnAPool() throws IOException
+    {
+        byte[] json;
+        InputStream is = new FileInputStream(new File(MONKEY));
+        try {
+            json = MeshJsonParser.readFully(is);
+        } finally {
+            is.close();
+        }
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            MeshData sequential = MeshJsonParser.parse(json, null);
+            MeshData parallel = MeshJsonParser.parse(json, pool);
+
+            assertEquals("mesh", parallel.name);
+            assertEquals(sequential.getVertexCount(), parallel.getVertexCount());
+            assertArrayEquals(sequential.positions, parallel.positions, 0.0f);
+            assertArrayEquals(sequential.normals, parallel.normals, 0.0f);
+            assertArrayEquals(sequential.texCoords, parallel.texCoords, 0.0f);
+            assertArrayEquals(sequential.indices, parallel.indices);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void readsTheMeshStructure() throws IOException
+    {
+        String json = "{ \"version\" : \"0.1.0\", \"name\" : \"cu\\\"be\", \"custom\" : { \"a\" : [1, \"]\", {}] },"
+                + " \"vertices\" : ["
+                + "  { \"name\" : \"position_buffer\", \"size\" : 3, \"type\" : \"float32\", \"values\" : [ 1, 2, 3 ] },"
+                + "  { \"name\" : \"color_buffer\", \"type\" : \"float32\", \"values\" : [ 9, 9, 9 ] },"
+                + "  { \"name\" : \"normal_buffer\", \"type\" : \"int32\", \"values\" : [ 9, 9, 9 ] } ],"
+                + " \"connectivity\" : ["
+                + "  { \"mode\" : \"lines_list\", \"indexed\" : true, \"indexType\" : \"uint32\", \"indices\" : [ 7, 7 ] },"
+                + "  { \"mode\" : \"triangles_list\", \"indexed\" : true, \"indexType\" : \"uint32\", \"indices\" : [ 0, 0, 0 ] } ] }";
+        MeshData data = MeshJsonParser.parse(json.getBytes(Charset.forName("UTF-8")), null);
+
+        assertEquals("cu\"be", data.name);
+        // x and y flipped, scaled and offset by 0.5, z flipped and scaled
+        assertArrayEquals(new float[] { 1 * -0.2f + 0.5f, 2 * -0.2f + 0.5f, 3 * -0.2f }, data.positions, 0.0f);
+        assertEquals(0, data.normals.length);
+        assertEquals(0, data.texCoords.length);
+        assertArrayEquals(new int[] { 0, 0, 0 }, data.indices);
+    }
+
+    @Test
+    public void rejectsMalformedMeshes()
+    {
+        assertRejected("bad number", mesh("1, x2, 3", "", ""));
+        assertRejected("missing comma", mesh("1 2", "", ""));
+        assertRejected("missing exponent", mesh("7e", "", ""));
+        assertRejected("fractional index", mesh("", "", "0, 1.5, 2"));
+        assertRejected("string in values", mesh("1, \"2\"", "", ""));
+        assertRejected("truncated", "{ \"vertices\" : [ { \"name\" : \"texcoord_buffer\", \"values\" : [ 1, 2".getBytes());
+    }
+
+    private static void assertRejected(String what, byte[] json)
+    {
+        try {
+            MeshJsonParser.parse(json, null);
+            fail(what + " parsed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * \brief A MeshLab json mesh with the given texture coordinates, normals and triangle indices.
+     */
+    private static byte[] mesh(String texCoords, String normals, String indices)
+    {
+        String json = "{\n  \"name\" : \"test\",\n  \"vertices\" : [\n"
+                + "    { \"name\" : \"texcoord_buffer\", \"size\" : 2, \"type\" : \"float32\", \"values\" : [ " + texCoords + " ] },\n"
+                + "    { \"name\" : \"normal_buffer\", \"size\" : 3, \"type\" : \"float32\", \"values\" : [ " + normals + " ] }\n  ],\n"
+                + "  \"connectivity\" : [ { \"name\" : \"triangles\", \"mode\" : \"triangles_list\", \"indexed\" : true,"
+                + " \"indexType\" : \"uint32\", \"indices\" : [ " + indices + " ] } ]\n}\n";
+        return json.getBytes(Charset.forName("UTF-8"));
+    }
+}
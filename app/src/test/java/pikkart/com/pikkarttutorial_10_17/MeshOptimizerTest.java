@@ -0,0 +1,158 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * \class MeshOptimizerTest
+ * \brief The vertex cache optimization lowers the ACMR and keeps the triangles.
+ *
+ * Triangles are compared through their corner positions, as optimizeVertexFetch renumbers
+ * the vertices. monkey.json is read from the app assets (unit tests run in the module dir).
+ */
+public class MeshOptimizerTest
+{
+    private static final String MONKEY = "src/main/assets/media/monkey.json";
+
+    @Test
+    public void lowersShuffledGridACMR()
+    {
+        MeshData data = shuffledGrid(64, new Random(1));
+        List<String> triangles = triangles(data);
+        int vertexCount = data.getVertexCount();
+        float before = MeshOptimizer.computeACMR(data.indices, vertexCount, MeshOptimizer.CACHE_SIZE);
+
+        MeshOptimizer.optimize(data);
+        float after = MeshOptimizer.computeACMR(data.indices, vertexCount, MeshOptimizer.CACHE_SIZE);
+
+        // shuffled, almost every corner misses; a regular grid optimizes to well under one miss per triangle
+        assertTrue("ACMR before " + before, before > 2.0f);
+        assertTrue("ACMR " + before + " -> " + after, after < 0.8f);
+        assertEquals(vertexCount, data.getVertexCount());
+        assertEquals(triangles, triangles(data));
+    }
+
+    @Test
+    public void lowersMonkeyACMR() throws IOException
+    {
+        // the import steps of Mesh, the optimization measured over all the levels of detail
+        MeshData data = loadMonkey();
+        MeshWelder.weld(data);
+        MeshSimplifier.buildLods(data, 4);
+        List<String> triangles = triangles(data);
+        float before = MeshOptimizer.computeACMR(data.indices, data.getVertexCount(), MeshOptimizer.CACHE_SIZE);
+
+        MeshOptimizer.optimize(data);
+        float after = MeshOptimizer.computeACMR(data.indices, data.getVertexCount(), MeshOptimizer.CACHE_SIZE);
+
+        assertTrue("ACMR " + before + " -> " + after, after < before * 0.9f);
+        assertTrue("ACMR " + after, after < 1.0f);
+        assertEquals(triangles, triangles(data));
+    }
+
+    @Test
+    public void computesACMR()
+    {
+        // two triangles sharing an edge: 4 misses; the second pass over them hits the cache
+        int[] indices = { 0, 1, 2, 2, 1, 3, 0, 1, 2, 2, 1, 3 };
+        assertEquals(1.0f, MeshOptimizer.computeACMR(indices, 4, MeshOptimizer.CACHE_SIZE), 1e-6f);
+        // a FIFO of 3 has pushed vertex 0 out when the second pass starts, then every vertex misses
+        assertEquals(2.0f, MeshOptimizer.computeACMR(indices, 4, 3), 1e-6f);
+        assertEquals(0.0f, MeshOptimizer.computeACMR(new int[0], 0, MeshOptimizer.CACHE_SIZE), 0.0f);
+    }
+
+    private static MeshData loadMonkey() throws IOException
+    {
+        InputStream is = new FileInputStream(new File(MONKEY));
+        try {
+            return MeshJsonParser.parse(MeshJsonParser.readFully(is), null);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * \brief A grid of n x n quads, two triangles each, in random order.
+     */
+    private static MeshData shuffledGrid(int n, Random random)
+    {
+        MeshData data = new MeshData();
+        int side = n + 1;
+        data.positions = new float[side * side * 3];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int v = y * side + x;
+                data.positions[v * 3] = x;
+                data.positions[v * 3 + 1] = y;
+            }
+        }
+        List<int[]> triangles = new ArrayList<int[]>();
+        for (int y = 0; y < n; y++) {
+            for (int x = 0; x < n; x++) {
+                int v = y * side + x;
+                triangles.add(new int[] { v, v + 1, v + side });
+                triangles.add(new int[] { v + 1, v + side + 1, v + side });
+            }
+        }
+        Collections.shuffle(triangles, random);
+        data.indices = new int[triangles.size() * 3];
+        for (int t = 0; t < triangles.size(); t++) {
+            System.arraycopy(triangles.get(t), 0, data.indices, t * 3, 3);
+        }
+        return data;
+    }
+
+    /**
+     * \brief The triangles as sorted strings of their corner positions, rotations and vertex order aside.
+     */
+    private static List<String> triangles(MeshData data)
+    {
+        List<String> result = new ArrayList<String>();
+        for (int t = 0; t < data.indices.length / 3; t++) {
+            String[] corners = new String[3];
+            for (int k = 0; k < 3; k++) {
+                int v = data.indices[t * 3 + k];
+                corners[k] = data.positions[v * 3] + "," + data.positions[v * 3 + 1] + "," + data.positions[v * 3 + 2];
+            }
+            // the winding is kept: start from the smallest corner
+            int first = 0;
+            for (int k = 1; k < 3; k++) {
+                if (corners[k].compareTo(corners[first]) < 0) first = k;
+            }
+            result.add(corners[first] + ";" + corners[(first + 1) % 3] + ";" + corners[(first + 2) % 3]);
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
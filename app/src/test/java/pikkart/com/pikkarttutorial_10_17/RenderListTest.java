@@ -0,0 +1,150 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * \class RenderListTest
+ * \brief RenderList sort order, change flags and state change counts.
+ *
+ * The draws are recorded by a Submitter as "part:flags" strings, flags written with the
+ * letters of their constant (P, T, B, L for LAST_OF_BUFFER), so an expected frame reads as
+ * the list of the draws in execution order.
+ */
+public class RenderListTest
+{
+    private static final int P = RenderList.CHANGE_PROGRAM;
+    private static final int T = RenderList.CHANGE_TEXTURE;
+    private static final int B = RenderList.CHANGE_BUFFER;
+    private static final int L = RenderList.LAST_OF_BUFFER;
+
+    /**
+     * \brief A submitter recording its draws.
+     */
+    private static class Recorder implements RenderList.Submitter
+    {
+        final List<String> draws = new ArrayList<String>();
+
+        public void DrawPart(int part, int flags)
+        {
+            draws.add(part + ":" + flagsToString(flags));
+        }
+    }
+
+    @Test
+    public void sortsByProgramTextureBuffer()
+    {
+        Recorder recorder = new Recorder();
+        RenderList list = new RenderList();
+        list.add(2, 1, 1, recorder, 0);
+        list.add(1, 2, 1, recorder, 1);
+        list.add(1, 1, 2, recorder, 2);
+        list.add(2, 1, 1, recorder, 3);
+        list.add(1, 1, 1, recorder, 4);
+
+        // submission order: every draw but the last changes the program, and the buffers with it
+        assertEquals(12, list.countStateChanges());
+        list.sort();
+        assertEquals(9, list.countStateChanges());
+        list.execute();
+
+        // equal draws (0 and 3) keep their submission order
+        assertEquals(draws("4:PTBL", "2:BL", "1:TBL", "0:PTB", "3:L"), recorder.draws);
+        assertTrue(list.getReport(), list.getReport().endsWith("(9 state changes, 12 unsorted)"));
+    }
+
+    @Test
+    public void flagsTheLastDrawOfABuffer()
+    {
+        Recorder recorder = new Recorder();
+        RenderList list = new RenderList();
+        // a texture change alone keeps the vertex arrays, a program change does not
+        list.add(1, 1, 1, recorder, 0);
+        list.add(1, 2, 1, recorder, 1);
+        list.add(2, 2, 1, recorder, 2);
+        list.sort();
+        list.execute();
+
+        assertEquals(draws("0:PTB", "1:TL", "2:PBL"), recorder.draws);
+        assertEquals(L, list.getFlags(2) & L);
+        assertEquals(0, list.getFlags(0) & L);
+    }
+
+    @Test
+    public void comparesFullIds()
+    {
+        Recorder recorder = new Recorder();
+        RenderList list = new RenderList();
+        // 0x10001 and 1 share their low 16 bits: equal for the sort, different for the flags
+        list.add(0x10001, 1, 1, recorder, 0);
+        list.add(1, 1, 1, recorder, 1);
+        list.add(0x10001, 1, 1, recorder, 2);
+        list.add(1, 1, 0x20005, recorder, 3);
+        list.add(1, 1, 5, recorder, 4);
+        list.sort();
+        list.execute();
+
+        assertEquals(draws("0:PTBL", "1:PBL", "2:PBL", "3:PBL", "4:BL"), recorder.draws);
+        assertEquals(3 + 2 + 2 + 2 + 1, list.countStateChanges());
+    }
+
+    @Test
+    public void growsAndClears()
+    {
+        Recorder recorder = new Recorder();
+        RenderList list = new RenderList();
+        for (int i = 0; i < 40; i++) list.add(40 - i, 1, 1, recorder, i);
+        assertEquals(40, list.size());
+        list.sort();
+        list.execute();
+        assertEquals("39:PTBL", recorder.draws.get(0));
+        assertEquals("0:PBL", recorder.draws.get(39));
+
+        list.clear();
+        recorder.draws.clear();
+        assertEquals(0, list.size());
+        assertEquals(0, list.countStateChanges());
+        list.add(7, 7, 7, recorder, 0);
+        list.sort();
+        list.execute();
+        assertEquals(draws("0:PTBL"), recorder.draws);
+    }
+
+    private static List<String> draws(String... draws)
+    {
+        List<String> result = new ArrayList<String>();
+        for (String draw : draws) result.add(draw);
+        return result;
+    }
+
+    private static String flagsToString(int flags)
+    {
+        return ((flags & P) != 0 ? "P" : "") + ((flags & T) != 0 ? "T" : "")
+                + ((flags & B) != 0 ? "B" : "") + ((flags & L) != 0 ? "L" : "");
+    }
+}
@@ -0,0 +1,170 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+package pikkart.com.pikkarttutorial_10_17;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * \class TextureAtlasTest
+ * \brief TextureAtlas shelf packing, padded pixels, texture coordinates and DiskCache payload.
+ *
+ * Texels are compared as little endian ints, red in the low byte, as the atlas writes them.
+ */
+public class TextureAtlasTest
+{
+    private static final float EPSILON = 1e-6f;
+
+    @Test
+    public void packsWithoutOverlap()
+    {
+        Random random = new Random(5);
+        int count = 40;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = 1 + random.nextInt(60);
+            heights[i] = 1 + random.nextInt(60);
+        }
+        int[] placement = TextureAtlas.pack(widths, heights, 2048);
+        int width = placement[2 * count];
+        int height = placement[2 * count + 1];
+
+        assertEquals(0, width & (width - 1));
+        assertEquals(0, height & (height - 1));
+        int p = TextureAtlas.PADDING;
+        for (int i = 0; i < count; i++) {
+            int x = placement[2 * i], y = placement[2 * i + 1];
+            assertTrue("image " + i + " inside", x >= p && y >= p && x + widths[i] + p <= width && y + heights[i] + p <= height);
+            for (int j = 0; j < i; j++) {
+                int xj = placement[2 * j], yj = placement[2 * j + 1];
+                // the padded rectangles do not overlap
+                boolean apart = x + widths[i] + p <= xj - p || xj + widths[j] + p <= x - p
+                        || y + heights[i] + p <= yj - p || yj + heights[j] + p <= y - p;
+                assertTrue("images " + i + " and " + j, apart);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsImagesLargerThanTheTexture()
+    {
+        try {
+            TextureAtlas.pack(new int[] { 60, 60 }, new int[] { 60, 60 }, 64);
+            fail("packed in 64x64");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        int[] placement = TextureAtlas.pack(new int[] { 60, 60 }, new int[] { 60, 60 }, 128);
+        assertEquals(128, placement[4]);
+        assertEquals(64, placement[5]);
+    }
+
+    @Test
+    public void buildsPaddedPixels()
+    {
+        int a = 0xff0000ff, b = 0xff00ff00, c = 0xffff0000, d = 0x80ffffff;
+        TextureData rgba = rgba(2, 2, a, b, c, d);
+        TextureData rgb565 = new TextureData();
+        rgb565.width = 1;
+        rgb565.height = 1;
+        rgb565.format = TextureData.FORMAT_RGB;
+        rgb565.type = TextureData.TYPE_UNSIGNED_SHORT_5_6_5;
+        rgb565.pixels = DirectBufferArena.allocate(2);
+        rgb565.pixels.putShort(0, (short) 0x07e0); // pure green
+        TextureAtlas atlas = TextureAtlas.build(new TextureData[] { rgba, rgb565 }, 64);
+
+        assertEquals(2, atlas.getCount());
+        TextureData texture = atlas.getTexture();
+        float[] rect = new float[4];
+        atlas.getRect(0, rect);
+        int x0 = Math.round(rect[0] * texture.width), y0 = Math.round(rect[1] * texture.height);
+        assertEquals(2, Math.round((rect[2] - rect[0]) * texture.width));
+        assertEquals(2, Math.round((rect[3] - rect[1]) * texture.height));
+        assertEquals(a, texel(texture, x0, y0));
+        assertEquals(b, texel(texture, x0 + 1, y0));
+        assertEquals(c, texel(texture, x0, y0 + 1));
+        assertEquals(d, texel(texture, x0 + 1, y0 + 1));
+        // the padding repeats the border texels, corners included
+        assertEquals(a, texel(texture, x0 - TextureAtlas.PADDING, y0 - TextureAtlas.PADDING));
+        assertEquals(b, texel(texture, x0 + 1 + TextureAtlas.PADDING, y0));
+        assertEquals(d, texel(texture, x0 + 1 + TextureAtlas.PADDING, y0 + 1 + TextureAtlas.PADDING));
+
+        atlas.getRect(1, rect);
+        assertEquals(0xff00ff00, texel(texture, Math.round(rect[0] * texture.width), Math.round(rect[1] * texture.height)));
+
+        // a quad's unit square maps to the image rectangle
+        float[] texCoords = { 0, 0, 1, 0, 1, 1, 0.5f, 0.5f };
+        atlas.mapTexCoords(1, texCoords);
+        assertArrayEquals(new float[] { rect[0], rect[1], rect[2], rect[1], rect[2], rect[3],
+                (rect[0] + rect[2]) / 2, (rect[1] + rect[3]) / 2 }, texCoords, EPSILON);
+    }
+
+    @Test
+    public void roundTripsThroughABlob()
+    {
+        TextureAtlas atlas = TextureAtlas.build(new TextureData[] { rgba(3, 1, 1, 2, 3), rgba(1, 2, 4, 5) }, 64);
+        ByteBuffer blob = atlas.toBlob();
+
+        assertNull(TextureAtlas.fromBlob(blob, 3));
+        TextureAtlas copy = TextureAtlas.fromBlob(blob, 2);
+        assertNotNull(copy);
+        float[] expected = new float[4], actual = new float[4];
+        for (int i = 0; i < 2; i++) {
+            atlas.getRect(i, expected);
+            copy.getRect(i, actual);
+            assertArrayEquals(expected, actual, 0.0f);
+        }
+        TextureData texture = atlas.getTexture(), copied = copy.getTexture();
+        assertEquals(texture.width, copied.width);
+        assertEquals(texture.height, copied.height);
+        for (int y = 0; y < texture.height; y++) {
+            for (int x = 0; x < texture.width; x++) assertEquals(texel(texture, x, y), texel(copied, x, y));
+        }
+        DirectBufferArena.release(blob);
+    }
+
+    private static TextureData rgba(int width, int height, int... texels)
+    {
+        TextureData image = new TextureData();
+        image.width = width;
+        image.height = height;
+        image.pixels = DirectBufferArena.allocate(width * height * 4);
+        for (int i = 0; i < texels.length; i++) image.pixels.putInt(i * 4, texels[i]);
+        return image;
+    }
+
+    private static int texel(TextureData texture, int x, int y)
+    {
+        // the pixels of a decoded payload are a slice, big endian by default
+        return texture.pixels.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt((y * texture.width + x) * 4);
+    }
+}
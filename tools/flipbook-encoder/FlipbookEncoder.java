@@ -0,0 +1,187 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+
+import pikkart.com.pikkarttutorial_10_17.Flipbook;
+import pikkart.com.pikkarttutorial_10_17.TextureData;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * \class FlipbookEncoder
+ * \brief Converts a sequence of frame images to the .flpb flipbook format played by FlipbookMesh.
+ *
+ * The frames are the PNG/JPEG files of a directory, in file name order, all of the same size
+ * (e.g. exported with ffmpeg -i clip.mp4 -vf fps=15 frames/%03d.png). They are laid out on the
+ * smallest power of two sheet within the texture size limit, halved until they fit. Opaque clips
+ * are stored in RGB565, others in RGBA8. Build and run from the project root with a plain JDK:
+ *   SRC=app/src/main/java/pikkart/com/pikkarttutorial_10_17
+ *   javac -d /tmp/flipbook-encoder $SRC/TextureData.java $SRC/DirectBufferArena.java $SRC/Flipbook.java \
+ *       tools/flipbook-encoder/FlipbookEncoder.java
+ *   java -cp /tmp/flipbook-encoder FlipbookEncoder frames/ app/src/main/assets/media/pikkart_video.flpb 15
+ */
+public class FlipbookEncoder
+{
+    private static final int DEFAULT_MAX_SIZE = 2048; /**< same as RenderUtils.DEFAULT_MAX_TEXTURE_SIZE */
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println("usage: FlipbookEncoder <frames dir> <clip.flpb> <fps> [max texture size]");
+            System.exit(1);
+        }
+        float fps = Float.parseFloat(args[2]);
+        int maxSize = args.length == 4 ? Integer.parseInt(args[3]) : DEFAULT_MAX_SIZE;
+        List<BufferedImage> frames = readFrames(new File(args[0]));
+        int sourceWidth = frames.get(0).getWidth();
+        int sourceHeight = frames.get(0).getHeight();
+
+        int width = sourceWidth;
+        int height = sourceHeight;
+        int[] layout = Flipbook.layout(frames.size(), width, height, maxSize);
+        while (layout == null) {
+            if (width == 1 && height == 1) throw new IllegalArgumentException(frames.size() + " frames do not fit a " + maxSize + " texture");
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            layout = Flipbook.layout(frames.size(), width, height, maxSize);
+        }
+        boolean opaque = true;
+        for (BufferedImage frame : frames) opaque &= isOpaque(frame);
+
+        Flipbook flipbook = new Flipbook();
+        flipbook.frameWidth = width;
+        flipbook.frameHeight = height;
+        flipbook.columns = layout[0];
+        flipbook.frameCount = frames.size();
+        flipbook.fps = fps;
+        TextureData sheet = new TextureData();
+        sheet.width = layout[2];
+        sheet.height = layout[3];
+        sheet.format = opaque ? TextureData.FORMAT_RGB : TextureData.FORMAT_RGBA;
+        sheet.type = opaque ? TextureData.TYPE_UNSIGNED_SHORT_5_6_5 : TextureData.TYPE_UNSIGNED_BYTE;
+        int bpp = TextureData.getBytesPerPixel(sheet.type);
+        sheet.pixels = ByteBuffer.allocate(sheet.width * sheet.height * bpp).order(ByteOrder.LITTLE_ENDIAN);
+        flipbook.sheet = sheet;
+
+        int[] row = new int[width];
+        for (int f = 0; f < frames.size(); f++) {
+            BufferedImage frame = scale(frames.get(f), width, height);
+            int x0 = (f % flipbook.columns) * width;
+            int y0 = (f / flipbook.columns) * height;
+            for (int y = 0; y < height; y++) {
+                // bottom row first, like the decoded textures
+                frame.getRGB(0, height - 1 - y, width, 1, row, 0, width);
+                int offset = ((y0 + y) * sheet.width + x0) * bpp;
+                for (int x = 0; x < width; x++) {
+                    int argb = row[x];
+                    int r = (argb >> 16) & 0xff, g = (argb >> 8) & 0xff, b = argb & 0xff;
+                    if (opaque) {
+                        int rgb565 = ((r * 31 + 127) / 255) << 11 | ((g * 63 + 127) / 255) << 5 | ((b * 31 + 127) / 255);
+                        sheet.pixels.putShort(offset + x * 2, (short) rgb565);
+                    }
+                    else {
+                        sheet.pixels.put(offset + x * 4, (byte) r);
+                        sheet.pixels.put(offset + x * 4 + 1, (byte) g);
+                        sheet.pixels.put(offset + x * 4 + 2, (byte) b);
+                        sheet.pixels.put(offset + x * 4 + 3, (byte) (argb >>> 24));
+                    }
+                }
+            }
+        }
+
+        byte[] encoded = Flipbook.encode(flipbook);
+        FileOutputStream out = new FileOutputStream(args[1]);
+        try {
+            out.write(encoded);
+        } finally {
+            out.close();
+        }
+        System.out.println(String.format("%d frames of %dx%d (source %dx%d) at %.1f fps, %.2f s loop, %d columns in a %dx%d %s sheet",
+                flipbook.frameCount, width, height, sourceWidth, sourceHeight, fps, flipbook.getDuration(), flipbook.columns,
+                sheet.width, sheet.height, opaque ? "RGB565" : "RGBA8"));
+
+        long start = System.nanoTime();
+        Flipbook decoded = Flipbook.decode(new ByteArrayInputStream(encoded));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("size: %d bytes texture, %d bytes encoded (%.1fx smaller); decode %.1f ms",
+                sheet.pixels.capacity(), encoded.length, (double) sheet.pixels.capacity() / encoded.length, seconds * 1000));
+        sheet.pixels.rewind();
+        if (!sheet.pixels.equals(decoded.sheet.pixels)) throw new IllegalStateException("decoded sheet differs");
+    }
+
+    /**
+     * \brief Read the frame images of a directory, in file name order.
+     */
+    private static List<BufferedImage> readFrames(File dir) throws IOException
+    {
+        File[] files = dir.listFiles();
+        if (files == null) throw new IOException(dir + " is not a directory");
+        Arrays.sort(files);
+        List<BufferedImage> frames = new ArrayList<BufferedImage>();
+        for (File file : files) {
+            String name = file.getName().toLowerCase();
+            if (!name.endsWith(".png") && !name.endsWith(".jpg") && !name.endsWith(".jpeg")) continue;
+            BufferedImage frame = ImageIO.read(file);
+            if (frame == null) throw new IOException("cannot read " + file);
+            if (!frames.isEmpty() && (frame.getWidth() != frames.get(0).getWidth() || frame.getHeight() != frames.get(0).getHeight())) {
+                throw new IOException(file + " is not the size of the first frame");
+            }
+            frames.add(frame);
+        }
+        if (frames.isEmpty()) throw new IOException("no frame in " + dir);
+        return frames;
+    }
+
+    private static boolean isOpaque(BufferedImage image)
+    {
+        if (!image.getColorModel().hasAlpha()) return true;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getRGB(x, y) >>> 24) != 0xff) return false;
+            }
+        }
+        return true;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height)
+    {
+        if (image.getWidth() == width && image.getHeight() == height) return image;
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+}
@@ -0,0 +1,190 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+
+import pikkart.com.pikkarttutorial_10_17.GltfModel;
+import pikkart.com.pikkarttutorial_10_17.GltfParser;
+import pikkart.com.pikkarttutorial_10_17.MeshData;
+import pikkart.com.pikkarttutorial_10_17.MeshJsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * \class GltfBenchmark
+ * \brief Times loading the same mesh from MeshLab json and from GLB.
+ *
+ * The json mesh is parsed with MeshJsonParser, then written as a GLB file (float positions,
+ * normals and texture coordinates, uint32 indices) whose accessors are checked against the
+ * json values. Each format is then timed the way the app uses it: the json path parses every
+ * number, the GLB path parses the JSON chunk and slices the binary chunk for glBufferData;
+ * the GLB path reading every accessor into float arrays is timed as well. Build and run from
+ * the project root with a plain JDK:
+ *   SRC=app/src/main/java/pikkart/com/pikkarttutorial_10_17
+ *   javac -d /tmp/gltf-bench $SRC/MeshData.java $SRC/MeshJsonParser.java $SRC/AnimationClip.java \
+ *       $SRC/GltfModel.java $SRC/GltfParser.java tools/gltf-bench/GltfBenchmark.java
+ *   java -cp /tmp/gltf-bench GltfBenchmark app/src/main/assets/media/monkey.json [monkey.glb]
+ */
+public class GltfBenchmark
+{
+    private static final int RUNS = 50;
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("usage: GltfBenchmark <mesh.json> [out.glb]");
+            System.exit(1);
+        }
+        byte[] json = Files.readAllBytes(new File(args[0]).toPath());
+        MeshData mesh = MeshJsonParser.parse(json, null);
+        byte[] glbBytes = toGlb(mesh);
+        if (args.length > 1) Files.write(new File(args[1]).toPath(), glbBytes);
+        final ByteBuffer glb = ByteBuffer.allocateDirect(glbBytes.length);
+        glb.put(glbBytes).flip();
+        System.out.println(String.format("%d vertices, %d triangles: %.1f KB of json, %.1f KB of glb",
+                mesh.getVertexCount(), mesh.getTriangleCount(), json.length / 1024.0, glbBytes.length / 1024.0));
+        check(mesh, GltfParser.parse(glb));
+
+        double sequential = time(new Load() {
+            public void run() throws IOException { MeshJsonParser.parse(json, null); }
+        });
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        double parallel = time(new Load() {
+            public void run() throws IOException { MeshJsonParser.parse(json, pool); }
+        });
+        pool.shutdown();
+        double slices = time(new Load() {
+            public void run() throws IOException {
+                GltfModel model = GltfParser.parse(glb);
+                for (int i = 0; i < model.accessors.size(); i++) model.getAccessorData(i);
+            }
+        });
+        double floats = time(new Load() {
+            public void run() throws IOException {
+                GltfModel model = GltfParser.parse(glb);
+                for (int i = 0; i < model.accessors.size(); i++) model.readAccessorFloats(i);
+            }
+        });
+        System.out.println(String.format("json, 1 thread: %.3f ms", sequential * 1000));
+        System.out.println(String.format("json, pool of %d threads: %.3f ms", pool.getParallelism(), parallel * 1000));
+        System.out.println(String.format("glb, slices: %.3f ms, %.0fx faster than json on 1 thread", slices * 1000, sequential / slices));
+        System.out.println(String.format("glb, float arrays: %.3f ms, %.1fx faster than json on 1 thread", floats * 1000, sequential / floats));
+    }
+
+    private interface Load
+    {
+        void run() throws IOException;
+    }
+
+    private static double time(Load load) throws IOException
+    {
+        for (int i = 0; i < RUNS; i++) load.run(); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) load.run();
+        return (System.nanoTime() - start) / 1e9 / RUNS;
+    }
+
+    /**
+     * \brief Check the GLB accessors hold the json mesh values.
+     */
+    private static void check(MeshData mesh, GltfModel model)
+    {
+        GltfModel.Primitive primitive = model.meshes.get(0).primitives.get(0);
+        compare("positions", mesh.positions, model.readAccessorFloats(primitive.position));
+        if (primitive.normal >= 0) compare("normals", mesh.normals, model.readAccessorFloats(primitive.normal));
+        if (primitive.texCoord >= 0) compare("texcoords", mesh.texCoords, model.readAccessorFloats(primitive.texCoord));
+        float[] indices = model.readAccessorFloats(primitive.indices);
+        if (indices.length != mesh.indices.length) throw new IllegalStateException("index count");
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] != mesh.indices[i]) throw new IllegalStateException("index " + i);
+        }
+        System.out.println("glb accessors match the json values");
+    }
+
+    private static void compare(String what, float[] expected, float[] actual)
+    {
+        if (expected.length != actual.length) throw new IllegalStateException(what + " count");
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.floatToRawIntBits(expected[i]) != Float.floatToRawIntBits(actual[i])) {
+                throw new IllegalStateException(what + " " + i + ": " + expected[i] + " != " + actual[i]);
+            }
+        }
+    }
+
+    /**
+     * \brief Write a mesh as a GLB file with one primitive.
+     */
+    private static byte[] toGlb(MeshData mesh)
+    {
+        float[][] attributes = { mesh.positions, mesh.normals, mesh.texCoords };
+        String[] names = { "POSITION", "NORMAL", "TEXCOORD_0" };
+        String[] types = { "VEC3", "VEC3", "VEC2" };
+        int[] components = { 3, 3, 2 };
+        int binaryLength = mesh.indices.length * 4;
+        for (float[] values : attributes) binaryLength += values.length * 4;
+        ByteBuffer binary = ByteBuffer.allocate(binaryLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        StringBuilder views = new StringBuilder();
+        StringBuilder accessors = new StringBuilder();
+        StringBuilder primitive = new StringBuilder("{\"attributes\":{");
+        int accessor = 0;
+        for (int a = 0; a < attributes.length; a++) {
+            float[] values = attributes[a];
+            if (values.length == 0) continue;
+            if (accessor > 0) {
+                views.append(',');
+                accessors.append(',');
+                primitive.append(',');
+            }
+            views.append("{\"buffer\":0,\"byteOffset\":").append(binary.position())
+                    .append(",\"byteLength\":").append(values.length * 4).append(",\"target\":34962}");
+            accessors.append("{\"bufferView\":").append(accessor).append(",\"componentType\":5126,\"count\":")
+                    .append(values.length / components[a]).append(",\"type\":\"").append(types[a]).append("\"}");
+            primitive.append('"').append(names[a]).append("\":").append(accessor);
+            for (float v : values) binary.putFloat(v);
+            accessor++;
+        }
+        views.append(",{\"buffer\":0,\"byteOffset\":").append(binary.position())
+                .append(",\"byteLength\":").append(mesh.indices.length * 4).append(",\"target\":34963}");
+        accessors.append(",{\"bufferView\":").append(accessor).append(",\"componentType\":5125,\"count\":")
+                .append(mesh.indices.length).append(",\"type\":\"SCALAR\"}");
+        primitive.append("},\"indices\":").append(accessor).append('}');
+        for (int i : mesh.indices) binary.putInt(i);
+
+        String json = "{\"asset\":{\"version\":\"2.0\",\"generator\":\"GltfBenchmark\"},"
+                + "\"meshes\":[{\"name\":\"" + mesh.name + "\",\"primitives\":[" + primitive + "]}],"
+                + "\"buffers\":[{\"byteLength\":" + binaryLength + "}],"
+                + "\"bufferViews\":[" + views + "],\"accessors\":[" + accessors + "]}";
+        byte[] jsonBytes = json.getBytes(Charset.forName("UTF-8"));
+        int jsonLength = (jsonBytes.length + 3) & ~3;
+        int length = 12 + 8 + jsonLength + 8 + binaryLength;
+        ByteBuffer glb = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        glb.putInt(0x46546C67).putInt(2).putInt(length);
+        glb.putInt(jsonLength).putInt(0x4E4F534A).put(jsonBytes);
+        while (glb.position() % 4 != 0) glb.put((byte) ' ');
+        glb.putInt(binaryLength).putInt(0x004E4942).put(binary.array());
+        return glb.array();
+    }
+}
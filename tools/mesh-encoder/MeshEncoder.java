@@ -0,0 +1,257 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+
+import pikkart.com.pikkarttutorial_10_17.MeshCodec;
+import pikkart.com.pikkarttutorial_10_17.MeshData;
+import pikkart.com.pikkarttutorial_10_17.MeshOptimizer;
+import pikkart.com.pikkarttutorial_10_17.MeshSimplifier;
+import pikkart.com.pikkarttutorial_10_17.MeshWelder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * \class MeshEncoder
+ * \brief Converts MeshLab json meshes to the compressed .mshz format, and reports
+ * compression ratio, decode throughput and quantization errors.
+ *
+ * The mesh goes through the same import steps as on device (weld, LOD chain, vertex cache
+ * optimization) so the app has nothing left to do but decode. Build and run from the
+ * project root with a plain JDK:
+ *   SRC=app/src/main/java/pikkart/com/pikkarttutorial_10_17
+ *   javac -d /tmp/mesh-encoder $SRC/MeshData.java $SRC/MeshWelder.java $SRC/MeshSimplifier.java \
+ *       $SRC/MeshOptimizer.java $SRC/MeshCodec.java tools/mesh-encoder/MeshEncoder.java
+ *   java -cp /tmp/mesh-encoder MeshEncoder app/src/main/assets/media/monkey.json app/src/main/assets/media/monkey.mshz
+ */
+public class MeshEncoder
+{
+    private static final int LOD_LEVELS = 4; /**< same as Mesh */
+    private static final int DECODE_RUNS = 20; /**< decodes timed for the throughput */
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.err.println("usage: MeshEncoder <mesh.json> <mesh.mshz>");
+            System.exit(1);
+        }
+        File input = new File(args[0]);
+        String json = new String(Files.readAllBytes(input.toPath()), Charset.forName("UTF-8"));
+        MeshData data = parseMeshLabJson(json);
+
+        int parsedVertices = data.getVertexCount();
+        MeshWelder.weld(data);
+        MeshSimplifier.buildLods(data, LOD_LEVELS);
+        MeshOptimizer.optimize(data);
+        System.out.println(data.name + ": " + parsedVertices + " vertices, " + data.getVertexCount() + " after welding, "
+                + data.getLodCount() + " levels of " + data.getLodTriangleCount(0) + " to "
+                + data.getLodTriangleCount(data.getLodCount() - 1) + " triangles");
+
+        byte[] encoded = MeshCodec.encode(data);
+        FileOutputStream out = new FileOutputStream(args[1]);
+        try {
+            out.write(encoded);
+        } finally {
+            out.close();
+        }
+        System.out.println(String.format("size: %d bytes json, %d bytes raw arrays, %d bytes encoded (%.1fx smaller than json)",
+                input.length(), data.getSizeInBytes(), encoded.length, (double) input.length() / encoded.length));
+
+        MeshData decoded = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < DECODE_RUNS; i++) {
+            decoded = MeshCodec.decode(new ByteArrayInputStream(encoded));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 / DECODE_RUNS;
+        System.out.println(String.format("decode: %.2f ms, %.1f MB/s of mesh data, %.1f Mvertices/s",
+                seconds * 1000, decoded.getSizeInBytes() / seconds / 1e6, decoded.getVertexCount() / seconds / 1e6));
+
+        float[] positionBound = MeshCodec.getPositionErrorBound(data);
+        System.out.println(String.format("position error: %g (bound %g)",
+                maxError(data.positions, decoded.positions), Math.max(positionBound[0], Math.max(positionBound[1], positionBound[2]))));
+        if (data.texCoords.length > 0) {
+            float[] texCoordBound = MeshCodec.getTexCoordErrorBound(data);
+            System.out.println(String.format("texcoord error: %g (bound %g)",
+                    maxError(data.texCoords, decoded.texCoords), Math.max(texCoordBound[0], texCoordBound[1])));
+        }
+        if (data.normals.length > 0) {
+            System.out.println(String.format("normal error: %g (bound %g)",
+                    maxError(data.normals, decoded.normals), MeshCodec.getNormalErrorBound()));
+        }
+        for (int i = 0; i < data.indices.length; i++) {
+            if (data.indices[i] != decoded.indices[i]) throw new IllegalStateException("index mismatch at " + i);
+        }
+    }
+
+    private static float maxError(float[] a, float[] b)
+    {
+        float error = 0;
+        for (int i = 0; i < a.length; i++) {
+            error = Math.max(error, Math.abs(a[i] - b[i]));
+        }
+        return error;
+    }
+
+    /**
+     * \brief Build the MeshData of a MeshLab json export, exactly as Mesh.ParseMeshJson does on device.
+     */
+    @SuppressWarnings("unchecked")
+    private static MeshData parseMeshLabJson(String json)
+    {
+        Map<String, Object> root = (Map<String, Object>) new JsonParser(json).parseValue();
+        MeshData data = new MeshData();
+        if (root.get("name") != null) data.name = (String) root.get("name");
+        for (Object o : (List<Object>) root.get("vertices")) {
+            Map<String, Object> element = (Map<String, Object>) o;
+            if (!"float32".equals(element.get("type"))) continue;
+            List<Object> values = (List<Object>) element.get("values");
+            float[] array = new float[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ((Double) values.get(i)).floatValue();
+            }
+            String name = (String) element.get("name");
+            if ("position_buffer".equals(name)) {
+                // the scale and offset applied by the app parser
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = i % 3 == 2 ? array[i] * -0.2f : array[i] * -0.2f + 0.5f;
+                }
+                data.positions = array;
+            }
+            else if ("normal_buffer".equals(name)) data.normals = array;
+            else if ("texcoord_buffer".equals(name)) data.texCoords = array;
+        }
+        for (Object o : (List<Object>) root.get("connectivity")) {
+            Map<String, Object> element = (Map<String, Object>) o;
+            if (!"triangles_list".equals(element.get("mode")) || Boolean.FALSE.equals(element.get("indexed"))
+                    || !"uint32".equals(element.get("indexType"))) {
+                continue;
+            }
+            List<Object> values = (List<Object>) element.get("indices");
+            int[] indices = new int[values.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = ((Double) values.get(i)).intValue();
+            }
+            data.indices = indices;
+        }
+        return data;
+    }
+
+    /**
+     * \brief A minimal recursive descent json parser (objects, arrays, strings, numbers, literals).
+     */
+    private static class JsonParser
+    {
+        private final String s;
+        private int p = 0;
+
+        JsonParser(String s)
+        {
+            this.s = s;
+        }
+
+        Object parseValue()
+        {
+            skipSpaces();
+            char c = s.charAt(p);
+            if (c == '{') return parseObject();
+            if (c == '[') return parseArray();
+            if (c == '"') return parseString();
+            if (s.startsWith("true", p)) { p += 4; return Boolean.TRUE; }
+            if (s.startsWith("false", p)) { p += 5; return Boolean.FALSE; }
+            if (s.startsWith("null", p)) { p += 4; return null; }
+            int start = p;
+            while (p < s.length() && "+-0123456789.eE".indexOf(s.charAt(p)) >= 0) p++;
+            return Double.parseDouble(s.substring(start, p));
+        }
+
+        private Map<String, Object> parseObject()
+        {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            p++;
+            skipSpaces();
+            if (s.charAt(p) == '}') { p++; return map; }
+            while (true) {
+                skipSpaces();
+                String key = parseString();
+                skipSpaces();
+                expect(':');
+                map.put(key, parseValue());
+                skipSpaces();
+                if (s.charAt(p) == ',') { p++; continue; }
+                expect('}');
+                return map;
+            }
+        }
+
+        private List<Object> parseArray()
+        {
+            List<Object> list = new ArrayList<Object>();
+            p++;
+            skipSpaces();
+            if (s.charAt(p) == ']') { p++; return list; }
+            while (true) {
+                list.add(parseValue());
+                skipSpaces();
+                if (s.charAt(p) == ',') { p++; continue; }
+                expect(']');
+                return list;
+            }
+        }
+
+        private String parseString()
+        {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (s.charAt(p) != '"') {
+                char c = s.charAt(p++);
+                if (c == '\\') {
+                    char e = s.charAt(p++);
+                    if (e == 'u') {
+                        sb.append((char) Integer.parseInt(s.substring(p, p + 4), 16));
+                        p += 4;
+                    }
+                    else sb.append(e == 'n' ? '\n' : e == 't' ? '\t' : e == 'r' ? '\r' : e == 'b' ? '\b' : e == 'f' ? '\f' : e);
+                }
+                else sb.append(c);
+            }
+            p++;
+            return sb.toString();
+        }
+
+        private void skipSpaces()
+        {
+            while (p < s.length() && Character.isWhitespace(s.charAt(p))) p++;
+        }
+
+        private void expect(char c)
+        {
+            if (s.charAt(p) != c) throw new IllegalArgumentException("expected '" + c + "' at " + p);
+            p++;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/* ===============================================================================
+ * Copyright (c) 2016 Pikkart S.r.l. All Rights Reserved.
+ * Pikkart is a trademark of Pikkart S.r.l., registered in Europe,
+ * the United States and other countries.
+ *
+ * This file is part of Pikkart AR SDK Tutorial series, a series of tutorials
+ * explaining how to use and fully exploits Pikkart's AR SDK.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ===============================================================================*/
+
+import pikkart.com.pikkarttutorial_10_17.MeshData;
+import pikkart.com.pikkarttutorial_10_17.MeshJsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * \class MeshJsonBenchmark
+ * \brief Checks that MeshJsonParser matches the JsonReader parsing bit for bit, and times it
+ * with 1 to N threads.
+ *
+ * The reference parses every number with Double.parseDouble and casts it to float, as
+ * JsonReader.nextDouble() does in the app. Without arguments a synthetic mesh is generated,
+ * with numbers in every form the fast path must handle or hand over (long mantissas, exponents,
+ * negative zero). Build and run from the project root with a plain JDK:
+ *   SRC=app/src/main/java/pikkart/com/pikkarttutorial_10_17
+ *   javac -d /tmp/mesh-json-bench $SRC/MeshData.java $SRC/MeshJsonParser.java tools/mesh-json-bench/MeshJsonBenchmark.java
+ *   java -cp /tmp/mesh-json-bench MeshJsonBenchmark [app/src/main/assets/media/monkey.json]
+ */
+public class MeshJsonBenchmark
+{
+    private static final int SYNTHETIC_VERTICES = 500000;
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception
+    {
+        byte[] json;
+        if (args.length > 0) {
+            json = Files.readAllBytes(new File(args[0]).toPath());
+        }
+        else {
+            json = syntheticMesh(SYNTHETIC_VERTICES, new Random(42)).getBytes(Charset.forName("US-ASCII"));
+        }
+        System.out.println(String.format("%.1f MB of json", json.length / 1e6));
+
+        MeshData reference = referenceParse(json);
+        MeshData sequential = MeshJsonParser.parse(json, null);
+        compare("sequential", reference, sequential);
+
+        double baseline = time(json, null);
+        System.out.println(String.format("sequential: %.1f ms", baseline * 1000));
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            compare(threads + " threads", reference, MeshJsonParser.parse(json, pool));
+            double seconds = time(json, pool);
+            System.out.println(String.format("%d threads: %.1f ms, %.2fx, %.1f MB/s",
+                    threads, seconds * 1000, baseline / seconds, json.length / seconds / 1e6));
+            pool.shutdown();
+        }
+    }
+
+    private static double time(byte[] json, ForkJoinPool pool) throws IOException
+    {
+        MeshJsonParser.parse(json, pool); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            MeshJsonParser.parse(json, pool);
+        }
+        return (System.nanoTime() - start) / 1e9 / RUNS;
+    }
+
+    private static void compare(String what, MeshData expected, MeshData actual)
+    {
+        compare(what + " positions", expected.positions, actual.positions);
+        compare(what + " normals", expected.normals, actual.normals);
+        compare(what + " texcoords", expected.texCoords, actual.texCoords);
+        if (expected.indices.length != actual.indices.length) throw new IllegalStateException(what + " index count");
+        for (int i = 0; i < expected.indices.length; i++) {
+            if (expected.indices[i] != actual.indices[i]) throw new IllegalStateException(what + " index " + i);
+        }
+        System.out.println(what + ": bit identical (" + actual.getVertexCount() + " vertices, "
+                + actual.getTriangleCount() + " triangles)");
+    }
+
+    private static void compare(String what, float[] expected, float[] actual)
+    {
+        if (expected.length != actual.length) throw new IllegalStateException(what + " count");
+        for (int i = 0; i < expected.length; i++) {
+            if (Float.floatToRawIntBits(expected[i]) != Float.floatToRawIntBits(actual[i])) {
+                throw new IllegalStateException(what + " " + i + ": " + expected[i] + " != " + actual[i]);
+            }
+        }
+    }
+
+    /**
+     * \brief Generate a MeshLab-like json mesh with varied number formats.
+     */
+    private static String syntheticMesh(int vertices, Random random)
+    {
+        StringBuilder sb = new StringBuilder(vertices * 100);
+        sb.append("{\n  \"version\": \"0.1.0\",\n  \"name\": \"synthetic\",\n  \"vertices\": [\n");
+        appendElement(sb, "position_buffer", vertices * 3, random, true);
+        sb.append(",\n");
+        appendElement(sb, "normal_buffer", vertices * 3, random, false);
+        sb.append(",\n");
+        appendElement(sb, "texcoord_buffer", vertices * 2, random, false);
+        sb.append("\n  ],\n  \"connectivity\": [ {\n    \"name\": \"triangles\", \"mode\": \"triangles_list\", "
+                + "\"indexed\": true, \"indexType\": \"uint32\",\n    \"indices\": [");
+        for (int i = 0; i < vertices * 2; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(random.nextInt(vertices));
+        }
+        sb.append("]\n  } ],\n  \"mapping\": [ { \"name\": \"standard\", \"primitives\": \"triangles\" } ]\n}\n");
+        return sb.toString();
+    }
+
+    private static void appendElement(StringBuilder sb, String name, int count, Random random, boolean wide)
+    {
+        sb.append("    { \"name\": \"").append(name).append("\", \"size\": 3, \"type\": \"float32\", "
+                + "\"normalized\": false, \"values\": [\n      ");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(i % 12 == 0 ? ",\n      " : ", ");
+            double v = (random.nextDouble() * 2 - 1) * (wide ? 10 : 1);
+            switch (random.nextInt(8)) {
+                case 0: sb.append(v); break; // shortest repr, up to 17 digits
+                case 1: sb.append(String.format(Locale.ROOT, "%.3e", v)); break;
+                case 2: sb.append((float) v); break;
+                case 3: sb.append(i % 2 == 0 ? "-0" : "0.000000"); break;
+                case 4: sb.append(String.format(Locale.ROOT, "%.20f", v)); break; // falls back
+                case 5: sb.append(String.format(Locale.ROOT, "%.1E", v * 1e-30)); break; // falls back
+                default: sb.append(String.format(Locale.ROOT, "%.6f", v)); break;
+            }
+        }
+        sb.append("\n    ] }");
+    }
+
+    /**
+     * \brief Parse the mesh number by number with Double.parseDouble, as JsonReader does.
+     */
+    private static MeshData referenceParse(byte[] json)
+    {
+        String s = new String(json, Charset.forName("UTF-8"));
+        MeshData data = new MeshData();
+        data.positions = referenceValues(s, "position_buffer");
+        data.normals = referenceValues(s, "normal_buffer");
+        data.texCoords = referenceValues(s, "texcoord_buffer");
+        for (int i = 0; i < data.positions.length; i++) {
+            float v = data.positions[i];
+            data.positions[i] = i % 3 == 2 ? v * -0.2f : v * -0.2f + 0.5f;
+        }
+        String[] tokens = arrayTokens(s, s.indexOf("\"indices\""));
+        data.indices = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            data.indices[i] = (int) Double.parseDouble(tokens[i]);
+        }
+        return data;
+    }
+
+    private static float[] referenceValues(String s, String name)
+    {
+        int element = s.indexOf("\"" + name + "\"");
+        if (element < 0) return new float[0];
+        String[] tokens = arrayTokens(s, s.indexOf("\"values\"", element));
+        float[] values = new float[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            values[i] = (float) Double.parseDouble(tokens[i]);
+        }
+        return values;
+    }
+
+    private static String[] arrayTokens(String s, int key)
+    {
+        int start = s.indexOf('[', key) + 1;
+        String body = s.substring(start, s.indexOf(']', start)).trim();
+        return body.isEmpty() ? new String[0] : body.split("\\s*,\\s*");
+    }
+}